@@ -2,16 +2,22 @@ package com.ussd.wallet.ultimate;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 @SpringBootApplication
 @EnableTransactionManagement
 @EnableAsync
+@EnableScheduling
 public class UssdWalletUltimateApplication {
 
 	public static void main(String[] args) {
-		SpringApplication.run(UssdWalletUltimateApplication.class, args);
+		SpringApplication app = new SpringApplication(UssdWalletUltimateApplication.class);
+		// startup steps are served at /actuator/startup
+		app.setApplicationStartup(new BufferingApplicationStartup(4096));
+		app.run(args);
 	}
 
 }
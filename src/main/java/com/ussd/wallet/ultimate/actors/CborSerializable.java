@@ -0,0 +1,5 @@
+package com.ussd.wallet.ultimate.actors;
+
+// Marker for actor messages that cross cluster nodes; bound to jackson-cbor in application.conf.
+public interface CborSerializable {
+}
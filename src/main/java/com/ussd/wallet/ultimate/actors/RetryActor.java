@@ -5,31 +5,78 @@ import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import com.ussd.wallet.ultimate.retry.HierarchicalTimingWheel;
+import com.ussd.wallet.ultimate.retry.RetryScheduler;
+import com.ussd.wallet.ultimate.retry.RetryTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class RetryActor extends AbstractBehavior<String> {
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Owns this node's timing wheel: on every tick it claims near-term tasks from Redis and fires
+// whatever has come due. Execution happens on RetryScheduler's workers, never on this actor.
+public class RetryActor extends AbstractBehavior<RetryActor.Command> {
 
     private static final Logger log = LoggerFactory.getLogger(RetryActor.class);
 
-    public static Behavior<String> create() {
-        return Behaviors.setup(RetryActor::new);
+    public interface Command {}
+
+    private enum Tick implements Command { INSTANCE }
+
+    private record Claimed(List<RetryTask> tasks, Throwable error) implements Command {}
+
+    private final RetryScheduler scheduler;
+    private final HierarchicalTimingWheel<RetryTask> wheel;
+    private boolean claiming;
+
+    public static Behavior<Command> create(RetryScheduler scheduler, Duration pollInterval) {
+        return Behaviors.setup(ctx -> Behaviors.withTimers(timers -> {
+            timers.startTimerAtFixedRate(Tick.INSTANCE, pollInterval);
+            return new RetryActor(ctx, scheduler);
+        }));
     }
 
-    private RetryActor(ActorContext<String> context) {
+    private RetryActor(ActorContext<Command> context, RetryScheduler scheduler) {
         super(context);
+        this.scheduler = scheduler;
+        // 50ms x 256 covers ~12.8s per root rotation; longer delays cascade through overflow wheels
+        this.wheel = new HierarchicalTimingWheel<>(50, 256, System.currentTimeMillis());
     }
 
     @Override
-    public Receive<String> createReceive() {
+    public Receive<Command> createReceive() {
         return newReceiveBuilder()
-                .onMessage(String.class, this::onMsg)
+                .onMessage(Tick.class, this::onTick)
+                .onMessage(Claimed.class, this::onClaimed)
                 .build();
     }
 
-    private Behavior<String> onMsg(String msg) {
-        log.info("[AKKA] RetryActor processing: {}", msg);
+    private Behavior<Command> onTick(Tick msg) {
+        advance();
+        if (!claiming) {
+            claiming = true;
+            getContext().pipeToSelf(CompletableFuture.supplyAsync(scheduler::claimDue, scheduler.claimExecutor()),
+                    Claimed::new);
+        }
         return this;
     }
-}
 
+    private Behavior<Command> onClaimed(Claimed msg) {
+        claiming = false;
+        if (msg.error() != null) {
+            log.warn("[AKKA] RetryActor claim failed: {}", msg.error().getMessage());
+            return this;
+        }
+        for (RetryTask task : msg.tasks()) {
+            if (!wheel.add(task.dueAtMillis(), task)) scheduler.dispatch(task);
+        }
+        advance();
+        return this;
+    }
+
+    private void advance() {
+        wheel.advance(System.currentTimeMillis(), scheduler::dispatch);
+    }
+}
@@ -0,0 +1,133 @@
+package com.ussd.wallet.ultimate.config;
+
+import com.ussd.wallet.ultimate.datasource.DeadlineTimeoutDataSource;
+import com.ussd.wallet.ultimate.datasource.ReplicaLagMonitor;
+import com.ussd.wallet.ultimate.datasource.ReplicaRoutingDataSource;
+import com.ussd.wallet.ultimate.datasource.WriteTrackingDataSource;
+import com.ussd.wallet.ultimate.sharding.ShardContext;
+import com.ussd.wallet.ultimate.sharding.ShardDataSources;
+import com.ussd.wallet.ultimate.sharding.ShardRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Read/write split: read-only transactions (@Transactional(readOnly = true)) are served by a
+// replica, everything else by the primary. The lazy proxy defers taking a physical connection
+// until the transaction's read-only flag is known.
+// Users and accounts are additionally spread over shards (spring.datasource is shard-0, the rest
+// come from ussd.sharding.shard-urls); the shard is bound per call by ShardRoutingInterceptor.
+// Replicas only serve shard-0 — reads for other shards go to that shard's primary.
+@Configuration
+public class DataSourceConfig {
+
+    @Value("${spring.datasource.url}")
+    private String primaryUrl;
+
+    @Value("${spring.datasource.username}")
+    private String username;
+
+    @Value("${spring.datasource.password}")
+    private String password;
+
+    @Value("${ussd.datasource.replica-urls:}")
+    private List<String> replicaUrls;
+
+    @Value("${ussd.datasource.max-replica-lag-seconds:2}")
+    private long maxReplicaLagSeconds;
+
+    @Value("${ussd.datasource.lag-check.enabled:true}")
+    private boolean lagCheckEnabled;
+
+    @Value("${ussd.datasource.lag-check.interval-ms:1000}")
+    private long lagCheckIntervalMs;
+
+    @Value("${ussd.datasource.pool-size:20}")
+    private int poolSize;
+
+    @Value("${ussd.sharding.shard-urls:}")
+    private List<String> shardUrls;
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+    private ReplicaLagMonitor lagMonitor;
+
+    @Bean
+    public ShardDataSources shardDataSources(MeterRegistry registry) {
+        Map<String, DataSource> primaries = new LinkedHashMap<>();
+        primaries.put(ShardContext.DEFAULT_SHARD, pool("primary", primaryUrl, registry));
+        for (int i = 0; i < shardUrls.size(); i++) {
+            String key = "shard-" + (i + 1);
+            primaries.put(key, pool(key, shardUrls.get(i), registry));
+        }
+        return new ShardDataSources(Map.copyOf(primaries));
+    }
+
+    @Bean
+    public DataSource dataSource(ShardDataSources shards, MeterRegistry registry) {
+        DataSource primary = shards.get(ShardContext.DEFAULT_SHARD);
+
+        Map<Object, Object> targets = new LinkedHashMap<>();
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        Map<Object, Object> writeTargets = new LinkedHashMap<>();
+        targets.put(ReplicaRoutingDataSource.PRIMARY, primary);
+        shards.primaries().forEach((key, ds) -> {
+            writeTargets.put(key, new WriteTrackingDataSource(ds));
+            if (!key.equals(ShardContext.DEFAULT_SHARD)) targets.put(key, ds);
+        });
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            String key = "replica-" + i;
+            HikariDataSource replica = pool(key, replicaUrls.get(i), registry);
+            replica.setReadOnly(true);
+            targets.put(key, replica);
+            replicas.put(key, replica);
+        }
+
+        ReplicaRoutingDataSource readRouter = new ReplicaRoutingDataSource(List.copyOf(replicas.keySet()), maxReplicaLagSeconds, registry);
+        readRouter.setTargetDataSources(targets);
+        readRouter.setDefaultTargetDataSource(primary);
+        readRouter.afterPropertiesSet();
+
+        if (!replicas.isEmpty()) {
+            lagMonitor = new ReplicaLagMonitor(replicas, readRouter, lagCheckEnabled);
+            lagMonitor.start(lagCheckIntervalMs);
+        }
+
+        ShardRoutingDataSource writeRouter = new ShardRoutingDataSource();
+        writeRouter.setTargetDataSources(writeTargets);
+        writeRouter.setDefaultTargetDataSource(writeTargets.get(ShardContext.DEFAULT_SHARD));
+        writeRouter.afterPropertiesSet();
+
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(writeRouter);
+        proxy.setReadOnlyDataSource(readRouter);
+        // statements inside a USSD hop time out with the hop's budget
+        return new DeadlineTimeoutDataSource(proxy);
+    }
+
+    // pool metrics are published per route as hikaricp.connections.*{pool=...}
+    private HikariDataSource pool(String name, String url, MeterRegistry registry) {
+        HikariDataSource ds = new HikariDataSource();
+        ds.setPoolName(name);
+        ds.setJdbcUrl(url);
+        ds.setUsername(username);
+        ds.setPassword(password);
+        ds.setMaximumPoolSize(poolSize);
+        ds.setMetricRegistry(registry);
+        pools.add(ds);
+        return ds;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (lagMonitor != null) lagMonitor.close();
+        pools.forEach(HikariDataSource::close);
+    }
+}
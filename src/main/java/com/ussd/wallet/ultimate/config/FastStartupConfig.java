@@ -0,0 +1,32 @@
+package com.ussd.wallet.ultimate.config;
+
+import com.ussd.wallet.ultimate.controller.HealthController;
+import com.ussd.wallet.ultimate.controller.UssdController;
+import com.ussd.wallet.ultimate.controller.UssdGatewayController;
+import com.ussd.wallet.ultimate.service.AccountService;
+import com.ussd.wallet.ultimate.service.UssdService;
+import com.ussd.wallet.ultimate.startup.IntegrationWarmup;
+import com.ussd.wallet.ultimate.startup.StartupTimeline;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Enabled by the fast-startup profile, which also turns on spring.main.lazy-initialization.
+// The USSD hot path stays eager; Cassandra, Kafka, Akka, SOAP and Twilio are warmed after ready.
+@Configuration
+@ConditionalOnProperty(name = "ussd.fast-startup.enabled", havingValue = "true")
+public class FastStartupConfig {
+
+    @Bean
+    static LazyInitializationExcludeFilter ussdHotPathExcludeFilter() {
+        return LazyInitializationExcludeFilter.forBeanTypes(UssdController.class, UssdGatewayController.class,
+                HealthController.class, UssdService.class, AccountService.class);
+    }
+
+    @Bean
+    public IntegrationWarmup integrationWarmup(ApplicationContext context, StartupTimeline timeline) {
+        return new IntegrationWarmup(context, timeline);
+    }
+}
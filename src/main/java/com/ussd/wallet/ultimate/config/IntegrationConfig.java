@@ -0,0 +1,59 @@
+package com.ussd.wallet.ultimate.config;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.cluster.typed.Cluster;
+import akka.cluster.typed.Join;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.ws.client.core.WebServiceTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+// Integrations that the first USSD hop does not need. They are created on first use
+// (or by IntegrationWarmup in fast-startup mode) rather than during context refresh.
+@Configuration
+public class IntegrationConfig {
+
+    @Value("${currency.soap-wsdl}")
+    private String currencyWsdl;
+
+    @Value("${ussd.cluster.hostname:127.0.0.1}")
+    private String clusterHostname;
+
+    @Value("${ussd.cluster.port:25520}")
+    private int clusterPort;
+
+    @Value("${ussd.cluster.seed-nodes:}")
+    private List<String> seedNodes;
+
+    @Bean(destroyMethod = "terminate")
+    @Lazy
+    public ActorSystem<Void> actorSystem() {
+        Config config = ConfigFactory.parseMap(Map.of(
+                "akka.remote.artery.canonical.hostname", clusterHostname,
+                "akka.remote.artery.canonical.port", clusterPort,
+                "akka.cluster.seed-nodes", seedNodes))
+                .withFallback(ConfigFactory.load());
+        ActorSystem<Void> system = ActorSystem.create(Behaviors.empty(), "ussd-wallet", config);
+        if (seedNodes.isEmpty()) {
+            // single-node deployment: form a cluster of one
+            Cluster cluster = Cluster.get(system);
+            cluster.manager().tell(Join.create(cluster.selfMember().address()));
+        }
+        return system;
+    }
+
+    @Bean
+    @Lazy
+    public WebServiceTemplate webServiceTemplate() {
+        WebServiceTemplate ws = new WebServiceTemplate();
+        ws.setDefaultUri(currencyWsdl);
+        return ws;
+    }
+}
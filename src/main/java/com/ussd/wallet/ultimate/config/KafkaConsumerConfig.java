@@ -1,6 +1,10 @@
 package com.ussd.wallet.ultimate.config;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.ussd.wallet.ultimate.tracing.TracingRecordInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -8,6 +12,11 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.util.backoff.FixedBackOff;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -19,11 +28,62 @@ public class KafkaConsumerConfig {
     @Value("${kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${ussd.dlt.transactions-topic:transactions.DLT}")
+    private String transactionsDlt;
+
+    @Value("${ussd.dlt.deposits-topic:deposit-webhooks.DLT}")
+    private String depositsDlt;
+
+    @Value("${ussd.dlt.retry-attempts:2}")
+    private long dltRetryAttempts;
+
+    @Value("${ussd.dlt.retry-interval-ms:1000}")
+    private long dltRetryIntervalMs;
+
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory(
+            KafkaTemplate<String, String> kafkaTemplate, MeterRegistry registry) {
         var factory = new ConcurrentKafkaListenerContainerFactory<String, String>();
         factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(consumerConfigs()));
         factory.setConcurrency(3);
+        factory.setCommonErrorHandler(deadLetterErrorHandler(kafkaTemplate, registry, transactionsDlt));
+        factory.setRecordInterceptor(new TracingRecordInterceptor());
+        return factory;
+    }
+
+    // a record that keeps failing is published to the DLT with its original key, value and headers
+    // plus the kafka_dlt-* headers (exception class, message, stack trace, original coordinates).
+    // Partition -1 lets the producer pick, so the DLT does not need as many partitions as the source.
+    // If the DLT publish itself fails the record is redelivered instead of being dropped.
+    private DefaultErrorHandler deadLetterErrorHandler(KafkaTemplate<String, String> kafkaTemplate, MeterRegistry registry, String dlt) {
+        var publisher = new DeadLetterPublishingRecoverer(kafkaTemplate, (rec, ex) -> new TopicPartition(dlt, -1));
+        ConsumerRecordRecoverer recoverer = (rec, ex) -> {
+            publisher.accept(rec, ex);
+            registry.counter("ussd.kafka.dead.lettered", "topic", rec.topic()).increment();
+        };
+        var handler = new DefaultErrorHandler(recoverer, new FixedBackOff(dltRetryIntervalMs, dltRetryAttempts));
+        // a payload that cannot be parsed will not parse on the next attempt either
+        handler.addNotRetryableExceptions(JsonProcessingException.class);
+        return handler;
+    }
+
+    @Value("${ussd.deposits.batch-size:500}")
+    private int depositBatchSize;
+
+    // Deposit webhooks are credited a poll at a time, up to batch-size records per poll. The
+    // consumer names the failed record (BatchListenerFailedException): the records before it are
+    // committed, and once the retries are spent it goes to its own DLT rather than blocking the
+    // partition. Credits are idempotent, so a DLT record can be re-posted to the topic as it is.
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> batchKafkaListenerContainerFactory(
+            KafkaTemplate<String, String> kafkaTemplate, MeterRegistry registry) {
+        Map<String, Object> props = new HashMap<>(consumerConfigs());
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, depositBatchSize);
+        var factory = new ConcurrentKafkaListenerContainerFactory<String, String>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(props));
+        factory.setConcurrency(3);
+        factory.setBatchListener(true);
+        factory.setCommonErrorHandler(deadLetterErrorHandler(kafkaTemplate, registry, depositsDlt));
         return factory;
     }
 
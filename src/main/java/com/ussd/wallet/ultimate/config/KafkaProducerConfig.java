@@ -1,10 +1,12 @@
 package com.ussd.wallet.ultimate.config;
 
+import com.ussd.wallet.ultimate.tracing.TracingProducerInterceptor;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
@@ -18,18 +20,52 @@ public class KafkaProducerConfig {
     @Value("${kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    // a short linger lets sends that arrive together (busy transfer periods) share one request;
+    // when idle a record still goes out after at most linger-ms
+    @Value("${kafka.producer.linger-ms:5}")
+    private int lingerMs;
+
+    @Value("${kafka.producer.batch-size:65536}")
+    private int batchSize;
+
+    // how long a webhook request may wait on metadata or a full buffer before it is answered 503;
+    // the default producer would hold the request thread for max.block.ms (60s)
+    @Value("${kafka.producer.webhook-max-block-ms:250}")
+    private int webhookMaxBlockMs;
+
     @Bean
     public ProducerFactory<String, String> producerFactory() {
-        Map<String, Object> configProps = new HashMap<>();
-        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        return new DefaultKafkaProducerFactory<>(configProps);
+        return new DefaultKafkaProducerFactory<>(producerConfigs());
     }
 
     @Bean
+    @Primary
     public KafkaTemplate<String, String> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+        KafkaTemplate<String, String> template = new KafkaTemplate<>(producerFactory());
+        // carries the sender's trace context in the record headers
+        template.setProducerInterceptor(new TracingProducerInterceptor());
+        return template;
+    }
+
+    // its own producer, so a broker outage fails webhook requests fast without touching the
+    // max.block.ms of the producer the USSD paths share
+    @Bean
+    public KafkaTemplate<String, String> webhookKafkaTemplate() {
+        Map<String, Object> configProps = producerConfigs();
+        configProps.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, webhookMaxBlockMs);
+        KafkaTemplate<String, String> template = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(configProps));
+        template.setProducerInterceptor(new TracingProducerInterceptor());
+        return template;
+    }
+
+    private Map<String, Object> producerConfigs() {
+        Map<String, Object> configProps = new HashMap<>();
+        configProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        configProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        configProps.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        configProps.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        return configProps;
     }
 }
 
@@ -1,15 +1,42 @@
 package com.ussd.wallet.ultimate.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 @Configuration
 public class SecurityConfig {
+
+    // raising this rehashes each PIN at its owner's next successful check
+    @Value("${ussd.pin.bcrypt-strength:10}")
+    private int bcryptStrength;
+
+    // 0 means one thread per core
+    @Value("${ussd.pin.threads:0}")
+    private int pinThreads;
+
+    @Value("${ussd.pin.queue-capacity:64}")
+    private int pinQueueCapacity;
+
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
-}
 
+    // BCrypt is pure CPU: no more threads than cores, and a short queue so a guessing burst is
+    // refused instead of piling up behind the gateway budget
+    @Bean
+    public ThreadPoolTaskExecutor pinExecutor() {
+        int threads = pinThreads > 0 ? pinThreads : Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(pinQueueCapacity);
+        executor.setThreadNamePrefix("pin-");
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,25 @@
+package com.ussd.wallet.ultimate.config;
+
+import com.ussd.wallet.ultimate.sharding.ShardKeys;
+import com.ussd.wallet.ultimate.sharding.ShardMapRegistry;
+import com.ussd.wallet.ultimate.sharding.ShardRoutingRepositoryPostProcessor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+public class ShardingConfig {
+
+    // static: post-processors are created before regular beans; the registry is looked up on first use
+    @Bean
+    public static ShardRoutingRepositoryPostProcessor shardRoutingRepositoryPostProcessor(ObjectProvider<ShardMapRegistry> registry,
+                                                                                        @Value("${ussd.sharding.node-id:}") String nodeId,
+                                                                                        @Value("${ussd.cluster.seed-nodes:}") List<String> seedNodes) {
+        // ids are generated on every node, so each needs its own node id (0-15) to keep them unique
+        ShardKeys.configureNode(ShardKeys.resolveNodeId(nodeId, seedNodes));
+        return new ShardRoutingRepositoryPostProcessor(registry);
+    }
+}
@@ -0,0 +1,67 @@
+package com.ussd.wallet.ultimate.config;
+
+import com.ussd.wallet.ultimate.tracing.FileSpanExporter;
+import com.ussd.wallet.ultimate.tracing.InMemorySpanExporter;
+import com.ussd.wallet.ultimate.tracing.SpanExporter;
+import com.ussd.wallet.ultimate.tracing.TraceCollector;
+import com.ussd.wallet.ultimate.tracing.Tracing;
+import com.ussd.wallet.ultimate.tracing.TracingPostProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    public static TracingPostProcessor tracingPostProcessor() {
+        return new TracingPostProcessor();
+    }
+
+    @Bean
+    public InMemorySpanExporter inMemorySpanExporter(@Value("${ussd.tracing.memory-capacity:1000}") int capacity) {
+        return new InMemorySpanExporter(capacity);
+    }
+
+    // JSON lines for offline analysis; with ussd.tracing.exporter=memory only the latest segments
+    // are kept, for /api/admin/traces
+    @Bean
+    @ConditionalOnProperty(name = "ussd.tracing.exporter", havingValue = "file", matchIfMissing = true)
+    public FileSpanExporter fileSpanExporter(MeterRegistry registry,
+                                             @Value("${ussd.tracing.file:logs/traces.jsonl}") String file,
+                                             @Value("${ussd.tracing.file-queue-capacity:50000}") int queueCapacity) throws IOException {
+        return new FileSpanExporter(Path.of(file), queueCapacity, registry);
+    }
+
+    @Bean
+    public SpanExporter spanExporter(InMemorySpanExporter memory, ObjectProvider<FileSpanExporter> file) {
+        FileSpanExporter toFile = file.getIfAvailable();
+        if (toFile == null) return memory;
+        return (traceId, reason, spans) -> {
+            memory.export(traceId, reason, spans);
+            toFile.export(traceId, reason, spans);
+        };
+    }
+
+    @Bean
+    public TraceCollector traceCollector(@Qualifier("spanExporter") SpanExporter exporter, MeterRegistry registry,
+                                         @Value("${ussd.tracing.enabled:true}") boolean enabled,
+                                         @Value("${ussd.tracing.slow-threshold-ms:500}") long slowMs,
+                                         @Value("${ussd.tracing.baseline-sample-rate:0.01}") double baselineRate,
+                                         @Value("${ussd.tracing.max-spans-per-segment:256}") int maxSpans,
+                                         @Value("${ussd.tracing.trace-window-ms:5000}") long traceWindowMs,
+                                         @Value("${ussd.tracing.max-pending-traces:10000}") int maxPendingTraces) {
+        TraceCollector collector = new TraceCollector(exporter, registry, Duration.ofMillis(slowMs), baselineRate, maxSpans,
+                Duration.ofMillis(traceWindowMs), maxPendingTraces);
+        Tracing.install(enabled ? collector : null);
+        return collector;
+    }
+}
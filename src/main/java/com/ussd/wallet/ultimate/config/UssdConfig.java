@@ -0,0 +1,53 @@
+package com.ussd.wallet.ultimate.config;
+
+import com.ussd.wallet.ultimate.service.RequestDeadline;
+import io.lettuce.core.TimeoutOptions;
+import io.lettuce.core.protocol.RedisCommand;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.data.redis.autoconfigure.LettuceClientOptionsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+
+@Configuration
+public class UssdConfig {
+
+    @Value("${ussd.worker.core-pool-size:16}")
+    private int corePoolSize;
+
+    @Value("${ussd.worker.max-pool-size:64}")
+    private int maxPoolSize;
+
+    @Value("${ussd.worker.queue-capacity:1000}")
+    private int queueCapacity;
+
+    // USSD hops run here so the request thread can stop waiting once the gateway budget is spent
+    @Bean
+    public ThreadPoolTaskExecutor ussdExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("ussd-");
+        executor.initialize();
+        return executor;
+    }
+
+    // Redis commands issued inside a USSD hop expire with the hop's budget rather than after the
+    // client's command timeout. Lettuce asks for the timeout on the thread issuing the command.
+    @Bean
+    public LettuceClientOptionsBuilderCustomizer redisDeadlineTimeouts(@Value("${spring.data.redis.timeout:60s}") Duration commandTimeout) {
+        return builder -> builder.timeoutOptions(TimeoutOptions.builder()
+                .timeoutCommands()
+                .timeoutSource(new TimeoutOptions.TimeoutSource() {
+                    @Override
+                    public long getTimeout(RedisCommand<?, ?, ?> command) {
+                        // 0 would mean no timeout at all
+                        return Math.max(1, RequestDeadline.timeout(commandTimeout).toMillis());
+                    }
+                })
+                .build());
+    }
+}
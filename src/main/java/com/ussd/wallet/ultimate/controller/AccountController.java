@@ -1,6 +1,9 @@
 package com.ussd.wallet.ultimate.controller;
 
 import com.ussd.wallet.ultimate.service.AccountService;
+import com.ussd.wallet.ultimate.service.HotAccountService;
+import com.ussd.wallet.ultimate.service.TransferService;
+import com.ussd.wallet.ultimate.service.WalletService;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.http.ResponseEntity;
@@ -14,10 +17,17 @@ import java.util.Map;
 public class AccountController {
 
     private final AccountService accountService;
+    private final HotAccountService hotAccountService;
+    private final TransferService transferService;
+    private final WalletService walletService;
     private final Counter depositCounter;
 
-    public AccountController(AccountService accountService, MeterRegistry registry) {
+    public AccountController(AccountService accountService, HotAccountService hotAccountService,
+                             TransferService transferService, WalletService walletService, MeterRegistry registry) {
         this.accountService = accountService;
+        this.hotAccountService = hotAccountService;
+        this.transferService = transferService;
+        this.walletService = walletService;
         this.depositCounter = Counter.builder("ussd.wallet.deposit.count").description("Number of deposits").register(registry);
     }
 
@@ -43,5 +53,30 @@ public class AccountController {
         accountService.withdraw(accountId, amount, currency, idempotencyKey, msisdn);
         return ResponseEntity.ok(Map.of("status","ok","idempotencyKey", idempotencyKey));
     }
-}
 
+    @PostMapping("/transfer")
+    public ResponseEntity<?> transfer(@RequestBody Map<String, String> body) {
+        Long fromAccountId = Long.parseLong(body.get("fromAccountId"));
+        Long toAccountId = Long.parseLong(body.get("toAccountId"));
+        BigDecimal amount = new BigDecimal(body.get("amount"));
+        String currency = body.getOrDefault("currency", "NGN");
+        String idempotencyKey = body.getOrDefault("idempotencyKey", java.util.UUID.randomUUID().toString());
+        var result = transferService.transfer(fromAccountId, toAccountId, amount, currency, idempotencyKey);
+        return ResponseEntity.ok(Map.of("status", result.isPresent() ? "ok" : "duplicate", "idempotencyKey", idempotencyKey,
+                "transactionId", result.map(t -> t.getId().toString()).orElse("")));
+    }
+
+    // spread an agent/merchant float account over sub-balance slots
+    @PostMapping("/{accountId}/hot")
+    public ResponseEntity<?> markHot(@PathVariable Long accountId, @RequestBody Map<String, String> body) {
+        int slots = Integer.parseInt(body.getOrDefault("slots", "8"));
+        var account = hotAccountService.markHot(accountId, slots);
+        return ResponseEntity.ok(Map.of("accountId", account.getId(), "slots", account.getSlotCount()));
+    }
+
+    // every currency account of a user, converted into ?currency (NGN by default)
+    @GetMapping("/users/{userId}/wallet")
+    public ResponseEntity<?> wallet(@PathVariable Long userId, @RequestParam(defaultValue = "NGN") String currency) {
+        return ResponseEntity.ok(walletService.view(userId, currency));
+    }
+}
@@ -0,0 +1,59 @@
+package com.ussd.wallet.ultimate.controller;
+
+import com.ussd.wallet.ultimate.ledger.LedgerArchiver;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/archive")
+public class ArchiveAdminController {
+
+    private final LedgerArchiver archiver;
+
+    public ArchiveAdminController(LedgerArchiver archiver) {
+        this.archiver = archiver;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> months() throws IOException {
+        return ResponseEntity.ok(Map.of("months", archiver.months(),
+                "lastRun", archiver.lastReport() == null ? "none" : archiver.lastReport()));
+    }
+
+    // 409 while the scheduled run, or one started on another node, holds the archive lease
+    @PostMapping("/run")
+    public ResponseEntity<?> run() throws IOException {
+        LedgerArchiver.ArchiveReport report = archiver.archive();
+        if (report == null) return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", "archive run in progress on another node"));
+        return ResponseEntity.ok(report);
+    }
+
+    // CSV straight from the month files; from is inclusive and to exclusive, both UTC dates
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(required = false) Long accountId,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        StreamingResponseBody body = out -> archiver.export(accountId,
+                from == null ? null : from.atStartOfDay(ZoneOffset.UTC).toInstant(),
+                to == null ? null : to.atStartOfDay(ZoneOffset.UTC).toInstant(),
+                new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024));
+        String name = "ledger" + (accountId == null ? "" : "-" + accountId) + (from == null ? "" : "-" + from) + (to == null ? "" : "-" + to) + ".csv";
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + "\"")
+                .body(body);
+    }
+}
@@ -0,0 +1,31 @@
+package com.ussd.wallet.ultimate.controller;
+
+import com.ussd.wallet.ultimate.kafka.DeadLetterReplayService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/dlt")
+public class DeadLetterAdminController {
+
+    private final DeadLetterReplayService replayService;
+
+    public DeadLetterAdminController(DeadLetterReplayService replayService) {
+        this.replayService = replayService;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> backlog() {
+        return ResponseEntity.ok(Map.of("topic", replayService.topic(), "backlog", replayService.backlog()));
+    }
+
+    // drains up to max records or until maxSeconds have passed; call again to continue
+    @PostMapping("/replay")
+    public ResponseEntity<?> replay(@RequestParam(defaultValue = "100000") long max,
+                                    @RequestParam(defaultValue = "300") long maxSeconds) {
+        return ResponseEntity.ok(replayService.replay(max, Duration.ofSeconds(maxSeconds)));
+    }
+}
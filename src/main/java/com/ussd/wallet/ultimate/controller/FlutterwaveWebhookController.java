@@ -0,0 +1,99 @@
+package com.ussd.wallet.ultimate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ussd.wallet.ultimate.retry.RetryScheduler;
+import io.micrometer.core.instrument.Counter;
+import jakarta.annotation.PostConstruct;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+// Collection webhooks are only verified and queued here; crediting happens in DepositWebhookConsumer.
+// The Kafka send is asynchronous, so a settlement burst costs a request thread only for the
+// signature check and a buffer append, and the provider gets its 200 straight away. The send goes
+// through a producer of its own with a short max.block.ms: with the broker unreachable the request
+// gets a 503 within that time and the provider retries. Records are keyed by tx_ref, so the
+// redeliveries of one charge stay on one partition.
+@RestController
+@RequestMapping("/api/webhooks/flutterwave")
+public class FlutterwaveWebhookController {
+
+    private static final Logger log = LoggerFactory.getLogger(FlutterwaveWebhookController.class);
+
+    static final String QUEUE_RETRY = "QUEUE_DEPOSIT_WEBHOOK";
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final RetryScheduler retryScheduler;
+    private final byte[] webhookHash;
+    private final String topic;
+    private final Counter accepted;
+    private final Counter rejected;
+    private final Counter queueFailures;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public FlutterwaveWebhookController(@Qualifier("webhookKafkaTemplate") KafkaTemplate<String, String> kafkaTemplate,
+                                        @Lazy RetryScheduler retryScheduler,
+                                        @Value("${flutterwave.webhook-hash}") String webhookHash,
+                                        @Value("${ussd.deposits.topic:deposit-webhooks}") String topic,
+                                        MeterRegistry registry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.retryScheduler = retryScheduler;
+        this.webhookHash = webhookHash.getBytes(StandardCharsets.UTF_8);
+        this.topic = topic;
+        this.accepted = registry.counter("ussd.webhook.flutterwave", "outcome", "accepted");
+        this.rejected = registry.counter("ussd.webhook.flutterwave", "outcome", "bad_signature");
+        this.queueFailures = registry.counter("ussd.webhook.flutterwave", "outcome", "queue_failed");
+    }
+
+    @PostConstruct
+    public void registerRetries() {
+        retryScheduler.register(QUEUE_RETRY, payload -> kafkaTemplate.send(topic, key(payload), payload).get(10, TimeUnit.SECONDS));
+    }
+
+    @PostMapping
+    public ResponseEntity<Void> receive(@RequestHeader(value = "verif-hash", required = false) String signature,
+                                        @RequestBody String body) {
+        // constant-time compare so the secret hash cannot be guessed byte by byte
+        if (signature == null || !MessageDigest.isEqual(webhookHash, signature.getBytes(StandardCharsets.UTF_8))) {
+            rejected.increment();
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        try {
+            kafkaTemplate.send(topic, key(body), body).whenComplete((res, err) -> {
+                if (err != null) {
+                    // already acknowledged, so the provider will not resend it: keep it in the durable retry queue
+                    queueFailures.increment();
+                    log.error("Failed to queue Flutterwave webhook, scheduling retry: {}", err.getMessage());
+                    retryScheduler.schedule(QUEUE_RETRY, body, err.getMessage());
+                }
+            });
+        } catch (Exception e) {
+            // producer buffer full or broker metadata unavailable: let the provider retry
+            queueFailures.increment();
+            log.error("Rejected Flutterwave webhook, queue unavailable: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        accepted.increment();
+        return ResponseEntity.ok().build();
+    }
+
+    // null for a body without a tx_ref; the consumer discards those anyway
+    String key(String body) {
+        try {
+            return objectMapper.readTree(body).path("data").path("tx_ref").asText(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
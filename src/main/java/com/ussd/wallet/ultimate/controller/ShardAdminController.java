@@ -0,0 +1,52 @@
+package com.ussd.wallet.ultimate.controller;
+
+import com.ussd.wallet.ultimate.sharding.ReshardingService;
+import com.ussd.wallet.ultimate.sharding.ShardFanout;
+import com.ussd.wallet.ultimate.sharding.ShardMap;
+import com.ussd.wallet.ultimate.sharding.ShardMapRegistry;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@RestController
+@RequestMapping("/api/admin/shards")
+public class ShardAdminController {
+
+    private final ShardMapRegistry registry;
+    private final ReshardingService reshardingService;
+    private final ShardFanout fanout;
+
+    public ShardAdminController(ShardMapRegistry registry, ReshardingService reshardingService, ShardFanout fanout) {
+        this.registry = registry;
+        this.reshardingService = reshardingService;
+        this.fanout = fanout;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> map() {
+        ShardMap map = registry.current();
+        return ResponseEntity.ok(Map.of("version", map.version(), "buckets", map.bucketCounts()));
+    }
+
+    @PostMapping("/move")
+    public ResponseEntity<?> move(@RequestBody Map<String, String> body) {
+        int fromBucket = Integer.parseInt(body.get("fromBucket"));
+        int toBucket = Integer.parseInt(body.getOrDefault("toBucket", body.get("fromBucket")));
+        return ResponseEntity.ok(reshardingService.moveBuckets(fromBucket, toBucket, body.get("targetShard")));
+    }
+
+    // total balance per currency across all shards
+    @GetMapping("/totals")
+    public ResponseEntity<?> totals() {
+        Map<String, List<Map<String, Object>>> perShard = fanout.onEveryShard(
+                jdbc -> jdbc.queryForList("SELECT currency, SUM(balance) AS total FROM accounts GROUP BY currency"));
+        Map<String, BigDecimal> totals = new TreeMap<>();
+        perShard.values().forEach(rows -> rows.forEach(row ->
+                totals.merge((String) row.get("currency"), (BigDecimal) row.get("total"), BigDecimal::add)));
+        return ResponseEntity.ok(totals);
+    }
+}
@@ -0,0 +1,52 @@
+package com.ussd.wallet.ultimate.controller;
+
+import com.ussd.wallet.ultimate.tracing.InMemorySpanExporter;
+import com.ussd.wallet.ultimate.tracing.Span;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/traces")
+public class TraceAdminController {
+
+    private final InMemorySpanExporter exporter;
+
+    public TraceAdminController(InMemorySpanExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    // latest kept segments: trace id, why it was kept and its root span
+    @GetMapping
+    public ResponseEntity<?> recent(@RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(exporter.recent().stream().limit(limit).map(s -> Map.of(
+                "traceId", s.traceId(),
+                "kept", s.reason(),
+                "root", s.spans().get(0).name(),
+                "durationMs", s.spans().get(0).durationNanos() / 1_000_000)).toList());
+    }
+
+    @GetMapping("/{traceId}")
+    public ResponseEntity<?> trace(@PathVariable String traceId) {
+        List<Map<String, Object>> spans = exporter.trace(traceId).stream()
+                .flatMap(s -> s.spans().stream())
+                .map(TraceAdminController::view)
+                .toList();
+        return spans.isEmpty() ? ResponseEntity.notFound().build() : ResponseEntity.ok(spans);
+    }
+
+    private static Map<String, Object> view(Span span) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("spanId", span.spanId());
+        m.put("parentId", span.parentId());
+        m.put("name", span.name());
+        m.put("startUs", span.startEpochMicros());
+        m.put("durationUs", span.durationNanos() / 1000);
+        m.put("error", span.errorMessage());
+        m.put("tags", span.tags());
+        return m;
+    }
+}
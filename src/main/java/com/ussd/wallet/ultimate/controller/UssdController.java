@@ -17,8 +17,9 @@ public class UssdController {
     }
 
     @PostMapping
-    public ResponseEntity<UssdResponseDto> receive(@RequestBody UssdRequestDto req) {
-        UssdResponseDto res = ussdService.handle(req);
+    public ResponseEntity<UssdResponseDto> receive(@RequestBody UssdRequestDto req,
+                                                   @RequestHeader(value = "X-Ussd-Budget-Ms", required = false) Long budgetMs) {
+        UssdResponseDto res = ussdService.handle(req, budgetMs);
         return ResponseEntity.ok(res);
     }
 }
@@ -0,0 +1,58 @@
+package com.ussd.wallet.ultimate.controller;
+
+import com.ussd.wallet.ultimate.dto.UssdRequestDto;
+import com.ussd.wallet.ultimate.dto.UssdResponseDto;
+import com.ussd.wallet.ultimate.gateway.UssdFormParser;
+import com.ussd.wallet.ultimate.gateway.UssdResponseWriter;
+import com.ussd.wallet.ultimate.service.UssdMenus;
+import com.ussd.wallet.ultimate.service.UssdService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+// Native ingest for gateways (e.g. Africa's Talking) that post form fields and expect text/plain.
+@RestController
+@RequestMapping("/api/ussd/gateway")
+public class UssdGatewayController {
+
+    private static final Logger log = LoggerFactory.getLogger(UssdGatewayController.class);
+
+    private final UssdService ussdService;
+    private final UssdFormParser parser;
+    private final UssdResponseWriter writer;
+
+    public UssdGatewayController(UssdService ussdService,
+                                 @Value("${ussd.gateway.session-id-field:sessionId}") String sessionIdField,
+                                 @Value("${ussd.gateway.msisdn-field:phoneNumber}") String msisdnField,
+                                 @Value("${ussd.gateway.text-field:text}") String textField) {
+        this.ussdService = ussdService;
+        this.parser = new UssdFormParser(sessionIdField, msisdnField, textField);
+        this.writer = new UssdResponseWriter(UssdMenus.ALL);
+    }
+
+    @PostMapping(consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE, produces = MediaType.TEXT_PLAIN_VALUE)
+    public void receive(HttpServletRequest request, HttpServletResponse response,
+                        @RequestHeader(value = "X-Ussd-Budget-Ms", required = false) Long budgetMs) throws IOException {
+        // read the raw body; calling getParameter first would make the container parse it into a map
+        byte[] body = request.getInputStream().readAllBytes();
+        UssdRequestDto req = parser.parse(body, body.length);
+        UssdResponseDto res;
+        if (req.getSessionId() == null || req.getMsisdn() == null) {
+            // the gateway shows whatever we answer, so a malformed post still gets an END screen
+            log.warn("Gateway post without session id or msisdn field ({} bytes)", body.length);
+            res = new UssdResponseDto(UssdMenus.BAD_REQUEST, true);
+        } else {
+            res = ussdService.handle(req, budgetMs);
+        }
+        byte[] out = writer.encode(res);
+        response.setContentType("text/plain;charset=UTF-8");
+        response.setContentLength(out.length);
+        response.getOutputStream().write(out);
+    }
+}
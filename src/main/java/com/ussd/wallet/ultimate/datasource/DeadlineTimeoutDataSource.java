@@ -0,0 +1,68 @@
+package com.ussd.wallet.ultimate.datasource;
+
+import com.ussd.wallet.ultimate.service.RequestDeadline;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+// Gives every statement run inside a USSD hop a query timeout of what is left of the hop's
+// budget, so a slow query is cancelled by the driver instead of holding the worker past the
+// deadline. JDBC timeouts are whole seconds, so the budget is rounded up. Outside a hop
+// statements are left alone.
+public class DeadlineTimeoutDataSource extends DelegatingDataSource {
+
+    public DeadlineTimeoutDataSource(DataSource target) {
+        super(target);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password));
+    }
+
+    private static Connection wrap(Connection target) {
+        return (Connection) Proxy.newProxyInstance(DeadlineTimeoutDataSource.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            break;
+                    }
+                    Object result;
+                    try {
+                        result = method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (result instanceof Statement statement) applyDeadline(statement);
+                    return result;
+                });
+    }
+
+    static void applyDeadline(Statement statement) throws SQLException {
+        RequestDeadline deadline = RequestDeadline.current();
+        if (deadline == null) return;
+        long leftMs = deadline.remaining().toMillis();
+        if (leftMs <= 0) {
+            statement.close();
+            throw new SQLTimeoutException("USSD budget spent before the statement ran");
+        }
+        int seconds = (int) Math.min(Integer.MAX_VALUE, (leftMs + 999) / 1000);
+        int current = statement.getQueryTimeout();
+        if (current == 0 || current > seconds) statement.setQueryTimeout(seconds);
+    }
+}
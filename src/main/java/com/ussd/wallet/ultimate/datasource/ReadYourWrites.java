@@ -0,0 +1,41 @@
+package com.ussd.wallet.ultimate.datasource;
+
+// Per-hop routing hints. A USSD session that wrote recently is pinned to the primary so it
+// never reads a replica that has not caught up with its own write.
+public final class ReadYourWrites {
+
+    private static final class State {
+        boolean pinned;
+        boolean wrote;
+    }
+
+    private static final ThreadLocal<State> CURRENT = new ThreadLocal<>();
+
+    private ReadYourWrites() {}
+
+    public static void begin(boolean pinnedToPrimary) {
+        State s = new State();
+        s.pinned = pinnedToPrimary;
+        CURRENT.set(s);
+    }
+
+    // returns whether the hop wrote to the primary, so the caller can pin the session
+    public static boolean end() {
+        State s = CURRENT.get();
+        CURRENT.remove();
+        return s != null && s.wrote;
+    }
+
+    public static boolean isPinned() {
+        State s = CURRENT.get();
+        return s != null && s.pinned;
+    }
+
+    public static void markWrite() {
+        State s = CURRENT.get();
+        if (s != null) {
+            s.wrote = true;
+            s.pinned = true;
+        }
+    }
+}
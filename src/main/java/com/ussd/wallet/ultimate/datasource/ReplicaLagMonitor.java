@@ -0,0 +1,62 @@
+package com.ussd.wallet.ultimate.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Polls SHOW REPLICA STATUS on each replica and feeds the lag into the router.
+// With checks disabled (two independent local databases in tests) replicas report zero lag.
+public class ReplicaLagMonitor implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaLagMonitor.class);
+
+    private final Map<String, DataSource> replicas;
+    private final ReplicaRoutingDataSource router;
+    private final boolean enabled;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "replica-lag-monitor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ReplicaLagMonitor(Map<String, DataSource> replicas, ReplicaRoutingDataSource router, boolean enabled) {
+        this.replicas = replicas;
+        this.router = router;
+        this.enabled = enabled;
+    }
+
+    public void start(long intervalMs) {
+        poll();
+        scheduler.scheduleWithFixedDelay(this::poll, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    void poll() {
+        replicas.forEach((key, ds) -> router.updateLag(key, enabled ? lagOf(key, ds) : Long.valueOf(0)));
+    }
+
+    private Long lagOf(String key, DataSource ds) {
+        try (Connection c = ds.getConnection(); Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SHOW REPLICA STATUS")) {
+            if (!rs.next()) return null;
+            long lag = rs.getLong("Seconds_Behind_Source");
+            // NULL while the SQL thread is stopped
+            return rs.wasNull() ? null : lag;
+        } catch (Exception e) {
+            log.warn("Replica {} lag check failed: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
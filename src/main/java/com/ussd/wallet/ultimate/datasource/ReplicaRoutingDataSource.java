@@ -0,0 +1,72 @@
+package com.ussd.wallet.ultimate.datasource;
+
+import com.ussd.wallet.ultimate.sharding.ShardContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Target for read-only connections: round-robins over replicas whose lag is known and within
+// bounds, and falls back to the primary when the session is pinned or no replica qualifies.
+// Reads bound to a shard other than shard-0 go to that shard's primary (registered under its name).
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public static final String PRIMARY = "primary";
+
+    private final List<String> replicaKeys;
+    private final long maxLagSeconds;
+    private final Map<String, Long> lagSeconds = new ConcurrentHashMap<>();
+    private final Map<String, Counter> routeCounters = new ConcurrentHashMap<>();
+    private final MeterRegistry registry;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(List<String> replicaKeys, long maxLagSeconds, MeterRegistry registry) {
+        this.replicaKeys = List.copyOf(replicaKeys);
+        this.maxLagSeconds = maxLagSeconds;
+        this.registry = registry;
+        routeCounters.put(PRIMARY, registry.counter("ussd.datasource.read.route", "route", PRIMARY));
+        for (String key : replicaKeys) {
+            routeCounters.put(key, registry.counter("ussd.datasource.read.route", "route", key));
+            registry.gauge("ussd.datasource.replica.lag.seconds", List.of(Tag.of("replica", key)),
+                    lagSeconds, m -> m.getOrDefault(key, -1L));
+        }
+    }
+
+    // null means the lag could not be determined; such a replica is not used
+    public void updateLag(String replicaKey, Long seconds) {
+        if (seconds == null) {
+            lagSeconds.remove(replicaKey);
+        } else {
+            lagSeconds.put(replicaKey, seconds);
+        }
+    }
+
+    public boolean isHealthy(String replicaKey) {
+        Long lag = lagSeconds.get(replicaKey);
+        return lag != null && lag <= maxLagSeconds;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String key = choose();
+        routeCounters.computeIfAbsent(key, k -> registry.counter("ussd.datasource.read.route", "route", k)).increment();
+        return key;
+    }
+
+    String choose() {
+        String shard = ShardContext.current();
+        if (shard != null && !shard.equals(ShardContext.DEFAULT_SHARD)) return shard;
+        if (ReadYourWrites.isPinned() || replicaKeys.isEmpty()) return PRIMARY;
+        int start = Math.floorMod(next.getAndIncrement(), replicaKeys.size());
+        for (int i = 0; i < replicaKeys.size(); i++) {
+            String key = replicaKeys.get((start + i) % replicaKeys.size());
+            if (isHealthy(key)) return key;
+        }
+        return PRIMARY;
+    }
+}
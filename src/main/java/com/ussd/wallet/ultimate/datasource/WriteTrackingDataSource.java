@@ -0,0 +1,35 @@
+package com.ussd.wallet.ultimate.datasource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+// Primary-side wrapper: a physical connection taken for a read-write transaction counts as a write.
+public class WriteTrackingDataSource extends DelegatingDataSource {
+
+    public WriteTrackingDataSource(DataSource primary) {
+        super(primary);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        track();
+        return super.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        track();
+        return super.getConnection(username, password);
+    }
+
+    private void track() {
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            ReadYourWrites.markWrite();
+        }
+    }
+}
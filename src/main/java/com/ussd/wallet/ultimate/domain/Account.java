@@ -1,5 +1,6 @@
 package com.ussd.wallet.ultimate.domain;
 
+import com.ussd.wallet.ultimate.sharding.ShardedId;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -14,7 +15,7 @@ import java.math.BigDecimal;
 @Builder
 public class Account {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @ShardedId
     private Long id;
 
     @Column(nullable = false)
@@ -28,5 +29,13 @@ public class Account {
 
     @Version
     private Long version;
+
+    // > 0 for hot accounts whose balance lives in account_slots; balance is then a periodic snapshot
+    @Column(nullable = false)
+    private int slotCount;
+
+    public boolean isHot() {
+        return slotCount > 0;
+    }
 }
 
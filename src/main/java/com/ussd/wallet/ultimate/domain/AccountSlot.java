@@ -0,0 +1,31 @@
+package com.ussd.wallet.ultimate.domain;
+
+import com.ussd.wallet.ultimate.sharding.ShardedId;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+
+// One share of a hot account's balance. Credits and debits update a single slot with a
+// conditional UPDATE, so concurrent postings only contend when they pick the same slot.
+@Entity
+@Table(name = "account_slots", uniqueConstraints = @UniqueConstraint(columnNames = {"accountId", "slot"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class AccountSlot {
+    @Id
+    @ShardedId
+    private Long id;
+
+    @Column(nullable = false)
+    private Long accountId;
+
+    @Column(nullable = false)
+    private int slot;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal balance;
+}
@@ -0,0 +1,24 @@
+package com.ussd.wallet.ultimate.domain;
+
+import lombok.*;
+import org.springframework.data.cassandra.core.mapping.PrimaryKey;
+import org.springframework.data.cassandra.core.mapping.Table;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+// Index row for a withdrawal that has not reached SUCCESS/FAILED yet; removed once it does.
+@Table("pending_transactions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class PendingTransaction {
+    @PrimaryKey
+    private PendingTransactionKey key;
+    private Long accountId;
+    private BigDecimal amount;
+    private String currency;
+    private String status;
+    private Instant updatedAt;
+}
@@ -0,0 +1,27 @@
+package com.ussd.wallet.ultimate.domain;
+
+import lombok.*;
+import org.springframework.data.cassandra.core.cql.PrimaryKeyType;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyClass;
+import org.springframework.data.cassandra.core.mapping.PrimaryKeyColumn;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.UUID;
+
+@PrimaryKeyClass
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingTransactionKey implements Serializable {
+
+    // hour of creation (UTC, yyyyMMddHH) so a sweep reads a handful of partitions, not the table
+    @PrimaryKeyColumn(name = "bucket", type = PrimaryKeyType.PARTITIONED)
+    private String bucket;
+
+    @PrimaryKeyColumn(name = "created_at", ordinal = 1, type = PrimaryKeyType.CLUSTERED)
+    private Instant createdAt;
+
+    @PrimaryKeyColumn(name = "tx_id", ordinal = 2, type = PrimaryKeyType.CLUSTERED)
+    private UUID txId;
+}
@@ -0,0 +1,47 @@
+package com.ussd.wallet.ultimate.domain;
+
+import com.ussd.wallet.ultimate.sharding.ShardedId;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+// One row per paid provider collection; the unique reference makes webhook redelivery a no-op.
+// A collection that could not be credited is kept as PARKED for manual review instead of dropped.
+@Entity
+@Table(name = "provider_deposits", uniqueConstraints = @UniqueConstraint(columnNames = "providerRef"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProviderDeposit {
+
+    public static final String CREDITED = "CREDITED";
+    // paid to us but not credited, e.g. in a currency other than the account's
+    public static final String PARKED = "PARKED";
+
+    @Id
+    @ShardedId
+    private Long id;
+
+    @Column(nullable = false)
+    private String providerRef;
+
+    @Column(nullable = false)
+    private Long accountId;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal amount;
+
+    @Column(nullable = false)
+    private String currency;
+
+    private String txRef;
+
+    @Column(length = 16)
+    private String status;
+
+    private Instant createdAt;
+}
@@ -0,0 +1,68 @@
+package com.ussd.wallet.ultimate.domain;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+// One leg of a transfer between accounts on different shards, stored on the shard of the account
+// it moves money on. The DEBIT leg commits with the debit and carries the transfer's progress; the
+// CREDIT leg commits with the credit, or in place of it (VOIDED) before a reversal, and its primary
+// key lets it exist only once.
+@Entity
+@Table(name = "shard_transfers", indexes = @Index(columnList = "leg, status, updatedAt"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ShardTransfer {
+
+    public static final String DEBIT = "DEBIT";
+    public static final String CREDIT = "CREDIT";
+
+    // DEBIT leg: money left the source, the credit is not confirmed yet
+    public static final String DEBITED = "DEBITED";
+    // DEBIT leg: the credit failed, the money goes back to the source
+    public static final String REVERSING = "REVERSING";
+    public static final String REVERSED = "REVERSED";
+    // both legs once the target has the money
+    public static final String CREDITED = "CREDITED";
+    // CREDIT leg written to fence off a credit that must not happen any more
+    public static final String VOIDED = "VOIDED";
+
+    // transferId + ":" + leg, so both legs fit on one shard once a move brings the accounts together
+    @Id
+    @Column(length = 48)
+    private String id;
+
+    @Column(nullable = false, length = 36)
+    private String transferId;
+
+    @Column(nullable = false, length = 8)
+    private String leg;
+
+    @Column(nullable = false)
+    private Long accountId;
+
+    @Column(nullable = false)
+    private Long counterpartyAccountId;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    private BigDecimal amount;
+
+    @Column(nullable = false)
+    private String currency;
+
+    @Column(nullable = false, length = 16)
+    private String status;
+
+    private Instant createdAt;
+
+    private Instant updatedAt;
+
+    public static String idOf(String transferId, String leg) {
+        return transferId + ":" + leg;
+    }
+}
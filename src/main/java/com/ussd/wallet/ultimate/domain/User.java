@@ -1,5 +1,6 @@
 package com.ussd.wallet.ultimate.domain;
 
+import com.ussd.wallet.ultimate.sharding.ShardedId;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -14,7 +15,7 @@ import java.time.Instant;
 @Builder
 public class User {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @ShardedId
     private Long id;
 
     @Column(unique = true, nullable = false)
@@ -0,0 +1,55 @@
+package com.ussd.wallet.ultimate.domain;
+
+import lombok.*;
+import org.springframework.data.cassandra.core.mapping.PrimaryKey;
+import org.springframework.data.cassandra.core.mapping.Table;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+// Durable progress of a WithdrawalSaga so any cluster node can resume it after the owner dies.
+@Table("withdrawal_sagas")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder = true)
+public class WithdrawalSagaState {
+
+    public static final String PENDING = "PENDING";
+    public static final String IN_FLIGHT = "IN_FLIGHT";
+    public static final String RETRY_SCHEDULED = "RETRY_SCHEDULED";
+    public static final String SUCCESS = "SUCCESS";
+    public static final String FAILED = "FAILED";
+    // claimed by the pending sweeper for a refund; no saga may pay it out from here on
+    public static final String COMPENSATING = "COMPENSATING";
+
+    // statuses a saga may still pay out from
+    public static final List<String> RESUMABLE = List.of(PENDING, IN_FLIGHT, RETRY_SCHEDULED);
+
+    @PrimaryKey
+    private UUID txId;
+    private Long accountId;
+    private BigDecimal amount;
+    private String currency;
+    private Instant createdAt;
+    private String status;
+    private int attempts;
+    private Instant nextRetryAt;
+    private String providerRef;
+    private String lastError;
+    // cluster address of the node currently running the saga
+    private String owner;
+    private Instant updatedAt;
+    // traceparent of the Kafka consume that started the saga; every attempt is traced under it
+    private String traceParent;
+
+    public boolean isTerminal() {
+        return SUCCESS.equals(status) || FAILED.equals(status);
+    }
+
+    public boolean isResumable() {
+        return RESUMABLE.contains(status);
+    }
+}
@@ -0,0 +1,7 @@
+package com.ussd.wallet.ultimate.dto;
+
+import java.math.BigDecimal;
+
+// A successful collection reported by the payment provider, reduced to what a credit needs.
+public record DepositEvent(String providerRef, String txRef, Long accountId, BigDecimal amount, String currency, String msisdn) {
+}
@@ -0,0 +1,89 @@
+package com.ussd.wallet.ultimate.gateway;
+
+import com.ussd.wallet.ultimate.dto.UssdRequestDto;
+
+import java.nio.charset.StandardCharsets;
+
+// Parses an application/x-www-form-urlencoded gateway body straight from bytes.
+// Only the three fields we use are decoded into Strings; every other key is skipped in place.
+public class UssdFormParser {
+
+    private final byte[] sessionIdField;
+    private final byte[] msisdnField;
+    private final byte[] textField;
+
+    public UssdFormParser(String sessionIdField, String msisdnField, String textField) {
+        this.sessionIdField = sessionIdField.getBytes(StandardCharsets.US_ASCII);
+        this.msisdnField = msisdnField.getBytes(StandardCharsets.US_ASCII);
+        this.textField = textField.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public UssdRequestDto parse(byte[] body, int length) {
+        UssdRequestDto req = new UssdRequestDto();
+        int pos = 0;
+        while (pos < length) {
+            int end = indexOf(body, (byte) '&', pos, length);
+            int eq = indexOf(body, (byte) '=', pos, end);
+            int valueStart = eq < end ? eq + 1 : end;
+            if (fieldEquals(body, pos, eq, sessionIdField)) {
+                req.setSessionId(decode(body, valueStart, end));
+            } else if (fieldEquals(body, pos, eq, msisdnField)) {
+                req.setMsisdn(decode(body, valueStart, end));
+            } else if (fieldEquals(body, pos, eq, textField)) {
+                req.setText(decode(body, valueStart, end));
+            }
+            pos = end + 1;
+        }
+        if (req.getText() == null) req.setText("");
+        return req;
+    }
+
+    private static int indexOf(byte[] buf, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) return i;
+        }
+        return to;
+    }
+
+    private static boolean fieldEquals(byte[] buf, int from, int to, byte[] field) {
+        if (to - from != field.length) return false;
+        for (int i = 0; i < field.length; i++) {
+            if (buf[from + i] != field[i]) return false;
+        }
+        return true;
+    }
+
+    static String decode(byte[] buf, int from, int to) {
+        boolean plain = true;
+        for (int i = from; i < to; i++) {
+            if (buf[i] == '%' || buf[i] == '+') {
+                plain = false;
+                break;
+            }
+        }
+        if (plain) return new String(buf, from, to - from, StandardCharsets.UTF_8);
+
+        // decoded form is never longer than the encoded one
+        byte[] out = new byte[to - from];
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            byte b = buf[i];
+            if (b == '+') {
+                out[n++] = ' ';
+            } else if (b == '%' && i + 2 < to && hex(buf[i + 1]) >= 0 && hex(buf[i + 2]) >= 0) {
+                out[n++] = (byte) ((hex(buf[i + 1]) << 4) | hex(buf[i + 2]));
+                i += 2;
+            } else {
+                out[n++] = b;
+            }
+        }
+        return new String(out, 0, n, StandardCharsets.UTF_8);
+    }
+
+    private static int hex(byte b) {
+        if (b >= '0' && b <= '9') return b - '0';
+        if (b >= 'a' && b <= 'f') return b - 'a' + 10;
+        if (b >= 'A' && b <= 'F') return b - 'A' + 10;
+        return -1;
+    }
+}
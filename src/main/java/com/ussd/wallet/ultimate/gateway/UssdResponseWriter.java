@@ -0,0 +1,28 @@
+package com.ussd.wallet.ultimate.gateway;
+
+import com.ussd.wallet.ultimate.dto.UssdResponseDto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// Writes the plain "CON ..."/"END ..." body gateways expect. Static screens are encoded once
+// up front; only dynamic text (balances, provider errors) is encoded per request.
+public class UssdResponseWriter {
+
+    private final Map<String, byte[]> templates;
+
+    public UssdResponseWriter(Collection<String> staticResponses) {
+        Map<String, byte[]> map = new HashMap<>();
+        for (String r : staticResponses) {
+            map.put(r, r.getBytes(StandardCharsets.UTF_8));
+        }
+        this.templates = Map.copyOf(map);
+    }
+
+    public byte[] encode(UssdResponseDto res) {
+        byte[] body = templates.get(res.getResponse());
+        return body != null ? body : res.getResponse().getBytes(StandardCharsets.UTF_8);
+    }
+}
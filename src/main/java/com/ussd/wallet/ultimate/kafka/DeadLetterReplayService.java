@@ -0,0 +1,296 @@
+package com.ussd.wallet.ultimate.kafka;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ussd.wallet.ultimate.tracing.Span;
+import com.ussd.wallet.ultimate.tracing.Tracing;
+import com.ussd.wallet.ultimate.tracing.TracingRecordInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Feeds dead-lettered transaction events back through TransactionListener after an incident.
+// Each poll is split into one lane per account: lanes run in parallel on a fixed pool, records
+// within a lane run in their original produce order, and the poll is committed only once every
+// lane is done.
+// A Redis marker per original record makes a replay that crashed before its commit skip what it
+// already processed. Records that fail again go back to the DLT and are picked up by a later run;
+// a run stops at the DLT end offsets it saw when it started so it never chases its own failures.
+@Service
+public class DeadLetterReplayService {
+
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterReplayService.class);
+
+    static final String REPLAYED_KEY = "dlt:replayed:";
+    static final String REPLAY_ATTEMPTS_HEADER = "dlt-replay-attempts";
+
+    public record ReplayReport(long replayed, long duplicates, long failed, double seconds, double perSecond, long remainingBacklog) {}
+
+    private final TransactionListener listener;
+    private final StringRedisTemplate redis;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final MeterRegistry registry;
+    private final Supplier<Consumer<String, String>> consumers;
+    private final String topic;
+    private final Duration markerTtl;
+    private final ExecutorService lanes;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    public DeadLetterReplayService(TransactionListener listener, StringRedisTemplate redis, KafkaTemplate<String, String> kafkaTemplate,
+                                   MeterRegistry registry,
+                                   @Value("${kafka.bootstrap-servers}") String bootstrapServers,
+                                   @Value("${ussd.dlt.transactions-topic:transactions.DLT}") String topic,
+                                   @Value("${ussd.dlt.replay.concurrency:16}") int concurrency,
+                                   @Value("${ussd.dlt.replay.poll-records:2000}") int pollRecords,
+                                   @Value("${ussd.dlt.replay.marker-ttl-hours:72}") long markerTtlHours) {
+        this(listener, redis, kafkaTemplate, registry, () -> new KafkaConsumer<>(consumerProps(bootstrapServers, pollRecords)),
+                topic, concurrency, Duration.ofHours(markerTtlHours));
+    }
+
+    DeadLetterReplayService(TransactionListener listener, StringRedisTemplate redis, KafkaTemplate<String, String> kafkaTemplate,
+                            MeterRegistry registry, Supplier<Consumer<String, String>> consumers,
+                            String topic, int concurrency, Duration markerTtl) {
+        this.listener = listener;
+        this.redis = redis;
+        this.kafkaTemplate = kafkaTemplate;
+        this.registry = registry;
+        this.consumers = consumers;
+        this.topic = topic;
+        this.markerTtl = markerTtl;
+        this.lanes = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread t = new Thread(r, "dlt-replay");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static Map<String, Object> consumerProps(String bootstrapServers, int pollRecords) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, "ussd-dlt-replay");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, pollRecords);
+        return props;
+    }
+
+    public String topic() {
+        return topic;
+    }
+
+    // records on the DLT the replay group has not committed yet
+    public long backlog() {
+        try (Consumer<String, String> consumer = consumers.get()) {
+            List<TopicPartition> partitions = partitions(consumer);
+            consumer.assign(partitions);
+            return remaining(consumer, partitions, consumer.endOffsets(partitions));
+        }
+    }
+
+    public synchronized ReplayReport replay(long maxRecords, Duration maxDuration) {
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + maxDuration.toNanos();
+        Counts counts = new Counts();
+        try (Consumer<String, String> consumer = consumers.get()) {
+            List<TopicPartition> partitions = partitions(consumer);
+            consumer.assign(partitions);
+            Map<TopicPartition, Long> stopAt = consumer.endOffsets(partitions);
+            Map<TopicPartition, Long> done = new HashMap<>();
+            for (TopicPartition tp : partitions) done.put(tp, consumer.position(tp));
+
+            while (counts.total() < maxRecords && System.nanoTime() < deadline && !reached(done, stopAt)) {
+                ConsumerRecords<String, String> polled = consumer.poll(Duration.ofMillis(500));
+                List<ConsumerRecord<String, String>> batch = new ArrayList<>();
+                Map<TopicPartition, OffsetAndMetadata> commit = new HashMap<>();
+                for (ConsumerRecord<String, String> record : polled) {
+                    TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+                    if (record.offset() >= stopAt.getOrDefault(tp, 0L)) continue;
+                    // the rest of a poll cut short by maxRecords is re-read by the next run
+                    if (counts.total() + batch.size() >= maxRecords) break;
+                    batch.add(record);
+                    commit.put(tp, new OffsetAndMetadata(record.offset() + 1));
+                }
+                replayBatch(batch, counts);
+                if (!commit.isEmpty()) {
+                    consumer.commitSync(commit);
+                    commit.forEach((tp, offset) -> done.put(tp, offset.offset()));
+                }
+                // offsets can have gaps (transaction markers), so an idle poll also checks the positions
+                if (batch.isEmpty() && polled.isEmpty() && reached(consumer, partitions, stopAt)) break;
+            }
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            ReplayReport report = new ReplayReport(counts.replayed.get(), counts.duplicates.get(), counts.failed.get(),
+                    seconds, seconds > 0 ? counts.total() / seconds : 0, remaining(consumer, partitions, consumer.endOffsets(partitions)));
+            log.info("DLT replay of {}: {}", topic, report);
+            return report;
+        }
+    }
+
+    void replayBatch(List<ConsumerRecord<String, String>> batch, Counts counts) {
+        if (batch.isEmpty()) return;
+        Map<String, List<ConsumerRecord<String, String>>> byAccount = new LinkedHashMap<>();
+        for (ConsumerRecord<String, String> record : batch) {
+            byAccount.computeIfAbsent(laneOf(record), k -> new ArrayList<>()).add(record);
+        }
+        // one account's events are spread over partitions (they are keyed by transaction id), so
+        // within a lane they go back in the order they were first produced
+        byAccount.values().forEach(lane -> lane.sort(Comparator.comparingLong(DeadLetterReplayService::producedAt)));
+        CompletableFuture.allOf(byAccount.values().stream()
+                .map(lane -> CompletableFuture.runAsync(() -> lane.forEach(r -> replayOne(r, counts)), lanes))
+                .toArray(CompletableFuture[]::new)).join();
+    }
+
+    private void replayOne(ConsumerRecord<String, String> record, Counts counts) {
+        String marker = REPLAYED_KEY + originOf(record);
+        if (!Boolean.TRUE.equals(redis.opsForValue().setIfAbsent(marker, "1", markerTtl))) {
+            counts.duplicates.incrementAndGet();
+            registry.counter("ussd.dlt.replay", "outcome", "duplicate").increment();
+            return;
+        }
+        // replays join the trace of the event that originally failed
+        try (Span span = Tracing.entry("dlt replay " + topic, TracingRecordInterceptor.traceparentOf(record))) {
+            try {
+                listener.onMessage(record.value());
+            } catch (Exception e) {
+                span.error(e);
+                throw e;
+            }
+            counts.replayed.incrementAndGet();
+            registry.counter("ussd.dlt.replay", "outcome", "replayed").increment();
+        } catch (Exception e) {
+            redis.delete(marker);
+            requeue(record, e);
+            counts.failed.incrementAndGet();
+            registry.counter("ussd.dlt.replay", "outcome", "failed").increment();
+        }
+    }
+
+    // back onto the DLT with the original headers and the latest failure, so a later run retries it
+    private void requeue(ConsumerRecord<String, String> record, Exception e) {
+        RecordHeaders headers = new RecordHeaders();
+        int attempts = 0;
+        for (Header h : record.headers()) {
+            if (REPLAY_ATTEMPTS_HEADER.equals(h.key())) {
+                attempts = Integer.parseInt(new String(h.value(), StandardCharsets.UTF_8));
+            } else if (!KafkaHeaders.DLT_EXCEPTION_FQCN.equals(h.key()) && !KafkaHeaders.DLT_EXCEPTION_MESSAGE.equals(h.key())) {
+                headers.add(h);
+            }
+        }
+        headers.add(KafkaHeaders.DLT_EXCEPTION_FQCN, e.getClass().getName().getBytes(StandardCharsets.UTF_8));
+        headers.add(KafkaHeaders.DLT_EXCEPTION_MESSAGE, String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        headers.add(REPLAY_ATTEMPTS_HEADER, Integer.toString(attempts + 1).getBytes(StandardCharsets.UTF_8));
+        try {
+            kafkaTemplate.send(new ProducerRecord<>(topic, null, record.key(), record.value(), headers)).get(10, TimeUnit.SECONDS);
+            log.warn("Replay of {} failed again ({}), returned to {}", originOf(record), e.getMessage(), topic);
+        } catch (Exception ex) {
+            // the offset is committed with the rest of the poll; without this copy the record is gone
+            throw new IllegalStateException("Could not return record " + originOf(record) + " to " + topic, ex);
+        }
+    }
+
+    // events of one account must be replayed in order; anything unparseable shares the record key's lane
+    String laneOf(ConsumerRecord<String, String> record) {
+        try {
+            JsonNode accountId = objectMapper.readTree(record.value()).get("accountId");
+            if (accountId != null && !accountId.isNull()) return "account:" + accountId.asText();
+        } catch (Exception ignored) {
+            // falls through to the key
+        }
+        return "key:" + record.key();
+    }
+
+    // the source coordinates survive every trip through the DLT, so they identify the event
+    static String originOf(ConsumerRecord<String, String> record) {
+        Header topic = record.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_TOPIC);
+        Header partition = record.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_PARTITION);
+        Header offset = record.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_OFFSET);
+        if (topic == null || partition == null || offset == null) {
+            return record.topic() + ":" + record.partition() + ":" + record.offset();
+        }
+        return new String(topic.value(), StandardCharsets.UTF_8) + ":"
+                + ByteBuffer.wrap(partition.value()).getInt() + ":" + ByteBuffer.wrap(offset.value()).getLong();
+    }
+
+    private static long producedAt(ConsumerRecord<String, String> record) {
+        Header ts = record.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_TIMESTAMP);
+        return ts != null ? ByteBuffer.wrap(ts.value()).getLong() : record.timestamp();
+    }
+
+    private List<TopicPartition> partitions(Consumer<String, String> consumer) {
+        return consumer.partitionsFor(topic).stream().map(p -> new TopicPartition(topic, p.partition())).toList();
+    }
+
+    private static boolean reached(Map<TopicPartition, Long> done, Map<TopicPartition, Long> stopAt) {
+        return stopAt.entrySet().stream().allMatch(e -> done.getOrDefault(e.getKey(), 0L) >= e.getValue());
+    }
+
+    private static boolean reached(Consumer<String, String> consumer, List<TopicPartition> partitions, Map<TopicPartition, Long> stopAt) {
+        return partitions.stream().allMatch(tp -> consumer.position(tp) >= stopAt.getOrDefault(tp, 0L));
+    }
+
+    private static long remaining(Consumer<String, String> consumer, List<TopicPartition> partitions, Map<TopicPartition, Long> end) {
+        Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(new HashSet<>(partitions));
+        Map<TopicPartition, Long> beginning = consumer.beginningOffsets(partitions);
+        long total = 0;
+        for (TopicPartition tp : partitions) {
+            OffsetAndMetadata c = committed.get(tp);
+            long from = c != null ? c.offset() : beginning.getOrDefault(tp, 0L);
+            total += Math.max(0, end.getOrDefault(tp, 0L) - from);
+        }
+        return total;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lanes.shutdownNow();
+    }
+
+    static final class Counts {
+        final AtomicLong replayed = new AtomicLong();
+        final AtomicLong duplicates = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+
+        long total() {
+            return replayed.get() + duplicates.get() + failed.get();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.ussd.wallet.ultimate.kafka;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.dto.DepositEvent;
+import com.ussd.wallet.ultimate.service.AccountService;
+import com.ussd.wallet.ultimate.service.BackgroundWorkerService;
+import com.ussd.wallet.ultimate.service.DepositService;
+import com.ussd.wallet.ultimate.service.TwilioSmsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Drains queued collection webhooks a poll at a time: successful charges are grouped per account
+// and each group is one AccountService.creditDeposits transaction. Credits are idempotent on the
+// provider reference, so a batch that fails part-way is simply redelivered from the first record of
+// the account that failed.
+@Service
+public class DepositWebhookConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(DepositWebhookConsumer.class);
+
+    private final AccountService accountService;
+    private final StringRedisTemplate redis;
+    private final TwilioSmsService smsService;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final BackgroundWorkerService backgroundWorkerService;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    public DepositWebhookConsumer(AccountService accountService, StringRedisTemplate redis, @Lazy TwilioSmsService smsService,
+                                  KafkaTemplate<String, String> kafkaTemplate, @Lazy BackgroundWorkerService backgroundWorkerService) {
+        this.accountService = accountService;
+        this.redis = redis;
+        this.smsService = smsService;
+        this.kafkaTemplate = kafkaTemplate;
+        this.backgroundWorkerService = backgroundWorkerService;
+    }
+
+    @KafkaListener(topics = "${ussd.deposits.topic:deposit-webhooks}", groupId = "ussd-deposit-group",
+            containerFactory = "batchKafkaListenerContainerFactory")
+    public void onBatch(List<String> payloads) {
+        Map<Long, List<DepositEvent>> byAccount = new LinkedHashMap<>();
+        Map<Long, Integer> firstIndex = new LinkedHashMap<>();
+        for (int i = 0; i < payloads.size(); i++) {
+            DepositEvent event = parse(payloads.get(i));
+            if (event == null) continue;
+            byAccount.computeIfAbsent(event.accountId(), k -> new ArrayList<>()).add(event);
+            firstIndex.putIfAbsent(event.accountId(), i);
+        }
+        RuntimeException failure = null;
+        int failedAt = Integer.MAX_VALUE;
+        for (Map.Entry<Long, List<DepositEvent>> entry : byAccount.entrySet()) {
+            try {
+                List<DepositEvent> applied = accountService.creditDeposits(entry.getKey(), entry.getValue());
+                applied.forEach(this::announce);
+            } catch (IllegalArgumentException e) {
+                log.error("Dropping deposits for account {}: {}", entry.getKey(), e.getMessage());
+            } catch (RuntimeException e) {
+                log.error("Crediting deposits for account {} failed: {}", entry.getKey(), e.getMessage(), e);
+                if (firstIndex.get(entry.getKey()) < failedAt) {
+                    failure = e;
+                    failedAt = firstIndex.get(entry.getKey());
+                }
+            }
+        }
+        // the other accounts are done; redelivery starts at the earliest failed record and skips them as duplicates
+        if (failure != null) throw new BatchListenerFailedException(failure.getMessage(), failure, failedAt);
+        log.info("Processed {} deposit webhook(s) for {} account(s)", payloads.size(), byAccount.size());
+    }
+
+    DepositEvent parse(String payload) {
+        try {
+            JsonNode root = objectMapper.readTree(payload);
+            JsonNode data = root.path("data");
+            if (!"charge.completed".equals(root.path("event").asText()) || !"successful".equalsIgnoreCase(data.path("status").asText())) {
+                return null;
+            }
+            String txRef = data.path("tx_ref").asText();
+            Long accountId = null;
+            String msisdn = data.path("customer").path("phone_number").asText(null);
+            Map<Object, Object> pending = redis.opsForHash().entries(DepositService.REF_KEY + txRef);
+            if (!pending.isEmpty()) {
+                accountId = Long.valueOf(pending.get("accountId").toString());
+                msisdn = pending.get("msisdn").toString();
+            } else if (txRef.startsWith("dep-")) {
+                // dep-<accountId>-<nonce>, still usable after the Redis entry expired
+                accountId = Long.valueOf(txRef.split("-")[1]);
+            }
+            if (accountId == null) {
+                log.warn("Ignoring collection {} with unknown tx_ref {}", data.path("id").asText(), txRef);
+                return null;
+            }
+            return new DepositEvent("flw:" + data.path("id").asText(), txRef, accountId,
+                    new BigDecimal(data.path("amount").asText()), data.path("currency").asText(), msisdn);
+        } catch (Exception e) {
+            log.error("Unparseable deposit webhook: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private void announce(DepositEvent d) {
+        Transaction t = Transaction.builder()
+                .id(UUID.randomUUID())
+                .accountId(d.accountId())
+                .amount(d.amount())
+                .currency(d.currency())
+                .type("DEPOSIT")
+                .status("SUCCESS")
+                .createdAt(Instant.now())
+                .meta(d.providerRef())
+                .build();
+        try {
+            kafkaTemplate.send("transactions", t.getId().toString(), objectMapper.writeValueAsString(t));
+        } catch (Exception e) {
+            log.error("Failed to publish deposit {} to Kafka: {}", d.providerRef(), e.getMessage());
+            backgroundWorkerService.publishTransaction(t);
+        }
+        if (d.msisdn() != null) smsService.sendSmsAsync(d.msisdn(), "Deposit successful: " + d.amount() + " " + d.currency());
+    }
+}
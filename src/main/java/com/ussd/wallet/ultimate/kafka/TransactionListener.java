@@ -4,41 +4,57 @@ import akka.actor.typed.ActorSystem;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ussd.wallet.ultimate.domain.Transaction;
-import com.ussd.wallet.ultimate.repository.TransactionCassandraRepository;
+import com.ussd.wallet.ultimate.ledger.LedgerWriter;
 import com.ussd.wallet.ultimate.saga.SagaCoordinatorService;
+import com.ussd.wallet.ultimate.service.PendingTransactionIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
 @Service
 public class TransactionListener {
 
     private static final Logger log = LoggerFactory.getLogger(TransactionListener.class);
 
-    private final TransactionCassandraRepository cassandraRepo;
+    private final LedgerWriter ledgerWriter;
     private final SagaCoordinatorService sagaCoordinator;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PendingTransactionIndex pendingIndex;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
 
-    public TransactionListener(TransactionCassandraRepository cassandraRepo, SagaCoordinatorService sagaCoordinator) {
-        this.cassandraRepo = cassandraRepo;
+    public TransactionListener(LedgerWriter ledgerWriter, SagaCoordinatorService sagaCoordinator,
+                               PendingTransactionIndex pendingIndex) {
+        this.ledgerWriter = ledgerWriter;
         this.sagaCoordinator = sagaCoordinator;
+        this.pendingIndex = pendingIndex;
     }
 
+    // failures propagate to the container's error handler, which retries briefly and then
+    // dead-letters the record (see KafkaConsumerConfig); DeadLetterReplayService feeds them back here
     @KafkaListener(topics = "transactions", groupId = "ussd-wallet-group")
-    public void onMessage(String payload) {
-        try {
-            Transaction transaction = objectMapper.readValue(payload, Transaction.class);
-            // persist to cassandra
-            cassandraRepo.save(transaction);
-            log.info("Persisted transaction {} to Cassandra", transaction.getId());
-            // if transaction is withdraw and pending -> start saga
-            if ("WITHDRAW".equalsIgnoreCase(transaction.getType())) {
-                log.info("Starting saga for withdraw tx={}", transaction.getId());
-                sagaCoordinator.startWithdrawalSaga(transaction);
-            }
-        } catch (Exception e) {
-            log.error("Error processing transaction message: {}", e.getMessage(), e);
+    public void onMessage(String payload) throws IOException {
+        Transaction transaction = objectMapper.readValue(payload, Transaction.class);
+        // createdAt is part of the pending index key and dates every ledger write, so fix it before
+        // anything is written, at the millisecond precision the saga state will hand back
+        Instant createdAt = transaction.getCreatedAt() != null ? transaction.getCreatedAt() : Instant.now();
+        transaction.setCreatedAt(createdAt.truncatedTo(ChronoUnit.MILLIS));
+        boolean pendingWithdraw = "WITHDRAW".equalsIgnoreCase(transaction.getType()) && "PENDING".equalsIgnoreCase(transaction.getStatus());
+        if (pendingWithdraw) {
+            // indexed first: if anything below fails the sweeper will still find it
+            pendingIndex.track(transaction.getId(), transaction.getAccountId(), transaction.getAmount(),
+                    transaction.getCurrency(), transaction.getCreatedAt(), transaction.getStatus());
+        }
+        // not awaited: the saga's status update cannot be overwritten by this insert landing later,
+        // and a failed write is retried by the ledger writer
+        ledgerWriter.append(transaction);
+        // if transaction is withdraw and pending -> start saga
+        if ("WITHDRAW".equalsIgnoreCase(transaction.getType())) {
+            log.info("Starting saga for withdraw tx={}", transaction.getId());
+            sagaCoordinator.startWithdrawalSaga(transaction);
         }
     }
 }
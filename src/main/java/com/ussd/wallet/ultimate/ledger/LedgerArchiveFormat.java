@@ -0,0 +1,161 @@
+package com.ussd.wallet.ultimate.ledger;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// On-disk layout of a month archive (YYYY-MM.utxa, and YYYY-MM.pN.utxa for rows that reached
+// Cassandra after the month was sealed), shared by LedgerArchiveWriter and LedgerArchiveReader.
+//
+//   header   int magic, int version
+//   groups   per row group: one Deflate-compressed chunk per column, then the account bloom filter
+//   footer   int groups, long rows, long rawBytes, then GROUP_BYTES per group (fixed width, so the
+//            reader seeks to any group without parsing the ones before it)
+//   trailer  long footerOffset, int footerLength, int magic
+//
+// Rows in a group are sorted by (accountId, createdAt). Column encodings before compression:
+//   ID          16 bytes per row
+//   ACCOUNT_ID  zigzag varint delta from the previous row
+//   CREATED_AT  epoch millis (Cassandra's precision), zigzag varint delta
+//   AMOUNT      varint length of the unscaled bytes (0 = null), the bytes, zigzag varint scale
+//   TYPE, CURRENCY, STATUS   dictionary: varint size, length-prefixed UTF-8 entries, varint index per row (0 = null)
+//   META        varint length + 1 (0 = null), UTF-8 bytes
+final class LedgerArchiveFormat {
+
+    private LedgerArchiveFormat() {}
+
+    static final int MAGIC = 0x55545841; // "UTXA"
+    static final int VERSION = 1;
+    static final String SUFFIX = ".utxa";
+
+    enum Column { ID, ACCOUNT_ID, CREATED_AT, AMOUNT, TYPE, CURRENCY, STATUS, META }
+
+    static final int COLUMNS = Column.values().length;
+    static final int HEADER_BYTES = 8;
+    static final int TRAILER_BYTES = 16;
+    static final int FOOTER_HEADER_BYTES = 4 + 8 + 8;
+    static final int CHUNK_BYTES = 8 + 4 + 4;
+    // rows, min/max account, min/max createdAt, bloom offset + words, then the chunks
+    static final int GROUP_BYTES = 4 + 8 * 4 + 8 + 4 + COLUMNS * CHUNK_BYTES;
+
+    static final int BLOOM_BITS_PER_ACCOUNT = 10;
+    static final int BLOOM_HASHES = 7;
+
+    // A growable byte array with the encodings above; reset and reused for every group.
+    static final class Buf {
+        byte[] bytes = new byte[1024];
+        int length;
+
+        void reset() {
+            length = 0;
+        }
+
+        void ensure(int extra) {
+            if (length + extra > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+        }
+
+        void put(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, length, b.length);
+            length += b.length;
+        }
+
+        void putLong(long v) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) bytes[length++] = (byte) (v >>> shift);
+        }
+
+        void putInt(int v) {
+            ensure(4);
+            for (int shift = 24; shift >= 0; shift -= 8) bytes[length++] = (byte) (v >>> shift);
+        }
+
+        void putVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bytes[length++] = (byte) v;
+        }
+
+        void putZigZag(long v) {
+            putVarLong((v << 1) ^ (v >> 63));
+        }
+    }
+
+    // Reads a decompressed chunk front to back.
+    static final class Cursor {
+        byte[] bytes;
+        int position;
+
+        void reset(byte[] bytes) {
+            this.bytes = bytes;
+            this.position = 0;
+        }
+
+        long getLong() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) v = (v << 8) | (bytes[position++] & 0xFF);
+            return v;
+        }
+
+        long getVarLong() {
+            long v = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return v;
+        }
+
+        int getVarInt() {
+            return (int) getVarLong();
+        }
+
+        long getZigZag() {
+            long v = getVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+    }
+
+    static int bloomWords(int accounts) {
+        return Math.max(1, (accounts * BLOOM_BITS_PER_ACCOUNT + 63) / 64);
+    }
+
+    static void bloomAdd(long[] words, long accountId) {
+        long h = mix(accountId);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        long bits = (long) words.length * 64;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bits);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    // straight from the mapped file, no copy
+    static boolean bloomMightContain(ByteBuffer words, int wordCount, long accountId) {
+        long h = mix(accountId);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        long bits = (long) wordCount * 64;
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bits);
+            if ((words.getLong((int) (bit >>> 6) * 8) & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    // MurmurHash3 finalizer
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
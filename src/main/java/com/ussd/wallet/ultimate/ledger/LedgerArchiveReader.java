@@ -0,0 +1,272 @@
+package com.ussd.wallet.ultimate.ledger;
+
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.ledger.LedgerArchiveFormat.Column;
+import com.ussd.wallet.ultimate.ledger.LedgerArchiveFormat.Cursor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Serves export queries from one month archive through memory-mapped windows of the file. The
+// footer says where every group and column chunk is; a group is skipped on its account range and
+// bloom filter or its createdAt range, the account and createdAt columns are decoded to pick the
+// rows, and the other columns are only inflated for groups that have a match. Chunks inflate
+// straight from the mapping into buffers reused across groups, so a scan holds one group's
+// columns whatever the size of the file. Not thread-safe; open one reader per export.
+public final class LedgerArchiveReader implements Closeable {
+
+    public record ScanStats(long rows, int groupsRead, int groupsSkipped) {
+    }
+
+    // mapped a window at a time, so files over 2GB work and the address space stays small
+    static final long WINDOW_BYTES = 256L << 20;
+
+    private static final int ID = Column.ID.ordinal();
+    private static final int ACCOUNT_ID = Column.ACCOUNT_ID.ordinal();
+    private static final int CREATED_AT = Column.CREATED_AT.ordinal();
+    private static final int AMOUNT = Column.AMOUNT.ordinal();
+    private static final int TYPE = Column.TYPE.ordinal();
+    private static final int CURRENCY = Column.CURRENCY.ordinal();
+    private static final int STATUS = Column.STATUS.ordinal();
+    private static final int META = Column.META.ordinal();
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long size;
+    private final ByteBuffer footer;
+    private final int groups;
+    private final long rows;
+    private final long rawBytes;
+    private final Inflater inflater = new Inflater();
+    private final byte[][] raw = new byte[LedgerArchiveFormat.COLUMNS][];
+    private final Cursor[] cursors = new Cursor[LedgerArchiveFormat.COLUMNS];
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long[] accounts = new long[0];
+    private long[] created = new long[0];
+    private boolean[] selected = new boolean[0];
+
+    private LedgerArchiveReader(Path file, FileChannel channel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.size = channel.size();
+        if (size < LedgerArchiveFormat.HEADER_BYTES + LedgerArchiveFormat.TRAILER_BYTES) throw new IOException("Not a ledger archive: " + file);
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, LedgerArchiveFormat.HEADER_BYTES);
+        ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - LedgerArchiveFormat.TRAILER_BYTES, LedgerArchiveFormat.TRAILER_BYTES);
+        if (header.getInt(0) != LedgerArchiveFormat.MAGIC || trailer.getInt(12) != LedgerArchiveFormat.MAGIC) {
+            throw new IOException("Not a ledger archive, or not completely written: " + file);
+        }
+        if (header.getInt(4) != LedgerArchiveFormat.VERSION) throw new IOException("Unsupported archive version " + header.getInt(4) + ": " + file);
+        this.footer = channel.map(FileChannel.MapMode.READ_ONLY, trailer.getLong(0), trailer.getInt(8));
+        this.groups = footer.getInt(0);
+        this.rows = footer.getLong(4);
+        this.rawBytes = footer.getLong(12);
+        for (int i = 0; i < cursors.length; i++) cursors[i] = new Cursor();
+    }
+
+    public static LedgerArchiveReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new LedgerArchiveReader(file, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public long rows() {
+        return rows;
+    }
+
+    public long rawBytes() {
+        return rawBytes;
+    }
+
+    public long fileBytes() {
+        return size;
+    }
+
+    public int rowGroups() {
+        return groups;
+    }
+
+    // Rows of accountId (null for all) created in [from, to) (either end may be null), in file order:
+    // group by group, each group by account and createdAt.
+    public ScanStats scan(Long accountId, Instant from, Instant to, Consumer<Transaction> sink) throws IOException {
+        long fromMillis = from == null ? Long.MIN_VALUE : from.toEpochMilli();
+        long toMillis = to == null ? Long.MAX_VALUE : to.toEpochMilli();
+        long matched = 0;
+        int read = 0;
+        int skipped = 0;
+        for (int g = 0; g < groups; g++) {
+            int base = LedgerArchiveFormat.FOOTER_HEADER_BYTES + g * LedgerArchiveFormat.GROUP_BYTES;
+            int n = footer.getInt(base);
+            long minAccount = footer.getLong(base + 4);
+            long maxAccount = footer.getLong(base + 12);
+            long minCreated = footer.getLong(base + 20);
+            long maxCreated = footer.getLong(base + 28);
+            if (maxCreated < fromMillis || minCreated >= toMillis) {
+                skipped++;
+                continue;
+            }
+            if (accountId != null) {
+                long bloomOffset = footer.getLong(base + 36);
+                int bloomWords = footer.getInt(base + 44);
+                if (accountId < minAccount || accountId > maxAccount
+                        || !LedgerArchiveFormat.bloomMightContain(region(bloomOffset, bloomWords * 8), bloomWords, accountId)) {
+                    skipped++;
+                    continue;
+                }
+            }
+            read++;
+            matched += scanGroup(base, n, accountId, fromMillis, toMillis, sink);
+        }
+        return new ScanStats(matched, read, skipped);
+    }
+
+    private long scanGroup(int base, int n, Long accountId, long fromMillis, long toMillis, Consumer<Transaction> sink) throws IOException {
+        if (accounts.length < n) {
+            accounts = new long[n];
+            created = new long[n];
+            selected = new boolean[n];
+        }
+        Cursor accountCursor = inflate(base, ACCOUNT_ID);
+        Cursor createdCursor = inflate(base, CREATED_AT);
+        long account = 0;
+        long createdAt = 0;
+        int matches = 0;
+        for (int i = 0; i < n; i++) {
+            account += accountCursor.getZigZag();
+            createdAt += createdCursor.getZigZag();
+            accounts[i] = account;
+            created[i] = createdAt;
+            selected[i] = (accountId == null || accountId == account) && createdAt >= fromMillis && createdAt < toMillis;
+            if (selected[i]) matches++;
+        }
+        if (matches == 0) return 0;
+
+        Cursor ids = inflate(base, ID);
+        Cursor amounts = inflate(base, AMOUNT);
+        Cursor metas = inflate(base, META);
+        Cursor types = inflate(base, TYPE);
+        String[] typeDictionary = dictionary(types);
+        Cursor currencies = inflate(base, CURRENCY);
+        String[] currencyDictionary = dictionary(currencies);
+        Cursor statuses = inflate(base, STATUS);
+        String[] statusDictionary = dictionary(statuses);
+        for (int i = 0; i < n; i++) {
+            if (!selected[i]) {
+                ids.position += 16;
+                skipAmount(amounts);
+                skipString(metas);
+                types.getVarLong();
+                currencies.getVarLong();
+                statuses.getVarLong();
+                continue;
+            }
+            sink.accept(Transaction.builder()
+                    .id(new UUID(ids.getLong(), ids.getLong()))
+                    .accountId(accounts[i])
+                    .createdAt(Instant.ofEpochMilli(created[i]))
+                    .amount(amount(amounts))
+                    .meta(string(metas))
+                    .type(typeDictionary[types.getVarInt()])
+                    .currency(currencyDictionary[currencies.getVarInt()])
+                    .status(statusDictionary[statuses.getVarInt()])
+                    .build());
+        }
+        return matches;
+    }
+
+    private Cursor inflate(int base, int column) throws IOException {
+        int chunk = base + 48 + column * LedgerArchiveFormat.CHUNK_BYTES;
+        long offset = footer.getLong(chunk);
+        int compressedLength = footer.getInt(chunk + 8);
+        int rawLength = footer.getInt(chunk + 12);
+        byte[] out = raw[column];
+        if (out == null || out.length < rawLength) raw[column] = out = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(region(offset, compressedLength));
+        int total = 0;
+        try {
+            while (total < rawLength) {
+                int n = inflater.inflate(out, total, rawLength - total);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) break;
+                total += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt " + Column.values()[column] + " chunk at " + offset + " in " + file, e);
+        }
+        if (total != rawLength) throw new IOException("Short " + Column.values()[column] + " chunk at " + offset + " in " + file);
+        cursors[column].reset(out);
+        return cursors[column];
+    }
+
+    private ByteBuffer region(long offset, int length) throws IOException {
+        if (window == null || offset < windowStart || offset + length > windowStart + window.capacity()) {
+            long mapped = Math.max(length, Math.min(WINDOW_BYTES, size - offset));
+            window = channel.map(FileChannel.MapMode.READ_ONLY, offset, mapped);
+            windowStart = offset;
+        }
+        return window.slice((int) (offset - windowStart), length);
+    }
+
+    // index 0 is null
+    private static String[] dictionary(Cursor cursor) {
+        String[] values = new String[cursor.getVarInt() + 1];
+        for (int i = 1; i < values.length; i++) values[i] = string(cursor);
+        return values;
+    }
+
+    private static String string(Cursor cursor) {
+        int n = cursor.getVarInt();
+        if (n == 0) return null;
+        String value = new String(cursor.bytes, cursor.position, n - 1, StandardCharsets.UTF_8);
+        cursor.position += n - 1;
+        return value;
+    }
+
+    private static void skipString(Cursor cursor) {
+        int n = cursor.getVarInt();
+        if (n > 0) cursor.position += n - 1;
+    }
+
+    private static BigDecimal amount(Cursor cursor) {
+        int n = cursor.getVarInt();
+        if (n == 0) return null;
+        BigInteger unscaled = new BigInteger(cursor.bytes, cursor.position, n);
+        cursor.position += n;
+        return new BigDecimal(unscaled, (int) cursor.getZigZag());
+    }
+
+    private static void skipAmount(Cursor cursor) {
+        int n = cursor.getVarInt();
+        if (n == 0) return;
+        cursor.position += n;
+        cursor.getVarLong();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        window = null;
+        channel.close();
+    }
+}
@@ -0,0 +1,250 @@
+package com.ussd.wallet.ultimate.ledger;
+
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.ledger.LedgerArchiveFormat.Buf;
+import com.ussd.wallet.ultimate.ledger.LedgerArchiveFormat.Column;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+
+// Writes one month archive. Rows are buffered one row group at a time, sorted, encoded column by
+// column and deflated, so memory is one group plus GROUP_BYTES of footer per group written,
+// however many rows the month has. close() writes the footer and forces the file to disk.
+public final class LedgerArchiveWriter implements Closeable {
+
+    private static final Comparator<Transaction> GROUP_ORDER = Comparator
+            .comparing(Transaction::getAccountId)
+            .thenComparing(Transaction::getCreatedAt)
+            .thenComparing(Transaction::getId);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Transaction[] group;
+    private final Deflater deflater;
+    private final Buf[] columns = new Buf[LedgerArchiveFormat.COLUMNS];
+    private final Buf footer = new Buf();
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<String> dictionaryOrder = new ArrayList<>();
+    private byte[] compressed = new byte[64 * 1024];
+    private int buffered;
+    private int groups;
+    private long rows;
+    private long rawBytes;
+    private boolean closed;
+
+    public LedgerArchiveWriter(Path file, int rowGroupSize, int compressionLevel) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.group = new Transaction[rowGroupSize];
+        this.deflater = new Deflater(compressionLevel);
+        for (int i = 0; i < columns.length; i++) columns[i] = new Buf();
+        Buf header = new Buf();
+        header.putInt(LedgerArchiveFormat.MAGIC);
+        header.putInt(LedgerArchiveFormat.VERSION);
+        write(header);
+    }
+
+    // id, accountId and createdAt are required
+    public void append(Transaction tx) throws IOException {
+        if (tx.getId() == null || tx.getAccountId() == null || tx.getCreatedAt() == null) {
+            throw new IllegalArgumentException("Archived rows need id, accountId and createdAt: " + tx.getId());
+        }
+        group[buffered++] = tx;
+        if (buffered == group.length) flushGroup();
+    }
+
+    public long rows() {
+        return rows + buffered;
+    }
+
+    // encoded size before compression
+    public long rawBytes() {
+        return rawBytes;
+    }
+
+    public long fileBytes() throws IOException {
+        return channel.size();
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            if (buffered > 0) flushGroup();
+            long footerOffset = channel.position();
+            Buf head = new Buf();
+            head.putInt(groups);
+            head.putLong(rows);
+            head.putLong(rawBytes);
+            write(head);
+            write(footer);
+            Buf trailer = new Buf();
+            trailer.putLong(footerOffset);
+            trailer.putInt(LedgerArchiveFormat.FOOTER_HEADER_BYTES + footer.length);
+            trailer.putInt(LedgerArchiveFormat.MAGIC);
+            write(trailer);
+            channel.force(true);
+        } finally {
+            closed = true;
+            deflater.end();
+            channel.close();
+        }
+    }
+
+    // for a run that failed: the partial file is removed
+    public void abort() {
+        try {
+            closed = true;
+            deflater.end();
+            channel.close();
+        } catch (IOException ignored) {
+            // deleting below is what matters
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+            // left for the next run's cleanup of .tmp files
+        }
+    }
+
+    private void flushGroup() throws IOException {
+        int n = buffered;
+        Arrays.sort(group, 0, n, GROUP_ORDER);
+        for (Buf c : columns) c.reset();
+
+        long minCreated = Long.MAX_VALUE;
+        long maxCreated = Long.MIN_VALUE;
+        long previousAccount = 0;
+        long previousCreated = 0;
+        int accounts = 0;
+        for (int i = 0; i < n; i++) {
+            Transaction tx = group[i];
+            columns[Column.ID.ordinal()].putLong(tx.getId().getMostSignificantBits());
+            columns[Column.ID.ordinal()].putLong(tx.getId().getLeastSignificantBits());
+
+            long account = tx.getAccountId();
+            if (i == 0 || account != previousAccount) accounts++;
+            columns[Column.ACCOUNT_ID.ordinal()].putZigZag(account - previousAccount);
+            previousAccount = account;
+
+            long created = tx.getCreatedAt().toEpochMilli();
+            columns[Column.CREATED_AT.ordinal()].putZigZag(created - previousCreated);
+            previousCreated = created;
+            minCreated = Math.min(minCreated, created);
+            maxCreated = Math.max(maxCreated, created);
+
+            putAmount(columns[Column.AMOUNT.ordinal()], tx.getAmount());
+            putString(columns[Column.META.ordinal()], tx.getMeta());
+        }
+        putDictionary(columns[Column.TYPE.ordinal()], n, Transaction::getType);
+        putDictionary(columns[Column.CURRENCY.ordinal()], n, Transaction::getCurrency);
+        putDictionary(columns[Column.STATUS.ordinal()], n, Transaction::getStatus);
+
+        long[] chunkOffsets = new long[columns.length];
+        int[] chunkLengths = new int[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            chunkOffsets[c] = channel.position();
+            chunkLengths[c] = deflate(columns[c]);
+            rawBytes += columns[c].length;
+        }
+
+        long[] bloom = new long[LedgerArchiveFormat.bloomWords(accounts)];
+        for (int i = 0; i < n; i++) LedgerArchiveFormat.bloomAdd(bloom, group[i].getAccountId());
+        long bloomOffset = channel.position();
+        Buf bloomBytes = new Buf();
+        for (long word : bloom) bloomBytes.putLong(word);
+        write(bloomBytes);
+
+        footer.putInt(n);
+        footer.putLong(group[0].getAccountId());
+        footer.putLong(group[n - 1].getAccountId());
+        footer.putLong(minCreated);
+        footer.putLong(maxCreated);
+        footer.putLong(bloomOffset);
+        footer.putInt(bloom.length);
+        for (int c = 0; c < columns.length; c++) {
+            footer.putLong(chunkOffsets[c]);
+            footer.putInt(chunkLengths[c]);
+            footer.putInt(columns[c].length);
+        }
+
+        Arrays.fill(group, 0, n, null);
+        buffered = 0;
+        groups++;
+        rows += n;
+    }
+
+    private static void putAmount(Buf out, BigDecimal amount) {
+        if (amount == null) {
+            out.putVarLong(0);
+            return;
+        }
+        byte[] unscaled = amount.unscaledValue().toByteArray();
+        out.putVarLong(unscaled.length);
+        out.put(unscaled);
+        out.putZigZag(amount.scale());
+    }
+
+    private static void putString(Buf out, String value) {
+        if (value == null) {
+            out.putVarLong(0);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.putVarLong(utf8.length + 1L);
+        out.put(utf8);
+    }
+
+    private void putDictionary(Buf out, int n, Function<Transaction, String> column) {
+        dictionary.clear();
+        dictionaryOrder.clear();
+        for (int i = 0; i < n; i++) {
+            String value = column.apply(group[i]);
+            if (value != null && dictionary.putIfAbsent(value, dictionary.size() + 1) == null) dictionaryOrder.add(value);
+        }
+        out.putVarLong(dictionaryOrder.size());
+        for (String value : dictionaryOrder) putString(out, value);
+        for (int i = 0; i < n; i++) {
+            String value = column.apply(group[i]);
+            out.putVarLong(value == null ? 0 : dictionary.get(value));
+        }
+    }
+
+    private int deflate(Buf raw) throws IOException {
+        deflater.reset();
+        deflater.setInput(raw.bytes, 0, raw.length);
+        deflater.finish();
+        int total = 0;
+        while (!deflater.finished()) {
+            if (total == compressed.length) compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            total += deflater.deflate(compressed, total, compressed.length - total);
+        }
+        ByteBuffer out = ByteBuffer.wrap(compressed, 0, total);
+        while (out.hasRemaining()) channel.write(out);
+        return total;
+    }
+
+    private void write(Buf buf) throws IOException {
+        ByteBuffer out = ByteBuffer.wrap(buf.bytes, 0, buf.length);
+        while (out.hasRemaining()) channel.write(out);
+    }
+}
@@ -0,0 +1,466 @@
+package com.ussd.wallet.ultimate.ledger;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DefaultConsistencyLevel;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.service.ClusterLease;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Moves aged ledger rows out of Cassandra into compressed, columnar files per month
+// (LedgerArchiveFormat), and serves finance/regulator exports from those files.
+//
+// One node runs the archiving at a time, under a ClusterLease renewed as the run goes, and the
+// directory is meant to be storage every node mounts, so any node can serve the exports.
+//
+// A run pages through the transactions table under a rows-per-second limit, so it costs
+// production a steady trickle of reads rather than a burst. Rows older than retain-months go to
+// the writer of their month (UTC); at most max-open-months writers are open at once, and rows of
+// any further month are left for the next run. Each file is written to a .tmp file and renamed
+// into place only when complete.
+//
+// A month's first file is YYYY-MM.utxa. Rows of that month still in Cassandra on a later run are
+// either archived and not purged yet, or written after the month was sealed. While any file of
+// the month is unpurged the two cannot be told apart, so those rows are only counted. Once every
+// file of the month is purged, whatever is left arrived late, and it goes to the month's next part
+// file (YYYY-MM.p1.utxa, .p2, ...), which is purged like the first.
+//
+// With purge on, archived ids are read back from each finished file and deleted from Cassandra; a
+// .purged marker per file records that it finished, so an interrupted purge resumes on the next
+// run. The deletes carry the current time, which is newer than the createdAt-based timestamps
+// LedgerWriter gives aged rows, so a redelivered write cannot bring a purged row back. Scan and
+// deletes both run at LOCAL_QUORUM: a replica that missed a delete cannot pass an archived row
+// off as a late one.
+@Service
+public class LedgerArchiver {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerArchiver.class);
+
+    static final String SCAN = "SELECT id, accountid, type, amount, currency, createdat, status, meta FROM transactions";
+    static final String DELETE = "DELETE FROM transactions WHERE id = ?";
+    static final String TMP = ".tmp";
+    static final String PURGED = ".purged";
+    static final String PART = ".p";
+    public static final String LEASE = "ledger-archive";
+
+    // month is YYYY-MM for the whole month, or the file's name without suffix (YYYY-MM.pN) for one file
+    public record MonthArchive(String month, int files, long rows, long rawBytes, long fileBytes, double compressionRatio, boolean purged) {}
+
+    // archived includes the late rows appended to sealed months
+    public record ArchiveReport(Instant at, List<MonthArchive> written, long scanned, long archived, long late, long inArchivedMonths,
+                                long skipped, List<String> deferredMonths, long purged, double seconds, double rowsPerSecond) {}
+
+    public record ExportReport(long rows, int months, int groupsRead, int groupsSkipped, double seconds, double rowsPerSecond) {}
+
+    private final CqlSession session;
+    private final ClusterLease lease;
+    private final MeterRegistry registry;
+    private final Path directory;
+    private final int retainMonths;
+    private final int rowGroupSize;
+    private final int compressionLevel;
+    private final int pageSize;
+    private final int maxOpenMonths;
+    private final int purgeConcurrency;
+    private final boolean purge;
+    private final RateLimiter rateLimiter;
+    private final Timer exportTime;
+    private volatile ArchiveReport lastReport;
+    private long leaseRenewedAt;
+
+    @Value("${ussd.archive.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${ussd.archive.lease-ms:600000}")
+    private long leaseMs = 600_000;
+
+    public LedgerArchiver(@Lazy CqlSession session, ClusterLease lease, MeterRegistry registry,
+                          @Value("${ussd.archive.directory:/var/lib/ussd-wallet/archive}") String directory,
+                          @Value("${ussd.archive.retain-months:3}") int retainMonths,
+                          @Value("${ussd.archive.row-group-size:8192}") int rowGroupSize,
+                          @Value("${ussd.archive.compression-level:6}") int compressionLevel,
+                          @Value("${ussd.archive.page-size:1000}") int pageSize,
+                          @Value("${ussd.archive.max-open-months:12}") int maxOpenMonths,
+                          @Value("${ussd.archive.rows-per-second:5000}") int rowsPerSecond,
+                          @Value("${ussd.archive.purge:false}") boolean purge,
+                          @Value("${ussd.archive.purge-concurrency:32}") int purgeConcurrency) {
+        this.session = session;
+        this.lease = lease;
+        this.registry = registry;
+        this.directory = Paths.get(directory);
+        this.retainMonths = retainMonths;
+        this.rowGroupSize = rowGroupSize;
+        this.compressionLevel = compressionLevel;
+        this.pageSize = pageSize;
+        this.maxOpenMonths = maxOpenMonths;
+        this.purge = purge;
+        this.purgeConcurrency = purgeConcurrency;
+        this.rateLimiter = RateLimiter.of("ledger-archive", RateLimiterConfig.custom()
+                .limitForPeriod(rowsPerSecond)
+                .limitRefreshPeriod(Duration.ofSeconds(1))
+                .timeoutDuration(Duration.ofMinutes(1))
+                .build());
+        this.exportTime = Timer.builder("ussd.archive.export").publishPercentiles(0.5, 0.99).register(registry);
+    }
+
+    @Scheduled(cron = "${ussd.archive.cron:0 30 3 2 * *}", zone = "UTC")
+    public void scheduledRun() {
+        if (!enabled) return;
+        try {
+            archive();
+        } catch (Exception e) {
+            log.error("Ledger archive run failed: {}", e.getMessage(), e);
+        }
+    }
+
+    public ArchiveReport archive() throws IOException {
+        return archive(YearMonth.now(ZoneOffset.UTC).minusMonths(retainMonths));
+    }
+
+    // archives every month before firstKept; null when another node holds the lease
+    public synchronized ArchiveReport archive(YearMonth firstKept) throws IOException {
+        if (!lease.acquire(LEASE, Duration.ofMillis(leaseMs))) {
+            log.info("Ledger archive run skipped, {} is held by another node", LEASE);
+            return null;
+        }
+        leaseRenewedAt = System.nanoTime();
+        try {
+            return archiveHoldingLease(firstKept);
+        } finally {
+            lease.release(LEASE);
+        }
+    }
+
+    private ArchiveReport archiveHoldingLease(YearMonth firstKept) throws IOException {
+        long started = System.nanoTime();
+        Files.createDirectories(directory);
+        deleteTmpFiles();
+        long cutoff = firstKept.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        Map<YearMonth, List<Integer>> archivedParts = archivedMonths();
+
+        Map<YearMonth, LedgerArchiveWriter> writers = new TreeMap<>();
+        Map<YearMonth, Integer> writerParts = new HashMap<>();
+        // sealed months seen this run: the part their late rows go to, or -1 while a file is unpurged
+        Map<YearMonth, Integer> nextPart = new HashMap<>();
+        Set<YearMonth> deferred = new HashSet<>();
+        long scanned = 0;
+        long archived = 0;
+        long late = 0;
+        long inArchivedMonths = 0;
+        long skipped = 0;
+        List<MonthArchive> written = new ArrayList<>();
+        try {
+            ResultSet rows = session.execute(SimpleStatement.newInstance(SCAN)
+                    .setPageSize(pageSize)
+                    .setConsistencyLevel(DefaultConsistencyLevel.LOCAL_QUORUM));
+            for (Row row : rows) {
+                rateLimiter.acquirePermission();
+                holdLease();
+                scanned++;
+                Transaction tx = transaction(row);
+                if (tx.getId() == null || tx.getAccountId() == null || tx.getCreatedAt() == null) {
+                    skipped++;
+                    continue;
+                }
+                if (tx.getCreatedAt().toEpochMilli() >= cutoff) continue;
+                YearMonth month = YearMonth.from(tx.getCreatedAt().atZone(ZoneOffset.UTC));
+                LedgerArchiveWriter writer = writers.get(month);
+                if (writer == null) {
+                    if (deferred.contains(month)) continue;
+                    int part = 0;
+                    List<Integer> parts = archivedParts.get(month);
+                    if (parts != null) {
+                        part = nextPart.computeIfAbsent(month, m -> allPurged(m, parts) ? parts.get(parts.size() - 1) + 1 : -1);
+                        if (part < 0) {
+                            inArchivedMonths++;
+                            continue;
+                        }
+                    }
+                    if (writers.size() >= maxOpenMonths) {
+                        deferred.add(month);
+                        continue;
+                    }
+                    writer = new LedgerArchiveWriter(tmpFile(month, part), rowGroupSize, compressionLevel);
+                    writers.put(month, writer);
+                    writerParts.put(month, part);
+                }
+                writer.append(tx);
+                archived++;
+                if (writerParts.get(month) > 0) late++;
+            }
+
+            for (Map.Entry<YearMonth, LedgerArchiveWriter> e : writers.entrySet()) {
+                LedgerArchiveWriter writer = e.getValue();
+                int part = writerParts.get(e.getKey());
+                writer.close();
+                Files.move(writer.file(), file(e.getKey(), part), StandardCopyOption.ATOMIC_MOVE);
+                written.add(new MonthArchive(name(e.getKey(), part), 1, writer.rows(), writer.rawBytes(), Files.size(file(e.getKey(), part)),
+                        writer.rawBytes() / (double) Math.max(Files.size(file(e.getKey(), part)), 1), false));
+            }
+        } catch (IOException | RuntimeException e) {
+            writers.values().forEach(LedgerArchiveWriter::abort);
+            throw e;
+        }
+
+        long purged = purge ? purgePending() : 0;
+        double seconds = (System.nanoTime() - started) / 1e9;
+        registry.counter("ussd.archive.rows").increment(archived);
+        registry.counter("ussd.archive.late.rows").increment(late);
+        List<String> deferredMonths = deferred.stream().sorted().map(YearMonth::toString).toList();
+        ArchiveReport report = new ArchiveReport(Instant.now(), written, scanned, archived, late, inArchivedMonths, skipped, deferredMonths,
+                purged, seconds, scanned / Math.max(seconds, 1e-9));
+        for (MonthArchive m : written) {
+            log.info("Archived {}: {} rows, {} bytes ({}x compression)", m.month(), m.rows(), m.fileBytes(), String.format("%.1f", m.compressionRatio()));
+        }
+        log.info("Ledger archive run: scanned={} archived={} late={} inArchivedMonths={} skipped={} deferred={} purged={} in {}s ({} rows/s)",
+                scanned, archived, late, inArchivedMonths, skipped, deferredMonths, purged, String.format("%.1f", seconds),
+                String.format("%.0f", report.rowsPerSecond()));
+        lastReport = report;
+        return report;
+    }
+
+    // re-acquiring extends the lease; a run that lost it stops before another node's run overlaps it
+    private void holdLease() {
+        if (System.nanoTime() - leaseRenewedAt < TimeUnit.MILLISECONDS.toNanos(leaseMs) / 3) return;
+        if (!lease.acquire(LEASE, Duration.ofMillis(leaseMs))) {
+            throw new IllegalStateException("Lost the " + LEASE + " lease mid-run");
+        }
+        leaseRenewedAt = System.nanoTime();
+    }
+
+    public ArchiveReport lastReport() {
+        return lastReport;
+    }
+
+    public List<MonthArchive> months() throws IOException {
+        List<MonthArchive> months = new ArrayList<>();
+        for (Map.Entry<YearMonth, List<Integer>> e : archivedMonths().entrySet()) {
+            long rows = 0;
+            long rawBytes = 0;
+            long fileBytes = 0;
+            for (int part : e.getValue()) {
+                try (LedgerArchiveReader reader = LedgerArchiveReader.open(file(e.getKey(), part))) {
+                    rows += reader.rows();
+                    rawBytes += reader.rawBytes();
+                    fileBytes += reader.fileBytes();
+                }
+            }
+            months.add(new MonthArchive(e.getKey().toString(), e.getValue().size(), rows, rawBytes, fileBytes,
+                    rawBytes / (double) Math.max(fileBytes, 1), allPurged(e.getKey(), e.getValue())));
+        }
+        return months;
+    }
+
+    // CSV of accountId's rows (null for all) created in [from, to), one month file after another,
+    // a month's late parts after its first file.
+    // Rows are written as they are decoded, so memory stays at one row group per export.
+    public ExportReport export(Long accountId, Instant from, Instant to, Writer out) throws IOException {
+        long started = System.nanoTime();
+        out.write("id,account_id,type,amount,currency,created_at,status,meta\n");
+        long rows = 0;
+        int months = 0;
+        int groupsRead = 0;
+        int groupsSkipped = 0;
+        StringBuilder line = new StringBuilder(256);
+        for (Map.Entry<YearMonth, List<Integer>> e : archivedMonths().entrySet()) {
+            YearMonth month = e.getKey();
+            Instant monthStart = month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+            Instant monthEnd = month.plusMonths(1).atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+            if ((to != null && !monthStart.isBefore(to)) || (from != null && !monthEnd.isAfter(from))) continue;
+            months++;
+            for (int part : e.getValue()) {
+                try (LedgerArchiveReader reader = LedgerArchiveReader.open(file(month, part))) {
+                    LedgerArchiveReader.ScanStats stats = reader.scan(accountId, from, to, tx -> {
+                        line.setLength(0);
+                        csv(line, tx);
+                        try {
+                            out.append(line);
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    });
+                    rows += stats.rows();
+                    groupsRead += stats.groupsRead();
+                    groupsSkipped += stats.groupsSkipped();
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+            }
+        }
+        out.flush();
+        long elapsed = System.nanoTime() - started;
+        exportTime.record(elapsed, TimeUnit.NANOSECONDS);
+        registry.counter("ussd.archive.export.rows").increment(rows);
+        double seconds = elapsed / 1e9;
+        ExportReport report = new ExportReport(rows, months, groupsRead, groupsSkipped, seconds, rows / Math.max(seconds, 1e-9));
+        log.info("Archive export account={} from={} to={}: {} rows from {} months, {} groups read, {} skipped, {} rows/s",
+                accountId, from, to, rows, months, groupsRead, groupsSkipped, String.format("%.0f", report.rowsPerSecond()));
+        return report;
+    }
+
+    // files with no purge marker: just written, or an earlier purge that did not finish
+    private long purgePending() throws IOException {
+        PreparedStatement delete = session.prepare(DELETE);
+        long purged = 0;
+        for (Map.Entry<YearMonth, List<Integer>> e : archivedMonths().entrySet()) {
+            for (int part : e.getValue()) {
+                Path marker = marker(e.getKey(), part);
+                if (Files.exists(marker)) continue;
+                Semaphore inFlight = new Semaphore(purgeConcurrency);
+                AtomicReference<Throwable> failure = new AtomicReference<>();
+                long deleted;
+                try (LedgerArchiveReader reader = LedgerArchiveReader.open(file(e.getKey(), part))) {
+                    deleted = reader.scan(null, null, null, tx -> {
+                        rateLimiter.acquirePermission();
+                        holdLease();
+                        inFlight.acquireUninterruptibly();
+                        session.executeAsync(delete.bind(tx.getId()).setIdempotent(true)
+                                        .setConsistencyLevel(DefaultConsistencyLevel.LOCAL_QUORUM))
+                                .whenComplete((rs, err) -> {
+                                    if (err != null) failure.compareAndSet(null, err);
+                                    inFlight.release();
+                                });
+                    }).rows();
+                } finally {
+                    inFlight.acquireUninterruptibly(purgeConcurrency);
+                }
+                if (failure.get() != null) {
+                    log.warn("Purge of {} incomplete, resuming on the next run: {}", name(e.getKey(), part), failure.get().getMessage());
+                    registry.counter("ussd.archive.purge.failed").increment();
+                    continue;
+                }
+                Files.createFile(marker);
+                purged += deleted;
+            }
+        }
+        return purged;
+    }
+
+    // the part numbers on disk for each month, 0 being YYYY-MM.utxa itself
+    private Map<YearMonth, List<Integer>> archivedMonths() throws IOException {
+        Map<YearMonth, List<Integer>> months = new TreeMap<>();
+        if (!Files.isDirectory(directory)) return months;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + LedgerArchiveFormat.SUFFIX)) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                String stem = name.substring(0, name.length() - LedgerArchiveFormat.SUFFIX.length());
+                int dot = stem.indexOf(PART);
+                try {
+                    int part = dot < 0 ? 0 : Integer.parseInt(stem.substring(dot + PART.length()));
+                    if (part < 0) throw new NumberFormatException(stem);
+                    months.computeIfAbsent(YearMonth.parse(dot < 0 ? stem : stem.substring(0, dot)), m -> new ArrayList<>()).add(part);
+                } catch (DateTimeParseException | NumberFormatException e) {
+                    log.warn("Ignoring {} in the archive directory", name);
+                }
+            }
+        }
+        months.values().forEach(parts -> parts.sort(null));
+        return months;
+    }
+
+    private boolean allPurged(YearMonth month, List<Integer> parts) {
+        return parts.stream().allMatch(part -> Files.exists(marker(month, part)));
+    }
+
+    private void deleteTmpFiles() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + LedgerArchiveFormat.SUFFIX + TMP)) {
+            for (Path f : files) Files.deleteIfExists(f);
+        }
+    }
+
+    static String name(YearMonth month, int part) {
+        return part == 0 ? month.toString() : month + PART + part;
+    }
+
+    Path file(YearMonth month, int part) {
+        return directory.resolve(name(month, part) + LedgerArchiveFormat.SUFFIX);
+    }
+
+    private Path tmpFile(YearMonth month, int part) {
+        return directory.resolve(name(month, part) + LedgerArchiveFormat.SUFFIX + TMP);
+    }
+
+    private Path marker(YearMonth month, int part) {
+        return directory.resolve(name(month, part) + PURGED);
+    }
+
+    private static Transaction transaction(Row row) {
+        return Transaction.builder()
+                .id(row.getUuid("id"))
+                .accountId(row.get("accountid", Long.class))
+                .type(row.getString("type"))
+                .amount(row.getBigDecimal("amount"))
+                .currency(row.getString("currency"))
+                .createdAt(row.getInstant("createdat"))
+                .status(row.getString("status"))
+                .meta(row.getString("meta"))
+                .build();
+    }
+
+    static void csv(StringBuilder line, Transaction tx) {
+        line.append(tx.getId()).append(',')
+                .append(tx.getAccountId()).append(',');
+        field(line, tx.getType());
+        line.append(',');
+        if (tx.getAmount() != null) line.append(tx.getAmount().toPlainString());
+        line.append(',');
+        field(line, tx.getCurrency());
+        line.append(',').append(tx.getCreatedAt()).append(',');
+        field(line, tx.getStatus());
+        line.append(',');
+        field(line, tx.getMeta());
+        line.append('\n');
+    }
+
+    private static void field(StringBuilder line, String value) {
+        if (value == null) return;
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') line.append('"');
+            line.append(c);
+        }
+        line.append('"');
+    }
+}
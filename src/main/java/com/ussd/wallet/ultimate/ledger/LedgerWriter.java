@@ -0,0 +1,220 @@
+package com.ussd.wallet.ultimate.ledger;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.retry.RetryScheduler;
+import com.ussd.wallet.ultimate.tracing.Span;
+import com.ussd.wallet.ultimate.tracing.Tracing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Writes to the transactions ledger table through prepared statements and the driver's async API,
+// instead of repository saves that block and rewrite every column. New rows are inserted once;
+// status changes only touch status/meta.
+//
+// Write timestamps come from the transaction's createdAt, not from the clock: its millisecond, with
+// the lifecycle rank in the microseconds below it. A terminal status therefore always carries the
+// newest timestamp for its row, and a late PENDING insert (a Kafka redelivery, a DLT replay) or a
+// stale saga update loses to it in Cassandra's last-write-wins, whatever order the writes arrive
+// in. Replays write identical cells. No cell is dated more than a millisecond past createdAt, and
+// only millisecond precision is used because that is all the saga state keeps of createdAt. Every
+// ledger write has to go through here for the ordering to hold.
+//
+// In-flight requests are capped per node; a write that cannot get a permit in time, or that fails,
+// is handed to the RetryScheduler and the returned stage completes exceptionally.
+@Service
+public class LedgerWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(LedgerWriter.class);
+
+    public static final String APPEND_RETRY = "LEDGER_APPEND";
+    public static final String STATUS_RETRY = "LEDGER_STATUS";
+
+    // column names follow the entity's unquoted property names
+    enum Statement {
+        INSERT("insert", "INSERT INTO transactions (id, accountid, type, amount, currency, createdat, status, meta) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?) USING TIMESTAMP ?"),
+        STATUS("status", "UPDATE transactions USING TIMESTAMP ? SET status = ?, meta = ? WHERE id = ?");
+
+        final String tag;
+        final String cql;
+
+        Statement(String tag, String cql) {
+            this.tag = tag;
+            this.cql = cql;
+        }
+    }
+
+    public record StatusChange(UUID id, Instant createdAt, String status, String meta) {
+    }
+
+    private final CqlSession session;
+    private final RetryScheduler retryScheduler;
+    private final MeterRegistry registry;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final long acquireTimeoutMs;
+    private final Map<Statement, CompletableFuture<PreparedStatement>> prepared = new ConcurrentHashMap<>();
+    private final Map<Statement, Timer> latency = new EnumMap<>(Statement.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    public LedgerWriter(@Lazy CqlSession session, @Lazy RetryScheduler retryScheduler, MeterRegistry registry,
+                        @Value("${ussd.ledger.max-in-flight:256}") int maxInFlight,
+                        @Value("${ussd.ledger.acquire-timeout-ms:100}") long acquireTimeoutMs) {
+        this.session = session;
+        this.retryScheduler = retryScheduler;
+        this.registry = registry;
+        this.maxInFlight = maxInFlight;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.inFlight = new Semaphore(maxInFlight);
+        for (Statement statement : Statement.values()) {
+            latency.put(statement, Timer.builder("ussd.ledger.write").tag("statement", statement.tag)
+                    .publishPercentiles(0.5, 0.99).register(registry));
+        }
+        registry.gauge("ussd.ledger.in_flight", this, LedgerWriter::inFlight);
+    }
+
+    @PostConstruct
+    public void registerRetries() {
+        retryScheduler.register(APPEND_RETRY, payload ->
+                insert(objectMapper.readValue(payload, Transaction.class)).toCompletableFuture().get(10, TimeUnit.SECONDS));
+        retryScheduler.register(STATUS_RETRY, payload ->
+                status(objectMapper.readValue(payload, StatusChange.class)).toCompletableFuture().get(10, TimeUnit.SECONDS));
+    }
+
+    // the whole row, for a transaction seen for the first time; repeating it is harmless
+    public CompletionStage<Void> append(Transaction tx) {
+        if (tx.getCreatedAt() == null) tx.setCreatedAt(Instant.now());
+        return retryOnFailure(insert(tx), APPEND_RETRY, tx, tx.getId());
+    }
+
+    // status and meta only; a null meta leaves the stored one alone
+    public CompletionStage<Void> updateStatus(UUID id, Instant createdAt, String status, String meta) {
+        StatusChange change = new StatusChange(id, createdAt, status, meta);
+        return retryOnFailure(status(change), STATUS_RETRY, change, id);
+    }
+
+    CompletionStage<Void> insert(Transaction tx) {
+        return execute(Statement.INSERT, tx.getId(), tx.getAccountId(), tx.getType(), tx.getAmount(), tx.getCurrency(),
+                tx.getCreatedAt(), tx.getStatus(), tx.getMeta(), writeTimestamp(tx.getCreatedAt(), tx.getStatus()));
+    }
+
+    CompletionStage<Void> status(StatusChange c) {
+        return execute(Statement.STATUS, writeTimestamp(c.createdAt(), c.status()), c.status(), c.meta(), c.id());
+    }
+
+    // so the first ledger writes after startup do not wait for a prepare round trip
+    public void prepareAll() {
+        CompletableFuture.allOf(Arrays.stream(Statement.values()).map(this::prepare).toArray(CompletableFuture[]::new)).join();
+    }
+
+    public int inFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    // PENDING < anything in progress < SUCCESS/FAILED, within createdAt's millisecond
+    static long writeTimestamp(Instant createdAt, String status) {
+        Instant base = createdAt != null ? createdAt : Instant.now();
+        return TimeUnit.MILLISECONDS.toMicros(base.toEpochMilli()) + rank(status);
+    }
+
+    static int rank(String status) {
+        if (status == null || status.equalsIgnoreCase("PENDING")) return 0;
+        if (status.equalsIgnoreCase("SUCCESS") || status.equalsIgnoreCase("FAILED")) return 2;
+        return 1;
+    }
+
+    private CompletionStage<Void> execute(Statement statement, Object... values) {
+        boolean acquired;
+        try {
+            acquired = inFlight.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            registry.counter("ussd.ledger.rejected", "statement", statement.tag).increment();
+            return CompletableFuture.failedFuture(new RejectedExecutionException("ledger in-flight limit of " + maxInFlight + " reached"));
+        }
+
+        Span span = Tracing.async("cassandra ledger." + statement.tag);
+        long started = System.nanoTime();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            prepare(statement)
+                    .thenCompose(ps -> session.executeAsync(bind(ps, values)))
+                    .whenComplete((rs, err) -> {
+                        inFlight.release();
+                        latency.get(statement).record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                        if (err != null) {
+                            Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+                            registry.counter("ussd.ledger.failed", "statement", statement.tag).increment();
+                            span.error(cause);
+                            done.completeExceptionally(cause);
+                        } else {
+                            done.complete(null);
+                        }
+                        span.close();
+                    });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            span.error(e).close();
+            done.completeExceptionally(e);
+        }
+        return done;
+    }
+
+    // prepared once per node; a failed prepare is dropped so the next write tries again
+    private CompletableFuture<PreparedStatement> prepare(Statement statement) {
+        return prepared.computeIfAbsent(statement, s -> {
+            CompletableFuture<PreparedStatement> future = session.prepareAsync(s.cql).toCompletableFuture();
+            future.whenComplete((ps, err) -> {
+                if (err != null) prepared.remove(s, future);
+            });
+            return future;
+        });
+    }
+
+    // unset rather than null, so a missing value neither overwrites nor leaves a tombstone
+    private static BoundStatement bind(PreparedStatement ps, Object[] values) {
+        BoundStatement bound = ps.bind(values);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) bound = bound.unset(i);
+        }
+        return bound.setIdempotent(true);
+    }
+
+    private CompletionStage<Void> retryOnFailure(CompletionStage<Void> write, String type, Object payload, UUID id) {
+        return write.whenComplete((ok, err) -> {
+            if (err == null) return;
+            log.warn("Ledger write for tx={} failed, scheduling retry: {}", id, err.getMessage());
+            try {
+                retryScheduler.schedule(type, objectMapper.writeValueAsString(payload), err.getMessage());
+            } catch (Exception e) {
+                log.error("Cannot queue ledger retry for tx={}: {}", id, e.getMessage(), e);
+            }
+        });
+    }
+}
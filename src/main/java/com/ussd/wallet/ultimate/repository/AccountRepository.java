@@ -2,8 +2,28 @@ package com.ussd.wallet.ultimate.repository;
 
 import com.ussd.wallet.ultimate.domain.Account;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.math.BigDecimal;
+import java.util.List;
 import java.util.Optional;
 
 public interface AccountRepository extends JpaRepository<Account, Long> {
+    @Transactional(readOnly = true)
     Optional<Account> findByUserIdAndCurrency(Long userId, String currency);
+
+    // every currency a user holds, in one query
+    @Transactional(readOnly = true)
+    List<Account> findByUserId(Long userId);
+
+    // 0 rows updated means insufficient funds; the version bump keeps @Version readers honest
+    @Modifying
+    @Query("update Account a set a.balance = a.balance - :amount, a.version = a.version + 1 where a.id = :id and a.balance >= :amount")
+    int debitById(@Param("id") Long id, @Param("amount") BigDecimal amount);
+
+    @Modifying
+    @Query("update Account a set a.balance = a.balance + :amount, a.version = a.version + 1 where a.id = :id")
+    int creditById(@Param("id") Long id, @Param("amount") BigDecimal amount);
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package com.ussd.wallet.ultimate.repository;
+
+import com.ussd.wallet.ultimate.domain.AccountSlot;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public interface AccountSlotRepository extends JpaRepository<AccountSlot, Long> {
+
+    @Modifying
+    @Query("update AccountSlot s set s.balance = s.balance + :amount where s.accountId = :accountId and s.slot = :slot")
+    int creditByAccountIdAndSlot(@Param("accountId") Long accountId, @Param("slot") int slot, @Param("amount") BigDecimal amount);
+
+    // 0 rows updated means the slot does not hold enough
+    @Modifying
+    @Query("update AccountSlot s set s.balance = s.balance - :amount where s.accountId = :accountId and s.slot = :slot and s.balance >= :amount")
+    int debitByAccountIdAndSlot(@Param("accountId") Long accountId, @Param("slot") int slot, @Param("amount") BigDecimal amount);
+
+    // plain read, no locks: which slots could take the debit on their own, in slot order
+    @Query("select s.slot from AccountSlot s where s.accountId = :accountId and s.balance >= :amount order by s.slot")
+    List<Integer> findSlotsByAccountIdCovering(@Param("accountId") Long accountId, @Param("amount") BigDecimal amount);
+
+    // locks every slot in slot order, the same order for every caller
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<AccountSlot> findByAccountIdOrderBySlot(Long accountId);
+
+    @Query("select coalesce(sum(s.balance), 0) from AccountSlot s where s.accountId = :accountId")
+    BigDecimal sumBalanceByAccountId(@Param("accountId") Long accountId);
+}
@@ -0,0 +1,10 @@
+package com.ussd.wallet.ultimate.repository;
+
+import com.ussd.wallet.ultimate.domain.PendingTransaction;
+import com.ussd.wallet.ultimate.domain.PendingTransactionKey;
+import org.springframework.data.cassandra.repository.CassandraRepository;
+import java.util.List;
+
+public interface PendingTransactionRepository extends CassandraRepository<PendingTransaction, PendingTransactionKey> {
+    List<PendingTransaction> findByKeyBucket(String bucket);
+}
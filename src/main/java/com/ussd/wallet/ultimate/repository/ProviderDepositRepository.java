@@ -0,0 +1,15 @@
+package com.ussd.wallet.ultimate.repository;
+
+import com.ussd.wallet.ultimate.domain.ProviderDeposit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ProviderDepositRepository extends JpaRepository<ProviderDeposit, Long> {
+
+    @Query("select d.providerRef from ProviderDeposit d where d.accountId = :accountId and d.providerRef in :refs")
+    List<String> findRefsByAccountIdAndProviderRefIn(@Param("accountId") Long accountId, @Param("refs") Collection<String> refs);
+}
@@ -0,0 +1,34 @@
+package com.ussd.wallet.ultimate.repository;
+
+import com.ussd.wallet.ultimate.domain.ShardTransfer;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Optional;
+
+// Every method takes the leg's account id first, which routes it to that account's shard.
+public interface ShardTransferRepository extends JpaRepository<ShardTransfer, String> {
+
+    // 0 when the leg already exists; the caller then reads it to see what happened
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO shard_transfers (id, transfer_id, leg, account_id, counterparty_account_id, amount, currency, status, created_at, updated_at) "
+            + "VALUES (CONCAT(:transferId, ':', :leg), :transferId, :leg, :accountId, :counterpartyAccountId, :amount, :currency, :status, :now, :now)",
+            nativeQuery = true)
+    int insertLegByAccountId(@Param("accountId") Long accountId, @Param("transferId") String transferId, @Param("leg") String leg,
+                             @Param("counterpartyAccountId") Long counterpartyAccountId, @Param("amount") BigDecimal amount,
+                             @Param("currency") String currency, @Param("status") String status, @Param("now") Instant now);
+
+    @Query("select t from ShardTransfer t where t.accountId = :accountId and t.id = :id")
+    Optional<ShardTransfer> findByAccountIdAndId(@Param("accountId") Long accountId, @Param("id") String id);
+
+    // 0 rows updated means another node moved the leg first
+    @Modifying
+    @Query("update ShardTransfer t set t.status = :to, t.updatedAt = :now where t.accountId = :accountId and t.id = :id and t.status in :from")
+    int transitionByAccountId(@Param("accountId") Long accountId, @Param("id") String id, @Param("from") Collection<String> from,
+                              @Param("to") String to, @Param("now") Instant now);
+}
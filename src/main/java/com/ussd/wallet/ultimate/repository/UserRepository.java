@@ -2,8 +2,10 @@ package com.ussd.wallet.ultimate.repository;
 
 import com.ussd.wallet.ultimate.domain.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
+    @Transactional(readOnly = true)
     Optional<User> findByMsisdn(String msisdn);
 }
@@ -0,0 +1,8 @@
+package com.ussd.wallet.ultimate.repository;
+
+import com.ussd.wallet.ultimate.domain.WithdrawalSagaState;
+import org.springframework.data.cassandra.repository.CassandraRepository;
+import java.util.UUID;
+
+public interface WithdrawalSagaStateRepository extends CassandraRepository<WithdrawalSagaState, UUID> {
+}
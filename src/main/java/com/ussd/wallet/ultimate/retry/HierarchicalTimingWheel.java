@@ -0,0 +1,94 @@
+package com.ussd.wallet.ultimate.retry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Hierarchical timing wheel (as in Kafka's purgatory): O(1) insert, and advancing the clock
+// only touches the buckets whose time has passed, however many timers are pending.
+// Not thread-safe; RetryActor is its only user.
+public class HierarchicalTimingWheel<T> {
+
+    private record Entry<T>(long expirationMs, T value) {}
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final List<Entry<T>>[] buckets;
+    private final HierarchicalTimingWheel<T> root;
+    private HierarchicalTimingWheel<T> overflow;
+    private long currentTime;
+    private int size;
+
+    public HierarchicalTimingWheel(long tickMs, int wheelSize, long startMs) {
+        this(tickMs, wheelSize, startMs, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private HierarchicalTimingWheel(long tickMs, int wheelSize, long startMs, HierarchicalTimingWheel<T> root) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.buckets = new List[wheelSize];
+        this.root = root == null ? this : root;
+        this.currentTime = startMs - (startMs % tickMs);
+    }
+
+    // returns false when the timer is already due; the caller should fire it straight away
+    public boolean add(long expirationMs, T value) {
+        if (!addEntry(new Entry<>(expirationMs, value))) return false;
+        root.size++;
+        return true;
+    }
+
+    private boolean addEntry(Entry<T> e) {
+        if (e.expirationMs < currentTime + tickMs) {
+            return false;
+        } else if (e.expirationMs < currentTime + interval) {
+            int idx = (int) ((e.expirationMs / tickMs) % wheelSize);
+            if (buckets[idx] == null) buckets[idx] = new ArrayList<>();
+            buckets[idx].add(e);
+            return true;
+        } else {
+            if (overflow == null) overflow = new HierarchicalTimingWheel<>(interval, wheelSize, currentTime, root);
+            return overflow.addEntry(e);
+        }
+    }
+
+    // moves the clock to nowMs and hands every expired value to sink
+    public void advance(long nowMs, Consumer<T> sink) {
+        List<Entry<T>> drained = drain(nowMs);
+        for (Entry<T> e : drained) {
+            root.size--;
+            if (root.addEntry(e)) {
+                root.size++;
+            } else {
+                sink.accept(e.value);
+            }
+        }
+    }
+
+    // empties every bucket whose time range has started, on this level and the ones above it.
+    // All clocks are moved before anything is re-inserted, so entries cascade down a level
+    // or fire (within one root tick of their expiration).
+    private List<Entry<T>> drain(long nowMs) {
+        List<Entry<T>> drained = new ArrayList<>();
+        long firstTick = currentTime / tickMs;
+        long nowTick = nowMs / tickMs;
+        long steps = Math.min(nowTick - firstTick + 1, wheelSize);
+        for (long i = 0; i < steps; i++) {
+            int idx = (int) ((firstTick + i) % wheelSize);
+            if (buckets[idx] != null) {
+                drained.addAll(buckets[idx]);
+                buckets[idx] = null;
+            }
+        }
+        if (nowTick > firstTick) currentTime = nowTick * tickMs;
+        if (overflow != null) drained.addAll(overflow.drain(nowMs));
+        return drained;
+    }
+
+    public int size() {
+        return root.size;
+    }
+}
@@ -0,0 +1,7 @@
+package com.ussd.wallet.ultimate.retry;
+
+// Re-runs one kind of failed work. Throwing schedules another attempt (or dead-letters the task).
+@FunctionalInterface
+public interface RetryHandler {
+    void handle(String payload) throws Exception;
+}
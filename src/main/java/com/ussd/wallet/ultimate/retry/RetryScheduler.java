@@ -0,0 +1,144 @@
+package com.ussd.wallet.ultimate.retry;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import com.ussd.wallet.ultimate.actors.RetryActor;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Durable delayed retries. Tasks live in Redis (RetryStore); each node's RetryActor claims the
+// ones due within the horizon into an in-process timing wheel and fires them on the worker pool.
+@Service
+public class RetryScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryScheduler.class);
+
+    private final RetryStore store;
+    private final ActorSystem<Void> actorSystem;
+    private final MeterRegistry registry;
+    private final Map<String, RetryHandler> handlers = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+    private final ExecutorService claimExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicLong pending = new AtomicLong();
+
+    @Value("${ussd.retry.base-delay-ms:1000}")
+    private long baseDelayMs;
+
+    @Value("${ussd.retry.max-delay-ms:600000}")
+    private long maxDelayMs;
+
+    @Value("${ussd.retry.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${ussd.retry.horizon-ms:60000}")
+    private long horizonMs;
+
+    @Value("${ussd.retry.lease-ms:30000}")
+    private long leaseMs;
+
+    @Value("${ussd.retry.claim-batch:500}")
+    private int claimBatch;
+
+    @Value("${ussd.retry.poll-interval-ms:200}")
+    private long pollIntervalMs;
+
+    public RetryScheduler(RetryStore store, @Lazy ActorSystem<Void> actorSystem, MeterRegistry registry,
+                          @Value("${ussd.retry.workers:8}") int workerCount) {
+        this.store = store;
+        this.actorSystem = actorSystem;
+        this.registry = registry;
+        this.workers = Executors.newFixedThreadPool(workerCount);
+        registry.gauge("ussd.retry.pending", pending);
+    }
+
+    public void register(String type, RetryHandler handler) {
+        handlers.put(type, handler);
+    }
+
+    public void schedule(String type, String payload, String error) {
+        RetryTask task = new RetryTask(UUID.randomUUID().toString(), type, payload, 0,
+                System.currentTimeMillis() + backoffMillis(0), error);
+        try {
+            store.save(task);
+            registry.counter("ussd.retry.scheduled", "type", type).increment();
+        } catch (Exception e) {
+            // nowhere left to put it; keep enough in the log to replay by hand
+            log.error("Could not schedule retry type={} payload={}: {}", type, payload, e.getMessage(), e);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        actorSystem.systemActorOf(RetryActor.create(this, Duration.ofMillis(pollIntervalMs)), "retry-scheduler", Props.empty());
+        log.info("Retry scheduler started");
+    }
+
+    public List<RetryTask> claimDue() {
+        long now = System.currentTimeMillis();
+        List<RetryTask> claimed = store.claim(now + horizonMs, now + horizonMs + leaseMs, claimBatch);
+        pending.set(store.pendingCount());
+        return claimed;
+    }
+
+    public ExecutorService claimExecutor() {
+        return claimExecutor;
+    }
+
+    public void dispatch(RetryTask task) {
+        workers.execute(() -> run(task));
+    }
+
+    private void run(RetryTask task) {
+        RetryHandler handler = handlers.get(task.type());
+        if (handler == null) {
+            // the owning bean may not be created yet on this node (lazy startup); try again shortly
+            store.save(task.deferred(System.currentTimeMillis() + baseDelayMs));
+            return;
+        }
+        try {
+            handler.handle(task.payload());
+            store.complete(task);
+            registry.counter("ussd.retry.executed", "type", task.type(), "outcome", "success").increment();
+        } catch (Exception e) {
+            int attempts = task.attempts() + 1;
+            RetryTask next = task.next(System.currentTimeMillis() + backoffMillis(attempts), e.getMessage());
+            if (attempts >= maxAttempts) {
+                log.error("Retry {} type={} dead-lettered after {} attempts: {}", task.id(), task.type(), attempts, e.getMessage());
+                store.deadLetter(next);
+                registry.counter("ussd.retry.executed", "type", task.type(), "outcome", "dead_letter").increment();
+            } else {
+                store.save(next);
+                registry.counter("ussd.retry.executed", "type", task.type(), "outcome", "retry").increment();
+            }
+        }
+    }
+
+    // exponential with "equal jitter": half the delay is fixed, half random, so retries spread out
+    long backoffMillis(int attempt) {
+        long exp = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt, 30));
+        return exp / 2 + ThreadLocalRandom.current().nextLong(exp / 2 + 1);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+        claimExecutor.shutdown();
+    }
+}
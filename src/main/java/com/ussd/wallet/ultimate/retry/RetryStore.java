@@ -0,0 +1,90 @@
+package com.ussd.wallet.ultimate.retry;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Redis layout: task bodies in a hash, due times in a sorted set (O(log n) per task, so the
+// cost of a poll does not grow with the number of pending retries), failures in a dead-letter hash.
+@Component
+public class RetryStore {
+
+    static final String TASKS_KEY = "retry:tasks";
+    static final String DUE_KEY = "retry:due";
+    static final String DEAD_KEY = "retry:dead";
+
+    // claims tasks due before ARGV[1] by pushing their score to the lease expiry ARGV[2];
+    // if the claiming node dies the task becomes due again once the lease runs out
+    private static final RedisScript<List> CLAIM = new DefaultRedisScript<>(
+            "local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[3]))\n"
+                    + "local out = {}\n"
+                    + "for _, id in ipairs(ids) do\n"
+                    + "  local body = redis.call('HGET', KEYS[2], id)\n"
+                    + "  if body then\n"
+                    + "    redis.call('ZADD', KEYS[1], ARGV[2], id)\n"
+                    + "    table.insert(out, body)\n"
+                    + "  else\n"
+                    + "    redis.call('ZREM', KEYS[1], id)\n"
+                    + "  end\n"
+                    + "end\n"
+                    + "return out", List.class);
+
+    private final StringRedisTemplate redis;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public RetryStore(StringRedisTemplate redis) {
+        this.redis = redis;
+    }
+
+    public void save(RetryTask task) {
+        redis.opsForHash().put(TASKS_KEY, task.id(), write(task));
+        redis.opsForZSet().add(DUE_KEY, task.id(), task.dueAtMillis());
+    }
+
+    public List<RetryTask> claim(long dueBeforeMillis, long leaseUntilMillis, int limit) {
+        List<?> bodies = redis.execute(CLAIM, List.of(DUE_KEY, TASKS_KEY),
+                String.valueOf(dueBeforeMillis), String.valueOf(leaseUntilMillis), String.valueOf(limit));
+        List<RetryTask> tasks = new ArrayList<>();
+        if (bodies == null) return tasks;
+        for (Object body : bodies) {
+            tasks.add(read(body.toString()));
+        }
+        return tasks;
+    }
+
+    public void complete(RetryTask task) {
+        redis.opsForZSet().remove(DUE_KEY, task.id());
+        redis.opsForHash().delete(TASKS_KEY, task.id());
+    }
+
+    public void deadLetter(RetryTask task) {
+        redis.opsForHash().put(DEAD_KEY, task.id(), write(task));
+        complete(task);
+    }
+
+    public long pendingCount() {
+        Long n = redis.opsForZSet().zCard(DUE_KEY);
+        return n == null ? 0 : n;
+    }
+
+    private String write(RetryTask task) {
+        try {
+            return objectMapper.writeValueAsString(task);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Unserializable retry task " + task.id(), e);
+        }
+    }
+
+    private RetryTask read(String body) {
+        try {
+            return objectMapper.readValue(body, RetryTask.class);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Corrupt retry task: " + body, e);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.ussd.wallet.ultimate.retry;
+
+// A unit of work to re-attempt later. payload is handler-specific JSON.
+public record RetryTask(String id, String type, String payload, int attempts, long dueAtMillis, String lastError) {
+
+    public RetryTask next(long dueAtMillis, String error) {
+        return new RetryTask(id, type, payload, attempts + 1, dueAtMillis, error);
+    }
+
+    public RetryTask deferred(long dueAtMillis) {
+        return new RetryTask(id, type, payload, attempts, dueAtMillis, lastError);
+    }
+}
@@ -0,0 +1,300 @@
+package com.ussd.wallet.ultimate.saga;
+
+import com.ussd.wallet.ultimate.domain.PendingTransaction;
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.domain.WithdrawalSagaState;
+import com.ussd.wallet.ultimate.ledger.LedgerWriter;
+import com.ussd.wallet.ultimate.repository.WithdrawalSagaStateRepository;
+import com.ussd.wallet.ultimate.service.AccountService;
+import com.ussd.wallet.ultimate.service.ClusterLease;
+import com.ussd.wallet.ultimate.service.FlutterwavePaymentService;
+import com.ussd.wallet.ultimate.service.PendingTransactionIndex;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Finds withdrawals that have sat in the pending index too long and either restarts their
+// saga or, past the compensation threshold, credits the funds back and closes them.
+// Every node schedules the sweep; the Redis lease lets one of them run it at a time.
+@Service
+public class PendingTransactionSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(PendingTransactionSweeper.class);
+
+    static final String LEASE = "pending-sweeper";
+
+    public record SweepReport(Instant at, int scanned, int stuck, int restarted, int compensated,
+                              Map<String, Integer> ageHistogram) {}
+
+    private final PendingTransactionIndex pendingIndex;
+    private final SagaCoordinatorService sagaCoordinator;
+    private final WithdrawalSagaStateRepository stateRepo;
+    private final LedgerWriter ledgerWriter;
+    private final AccountService accountService;
+    private final FlutterwavePaymentService paymentService;
+    private final WithdrawalSagaTransitions transitions;
+    private final ClusterLease lease;
+    private final ExecutorService workers;
+    private final RateLimiter rateLimiter;
+    private final AtomicInteger stuckGauge = new AtomicInteger();
+    private final DistributionSummary stuckAge;
+    private final MeterRegistry registry;
+    private volatile SweepReport lastReport;
+
+    @Value("${ussd.sweeper.lookback-hours:48}")
+    private long lookbackHours;
+
+    @Value("${ussd.sweeper.stuck-after-minutes:10}")
+    private long stuckAfterMinutes;
+
+    @Value("${ussd.sweeper.compensate-after-hours:24}")
+    private long compensateAfterHours;
+
+    // longer than a sweep can take, so a second node does not start while the first still runs
+    @Value("${ussd.sweeper.lease-ms:300000}")
+    private long leaseMs = 300_000;
+
+    public PendingTransactionSweeper(PendingTransactionIndex pendingIndex,
+                                     SagaCoordinatorService sagaCoordinator,
+                                     WithdrawalSagaStateRepository stateRepo,
+                                     LedgerWriter ledgerWriter,
+                                     AccountService accountService,
+                                     FlutterwavePaymentService paymentService,
+                                     WithdrawalSagaTransitions transitions,
+                                     ClusterLease lease,
+                                     MeterRegistry registry,
+                                     @Value("${ussd.sweeper.parallelism:4}") int parallelism,
+                                     @Value("${ussd.sweeper.rate-per-second:50}") int ratePerSecond) {
+        this.pendingIndex = pendingIndex;
+        this.sagaCoordinator = sagaCoordinator;
+        this.stateRepo = stateRepo;
+        this.ledgerWriter = ledgerWriter;
+        this.accountService = accountService;
+        this.paymentService = paymentService;
+        this.transitions = transitions;
+        this.lease = lease;
+        this.registry = registry;
+        this.workers = Executors.newFixedThreadPool(parallelism);
+        this.rateLimiter = RateLimiter.of("pending-sweeper", RateLimiterConfig.custom()
+                .limitForPeriod(ratePerSecond)
+                .limitRefreshPeriod(Duration.ofSeconds(1))
+                .timeoutDuration(Duration.ofMinutes(1))
+                .build());
+        registry.gauge("ussd.pending.stuck.count", stuckGauge);
+        this.stuckAge = DistributionSummary.builder("ussd.pending.stuck.age")
+                .description("Age of stuck withdrawals found by the sweeper")
+                .baseUnit("seconds")
+                .publishPercentiles(0.5, 0.9, 0.99)
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${ussd.sweeper.interval-ms:60000}", initialDelayString = "${ussd.sweeper.initial-delay-ms:60000}")
+    public void sweep() {
+        if (!lease.acquire(LEASE, Duration.ofMillis(leaseMs))) return;
+        try {
+            sweepOnce();
+        } finally {
+            lease.release(LEASE);
+        }
+    }
+
+    private void sweepOnce() {
+        Instant now = Instant.now();
+        Instant stuckBefore = now.minus(Duration.ofMinutes(stuckAfterMinutes));
+        Instant compensateBefore = now.minus(Duration.ofHours(compensateAfterHours));
+
+        List<PendingTransaction> rows;
+        try {
+            rows = pendingIndex.recent(Duration.ofHours(lookbackHours));
+        } catch (Exception e) {
+            log.error("Pending index scan failed: {}", e.getMessage(), e);
+            return;
+        }
+
+        List<PendingTransaction> stuck = new ArrayList<>();
+        Map<String, Integer> histogram = new LinkedHashMap<>();
+        for (String label : List.of("<15m", "<1h", "<6h", "<24h", ">=24h")) histogram.put(label, 0);
+        for (PendingTransaction row : rows) {
+            Instant touched = row.getUpdatedAt() != null ? row.getUpdatedAt() : row.getKey().getCreatedAt();
+            if (touched.isAfter(stuckBefore)) continue;
+            stuck.add(row);
+            Duration age = Duration.between(row.getKey().getCreatedAt(), now);
+            stuckAge.record(age.toSeconds());
+            histogram.merge(ageLabel(age), 1, Integer::sum);
+        }
+        stuckGauge.set(stuck.size());
+
+        AtomicInteger restarted = new AtomicInteger();
+        AtomicInteger compensated = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (PendingTransaction row : stuck) {
+            futures.add(workers.submit(() -> {
+                if (!rateLimiter.acquirePermission()) return;
+                try {
+                    if (row.getKey().getCreatedAt().isBefore(compensateBefore)) {
+                        if (compensate(row, stuckBefore)) compensated.incrementAndGet();
+                    } else if (restart(row)) {
+                        restarted.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    log.error("Sweeper could not recover tx={}: {}", row.getKey().getTxId(), e.getMessage(), e);
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (Exception e) {
+                log.warn("Sweeper task failed: {}", e.getMessage());
+            }
+        }
+        registry.counter("ussd.pending.sweeper.restarted").increment(restarted.get());
+        registry.counter("ussd.pending.sweeper.compensated").increment(compensated.get());
+
+        lastReport = new SweepReport(now, rows.size(), stuck.size(), restarted.get(), compensated.get(), histogram);
+        if (!stuck.isEmpty()) {
+            log.warn("Pending sweep: scanned={} stuck={} restarted={} compensated={} ages={}",
+                    rows.size(), stuck.size(), restarted.get(), compensated.get(), histogram);
+        }
+    }
+
+    public SweepReport lastReport() {
+        return lastReport;
+    }
+
+    private boolean restart(PendingTransaction row) {
+        Optional<WithdrawalSagaState> state = stateRepo.findById(row.getKey().getTxId());
+        if (state.isPresent() && state.get().isTerminal()) {
+            // the saga finished but its index cleanup was lost
+            pendingIndex.clear(row.getKey().getTxId(), row.getKey().getCreatedAt());
+            return false;
+        }
+        if (state.isPresent() && !state.get().isResumable()) return false;
+        sagaCoordinator.startWithdrawalSaga(toTransaction(row));
+        return true;
+    }
+
+    // Claim, ask the provider, then refund. The claim (a compare-and-set to COMPENSATING) keeps the
+    // saga from starting another attempt and a second sweeper from refunding again; a payout the
+    // provider made, or may still make, is never refunded.
+    private boolean compensate(PendingTransaction row, Instant stuckBefore) {
+        UUID txId = row.getKey().getTxId();
+        WithdrawalSagaState state = stateRepo.findById(txId).orElse(null);
+        if (state != null && state.isTerminal()) {
+            pendingIndex.clear(txId, row.getKey().getCreatedAt());
+            return false;
+        }
+        if (state != null && WithdrawalSagaState.COMPENSATING.equals(state.getStatus())) {
+            // a refund was claimed and never finished; whether the credit landed is not known here
+            log.error("Withdrawal tx={} has been COMPENSATING since {}, needs manual review", txId, state.getUpdatedAt());
+            registry.counter("ussd.pending.sweeper.review").increment();
+            return false;
+        }
+        if (state != null && state.getUpdatedAt() != null && state.getUpdatedAt().isAfter(stuckBefore)) {
+            // the saga touched it since the index row was read
+            return false;
+        }
+
+        String previous = state != null ? state.getStatus() : WithdrawalSagaState.PENDING;
+        Instant previousUpdate = state != null ? state.getUpdatedAt() : row.getUpdatedAt();
+        WithdrawalSagaState claim = state != null ? state : fromRow(row);
+        claim.setStatus(WithdrawalSagaState.COMPENSATING);
+        claim.setOwner(lease.holder());
+        claim.setUpdatedAt(Instant.now());
+        if (!(state != null ? transitions.transition(claim, previous) : transitions.create(claim))) return false;
+
+        switch (paymentService.transferStatus(txId.toString())) {
+            case PAID -> {
+                closePaid(row, claim);
+                return false;
+            }
+            case PROCESSING, UNKNOWN -> {
+                // hand it back as it was, so the next sweep asks again
+                claim.setStatus(previous);
+                claim.setUpdatedAt(previousUpdate);
+                transitions.transition(claim, WithdrawalSagaState.COMPENSATING);
+                return false;
+            }
+            default -> {
+                // FAILED or NOT_FOUND: the provider will not pay this out
+            }
+        }
+
+        accountService.compensateCredit(row.getAccountId(), row.getAmount(), row.getCurrency(), "stuck_pending_sweeper");
+        claim.setStatus(WithdrawalSagaState.FAILED);
+        claim.setLastError("stuck_pending_sweeper");
+        claim.setUpdatedAt(Instant.now());
+        transitions.transition(claim, WithdrawalSagaState.COMPENSATING);
+        // the whole row: a withdrawal stuck this long may never have had its PENDING row written
+        Transaction tx = toTransaction(row);
+        tx.setStatus("FAILED");
+        ledgerWriter.append(tx);
+        pendingIndex.clear(txId, row.getKey().getCreatedAt());
+        return true;
+    }
+
+    // the provider paid out but the saga never recorded it
+    private void closePaid(PendingTransaction row, WithdrawalSagaState claim) {
+        log.warn("Stuck withdrawal tx={} was paid by the provider, closing it as SUCCESS", claim.getTxId());
+        claim.setStatus(WithdrawalSagaState.SUCCESS);
+        claim.setUpdatedAt(Instant.now());
+        transitions.transition(claim, WithdrawalSagaState.COMPENSATING);
+        Transaction tx = toTransaction(row);
+        tx.setStatus("SUCCESS");
+        ledgerWriter.append(tx);
+        pendingIndex.clear(claim.getTxId(), row.getKey().getCreatedAt());
+    }
+
+    private static WithdrawalSagaState fromRow(PendingTransaction row) {
+        return WithdrawalSagaState.builder()
+                .txId(row.getKey().getTxId())
+                .accountId(row.getAccountId())
+                .amount(row.getAmount())
+                .currency(row.getCurrency())
+                .createdAt(row.getKey().getCreatedAt())
+                .build();
+    }
+
+    private static Transaction toTransaction(PendingTransaction row) {
+        return Transaction.builder()
+                .id(row.getKey().getTxId())
+                .accountId(row.getAccountId())
+                .type("WITHDRAW")
+                .amount(row.getAmount())
+                .currency(row.getCurrency())
+                .createdAt(row.getKey().getCreatedAt())
+                .status(row.getStatus())
+                .build();
+    }
+
+    private static String ageLabel(Duration age) {
+        if (age.compareTo(Duration.ofMinutes(15)) < 0) return "<15m";
+        if (age.compareTo(Duration.ofHours(1)) < 0) return "<1h";
+        if (age.compareTo(Duration.ofHours(6)) < 0) return "<6h";
+        if (age.compareTo(Duration.ofHours(24)) < 0) return "<24h";
+        return ">=24h";
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
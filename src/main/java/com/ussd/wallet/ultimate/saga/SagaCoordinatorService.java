@@ -2,17 +2,26 @@ package com.ussd.wallet.ultimate.saga;
 
 import akka.actor.typed.ActorSystem;
 
-import akka.actor.typed.Props;
+import akka.cluster.sharding.typed.ClusterShardingSettings;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
 import com.ussd.wallet.ultimate.domain.Transaction;
-import com.ussd.wallet.ultimate.repository.TransactionCassandraRepository;
+import com.ussd.wallet.ultimate.domain.WithdrawalSagaState;
+import com.ussd.wallet.ultimate.ledger.LedgerWriter;
+import com.ussd.wallet.ultimate.repository.WithdrawalSagaStateRepository;
 import com.ussd.wallet.ultimate.service.AccountService;
 import com.ussd.wallet.ultimate.service.FlutterwavePaymentService;
+import com.ussd.wallet.ultimate.service.PendingTransactionIndex;
 import com.ussd.wallet.ultimate.service.TwilioSmsService;
+import com.ussd.wallet.ultimate.tracing.Tracing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
+import java.time.Instant;
 import java.util.UUID;
 
 @Service
@@ -24,30 +33,66 @@ public class SagaCoordinatorService {
     private final FlutterwavePaymentService paymentService;
     private final AccountService accountService;
     private final TwilioSmsService smsService;
-    private final TransactionCassandraRepository cassandraRepo;
+    private final LedgerWriter ledgerWriter;
+    private final WithdrawalSagaStateRepository stateRepo;
+    private final PendingTransactionIndex pendingIndex;
+    private final WithdrawalSagaTransitions transitions;
+    private volatile ClusterSharding sharding;
 
-    public SagaCoordinatorService(ActorSystem<Void> actorSystem,
+    public SagaCoordinatorService(@Lazy ActorSystem<Void> actorSystem,
                                   FlutterwavePaymentService paymentService,
                                   AccountService accountService,
                                   TwilioSmsService smsService,
-                                  TransactionCassandraRepository cassandraRepo) {
+                                  LedgerWriter ledgerWriter,
+                                  WithdrawalSagaStateRepository stateRepo,
+                                  PendingTransactionIndex pendingIndex,
+                                  WithdrawalSagaTransitions transitions) {
         this.actorSystem = actorSystem;
         this.paymentService = paymentService;
         this.accountService = accountService;
         this.smsService = smsService;
-        this.cassandraRepo = cassandraRepo;
+        this.ledgerWriter = ledgerWriter;
+        this.stateRepo = stateRepo;
+        this.pendingIndex = pendingIndex;
+        this.transitions = transitions;
+    }
+
+    // every node has to host a shard region, not only the ones that consume Kafka events
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void initSharding() {
+        if (sharding != null) return;
+        ClusterSharding cs = ClusterSharding.get(actorSystem);
+        cs.init(Entity.of(WithdrawalSaga.TYPE_KEY, ctx -> WithdrawalSaga.create(
+                        UUID.fromString(ctx.getEntityId()), ctx.getShard(),
+                        paymentService, accountService, smsService, ledgerWriter, stateRepo, pendingIndex, transitions))
+                .withStopMessage(new WithdrawalSaga.Stop())
+                .withSettings(ClusterShardingSettings.create(actorSystem).withRememberEntities(true)));
+        sharding = cs;
+        log.info("Withdrawal saga sharding started on {}", actorSystem.address());
     }
 
     public void startWithdrawalSaga(Transaction transaction) {
-        // spawn a WithdrawalSaga actor per transaction
-        var name = "withdraw-saga-" + transaction.getId().toString();
-        var behavior = WithdrawalSaga.create(transaction, paymentService, accountService, smsService, cassandraRepo);
+        if (sharding == null) initSharding();
+        // state goes first so whichever node ends up hosting the entity can load it; an existing row,
+        // possibly already claimed by the sweeper, is left as it is
+        if (stateRepo.findById(transaction.getId()).isEmpty()) {
+            transitions.create(WithdrawalSagaState.builder()
+                    .txId(transaction.getId())
+                    .accountId(transaction.getAccountId())
+                    .amount(transaction.getAmount())
+                    .currency(transaction.getCurrency())
+                    .createdAt(transaction.getCreatedAt() != null ? transaction.getCreatedAt() : Instant.now())
+                    .status(WithdrawalSagaState.PENDING)
+                    .updatedAt(Instant.now())
+                    .traceParent(Tracing.traceparent())
+                    .build());
+        }
         try {
-            actorSystem.systemActorOf(behavior, name, Props.empty());
-            log.info("Spawned saga actor {}", name);
+            sharding.entityRefFor(WithdrawalSaga.TYPE_KEY, transaction.getId().toString())
+                    .tell(new WithdrawalSaga.Start(transaction.getId().toString()));
+            log.info("Dispatched withdrawal saga tx={}", transaction.getId());
         } catch (Exception e) {
-            log.error("Failed to spawn saga actor: {}", e.getMessage(), e);
+            log.error("Failed to dispatch saga for tx={}: {}", transaction.getId(), e.getMessage(), e);
         }
     }
 }
-
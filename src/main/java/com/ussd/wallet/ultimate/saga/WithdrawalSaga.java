@@ -2,62 +2,108 @@ package com.ussd.wallet.ultimate.saga;
 
 
 
+import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.javadsl.*;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
+import akka.cluster.typed.Cluster;
 
+import com.ussd.wallet.ultimate.actors.CborSerializable;
 import com.ussd.wallet.ultimate.domain.Transaction;
-import com.ussd.wallet.ultimate.repository.TransactionCassandraRepository;
+import com.ussd.wallet.ultimate.domain.WithdrawalSagaState;
+import com.ussd.wallet.ultimate.ledger.LedgerWriter;
+import com.ussd.wallet.ultimate.repository.WithdrawalSagaStateRepository;
 import com.ussd.wallet.ultimate.service.AccountService;
 import com.ussd.wallet.ultimate.service.FlutterwavePaymentService;
+import com.ussd.wallet.ultimate.service.PendingTransactionIndex;
 import com.ussd.wallet.ultimate.service.TwilioSmsService;
+import com.ussd.wallet.ultimate.tracing.Span;
+import com.ussd.wallet.ultimate.tracing.Tracing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
 import java.time.Duration;
-import java.util.Map;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
 
+// Sharded entity keyed by transaction id. Every transition is written to withdrawal_sagas
+// before acting on it, so when the owning node dies the entity is restarted elsewhere
+// (remember-entities) and picks up from the stored attempts/next retry time. Transitions are
+// compare-and-set on the stored status: if the sweeper claimed the row, the entity stands down.
 public class WithdrawalSaga extends AbstractBehavior<WithdrawalSaga.Command> {
 
     private static final Logger log = LoggerFactory.getLogger(WithdrawalSaga.class);
 
+    public static final EntityTypeKey<Command> TYPE_KEY = EntityTypeKey.create(Command.class, "WithdrawalSaga");
+
     public interface Command {}
 
-    public record Start() implements Command {}
+    // sent through the shard region, so it may cross nodes
+    public record Start(String txId) implements Command, CborSerializable {}
     public record PaymentResult(boolean success, String providerRef, String error) implements Command {}
     public record Retry() implements Command {}
+    public record Stop() implements Command {}
 
-    private final Transaction tx;
+    private final UUID txId;
+    private final ActorRef<ClusterSharding.ShardCommand> shard;
     private final FlutterwavePaymentService paymentService;
     private final AccountService accountService;
     private final TwilioSmsService smsService;
-    private final TransactionCassandraRepository cassandraRepo;
-    private int attempts = 0;
+    private final LedgerWriter ledgerWriter;
+    private final WithdrawalSagaStateRepository stateRepo;
+    private final PendingTransactionIndex pendingIndex;
+    private final WithdrawalSagaTransitions transitions;
+    private final String nodeAddress;
+    private WithdrawalSagaState state;
     private final int maxAttempts = 3;
+    // open from Retry until the PaymentResult of that attempt, which arrives as a separate message
+    private Span attempt = Span.NOOP;
 
-    public static Behavior<Command> create(Transaction tx,
+    public static Behavior<Command> create(UUID txId,
+                                           ActorRef<ClusterSharding.ShardCommand> shard,
                                            FlutterwavePaymentService paymentService,
                                            AccountService accountService,
                                            TwilioSmsService smsService,
-                                           TransactionCassandraRepository cassandraRepo) {
-        return Behaviors.setup(ctx -> new WithdrawalSaga(ctx, tx, paymentService, accountService, smsService, cassandraRepo));
+                                           LedgerWriter ledgerWriter,
+                                           WithdrawalSagaStateRepository stateRepo,
+                                           PendingTransactionIndex pendingIndex,
+                                           WithdrawalSagaTransitions transitions) {
+        return Behaviors.setup(ctx -> new WithdrawalSaga(ctx, txId, shard, paymentService, accountService, smsService, ledgerWriter, stateRepo, pendingIndex, transitions));
     }
 
     private WithdrawalSaga(ActorContext<Command> context,
-                           Transaction tx,
+                           UUID txId,
+                           ActorRef<ClusterSharding.ShardCommand> shard,
                            FlutterwavePaymentService paymentService,
                            AccountService accountService,
                            TwilioSmsService smsService,
-                           TransactionCassandraRepository cassandraRepo) {
+                           LedgerWriter ledgerWriter,
+                           WithdrawalSagaStateRepository stateRepo,
+                           PendingTransactionIndex pendingIndex,
+                           WithdrawalSagaTransitions transitions) {
         super(context);
-        this.tx = tx;
+        this.txId = txId;
+        this.shard = shard;
         this.paymentService = paymentService;
         this.accountService = accountService;
         this.smsService = smsService;
-        this.cassandraRepo = cassandraRepo;
+        this.ledgerWriter = ledgerWriter;
+        this.stateRepo = stateRepo;
+        this.pendingIndex = pendingIndex;
+        this.transitions = transitions;
+        this.nodeAddress = Cluster.get(context.getSystem()).selfMember().address().toString();
 
-        // start immediately
-        context.getSelf().tell(new Start());
+        Optional<WithdrawalSagaState> stored = stateRepo.findById(txId);
+        if (stored.isEmpty() || !stored.get().isResumable()) {
+            log.warn("No resumable saga state for tx={}, passivating", txId);
+            passivate();
+        } else {
+            this.state = stored.get();
+            resume();
+        }
     }
 
     @Override
@@ -66,71 +112,184 @@ public class WithdrawalSaga extends AbstractBehavior<WithdrawalSaga.Command> {
                 .onMessage(Start.class, this::onStart)
                 .onMessage(PaymentResult.class, this::onPaymentResult)
                 .onMessage(Retry.class, this::onRetry)
+                .onMessage(Stop.class, msg -> Behaviors.stopped())
                 .build();
     }
 
+    // a fresh saga starts right away; a resumed one honours the retry time its previous owner stored
+    private void resume() {
+        long delayMillis = state.getNextRetryAt() == null ? 0 : Duration.between(Instant.now(), state.getNextRetryAt()).toMillis();
+        if (state.getAttempts() > 0) {
+            log.info("Resuming saga tx={} on {} after {} attempt(s)", txId, nodeAddress, state.getAttempts());
+        }
+        if (delayMillis > 0) {
+            getContext().scheduleOnce(Duration.ofMillis(delayMillis), getContext().getSelf(), new Retry());
+        } else {
+            getContext().getSelf().tell(new Retry());
+        }
+    }
+
     private Behavior<Command> onStart(Start msg) {
-        attempts = 1;
-        doPayment();
+        // the entity already began from stored state when it was created; Start only wakes it up
         return this;
     }
 
     private Behavior<Command> onRetry(Retry msg) {
-        attempts++;
-        log.info("Retrying payment for tx={} attempt={}", tx.getId(), attempts);
-        doPayment();
+        if (state == null) return this;
+        String from = state.getStatus();
+        state.setAttempts(state.getAttempts() + 1);
+        state.setStatus(WithdrawalSagaState.IN_FLIGHT);
+        state.setNextRetryAt(null);
+        attempt = Tracing.detached("saga attempt", state.getTraceParent())
+                .tag("tx", txId).tag("attempt", state.getAttempts()).tag("node", nodeAddress);
+        try (Tracing.Scope scope = Tracing.bind(attempt)) {
+            if (!saveState(List.of(from))) {
+                attempt.close();
+                attempt = Span.NOOP;
+                return passivate();
+            }
+            log.info("Paying out tx={} attempt={}", txId, state.getAttempts());
+            doPayment();
+        }
         return this;
     }
 
     private Behavior<Command> onPaymentResult(PaymentResult res) {
+        Span span = attempt;
+        attempt = Span.NOOP;
+        try (Tracing.Scope scope = Tracing.bind(span)) {
+            return handlePaymentResult(res);
+        } finally {
+            if (!res.success) span.error(res.error != null ? res.error : "payment failed");
+            span.close();
+        }
+    }
+
+    private Behavior<Command> handlePaymentResult(PaymentResult res) {
+        if (state == null) return this;
+        Transaction tx = toTransaction();
         if (res.success) {
-            log.info("Payment succeeded for tx={} providerRef={}", tx.getId(), res.providerRef);
-            // update transaction status in cassandra
-            tx.setStatus("SUCCESS");
-            tx.setMeta(res.providerRef);
-            cassandraRepo.save(tx);
+            log.info("Payment succeeded for tx={} providerRef={}", txId, res.providerRef);
+            state.setStatus(WithdrawalSagaState.SUCCESS);
+            state.setProviderRef(res.providerRef);
+            if (!saveState(List.of(WithdrawalSagaState.IN_FLIGHT))) return passivate();
+            // status and provider reference only; not awaited, the writer retries a failed update
+            ledgerWriter.updateStatus(txId, state.getCreatedAt(), "SUCCESS", res.providerRef);
             smsService.sendSms(findMsisdnForAccount(tx.getAccountId()), "Withdrawal successful: " + tx.getAmount() + " " + tx.getCurrency());
-            return Behaviors.stopped();
+            return passivate();
         } else {
-            log.warn("Payment failed for tx={} error={}", tx.getId(), res.error);
-            if (attempts < maxAttempts) {
+            log.warn("Payment failed for tx={} error={}", txId, res.error);
+            state.setLastError(res.error);
+            if (state.getAttempts() < maxAttempts) {
                 // schedule retry with exponential backoff
-                long backoffMillis = (long) Math.pow(2, attempts) * 1000;
+                long backoffMillis = (long) Math.pow(2, state.getAttempts()) * 1000;
+                state.setStatus(WithdrawalSagaState.RETRY_SCHEDULED);
+                state.setNextRetryAt(Instant.now().plusMillis(backoffMillis));
+                if (!saveState(List.of(WithdrawalSagaState.IN_FLIGHT))) return passivate();
                 getContext().scheduleOnce(Duration.ofMillis(backoffMillis), getContext().getSelf(), new Retry());
                 return this;
             } else {
-                // permanent failure: compensate (credit back)
+                // out of attempts: claim the refund, then ask the provider before crediting back. A
+                // timeout or a duplicate-reference rejection counts as a failed attempt here, yet the
+                // transfer may have gone through.
+                state.setStatus(WithdrawalSagaState.COMPENSATING);
+                if (!saveState(List.of(WithdrawalSagaState.IN_FLIGHT))) return passivate();
+                switch (paymentService.transferStatus(txId.toString())) {
+                    case PAID -> {
+                        closePaid(tx);
+                        return passivate();
+                    }
+                    case PROCESSING, UNKNOWN -> {
+                        // hand it back; the sweeper restarts or settles it once it has been quiet long enough
+                        log.warn("Provider has no outcome yet for tx={}, leaving it to the sweeper", txId);
+                        state.setStatus(WithdrawalSagaState.IN_FLIGHT);
+                        saveState(List.of(WithdrawalSagaState.COMPENSATING));
+                        return passivate();
+                    }
+                    default -> {
+                        // FAILED or NOT_FOUND: the provider will not pay this out
+                    }
+                }
                 try {
-                    accountService.compensateCredit(tx.getAccountId(), BigDecimal.valueOf(tx.getAmount().doubleValue()), tx.getCurrency(), res.error);
-                    tx.setStatus("FAILED"); // mark failed
-                    cassandraRepo.save(tx);
+                    accountService.compensateCredit(tx.getAccountId(), tx.getAmount(), tx.getCurrency(), res.error);
+                    state.setStatus(WithdrawalSagaState.FAILED);
+                    saveState(List.of(WithdrawalSagaState.COMPENSATING));
+                    ledgerWriter.updateStatus(txId, state.getCreatedAt(), "FAILED", null);
                     smsService.sendSms(findMsisdnForAccount(tx.getAccountId()), "Withdrawal failed and funds have been returned: " + tx.getAmount() + " " + tx.getCurrency());
                 } catch (Exception e) {
-                    log.error("Compensation failed for tx={}: {}", tx.getId(), e.getMessage(), e);
+                    log.error("Compensation failed for tx={}: {}", txId, e.getMessage(), e);
                 }
-                return Behaviors.stopped();
+                return passivate();
             }
         }
     }
 
+    // every attempt looked failed to us, but the provider paid out
+    private void closePaid(Transaction tx) {
+        log.warn("Withdrawal tx={} was paid by the provider after {} failed attempt(s), closing it as SUCCESS", txId, state.getAttempts());
+        state.setStatus(WithdrawalSagaState.SUCCESS);
+        if (!saveState(List.of(WithdrawalSagaState.COMPENSATING))) return;
+        ledgerWriter.updateStatus(txId, state.getCreatedAt(), "SUCCESS", state.getProviderRef());
+        smsService.sendSms(findMsisdnForAccount(tx.getAccountId()), "Withdrawal successful: " + tx.getAmount() + " " + tx.getCurrency());
+    }
+
     private void doPayment() {
-        // run payment in a separate thread and pipe result back
+        // run payment in a separate thread and pipe result back; the context is not thread-safe, so capture self
+        ActorRef<Command> self = getContext().getSelf();
+        String currency = state.getCurrency();
+        String amount = state.getAmount().toPlainString();
+        Span span = attempt;
         getContext().getExecutionContext().execute(() -> {
-            try {
+            try (Tracing.Scope scope = Tracing.bind(span)) {
                 // For demo we call paymentService with placeholder account details.
-                var resp = paymentService.initiateTransfer("25436866857", "000", tx.getCurrency(), tx.getAmount().toPlainString(), "USSD withdrawal " + tx.getId());
+                var resp = paymentService.initiateTransfer("25436866857", "000", currency, amount, "USSD withdrawal " + txId, txId.toString());
                 // interpret response map for success (depends on provider)
                 boolean success = resp != null && (resp.getOrDefault("status", "success").toString().equalsIgnoreCase("success") || resp.getOrDefault("status", "ok").toString().equalsIgnoreCase("ok"));
                 String providerRef = resp != null && resp.containsKey("data") ? resp.get("data").toString() : resp != null && resp.containsKey("reference") ? resp.get("reference").toString() : "";
-                getContext().getSelf().tell(new PaymentResult(success, providerRef, success ? null : "provider_error"));
+                self.tell(new PaymentResult(success, providerRef, success ? null : "provider_error"));
             } catch (Exception e) {
-                getContext().getSelf().tell(new PaymentResult(false, null, e.getMessage()));
+                self.tell(new PaymentResult(false, null, e.getMessage()));
             }
         });
     }
 
+    // false when the stored status is no longer one of expected: the sweeper or another owner moved
+    // the row, so this entity must not act on it any more
+    private boolean saveState(List<String> expected) {
+        state.setOwner(nodeAddress);
+        state.setUpdatedAt(Instant.now());
+        if (!transitions.transition(state, expected)) {
+            log.warn("Saga tx={} lost its row to another writer before {}, standing down", txId, state.getStatus());
+            state = null;
+            return false;
+        }
+        if (state.isTerminal()) {
+            pendingIndex.clear(txId, state.getCreatedAt());
+        } else {
+            pendingIndex.track(txId, state.getAccountId(), state.getAmount(), state.getCurrency(), state.getCreatedAt(), state.getStatus());
+        }
+        return true;
+    }
+
+    // stopping on our own would make remember-entities restart us, so ask the shard to passivate
+    private Behavior<Command> passivate() {
+        shard.tell(new ClusterSharding.Passivate<>(getContext().getSelf()));
+        return this;
+    }
+
+    private Transaction toTransaction() {
+        return Transaction.builder()
+                .id(txId)
+                .accountId(state.getAccountId())
+                .type("WITHDRAW")
+                .amount(state.getAmount())
+                .currency(state.getCurrency())
+                .createdAt(state.getCreatedAt())
+                .status(state.getStatus())
+                .build();
+    }
+
     private String findMsisdnForAccount(Long accountId) {
         return "+2348164509876";
     }
 }
-
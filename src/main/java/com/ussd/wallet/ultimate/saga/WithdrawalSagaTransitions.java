@@ -0,0 +1,57 @@
+package com.ussd.wallet.ultimate.saga;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.ussd.wallet.ultimate.domain.WithdrawalSagaState;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Status changes on withdrawal_sagas as lightweight transactions. The saga entity and the pending
+// sweeper on any node may act on the same withdrawal, so a row is only written while its stored
+// status is still one the writer expects; the side that loses the compare-and-set backs off
+// instead of paying out or refunding a second time.
+@Component
+public class WithdrawalSagaTransitions {
+
+    // column names follow the entity's unquoted property names
+    static final String UPDATE = "UPDATE withdrawal_sagas SET accountid = ?, amount = ?, currency = ?, createdat = ?, "
+            + "status = ?, attempts = ?, nextretryat = ?, providerref = ?, lasterror = ?, owner = ?, updatedat = ?, "
+            + "traceparent = ? WHERE txid = ? IF status IN ?";
+    static final String INSERT = "INSERT INTO withdrawal_sagas (txid, accountid, amount, currency, createdat, status, "
+            + "attempts, nextretryat, providerref, lasterror, owner, updatedat, traceparent) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) IF NOT EXISTS";
+
+    private final CqlSession session;
+    private final Map<String, PreparedStatement> prepared = new ConcurrentHashMap<>();
+
+    public WithdrawalSagaTransitions(@Lazy CqlSession session) {
+        this.session = session;
+    }
+
+    // writes the row if its stored status is one of expected; false when another writer moved it first
+    public boolean transition(WithdrawalSagaState s, Collection<String> expected) {
+        return session.execute(prepare(UPDATE).bind(s.getAccountId(), s.getAmount(), s.getCurrency(), s.getCreatedAt(),
+                s.getStatus(), s.getAttempts(), s.getNextRetryAt(), s.getProviderRef(), s.getLastError(), s.getOwner(),
+                s.getUpdatedAt(), s.getTraceParent(), s.getTxId(), List.copyOf(expected))).wasApplied();
+    }
+
+    public boolean transition(WithdrawalSagaState s, String expected) {
+        return transition(s, List.of(expected));
+    }
+
+    // first write of a saga row; false if one already exists
+    public boolean create(WithdrawalSagaState s) {
+        return session.execute(prepare(INSERT).bind(s.getTxId(), s.getAccountId(), s.getAmount(), s.getCurrency(),
+                s.getCreatedAt(), s.getStatus(), s.getAttempts(), s.getNextRetryAt(), s.getProviderRef(), s.getLastError(),
+                s.getOwner(), s.getUpdatedAt(), s.getTraceParent())).wasApplied();
+    }
+
+    private PreparedStatement prepare(String cql) {
+        return prepared.computeIfAbsent(cql, session::prepare);
+    }
+}
@@ -2,45 +2,71 @@ package com.ussd.wallet.ultimate.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ussd.wallet.ultimate.domain.Account;
+import com.ussd.wallet.ultimate.domain.ProviderDeposit;
 import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.dto.DepositEvent;
+import com.ussd.wallet.ultimate.ledger.LedgerWriter;
 import com.ussd.wallet.ultimate.repository.AccountRepository;
-import com.ussd.wallet.ultimate.repository.TransactionCassandraRepository;
+import com.ussd.wallet.ultimate.repository.ProviderDepositRepository;
+import com.ussd.wallet.ultimate.velocity.VelocityEngine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 public class AccountService {
 
     private static final Logger log = LoggerFactory.getLogger(AccountService.class);
     private final AccountRepository accountRepository;
-    private final TransactionCassandraRepository cassandraRepo;
+    private final LedgerWriter ledgerWriter;
     private final BackgroundWorkerService backgroundWorkerService;
     private final RedisTemplate<String, Object> redisTemplate;
     private final TwilioSmsService smsService;
     private final FlutterwavePaymentService paymentProviderService;
     private final KafkaTemplate<String, String> kafkaTemplate;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HotAccountService hotAccountService;
+    private final ProviderDepositRepository providerDepositRepository;
+    private final VelocityEngine velocityEngine;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
 
-    public AccountService(AccountRepository accountRepository, TransactionCassandraRepository cassandraRepo,
-                          BackgroundWorkerService backgroundWorkerService, RedisTemplate<String, Object> redisTemplate,
-                          TwilioSmsService smsService, FlutterwavePaymentService paymentProviderService,
-                          KafkaTemplate<String, String> kafkaTemplate) {
+    @Value("${kafka.producer.send-timeout-ms:5000}")
+    private long sendTimeoutMs = 5000;
+
+    // integrations are injected lazily so fast-startup can serve menus before they are up
+    public AccountService(AccountRepository accountRepository, @Lazy LedgerWriter ledgerWriter,
+                          @Lazy BackgroundWorkerService backgroundWorkerService, RedisTemplate<String, Object> redisTemplate,
+                          @Lazy TwilioSmsService smsService, @Lazy FlutterwavePaymentService paymentProviderService,
+                          @Lazy KafkaTemplate<String, String> kafkaTemplate, HotAccountService hotAccountService,
+                          ProviderDepositRepository providerDepositRepository, VelocityEngine velocityEngine) {
         this.accountRepository = accountRepository;
-        this.cassandraRepo = cassandraRepo;
+        this.ledgerWriter = ledgerWriter;
         this.backgroundWorkerService = backgroundWorkerService;
         this.redisTemplate = redisTemplate;
         this.smsService = smsService;
         this.paymentProviderService = paymentProviderService;
         this.kafkaTemplate = kafkaTemplate;
+        this.hotAccountService = hotAccountService;
+        this.providerDepositRepository = providerDepositRepository;
+        this.velocityEngine = velocityEngine;
     }
 
     @Transactional
@@ -49,18 +75,17 @@ public class AccountService {
         return accountRepository.save(account);
     }
 
+    // Only the credit happens inside the transaction. The ledger row, the event and the SMS follow
+    // once it commits, so a rolled-back deposit leaves no trace; a rollback also drops the
+    // idempotency key, so the same deposit can be retried.
     @Transactional
     public void deposit(Long accountId, BigDecimal amount, String currency, String idempotencyKey, String msisdn) {
         String key = "idem:deposit:" + idempotencyKey;
-        if (redisTemplate.hasKey(key)) {
+        RequestDeadline.checkpoint("redis.idempotency");
+        if (Boolean.FALSE.equals(redisTemplate.opsForValue().setIfAbsent(key, "1", Duration.ofSeconds(300)))) {
             log.info("Skipping duplicate deposit, idempotencyKey={}", idempotencyKey);
             return;
         }
-        redisTemplate.opsForValue().set(key, "1", Duration.ofSeconds(300));
-
-        Account account = accountRepository.findById(accountId).orElseThrow();
-        account.setBalance(account.getBalance().add(amount));
-        accountRepository.save(account);
 
         Transaction transaction = Transaction.builder()
                 .id(UUID.randomUUID())
@@ -69,38 +94,89 @@ public class AccountService {
                 .currency(currency)
                 .type("DEPOSIT")
                 .status("SUCCESS")
+                .createdAt(Instant.now())
                 .build();
+        afterCompletion(committed -> {
+            if (!committed) {
+                redisTemplate.delete(key);
+                return;
+            }
+            // not awaited; the listener appends the same row again when the event comes back
+            ledgerWriter.append(transaction);
+            publishCommitted(transaction);
+            smsService.sendSmsWithinDeadline(msisdn, "Deposit successful: " + amount + " " + currency);
+        });
 
-        var transactionSaved = cassandraRepo.save(transaction);
+        RequestDeadline.checkpoint("jpa.findAccount");
+        Account account = accountRepository.findById(accountId).orElseThrow();
+        credit(account, amount);
+    }
 
-        try {
-            String payload = objectMapper.writeValueAsString(transactionSaved);
-            kafkaTemplate.send("transactions", transactionSaved.getId().toString(), payload);
-            log.info("Published deposit event to Kafka tx={}", transactionSaved.getId());
-        } catch (Exception e) {
-            log.error("Failed to publish deposit to Kafka: {}", e.getMessage(), e);
-            backgroundWorkerService.publishTransaction(transactionSaved);
+    // Provider-confirmed deposits for one account in a single transaction: references already
+    // recorded are skipped, the rest are recorded and credited as one balance update.
+    // Returns the deposits that were applied by this call.
+    @Transactional
+    public List<DepositEvent> creditDeposits(Long accountId, List<DepositEvent> deposits) {
+        Account account = accountRepository.findById(accountId).orElseThrow(() -> new IllegalArgumentException("Account not found"));
+        Set<String> refs = deposits.stream().map(DepositEvent::providerRef).collect(Collectors.toSet());
+        Set<String> seen = Set.copyOf(providerDepositRepository.findRefsByAccountIdAndProviderRefIn(accountId, refs));
+        // a batch can hold the same webhook twice when the provider redelivers quickly
+        Set<String> taken = new HashSet<>(seen);
+        List<DepositEvent> unseen = deposits.stream().filter(d -> taken.add(d.providerRef())).toList();
+        // the provider has the money either way, so a deposit that cannot be credited is parked, not dropped
+        unseen.stream().filter(d -> !d.currency().equals(account.getCurrency())).forEach(d -> {
+            log.warn("Parking deposit {} of {} {} for account {} held in {}", d.providerRef(), d.amount(), d.currency(),
+                    accountId, account.getCurrency());
+            providerDepositRepository.save(providerDeposit(d, accountId, ProviderDeposit.PARKED));
+        });
+        List<DepositEvent> fresh = unseen.stream().filter(d -> d.currency().equals(account.getCurrency())).toList();
+        if (fresh.isEmpty()) return fresh;
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (DepositEvent d : fresh) {
+            providerDepositRepository.save(providerDeposit(d, accountId, ProviderDeposit.CREDITED));
+            total = total.add(d.amount());
         }
+        credit(account, total);
+        log.info("Credited {} provider deposit(s) totalling {} {} to account {}", fresh.size(), total, account.getCurrency(), accountId);
+        return fresh;
+    }
 
-        smsService.sendSms(msisdn, "Deposit successful: " + amount + " " + currency);
+    private static ProviderDeposit providerDeposit(DepositEvent d, Long accountId, String status) {
+        return ProviderDeposit.builder()
+                .providerRef(d.providerRef())
+                .txRef(d.txRef())
+                .accountId(accountId)
+                .amount(d.amount())
+                .currency(d.currency())
+                .status(status)
+                .createdAt(Instant.now())
+                .build();
     }
 
+    // The velocity check comes before the idempotency key is taken, so a rejected withdrawal can be
+    // retried in the same session. Once the key is taken, the outcome of the transaction decides
+    // both: on commit the withdrawal counts on every node, on rollback it stops counting and the
+    // key is dropped again.
     @Transactional
     public void withdraw(Long accountId, BigDecimal amount, String currency, String idempotencyKey, String msisdn) {
         String key = "idem:withdraw:" + idempotencyKey;
+        RequestDeadline.checkpoint("redis.idempotency");
         if (redisTemplate.hasKey(key)) {
             log.info("Skipping duplicate withdraw, idempotencyKey={}", idempotencyKey);
             return;
         }
-        redisTemplate.opsForValue().set(key, "1", Duration.ofSeconds(300));
 
-        Account a = accountRepository.findById(accountId).orElseThrow();
-        if (a.getBalance().compareTo(amount) < 0) {
-            throw new IllegalArgumentException("Insufficient funds");
+        // in-memory, no round trip; the idempotency key stands in for the session
+        VelocityEngine.Decision velocity = velocityEngine.checkWithdrawal(msisdn, idempotencyKey, amount, currency);
+        if (!velocity.allowed()) {
+            throw new IllegalArgumentException(velocity.reason());
+        }
+        if (Boolean.FALSE.equals(redisTemplate.opsForValue().setIfAbsent(key, "1", Duration.ofSeconds(300)))) {
+            velocityEngine.release(velocity);
+            log.info("Skipping duplicate withdraw, idempotencyKey={}", idempotencyKey);
+            return;
         }
-        a.setBalance(a.getBalance().subtract(amount));
-        accountRepository.save(a);
-
         Transaction t = Transaction.builder()
                 .id(UUID.randomUUID())
                 .accountId(accountId)
@@ -108,36 +184,98 @@ public class AccountService {
                 .currency(currency)
                 .type("WITHDRAW")
                 .status("PENDING")
+                // carried in the event so every ledger write for it gets the same timestamps
+                .createdAt(Instant.now())
                 .build();
+        afterCompletion(committed -> {
+            if (committed) {
+                velocityEngine.confirm(velocity);
+                // the event starts the payout saga, so it goes out only for a debit that stuck
+                publishCommitted(t);
+                smsService.sendSmsWithinDeadline(msisdn, "Withdrawal initiated: " + amount + " " + currency);
+            } else {
+                velocityEngine.release(velocity);
+                redisTemplate.delete(key);
+            }
+        });
 
-        try {
-            String payload = objectMapper.writeValueAsString(t);
-            kafkaTemplate.send("transactions", t.getId().toString(), payload);
-            log.info("Published withdraw event to Kafka tx={}", t.getId());
-        } catch (Exception e) {
-            log.error("Failed to publish withdraw to Kafka: {}", e.getMessage(), e);
-            backgroundWorkerService.publishTransaction(t);
+        RequestDeadline.checkpoint("jpa.findAccount");
+        Account a = accountRepository.findById(accountId).orElseThrow();
+        if (a.isHot()) {
+            hotAccountService.debit(a, amount);
+        } else {
+            if (a.getBalance().compareTo(amount) < 0) {
+                throw new IllegalArgumentException("Insufficient funds");
+            }
+            a.setBalance(a.getBalance().subtract(amount));
+            accountRepository.save(a);
         }
-
-        smsService.sendSms(msisdn, "Withdrawal initiated: " + amount + " " + currency);
     }
 
+    @Transactional(readOnly = true)
     public Optional<Account> findAccountByUserId(Long userId, String currency) {
+        RequestDeadline.checkpoint("jpa.findAccount");
         return accountRepository.findByUserIdAndCurrency(userId, currency);
     }
 
+    @Transactional(readOnly = true)
     public BigDecimal getBalanceForUser(Long userId, String currency) {
+        RequestDeadline.checkpoint("jpa.balance");
         Optional<Account> opt = accountRepository.findByUserIdAndCurrency(userId, currency);
-        return opt.map(Account::getBalance).orElse(BigDecimal.ZERO);
+        return opt.map(a -> a.isHot() ? hotAccountService.balance(a) : a.getBalance()).orElse(BigDecimal.ZERO);
     }
 
     // Compensation: credit back funds on permanent failure
     @Transactional
     public void compensateCredit(Long accountId, BigDecimal amount, String currency, String reason) {
         Account a = accountRepository.findById(accountId).orElseThrow();
-        a.setBalance(a.getBalance().add(amount));
-        accountRepository.save(a);
+        credit(a, amount);
         log.warn("Compensated account {} with {} {} due to {}", accountId, amount, currency, reason);
     }
-}
 
+    // After commit, so no row lock is held while the broker acks. The ack is awaited for at most what
+    // is left of the USSD budget; a spent budget, a failed send or one that does not make it in time
+    // leaves the event to the background worker.
+    private void publishCommitted(Transaction t) {
+        if (!RequestDeadline.within("kafka.publish")) {
+            backgroundWorkerService.publishTransaction(t);
+            return;
+        }
+        try {
+            publish(t.getId().toString(), objectMapper.writeValueAsString(t));
+            log.info("Published {} event to Kafka tx={}", t.getType(), t.getId());
+        } catch (Exception e) {
+            log.error("Failed to publish {} to Kafka: {}", t.getType(), e.getMessage(), e);
+            backgroundWorkerService.publishTransaction(t);
+        }
+    }
+
+    private void publish(String key, String payload) throws Exception {
+        Duration timeout = RequestDeadline.timeout(Duration.ofMillis(sendTimeoutMs));
+        kafkaTemplate.send("transactions", key, payload).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // runs once the surrounding transaction is over, or straight away outside one
+    private static void afterCompletion(Consumer<Boolean> action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.accept(true);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.accept(status == STATUS_COMMITTED);
+            }
+        });
+    }
+
+    // hot accounts post to one of their slots and leave the accounts row (and its @Version) alone
+    private void credit(Account account, BigDecimal amount) {
+        if (account.isHot()) {
+            hotAccountService.credit(account, amount);
+        } else {
+            account.setBalance(account.getBalance().add(amount));
+            accountRepository.save(account);
+        }
+    }
+}
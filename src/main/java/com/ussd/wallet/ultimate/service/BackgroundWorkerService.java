@@ -1,30 +1,66 @@
 package com.ussd.wallet.ultimate.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ussd.wallet.ultimate.domain.Transaction;
-import com.ussd.wallet.ultimate.repository.TransactionCassandraRepository;
+import com.ussd.wallet.ultimate.ledger.LedgerWriter;
+import com.ussd.wallet.ultimate.retry.RetryScheduler;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.TimeUnit;
+
 @Service
 public class BackgroundWorkerService {
 
     private static final Logger log = LoggerFactory.getLogger(BackgroundWorkerService.class);
-    private final TransactionCassandraRepository cassandraRepo;
 
-    public BackgroundWorkerService(TransactionCassandraRepository cassandraRepo) {
-        this.cassandraRepo = cassandraRepo;
+    public static final String PUBLISH_RETRY = "PUBLISH_TRANSACTION";
+    public static final String PERSIST_RETRY = "PERSIST_TRANSACTION";
+
+    private final LedgerWriter ledgerWriter;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final RetryScheduler retryScheduler;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    public BackgroundWorkerService(LedgerWriter ledgerWriter, @Lazy KafkaTemplate<String, String> kafkaTemplate,
+                                   @Lazy RetryScheduler retryScheduler) {
+        this.ledgerWriter = ledgerWriter;
+        this.kafkaTemplate = kafkaTemplate;
+        this.retryScheduler = retryScheduler;
     }
 
+    @PostConstruct
+    public void registerRetries() {
+        retryScheduler.register(PUBLISH_RETRY, payload -> {
+            Transaction t = objectMapper.readValue(payload, Transaction.class);
+            // wait for the ack so a broker failure is seen by the retry scheduler
+            kafkaTemplate.send("transactions", t.getId().toString(), payload).get(10, TimeUnit.SECONDS);
+            log.info("Re-published transaction {} to Kafka", t.getId());
+        });
+        // tasks queued before LedgerWriter retried its own writes; from here on it owns them
+        retryScheduler.register(PERSIST_RETRY, payload -> {
+            Transaction t = objectMapper.readValue(payload, Transaction.class);
+            ledgerWriter.append(t);
+            log.info("Handed transaction {} to the ledger writer on retry", t.getId());
+        });
+    }
+
+    // fallback when the Kafka publish failed: keep the ledger row and queue the event for re-publishing
     @Async
     public void publishTransaction(Transaction transaction) {
+        String payload;
         try {
-            cassandraRepo.save(transaction);
-            log.info("Persisted transaction {} to Cassandra", transaction.getId());
+            payload = objectMapper.writeValueAsString(transaction);
         } catch (Exception e) {
-            log.error("Failed to persist transaction to Cassandra: {}", e.getMessage(), e);
+            log.error("Cannot serialize transaction {}: {}", transaction.getId(), e.getMessage(), e);
+            return;
         }
+        ledgerWriter.append(transaction);
+        retryScheduler.schedule(PUBLISH_RETRY, payload, "kafka_publish_failed");
     }
 }
-
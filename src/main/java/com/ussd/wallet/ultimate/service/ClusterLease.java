@@ -0,0 +1,70 @@
+package com.ussd.wallet.ultimate.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+// Named Redis leases for @Scheduled jobs that every node schedules but only one may run at a
+// time. The holder re-acquiring a lease it still holds extends it; a node that dies mid-run
+// lets it lapse after its TTL, so the TTL has to outlast one run of the job.
+@Component
+public class ClusterLease {
+
+    static final String KEY_PREFIX = "lease:";
+
+    // takes the lease if free, extends it if ARGV[1] already holds it
+    private static final RedisScript<Long> ACQUIRE = new DefaultRedisScript<>(
+            "local holder = redis.call('GET', KEYS[1])\n"
+                    + "if holder == false then\n"
+                    + "  redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])\n"
+                    + "  return 1\n"
+                    + "end\n"
+                    + "if holder == ARGV[1] then\n"
+                    + "  redis.call('PEXPIRE', KEYS[1], ARGV[2])\n"
+                    + "  return 1\n"
+                    + "end\n"
+                    + "return 0", Long.class);
+
+    // only the holder may drop the lease, so a run that overstayed cannot release its successor's
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then\n"
+                    + "  return redis.call('DEL', KEYS[1])\n"
+                    + "end\n"
+                    + "return 0", Long.class);
+
+    private final StringRedisTemplate redis;
+    private final String holder;
+
+    public ClusterLease(StringRedisTemplate redis, @Value("${spring.application.name:ussd-wallet}") String application) {
+        this.redis = redis;
+        this.holder = application + "@" + hostName() + "/" + UUID.randomUUID();
+    }
+
+    public boolean acquire(String name, Duration ttl) {
+        Long won = redis.execute(ACQUIRE, List.of(KEY_PREFIX + name), holder, String.valueOf(ttl.toMillis()));
+        return won != null && won == 1L;
+    }
+
+    public void release(String name) {
+        redis.execute(RELEASE, List.of(KEY_PREFIX + name), holder);
+    }
+
+    public String holder() {
+        return holder;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.Account;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+// Starts a provider collection for a USSD deposit. Nothing is credited here: the money arrives
+// through the Flutterwave webhook, which finds the account again through the tx_ref.
+@Service
+public class DepositService {
+
+    private static final Logger log = LoggerFactory.getLogger(DepositService.class);
+
+    public static final String REF_KEY = "deposit:ref:";
+
+    private final StringRedisTemplate redis;
+    private final FlutterwavePaymentService paymentService;
+    private final TwilioSmsService smsService;
+
+    @Value("${ussd.deposits.link-ttl-hours:24}")
+    private long linkTtlHours;
+
+    public DepositService(StringRedisTemplate redis, @Lazy FlutterwavePaymentService paymentService, @Lazy TwilioSmsService smsService) {
+        this.redis = redis;
+        this.paymentService = paymentService;
+        this.smsService = smsService;
+    }
+
+    // the account id is in the tx_ref as well, so a webhook arriving after the Redis entry expired still credits
+    public static String txRefFor(Long accountId) {
+        return "dep-" + accountId + "-" + UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+    }
+
+    // false when the provider could not create a payment link
+    public boolean startDeposit(Account account, BigDecimal amount, String msisdn) {
+        String txRef = txRefFor(account.getId());
+        RequestDeadline.checkpoint("redis.depositRef");
+        redis.opsForHash().putAll(REF_KEY + txRef, Map.of("accountId", account.getId().toString(), "msisdn", msisdn));
+        redis.expire(REF_KEY + txRef, Duration.ofHours(linkTtlHours));
+
+        RequestDeadline.checkpoint("flutterwave.paymentLink");
+        String link = paymentService.createPaymentLink(txRef, amount.toPlainString(), account.getCurrency(), msisdn);
+        if (link == null) {
+            redis.delete(REF_KEY + txRef);
+            return false;
+        }
+        smsService.sendSmsWithinDeadline(msisdn, "Complete your deposit of " + amount + " " + account.getCurrency() + ": " + link);
+        log.info("Deposit {} started for account {}", txRef, account.getId());
+        return true;
+    }
+}
@@ -1,13 +1,17 @@
 package com.ussd.wallet.ultimate.service;
 
+import com.ussd.wallet.ultimate.tracing.TracingHttpInterceptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -21,9 +25,28 @@ public class FlutterwavePaymentService {
     @Value("${flutterwave.secret-key}")
     private String secretKey;
 
+    @Value("${flutterwave.redirect-url:https://wallet.example.com/deposit/done}")
+    private String redirectUrl;
+
+    // Flutterwave requires a customer email; USSD users have none, so one is derived from the number
+    @Value("${flutterwave.customer-email-domain:ussd.wallet}")
+    private String customerEmailDomain;
+
+    // what the provider knows about a payout, as far as deciding on a refund is concerned
+    public enum TransferStatus { PAID, FAILED, PROCESSING, NOT_FOUND, UNKNOWN }
+
     private final RestTemplate rest = new RestTemplate();
 
+    public FlutterwavePaymentService() {
+        rest.getInterceptors().add(new TracingHttpInterceptor("flutterwave"));
+    }
+
     public Map<String, Object> initiateTransfer(String accountNumber, String bankCode, String currency, String amount, String narration) {
+        return initiateTransfer(accountNumber, bankCode, currency, amount, narration, java.util.UUID.randomUUID().toString());
+    }
+
+    // a stable reference lets the provider reject the duplicate when a resumed saga retries a payout
+    public Map<String, Object> initiateTransfer(String accountNumber, String bankCode, String currency, String amount, String narration, String reference) {
         String url = baseUrl + "/transfers";
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
@@ -35,7 +58,7 @@ public class FlutterwavePaymentService {
         body.put("amount", amount);
         body.put("currency", currency);
         body.put("narration", narration);
-        body.put("reference", java.util.UUID.randomUUID().toString());
+        body.put("reference", reference);
 
         HttpEntity<Map<String, Object>> req = new HttpEntity<>(body, headers);
         try {
@@ -47,5 +70,51 @@ public class FlutterwavePaymentService {
             return Map.of("status", "error", "message", e.getMessage());
         }
     }
-}
 
+    // Looks the payout up by the reference it was sent with. UNKNOWN when the provider could not be
+    // asked; callers must treat that like PROCESSING and not refund.
+    public TransferStatus transferStatus(String reference) {
+        String url = UriComponentsBuilder.fromUriString(baseUrl + "/transfers").queryParam("reference", reference).toUriString();
+        HttpHeaders headers = new HttpHeaders();
+        if (secretKey != null && !secretKey.isEmpty()) headers.setBearerAuth(secretKey);
+        try {
+            ResponseEntity<Map> resp = rest.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), Map.class);
+            Object data = resp.getBody() == null ? null : resp.getBody().get("data");
+            if (data instanceof List<?> list) data = list.isEmpty() ? null : list.get(0);
+            if (!(data instanceof Map<?, ?> transfer)) return TransferStatus.NOT_FOUND;
+            String status = String.valueOf(transfer.get("status"));
+            if ("SUCCESSFUL".equalsIgnoreCase(status)) return TransferStatus.PAID;
+            if ("FAILED".equalsIgnoreCase(status)) return TransferStatus.FAILED;
+            return TransferStatus.PROCESSING;
+        } catch (HttpClientErrorException.NotFound e) {
+            return TransferStatus.NOT_FOUND;
+        } catch (Exception e) {
+            log.warn("Flutterwave transfer lookup failed for {}: {}", reference, e.getMessage());
+            return TransferStatus.UNKNOWN;
+        }
+    }
+
+    // hosted payment link for a collection; the webhook for it carries txRef back to us
+    public String createPaymentLink(String txRef, String amount, String currency, String msisdn) {
+        String url = baseUrl + "/payments";
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (secretKey != null && !secretKey.isEmpty()) headers.setBearerAuth(secretKey);
+
+        var body = new HashMap<String, Object>();
+        body.put("tx_ref", txRef);
+        body.put("amount", amount);
+        body.put("currency", currency);
+        body.put("redirect_url", redirectUrl);
+        body.put("customer", Map.of("phonenumber", msisdn, "email", msisdn.replace("+", "") + "@" + customerEmailDomain));
+
+        try {
+            ResponseEntity<Map> resp = rest.postForEntity(url, new HttpEntity<>(body, headers), Map.class);
+            Object data = resp.getBody() == null ? null : resp.getBody().get("data");
+            return data instanceof Map<?, ?> m && m.get("link") != null ? m.get("link").toString() : null;
+        } catch (Exception e) {
+            log.error("Flutterwave payment link failed for {}: {}", txRef, e.getMessage(), e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.Account;
+import com.ussd.wallet.ultimate.domain.AccountSlot;
+import com.ussd.wallet.ultimate.repository.AccountRepository;
+import com.ussd.wallet.ultimate.repository.AccountSlotRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+// Agent/merchant float accounts that take thousands of postings a minute keep their balance in
+// N slot rows instead of the single accounts row, so concurrent postings spread their row locks.
+// The running total is kept in Redis (minor units) and applied after commit; the slots stay
+// authoritative and reconcile() resets the total and the accounts.balance snapshot from them.
+// Each posting is listed as pending from before its slot update until its total update has
+// landed, which is how reconcile tells a sum it may overwrite the total with from one it may not.
+// Amounts carry at most four decimals, the scale of the balance columns.
+@Service
+public class HotAccountService {
+
+    private static final Logger log = LoggerFactory.getLogger(HotAccountService.class);
+
+    static final String TOTAL_KEY = "acct:total:";
+    static final String PENDING_KEY = "acct:pending:";
+    static final String HOT_SET_KEY = "acct:hot";
+    static final String RECONCILE_LEASE = "hot-account-reconcile";
+    // matches the scale of the balance columns
+    private static final int SCALE = 4;
+
+    // Sets the total to the slot sum only if no posting is pending and the total is still what it
+    // was before the sum was taken. Entries older than ARGV[3] belong to postings whose node died
+    // between commit and total update; the sum has them and the total never will.
+    private static final RedisScript<Long> RESET_TOTAL = new DefaultRedisScript<>(
+            "redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', ARGV[3])\n"
+                    + "if redis.call('ZCARD', KEYS[2]) > 0 then\n"
+                    + "  return 0\n"
+                    + "end\n"
+                    + "if (redis.call('GET', KEYS[1]) or '') ~= ARGV[1] then\n"
+                    + "  return 0\n"
+                    + "end\n"
+                    + "redis.call('SET', KEYS[1], ARGV[2])\n"
+                    + "return 1", Long.class);
+
+    private final AccountRepository accountRepository;
+    private final AccountSlotRepository slotRepository;
+    private final StringRedisTemplate redis;
+    private final ClusterLease lease;
+    private final Counter rebalances;
+
+    @Value("${ussd.hot-accounts.reconcile-interval-ms:60000}")
+    private long reconcileIntervalMs = 60_000;
+
+    @Value("${ussd.hot-accounts.pending-stale-ms:300000}")
+    private long pendingStaleMs = 300_000;
+
+    public HotAccountService(AccountRepository accountRepository, AccountSlotRepository slotRepository,
+                             StringRedisTemplate redis, ClusterLease lease, MeterRegistry registry) {
+        this.accountRepository = accountRepository;
+        this.slotRepository = slotRepository;
+        this.redis = redis;
+        this.lease = lease;
+        this.rebalances = registry.counter("ussd.account.slot.rebalance");
+    }
+
+    // the current balance moves into slot 0; later postings spread over all slots
+    @Transactional
+    public Account markHot(Long accountId, int slots) {
+        if (slots < 2) throw new IllegalArgumentException("A hot account needs at least 2 slots");
+        Account account = accountRepository.findById(accountId).orElseThrow();
+        if (account.isHot()) throw new IllegalArgumentException("Account " + accountId + " is already hot");
+        for (int i = 0; i < slots; i++) {
+            slotRepository.save(AccountSlot.builder()
+                    .accountId(accountId)
+                    .slot(i)
+                    .balance(i == 0 ? account.getBalance() : BigDecimal.ZERO)
+                    .build());
+        }
+        account.setSlotCount(slots);
+        Account saved = accountRepository.save(account);
+        BigDecimal total = account.getBalance();
+        afterCommit(() -> {
+            redis.opsForValue().set(TOTAL_KEY + accountId, String.valueOf(toMinor(total)));
+            redis.opsForSet().add(HOT_SET_KEY, accountId.toString());
+        });
+        log.info("Account {} split into {} slots", accountId, slots);
+        return saved;
+    }
+
+    @Transactional
+    public void credit(Account account, BigDecimal amount) {
+        requireScale(amount);
+        int slot = ThreadLocalRandom.current().nextInt(account.getSlotCount());
+        RequestDeadline.checkpoint("jpa.creditSlot");
+        String posting = beginPosting(account.getId());
+        if (slotRepository.creditByAccountIdAndSlot(account.getId(), slot, amount) != 1) {
+            throw new IllegalStateException("Missing slot " + slot + " for account " + account.getId());
+        }
+        adjustTotal(account.getId(), posting, amount);
+    }
+
+    // Every slot lock a debit can wait for is taken in ascending slot order, so two debits on one
+    // account cannot deadlock. An unlocked read finds the slots that cover the amount and the
+    // conditional updates go over those, ascending from a random one, so debits spread without
+    // locking slots that could not pay. Only when no slot covers it are all slots locked (in slot
+    // order, holding none yet) and the remainder spread evenly again.
+    @Transactional
+    public void debit(Account account, BigDecimal amount) {
+        requireScale(amount);
+        RequestDeadline.checkpoint("jpa.debitSlot");
+        String posting = beginPosting(account.getId());
+        List<Integer> covering = slotRepository.findSlotsByAccountIdCovering(account.getId(), amount);
+        if (!covering.isEmpty()) {
+            for (int i = ThreadLocalRandom.current().nextInt(covering.size()); i < covering.size(); i++) {
+                if (slotRepository.debitByAccountIdAndSlot(account.getId(), covering.get(i), amount) == 1) {
+                    adjustTotal(account.getId(), posting, amount.negate());
+                    return;
+                }
+            }
+            // drained by concurrent debits since the read; locking the lower slots now would break the order
+            throw new ConcurrencyFailureException("Slots of account " + account.getId() + " changed during the debit, try again");
+        }
+        List<AccountSlot> locked = slotRepository.findByAccountIdOrderBySlot(account.getId());
+        BigDecimal[] balances = locked.stream().map(AccountSlot::getBalance).toArray(BigDecimal[]::new);
+        BigDecimal[] after = rebalance(balances, amount);
+        if (after == null) throw new IllegalArgumentException("Insufficient funds");
+        for (int i = 0; i < locked.size(); i++) locked.get(i).setBalance(after[i]);
+        slotRepository.saveAll(locked);
+        rebalances.increment();
+        adjustTotal(account.getId(), posting, amount.negate());
+    }
+
+    public BigDecimal balance(Account account) {
+        String total = redis.opsForValue().get(TOTAL_KEY + account.getId());
+        if (total != null) return fromMinor(Long.parseLong(total));
+        return slotRepository.sumBalanceByAccountId(account.getId());
+    }
+
+    // Takes `debit` out of the combined balance and spreads what is left evenly (remainder on
+    // slot 0). Returns null when the slots together do not cover the debit.
+    static BigDecimal[] rebalance(BigDecimal[] balances, BigDecimal debit) {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (BigDecimal b : balances) sum = sum.add(b);
+        BigDecimal remaining = sum.subtract(debit);
+        if (remaining.signum() < 0) return null;
+        BigDecimal share = remaining.divide(BigDecimal.valueOf(balances.length), SCALE, RoundingMode.DOWN);
+        BigDecimal[] out = new BigDecimal[balances.length];
+        for (int i = 1; i < out.length; i++) out[i] = share;
+        out[0] = remaining.subtract(share.multiply(BigDecimal.valueOf(balances.length - 1)));
+        return out;
+    }
+
+    // one node at a time, so two reconciles cannot overwrite each other's reading
+    @Scheduled(fixedDelayString = "${ussd.hot-accounts.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        if (!lease.acquire(RECONCILE_LEASE, Duration.ofMillis(reconcileIntervalMs))) return;
+        Set<String> hot = redis.opsForSet().members(HOT_SET_KEY);
+        if (hot == null) return;
+        for (String id : hot) {
+            try {
+                reconcile(Long.valueOf(id));
+            } catch (Exception e) {
+                log.warn("Reconcile of hot account {} failed: {}", id, e.getMessage());
+            }
+        }
+    }
+
+    // A posting's INCR lands after its commit, so the sum may hold a posting the total does not
+    // have yet. Such a posting is still pending, and the total is only reset when none is and the
+    // total has not moved since it was read; otherwise the account is left for the next round.
+    void reconcile(Long accountId) {
+        String before = redis.opsForValue().get(TOTAL_KEY + accountId);
+        BigDecimal sum = slotRepository.sumBalanceByAccountId(accountId);
+        Long reset = redis.execute(RESET_TOTAL, List.of(TOTAL_KEY + accountId, PENDING_KEY + accountId),
+                before == null ? "" : before, String.valueOf(toMinor(sum)),
+                String.valueOf(System.currentTimeMillis() - pendingStaleMs));
+        if (reset == null || reset != 1L) {
+            log.debug("Hot account {} has postings in flight, retrying next round", accountId);
+            return;
+        }
+        Account account = accountRepository.findById(accountId).orElseThrow();
+        account.setBalance(sum);
+        accountRepository.save(account);
+    }
+
+    // One extra Redis write per posting, before its slot update. A rolled-back posting just leaves
+    // the list again.
+    private String beginPosting(Long accountId) {
+        String posting = UUID.randomUUID().toString();
+        redis.opsForZSet().add(PENDING_KEY + accountId, posting, System.currentTimeMillis());
+        afterCompletion(committed -> {
+            if (!committed) redis.opsForZSet().remove(PENDING_KEY + accountId, posting);
+        });
+        return posting;
+    }
+
+    // the total first, then off the pending list: reconcile must never see neither
+    private void adjustTotal(Long accountId, String posting, BigDecimal delta) {
+        afterCommit(() -> {
+            redis.opsForValue().increment(TOTAL_KEY + accountId, toMinor(delta));
+            redis.opsForZSet().remove(PENDING_KEY + accountId, posting);
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    action.run();
+                } catch (Exception e) {
+                    // the next reconcile corrects the total
+                    log.warn("Hot account total update failed: {}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    // outside a transaction there is nothing to roll back
+    private static void afterCompletion(Consumer<Boolean> action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    action.accept(status == STATUS_COMMITTED);
+                } catch (Exception e) {
+                    // the entry goes stale and reconcile drops it
+                    log.warn("Hot account pending update failed: {}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    static void requireScale(BigDecimal amount) {
+        if (amount.stripTrailingZeros().scale() > SCALE) {
+            throw new IllegalArgumentException("Amount " + amount.toPlainString() + " has more than " + SCALE + " decimal places");
+        }
+    }
+
+    private static long toMinor(BigDecimal amount) {
+        return amount.setScale(SCALE, RoundingMode.UNNECESSARY).movePointRight(SCALE).longValueExact();
+    }
+
+    private static BigDecimal fromMinor(long minor) {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+}
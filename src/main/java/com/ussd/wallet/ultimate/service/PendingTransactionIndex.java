@@ -0,0 +1,72 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.PendingTransaction;
+import com.ussd.wallet.ultimate.domain.PendingTransactionKey;
+import com.ussd.wallet.ultimate.repository.PendingTransactionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Hour-bucketed index of non-terminal withdrawals. Writes are best effort: a failed index
+// update must never fail the payout itself, the sweeper tolerates stale rows.
+@Service
+public class PendingTransactionIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(PendingTransactionIndex.class);
+    private static final DateTimeFormatter BUCKET = DateTimeFormatter.ofPattern("yyyyMMddHH").withZone(ZoneOffset.UTC);
+
+    private final PendingTransactionRepository repository;
+
+    public PendingTransactionIndex(PendingTransactionRepository repository) {
+        this.repository = repository;
+    }
+
+    public static String bucketOf(Instant createdAt) {
+        return BUCKET.format(createdAt);
+    }
+
+    public void track(UUID txId, Long accountId, BigDecimal amount, String currency, Instant createdAt, String status) {
+        try {
+            repository.save(PendingTransaction.builder()
+                    .key(new PendingTransactionKey(bucketOf(createdAt), createdAt, txId))
+                    .accountId(accountId)
+                    .amount(amount)
+                    .currency(currency)
+                    .status(status)
+                    .updatedAt(Instant.now())
+                    .build());
+        } catch (Exception e) {
+            log.error("Failed to index pending tx={}: {}", txId, e.getMessage(), e);
+        }
+    }
+
+    public void clear(UUID txId, Instant createdAt) {
+        try {
+            repository.deleteById(new PendingTransactionKey(bucketOf(createdAt), createdAt, txId));
+        } catch (Exception e) {
+            log.error("Failed to clear pending index for tx={}: {}", txId, e.getMessage(), e);
+        }
+    }
+
+    // reads only the hourly partitions covering the lookback window
+    public List<PendingTransaction> recent(Duration lookback) {
+        Instant now = Instant.now();
+        Instant bucket = now.minus(lookback).truncatedTo(ChronoUnit.HOURS);
+        List<PendingTransaction> rows = new ArrayList<>();
+        while (!bucket.isAfter(now)) {
+            rows.addAll(repository.findByKeyBucket(bucketOf(bucket)));
+            bucket = bucket.plus(1, ChronoUnit.HOURS);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,220 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.User;
+import com.ussd.wallet.ultimate.tracing.Span;
+import com.ussd.wallet.ultimate.tracing.Tracing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// PIN checks for the withdraw and transfer flows. BCrypt runs on its own core-sized pool so a burst
+// of guesses queues there instead of stealing CPU from the I/O-bound USSD workers; a full queue is
+// answered "busy" straight away. Repeated failures lock the MSISDN out, and a successful check
+// leaves a short-lived token on the session so a resubmitted hop does not hash again.
+@Service
+public class PinVerificationService {
+
+    private static final Logger log = LoggerFactory.getLogger(PinVerificationService.class);
+
+    public enum Outcome { VERIFIED, INCORRECT, LOCKED, BUSY }
+
+    // counts a failure and starts the lockout window on the first one, in one step, so a node dying
+    // between the two cannot leave a counter that never expires
+    static final RedisScript<Long> COUNT_FAILURE = new DefaultRedisScript<>(
+            "local failures = redis.call('INCR', KEYS[1])\n"
+                    + "if failures == 1 then\n"
+                    + "  redis.call('PEXPIRE', KEYS[1], ARGV[1])\n"
+                    + "end\n"
+                    + "return failures", Long.class);
+
+    // rehashed is set when the stored hash was below the configured cost; the caller saves it
+    record Check(boolean matches, String rehashed) {
+    }
+
+    private final StringRedisTemplate redis;
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolTaskExecutor pinExecutor;
+    private final int maxFailures;
+    private final Duration lockout;
+    private final Duration verifiedTtl;
+    private final Duration maxWait;
+    private final Timer queueWait;
+    private final Timer hashTime;
+    private final MeterRegistry registry;
+    private final Counter tokenHits;
+    private final Counter rehashed;
+    private final SecretKeySpec tokenKey;
+
+    public PinVerificationService(StringRedisTemplate redis, PasswordEncoder passwordEncoder,
+                                  @Qualifier("pinExecutor") ThreadPoolTaskExecutor pinExecutor, MeterRegistry registry,
+                                  @Value("${ussd.pin.max-failures:5}") int maxFailures,
+                                  @Value("${ussd.pin.lockout-minutes:30}") long lockoutMinutes,
+                                  @Value("${ussd.pin.verified-ttl-seconds:120}") long verifiedTtlSeconds,
+                                  @Value("${ussd.pin.max-wait-ms:1500}") long maxWaitMs,
+                                  @Value("${ussd.pin.token-secret:}") String tokenSecret) {
+        this.redis = redis;
+        this.passwordEncoder = passwordEncoder;
+        this.pinExecutor = pinExecutor;
+        this.registry = registry;
+        this.maxFailures = maxFailures;
+        this.lockout = Duration.ofMinutes(lockoutMinutes);
+        this.verifiedTtl = Duration.ofSeconds(verifiedTtlSeconds);
+        this.maxWait = Duration.ofMillis(maxWaitMs);
+        this.tokenKey = new SecretKeySpec(tokenSecret.isBlank() ? randomSecret() : tokenSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.queueWait = Timer.builder("ussd.pin.queue.wait").publishPercentiles(0.5, 0.99).register(registry);
+        this.hashTime = Timer.builder("ussd.pin.hash").publishPercentiles(0.5, 0.99).register(registry);
+        this.tokenHits = registry.counter("ussd.pin.token.hits");
+        this.rehashed = registry.counter("ussd.pin.rehashed");
+        registry.gauge("ussd.pin.queue.depth", pinExecutor, e -> e.getThreadPoolExecutor().getQueue().size());
+    }
+
+    // The session token and the failure count come back in one round trip; a locked MSISDN or a
+    // session that already verified this PIN never reaches the hashing pool.
+    public Outcome verify(String sessionId, User user, String pin) {
+        long started = System.nanoTime();
+        Outcome outcome = Outcome.BUSY;
+        try (Span span = Tracing.child("pin verify")) {
+            String tokenKey = tokenKey(sessionId);
+            String failuresKey = failuresKey(user.getMsisdn());
+            String token = tokenValue(user.getMsisdn(), pin);
+            RequestDeadline.checkpoint("redis.pin");
+            List<String> state = redis.opsForValue().multiGet(List.of(tokenKey, failuresKey));
+            if (state != null && token.equals(state.get(0))) {
+                tokenHits.increment();
+                outcome = Outcome.VERIFIED;
+                return outcome;
+            }
+            if (state != null && state.get(1) != null && Long.parseLong(state.get(1)) >= maxFailures) {
+                outcome = Outcome.LOCKED;
+                return outcome;
+            }
+
+            Check check = check(pin, user.getPinHash());
+            if (check == null) {
+                span.tag("pin.busy", true);
+                return outcome;
+            }
+            if (!check.matches()) {
+                Long failures = redis.execute(COUNT_FAILURE, List.of(failuresKey), String.valueOf(lockout.toMillis()));
+                if (failures != null && failures >= maxFailures) {
+                    log.warn("PIN locked for msisdn={} after {} failures", user.getMsisdn(), failures);
+                    outcome = Outcome.LOCKED;
+                } else {
+                    outcome = Outcome.INCORRECT;
+                }
+                return outcome;
+            }
+            redis.opsForValue().set(tokenKey, token, verifiedTtl);
+            if (state != null && state.get(1) != null) redis.delete(failuresKey);
+            if (check.rehashed() != null) {
+                user.setPinHash(check.rehashed());
+                rehashed.increment();
+            }
+            outcome = Outcome.VERIFIED;
+            return outcome;
+        } finally {
+            Timer.builder("ussd.pin.verify").tag("outcome", outcome.name().toLowerCase())
+                    .publishPercentiles(0.5, 0.99).register(registry)
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // null when the pool's queue is full or the hash did not finish within the wait budget
+    Check check(String pin, String storedHash) {
+        long enqueued = System.nanoTime();
+        Future<Check> work;
+        try {
+            work = pinExecutor.submit(() -> {
+                long dequeued = System.nanoTime();
+                queueWait.record(dequeued - enqueued, TimeUnit.NANOSECONDS);
+                try {
+                    if (!passwordEncoder.matches(pin, storedHash)) return new Check(false, null);
+                    return new Check(true, passwordEncoder.upgradeEncoding(storedHash) ? passwordEncoder.encode(pin) : null);
+                } finally {
+                    hashTime.record(System.nanoTime() - dequeued, TimeUnit.NANOSECONDS);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            registry.counter("ussd.pin.rejected", "reason", "queue_full").increment();
+            return null;
+        }
+        try {
+            return work.get(waitMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // a cancelled check still queued is skipped when a pool thread reaches it
+            work.cancel(false);
+            registry.counter("ussd.pin.rejected", "reason", "timeout").increment();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("PIN check failed", e.getCause());
+        }
+    }
+
+    // never longer than what is left of the gateway budget
+    private long waitMillis() {
+        RequestDeadline deadline = RequestDeadline.current();
+        long wait = maxWait.toMillis();
+        return deadline == null ? wait : Math.max(0, Math.min(wait, deadline.remaining().toMillis()));
+    }
+
+    public int queueDepth() {
+        return pinExecutor.getThreadPoolExecutor().getQueue().size();
+    }
+
+    static String tokenKey(String sessionId) {
+        return "pin:verified:" + sessionId;
+    }
+
+    static String failuresKey(String msisdn) {
+        return "pin:failures:" + msisdn;
+    }
+
+    // ties the token to the PIN that was checked, so a different PIN later in the session is hashed
+    // again. Keyed with the server secret: a four-digit PIN space is no protection for a plain
+    // digest read out of Redis.
+    String tokenValue(String msisdn, String pin) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(tokenKey);
+            return HexFormat.of().formatHex(mac.doFinal((msisdn + ':' + pin).getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // without a configured secret each node keys its own tokens; a hop resubmitted to another node
+    // is then hashed again, which costs time but never admits a wrong PIN
+    private static byte[] randomSecret() {
+        log.warn("ussd.pin.token-secret is not set; verified-session tokens are only honoured by the node that issued them");
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+}
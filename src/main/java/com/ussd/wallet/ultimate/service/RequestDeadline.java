@@ -0,0 +1,111 @@
+package com.ussd.wallet.ultimate.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Time budget for a single USSD hop. Bound to the worker thread so that Redis, JPA,
+// Kafka and SMS calls further down can check it without changing every signature.
+// A step that starts after the budget ran out fails with Exceeded; a step that starts in
+// time is given what is left of the budget as its timeout (see timeout(Duration)). Once the
+// gateway has been answered and the hop handed off, the deadline moves to a background budget,
+// so the rest of the hop is bounded but no longer failed against a gateway that stopped waiting.
+public final class RequestDeadline {
+
+    private static final ThreadLocal<RequestDeadline> CURRENT = new ThreadLocal<>();
+
+    private volatile long deadlineNanos;
+    private final MeterRegistry registry;
+    private final Set<String> notified = ConcurrentHashMap.newKeySet();
+    private volatile boolean handedOff;
+
+    // the hop is abandoned; nothing after the step that threw runs, and @Transactional work rolls back
+    public static final class Exceeded extends IllegalStateException {
+        public Exceeded(String step) {
+            super("USSD budget spent before " + step);
+        }
+    }
+
+    private RequestDeadline(long deadlineNanos, MeterRegistry registry) {
+        this.deadlineNanos = deadlineNanos;
+        this.registry = registry;
+    }
+
+    public static RequestDeadline after(Duration budget, MeterRegistry registry) {
+        return new RequestDeadline(System.nanoTime() + budget.toNanos(), registry);
+    }
+
+    public Duration remaining() {
+        long left = deadlineNanos - System.nanoTime();
+        return left <= 0 ? Duration.ZERO : Duration.ofNanos(left);
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    // true if the step still fits in the budget; otherwise records the miss for that step
+    public boolean check(String step) {
+        if (!isExpired()) return true;
+        Counter.builder("ussd.deadline.exceeded")
+                .description("USSD steps started after the gateway budget ran out")
+                .tag("step", step)
+                .register(registry)
+                .increment();
+        return false;
+    }
+
+    public boolean isHandedOff() {
+        return handedOff;
+    }
+
+    public void markHandedOff(Duration backgroundBudget) {
+        this.deadlineNanos = System.nanoTime() + backgroundBudget.toNanos();
+        this.handedOff = true;
+    }
+
+    // an SMS already told this number how the hop went, so the late-result SMS is not needed
+    public void markNotified(String msisdn) {
+        if (msisdn != null) notified.add(msisdn);
+    }
+
+    public boolean wasNotified(String msisdn) {
+        return msisdn != null && notified.contains(msisdn);
+    }
+
+    public static RequestDeadline current() {
+        return CURRENT.get();
+    }
+
+    public static void bind(RequestDeadline deadline) {
+        CURRENT.set(deadline);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    // Before a blocking call. Calls outside a USSD hop (REST, Kafka, sagas) have no deadline and
+    // always proceed; inside one, a call that would start late is not made at all.
+    public static void checkpoint(String step) {
+        RequestDeadline d = CURRENT.get();
+        if (d != null && !d.check(step)) throw new Exceeded(step);
+    }
+
+    // for steps that have somewhere else to go when the budget is spent (SMS moves to @Async)
+    public static boolean within(String step) {
+        RequestDeadline d = CURRENT.get();
+        return d == null || d.check(step);
+    }
+
+    // The timeout for a client call: what is left of the budget, never more than the client's own.
+    public static Duration timeout(Duration clientTimeout) {
+        RequestDeadline d = CURRENT.get();
+        if (d == null) return clientTimeout;
+        Duration left = d.remaining();
+        return left.compareTo(clientTimeout) < 0 ? left : clientTimeout;
+    }
+}
@@ -1,27 +1,156 @@
 package com.ussd.wallet.ultimate.service;
 
+import com.ussd.wallet.ultimate.tracing.Span;
+import com.ussd.wallet.ultimate.tracing.Tracing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.ws.client.core.WebServiceTemplate;
+import org.springframework.xml.transform.StringSource;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
 
+import javax.xml.transform.dom.DOMResult;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// FX rates from the currency SOAP service, as BigDecimal straight from the response text. Rates are
+// cached per pair for a short TTL so a wallet view costs no remote calls in the common case; when a
+// refresh fails, the last rate is served until it is older than max-stale, then the call fails.
+// Only one caller refreshes a pair; the others take the last rate while it is within max-stale and
+// only wait, for no longer than their budget allows, when there is none.
 @Service
 public class SoapCurrencyClient {
 
+    private static final Logger log = LoggerFactory.getLogger(SoapCurrencyClient.class);
+
+    static final String NAMESPACE = "http://ussd.wallet/fx";
+
+    private record CachedRate(BigDecimal rate, long fetchedAtNanos) {
+    }
+
     private final WebServiceTemplate ws;
+    private final MeterRegistry registry;
+    private final long ttlNanos;
+    private final long maxStaleNanos;
+    private final Timer fetchTime;
+    private final Map<String, CachedRate> rates = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantLock> refreshLocks = new ConcurrentHashMap<>();
 
-    @Value("${currency.soap-wsdl}")
-    private String wsdl;
+    // longest a caller with no usable rate waits for another caller's refresh of the same pair
+    @Value("${ussd.fx.refresh-wait-ms:2000}")
+    private long refreshWaitMs = 2_000;
 
-    public SoapCurrencyClient(WebServiceTemplate ws) {
+    public SoapCurrencyClient(@Lazy WebServiceTemplate ws, MeterRegistry registry,
+                              @Value("${ussd.fx.rate-ttl-seconds:300}") long rateTtlSeconds,
+                              @Value("${ussd.fx.max-stale-minutes:60}") long maxStaleMinutes) {
         this.ws = ws;
+        this.registry = registry;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(rateTtlSeconds);
+        this.maxStaleNanos = TimeUnit.MINUTES.toNanos(maxStaleMinutes);
+        this.fetchTime = Timer.builder("ussd.fx.fetch").publishPercentiles(0.5, 0.99).register(registry);
     }
 
-    public double getRate(String from, String to) {
+    // units of `to` per unit of `from`
+    public BigDecimal getRate(String from, String to) {
+        String f = code(from);
+        String t = code(to);
+        if (f.equals(t)) return BigDecimal.ONE;
+        String pair = f + t;
 
-        if (from.equalsIgnoreCase(to)) return 1.0;
-        if (from.equalsIgnoreCase("NGN") && to.equalsIgnoreCase("USD")) return 0.0024;
-        if (from.equalsIgnoreCase("USD") && to.equalsIgnoreCase("NGN")) return 420.0;
-        return 1.0;
+        CachedRate cached = rates.get(pair);
+        if (fresh(cached)) {
+            registry.counter("ussd.fx.cache", "result", "hit").increment();
+            return cached.rate();
+        }
+        // one refresh per pair; a caller that finds it running takes the last usable rate, or waits for its result
+        ReentrantLock lock = refreshLocks.computeIfAbsent(pair, k -> new ReentrantLock());
+        if (!lock.tryLock()) {
+            if (usable(cached)) {
+                registry.counter("ussd.fx.cache", "result", "stale").increment();
+                return cached.rate();
+            }
+            awaitRefresh(lock, f, t);
+        }
+        try {
+            cached = rates.get(pair);
+            if (fresh(cached)) {
+                registry.counter("ussd.fx.cache", "result", "hit").increment();
+                return cached.rate();
+            }
+            try {
+                BigDecimal rate = fetch(f, t);
+                rates.put(pair, new CachedRate(rate, System.nanoTime()));
+                registry.counter("ussd.fx.cache", "result", "miss").increment();
+                return rate;
+            } catch (RuntimeException e) {
+                if (usable(cached)) {
+                    log.warn("FX refresh for {} failed, serving the cached rate: {}", pair, e.getMessage());
+                    registry.counter("ussd.fx.cache", "result", "stale").increment();
+                    return cached.rate();
+                }
+                throw new IllegalStateException("No FX rate for " + f + "->" + t, e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // returns holding the lock, or throws when the refresh outlasts the wait or the request budget
+    private void awaitRefresh(ReentrantLock lock, String from, String to) {
+        RequestDeadline.checkpoint("fx.awaitRefresh");
+        try {
+            if (lock.tryLock(RequestDeadline.timeout(Duration.ofMillis(refreshWaitMs)).toNanos(), TimeUnit.NANOSECONDS)) return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new IllegalStateException("No FX rate for " + from + "->" + to + " while another refresh is running");
     }
-}
 
+    BigDecimal fetch(String from, String to) {
+        try (Span span = Tracing.child("soap GetRate")) {
+            span.tag("fx.pair", from + to);
+            RequestDeadline.checkpoint("soap.fx");
+            long started = System.nanoTime();
+            try {
+                DOMResult result = new DOMResult();
+                ws.sendSourceAndReceiveToResult(new StringSource("<GetRate xmlns=\"" + NAMESPACE + "\"><from>" + from
+                        + "</from><to>" + to + "</to></GetRate>"), result);
+                NodeList rate = ((Document) result.getNode()).getElementsByTagNameNS("*", "rate");
+                if (rate.getLength() == 0) throw new IllegalStateException("GetRate response has no rate");
+                BigDecimal value = new BigDecimal(rate.item(0).getTextContent().trim());
+                if (value.signum() <= 0) throw new IllegalStateException("GetRate returned " + value);
+                return value;
+            } catch (RuntimeException e) {
+                span.error(e);
+                throw e;
+            } finally {
+                fetchTime.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private boolean fresh(CachedRate cached) {
+        return cached != null && System.nanoTime() - cached.fetchedAtNanos() < ttlNanos;
+    }
+
+    private boolean usable(CachedRate cached) {
+        return cached != null && System.nanoTime() - cached.fetchedAtNanos() < maxStaleNanos;
+    }
+
+    // ISO 4217 codes only; they go into the request body as-is
+    private static String code(String currency) {
+        String c = currency == null ? "" : currency.trim().toUpperCase(Locale.ROOT);
+        if (!c.matches("[A-Z]{3}")) throw new IllegalArgumentException("Invalid currency code: " + currency);
+        return c;
+    }
+}
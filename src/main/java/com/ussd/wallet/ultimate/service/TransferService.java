@@ -0,0 +1,297 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ussd.wallet.ultimate.domain.Account;
+import com.ussd.wallet.ultimate.domain.ShardTransfer;
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.repository.AccountRepository;
+import com.ussd.wallet.ultimate.repository.ShardTransferRepository;
+import com.ussd.wallet.ultimate.sharding.ShardFanout;
+import com.ussd.wallet.ultimate.sharding.ShardKeys;
+import com.ussd.wallet.ultimate.sharding.ShardMapRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+// Wallet-to-wallet transfers. Both rows are touched with conditional UPDATEs in ascending account
+// id, whatever the direction of the transfer, so two opposite transfers can never each hold the
+// row the other one needs. The transfer is published once, after commit, as a TRANSFER event;
+// the producer batches sends under load (kafka.producer.linger-ms).
+//
+// Accounts on different shards cannot share a transaction. The debit commits together with a DEBIT
+// leg on the source shard and the credit together with a CREDIT leg on the target, so each step is
+// durable before the next starts and can be repeated: a second credit finds its leg already there.
+// A failed credit voids the CREDIT leg before the money goes back, so a late credit cannot follow a
+// reversal. resumeCrossShard() finishes whatever a crash left open.
+@Service
+public class TransferService {
+
+    private static final Logger log = LoggerFactory.getLogger(TransferService.class);
+
+    static final String RECOVERY_LEASE = "cross-shard-transfers";
+
+    // one leg of a transfer; negative delta is the conditional debit
+    record Posting(Long accountId, BigDecimal delta) {}
+
+    private final AccountRepository accountRepository;
+    private final ShardTransferRepository transferRepository;
+    private final ShardFanout fanout;
+    private final ClusterLease lease;
+    private final HotAccountService hotAccountService;
+    private final ShardMapRegistry shardMap;
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final BackgroundWorkerService backgroundWorkerService;
+    private final TransactionTemplate txTemplate;
+    private final MeterRegistry registry;
+    private final Timer latency;
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Value("${ussd.transfers.recovery-interval-ms:60000}")
+    private long recoveryIntervalMs = 60_000;
+
+    // well past the longest a live transfer can take, so recovery never races one in progress
+    @Value("${ussd.transfers.recover-after-ms:60000}")
+    private long recoverAfterMs = 60_000;
+
+    public TransferService(AccountRepository accountRepository, ShardTransferRepository transferRepository,
+                           HotAccountService hotAccountService, ShardMapRegistry shardMap, ShardFanout fanout, ClusterLease lease,
+                           RedisTemplate<String, Object> redisTemplate, @Lazy KafkaTemplate<String, String> kafkaTemplate,
+                           @Lazy BackgroundWorkerService backgroundWorkerService, PlatformTransactionManager txManager,
+                           MeterRegistry registry) {
+        this.accountRepository = accountRepository;
+        this.transferRepository = transferRepository;
+        this.fanout = fanout;
+        this.lease = lease;
+        this.hotAccountService = hotAccountService;
+        this.shardMap = shardMap;
+        this.redisTemplate = redisTemplate;
+        this.kafkaTemplate = kafkaTemplate;
+        this.backgroundWorkerService = backgroundWorkerService;
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.registry = registry;
+        this.latency = registry.timer("ussd.transfer.latency");
+    }
+
+    // empty when the idempotency key was already used
+    public Optional<Transaction> transfer(Long fromAccountId, Long toAccountId, BigDecimal amount, String currency, String idempotencyKey) {
+        if (fromAccountId.equals(toAccountId)) throw new IllegalArgumentException("Cannot transfer to the same account");
+        if (amount.signum() <= 0) throw new IllegalArgumentException("Amount must be positive");
+
+        RequestDeadline.checkpoint("redis.idempotency");
+        Boolean first = redisTemplate.opsForValue().setIfAbsent("idem:transfer:" + idempotencyKey, "1", Duration.ofSeconds(300));
+        if (Boolean.FALSE.equals(first)) {
+            log.info("Skipping duplicate transfer, idempotencyKey={}", idempotencyKey);
+            return Optional.empty();
+        }
+
+        long started = System.nanoTime();
+        try {
+            RequestDeadline.checkpoint("jpa.findAccounts");
+            Account from = accountRepository.findById(fromAccountId).orElseThrow(() -> new IllegalArgumentException("Account not found"));
+            Account to = accountRepository.findById(toAccountId).orElseThrow(() -> new IllegalArgumentException("Recipient account not found"));
+            if (!from.getCurrency().equals(currency) || !to.getCurrency().equals(currency)) {
+                throw new IllegalArgumentException("Both accounts must be in " + currency);
+            }
+            Map<Long, Account> accounts = Map.of(from.getId(), from, to.getId(), to);
+
+            RequestDeadline.checkpoint("jpa.transfer");
+            if (sameShard(fromAccountId, toAccountId)) {
+                txTemplate.executeWithoutResult(status -> postings(fromAccountId, toAccountId, amount)
+                        .forEach(p -> apply(accounts.get(p.accountId()), p.delta())));
+            } else {
+                transferAcrossShards(from, to, amount, currency);
+            }
+            registry.counter("ussd.transfer.count", "outcome", "success").increment();
+        } catch (RuntimeException e) {
+            // a failed transfer may be retried with the same key
+            redisTemplate.delete("idem:transfer:" + idempotencyKey);
+            registry.counter("ussd.transfer.count", "outcome", "failed").increment();
+            throw e;
+        } finally {
+            latency.record(Duration.ofNanos(System.nanoTime() - started));
+        }
+
+        Transaction event = Transaction.builder()
+                .id(UUID.randomUUID())
+                .accountId(fromAccountId)
+                .amount(amount)
+                .currency(currency)
+                .type("TRANSFER")
+                .status("SUCCESS")
+                .createdAt(Instant.now())
+                .meta("to=" + toAccountId)
+                .build();
+        publish(event);
+        return Optional.of(event);
+    }
+
+    // ascending account id, so every transfer takes row locks in the same global order
+    static List<Posting> postings(Long fromAccountId, Long toAccountId, BigDecimal amount) {
+        Posting debit = new Posting(fromAccountId, amount.negate());
+        Posting credit = new Posting(toAccountId, amount);
+        return fromAccountId < toAccountId ? List.of(debit, credit) : List.of(credit, debit);
+    }
+
+    private void apply(Account account, BigDecimal delta) {
+        if (account.isHot()) {
+            if (delta.signum() < 0) hotAccountService.debit(account, delta.negate());
+            else hotAccountService.credit(account, delta);
+            return;
+        }
+        if (delta.signum() < 0) {
+            if (accountRepository.debitById(account.getId(), delta.negate()) == 0) {
+                throw new IllegalArgumentException("Insufficient funds");
+            }
+        } else {
+            accountRepository.creditById(account.getId(), delta);
+        }
+    }
+
+    private boolean sameShard(Long a, Long b) {
+        return shardMap.shardFor(ShardKeys.bucketOfId(a)).equals(shardMap.shardFor(ShardKeys.bucketOfId(b)));
+    }
+
+    private void transferAcrossShards(Account from, Account to, BigDecimal amount, String currency) {
+        String transferId = UUID.randomUUID().toString();
+        txTemplate.executeWithoutResult(status -> {
+            apply(from, amount.negate());
+            transferRepository.insertLegByAccountId(from.getId(), transferId, ShardTransfer.DEBIT, to.getId(), amount, currency,
+                    ShardTransfer.DEBITED, Instant.now());
+        });
+        try {
+            credit(transferId, from.getId(), to, amount, currency);
+        } catch (RuntimeException e) {
+            log.error("Cross-shard credit {} to {} failed, reversing debit on {}: {}", transferId, to.getId(), from.getId(), e.getMessage());
+            boolean reversed;
+            try {
+                reversed = reverse(transferId, from, to.getId(), amount, currency);
+            } catch (RuntimeException re) {
+                log.error("Reversal of transfer {} left to recovery: {}", transferId, re.getMessage());
+                throw e;
+            }
+            // the credit had committed after all; only its acknowledgement was lost
+            if (!reversed) return;
+            throw e;
+        }
+    }
+
+    // The CREDIT leg and the credit in one target-shard transaction, then the DEBIT leg is closed.
+    // A DEBIT leg already REVERSING is closed too: its reversal cannot void a leg that is there.
+    private void credit(String transferId, Long fromAccountId, Account to, BigDecimal amount, String currency) {
+        txTemplate.executeWithoutResult(status -> {
+            if (transferRepository.insertLegByAccountId(to.getId(), transferId, ShardTransfer.CREDIT, fromAccountId, amount, currency,
+                    ShardTransfer.CREDITED, Instant.now()) == 0) {
+                String leg = legStatus(to.getId(), transferId, ShardTransfer.CREDIT);
+                if (!ShardTransfer.CREDITED.equals(leg)) throw new IllegalStateException("Transfer " + transferId + " was " + leg);
+                return;
+            }
+            apply(to, amount);
+        });
+        txTemplate.executeWithoutResult(status -> transferRepository.transitionByAccountId(fromAccountId,
+                ShardTransfer.idOf(transferId, ShardTransfer.DEBIT), List.of(ShardTransfer.DEBITED, ShardTransfer.REVERSING),
+                ShardTransfer.CREDITED, Instant.now()));
+    }
+
+    // The DEBIT leg is marked REVERSING first, so a crash from here on is finished as a reversal.
+    // The CREDIT leg is then written as VOIDED, which no credit can get past; if a credit already
+    // wrote it the transfer is closed as CREDITED and false returned. The money goes back in the
+    // same transaction that moves the DEBIT leg to REVERSED, so it goes back once.
+    private boolean reverse(String transferId, Account from, Long toAccountId, BigDecimal amount, String currency) {
+        String debitId = ShardTransfer.idOf(transferId, ShardTransfer.DEBIT);
+        txTemplate.executeWithoutResult(status -> transferRepository.transitionByAccountId(from.getId(), debitId,
+                List.of(ShardTransfer.DEBITED), ShardTransfer.REVERSING, Instant.now()));
+        String creditLeg = txTemplate.execute(status -> {
+            if (transferRepository.insertLegByAccountId(toAccountId, transferId, ShardTransfer.CREDIT, from.getId(), amount, currency,
+                    ShardTransfer.VOIDED, Instant.now()) == 1) return ShardTransfer.VOIDED;
+            return legStatus(toAccountId, transferId, ShardTransfer.CREDIT);
+        });
+        if (ShardTransfer.CREDITED.equals(creditLeg)) {
+            txTemplate.executeWithoutResult(status -> transferRepository.transitionByAccountId(from.getId(), debitId,
+                    List.of(ShardTransfer.DEBITED, ShardTransfer.REVERSING), ShardTransfer.CREDITED, Instant.now()));
+            return false;
+        }
+        txTemplate.executeWithoutResult(status -> {
+            if (transferRepository.transitionByAccountId(from.getId(), debitId,
+                    List.of(ShardTransfer.DEBITED, ShardTransfer.REVERSING), ShardTransfer.REVERSED, Instant.now()) == 1) {
+                apply(from, amount);
+            }
+        });
+        return true;
+    }
+
+    private String legStatus(Long accountId, String transferId, String leg) {
+        return transferRepository.findByAccountIdAndId(accountId, ShardTransfer.idOf(transferId, leg))
+                .map(ShardTransfer::getStatus)
+                .orElseThrow(() -> new IllegalStateException("Missing " + leg + " leg of transfer " + transferId));
+    }
+
+    // DEBIT legs a crash left open, on every shard: DEBITED ones are credited, REVERSING ones reversed
+    @Scheduled(fixedDelayString = "${ussd.transfers.recovery-interval-ms:60000}")
+    public void resumeCrossShard() {
+        if (!lease.acquire(RECOVERY_LEASE, Duration.ofMillis(recoveryIntervalMs))) return;
+        Timestamp before = Timestamp.from(Instant.now().minusMillis(recoverAfterMs));
+        fanout.onEveryShard(jdbc -> jdbc.query(
+                "SELECT transfer_id, account_id, counterparty_account_id, amount, currency, status FROM shard_transfers "
+                        + "WHERE leg = ? AND status IN (?, ?) AND updated_at < ? LIMIT 500",
+                (rs, n) -> ShardTransfer.builder()
+                        .transferId(rs.getString("transfer_id"))
+                        .accountId(rs.getLong("account_id"))
+                        .counterpartyAccountId(rs.getLong("counterparty_account_id"))
+                        .amount(rs.getBigDecimal("amount"))
+                        .currency(rs.getString("currency"))
+                        .status(rs.getString("status"))
+                        .build(),
+                ShardTransfer.DEBIT, ShardTransfer.DEBITED, ShardTransfer.REVERSING, before))
+                .values().forEach(legs -> legs.forEach(this::resume));
+    }
+
+    private void resume(ShardTransfer leg) {
+        try {
+            Account from = accountRepository.findById(leg.getAccountId()).orElseThrow();
+            if (ShardTransfer.DEBITED.equals(leg.getStatus())) {
+                Account to = accountRepository.findById(leg.getCounterpartyAccountId()).orElseThrow();
+                try {
+                    credit(leg.getTransferId(), from.getId(), to, leg.getAmount(), leg.getCurrency());
+                    log.info("Recovered transfer {}: credited {}", leg.getTransferId(), to.getId());
+                    registry.counter("ussd.transfer.recovered", "outcome", "credited").increment();
+                    return;
+                } catch (RuntimeException e) {
+                    log.warn("Recovered transfer {} could not be credited, reversing: {}", leg.getTransferId(), e.getMessage());
+                }
+            }
+            boolean reversed = reverse(leg.getTransferId(), from, leg.getCounterpartyAccountId(), leg.getAmount(), leg.getCurrency());
+            log.info("Recovered transfer {}: {}", leg.getTransferId(), reversed ? "reversed" : "credited");
+            registry.counter("ussd.transfer.recovered", "outcome", reversed ? "reversed" : "credited").increment();
+        } catch (RuntimeException e) {
+            log.error("Recovery of transfer {} failed, retrying next round: {}", leg.getTransferId(), e.getMessage());
+        }
+    }
+
+    private void publish(Transaction event) {
+        try {
+            kafkaTemplate.send("transactions", event.getAccountId().toString(), objectMapper.writeValueAsString(event));
+        } catch (Exception e) {
+            log.error("Failed to publish transfer {} to Kafka: {}", event.getId(), e.getMessage(), e);
+            backgroundWorkerService.publishTransaction(event);
+        }
+    }
+}
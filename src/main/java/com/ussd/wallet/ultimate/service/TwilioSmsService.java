@@ -1,20 +1,30 @@
 package com.ussd.wallet.ultimate.service;
 
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.twilio.Twilio;
 import com.twilio.rest.api.v2010.account.Message;
+import com.ussd.wallet.ultimate.retry.RetryScheduler;
+import com.ussd.wallet.ultimate.tracing.Span;
+import com.ussd.wallet.ultimate.tracing.Tracing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
 
+import java.util.Map;
+
 @Service
 public class TwilioSmsService {
 
     private static final Logger log = LoggerFactory.getLogger(TwilioSmsService.class);
 
+    public static final String SMS_RETRY = "SEND_SMS";
+
     @Value("${twilio.account-sid:}")
     private String accountSid;
 
@@ -24,8 +34,34 @@ public class TwilioSmsService {
     @Value("${twilio.from-number:}")
     private String fromNumber;
 
+    @Value("${ussd.fast-startup.enabled:false}")
+    private boolean fastStartup;
+
+    private volatile boolean initialized;
+
+    private final TwilioSmsService self;
+    private final RetryScheduler retryScheduler;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // self-reference through the proxy so sendSmsAsync is actually dispatched by @Async
+    public TwilioSmsService(@Lazy TwilioSmsService self, @Lazy RetryScheduler retryScheduler) {
+        this.self = self;
+        this.retryScheduler = retryScheduler;
+    }
+
     @PostConstruct
-    public void init() {
+    public void onStartup() {
+        retryScheduler.register(SMS_RETRY, payload -> {
+            Map<?, ?> sms = objectMapper.readValue(payload, Map.class);
+            deliver((String) sms.get("to"), (String) sms.get("message"));
+        });
+        // in fast-startup mode the Twilio client is initialised by the warmup or the first send
+        if (!fastStartup) init();
+    }
+
+    public synchronized void init() {
+        if (initialized) return;
+        initialized = true;
         if (accountSid != null && !accountSid.isEmpty() && authToken != null && !authToken.isEmpty()) {
             try {
                 Twilio.init(accountSid, authToken);
@@ -40,15 +76,47 @@ public class TwilioSmsService {
 
     public void sendSms(String to, String message) {
         try {
-            if (accountSid == null || accountSid.isEmpty() || authToken == null || authToken.isEmpty() || fromNumber == null || fromNumber.isEmpty()) {
-                log.info("[SMS-MOCK] to={} msg={}", to, message);
-                return;
-            }
-            Message.creator(new com.twilio.type.PhoneNumber(to), new com.twilio.type.PhoneNumber(fromNumber), message).create();
-            log.info("Sent SMS to {}", to);
+            deliver(to, message);
         } catch (Exception e) {
             log.error("Failed to send SMS to {}: {}", to, e.getMessage(), e);
+            try {
+                retryScheduler.schedule(SMS_RETRY, objectMapper.writeValueAsString(Map.of("to", to, "message", message)), e.getMessage());
+            } catch (Exception ex) {
+                log.error("Could not queue SMS retry to {}: {}", to, ex.getMessage());
+            }
         }
     }
-}
 
+    private void deliver(String to, String message) {
+        if (accountSid == null || accountSid.isEmpty() || authToken == null || authToken.isEmpty() || fromNumber == null || fromNumber.isEmpty()) {
+            log.info("[SMS-MOCK] to={} msg={}", to, message);
+            return;
+        }
+        if (!initialized) init();
+        try (Span span = Tracing.child("twilio sms")) {
+            try {
+                Message.creator(new com.twilio.type.PhoneNumber(to), new com.twilio.type.PhoneNumber(fromNumber), message).create();
+            } catch (RuntimeException e) {
+                span.error(e);
+                throw e;
+            }
+        }
+        log.info("Sent SMS to {}", to);
+    }
+
+    @Async
+    public void sendSmsAsync(String to, String message) {
+        sendSms(to, message);
+    }
+
+    // inside a USSD hop a Twilio call must not eat the rest of the gateway budget
+    public void sendSmsWithinDeadline(String to, String message) {
+        RequestDeadline deadline = RequestDeadline.current();
+        if (deadline != null) deadline.markNotified(to);
+        if (RequestDeadline.within("sms")) {
+            sendSms(to, message);
+        } else {
+            self.sendSmsAsync(to, message);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.ussd.wallet.ultimate.service;
+
+import java.util.List;
+
+// Fixed USSD screens. Kept in one place so gateway writers can pre-encode them once.
+public final class UssdMenus {
+
+    private UssdMenus() {}
+
+    public static final String MAIN_MENU = "CON Welcome to USSD Wallet\n1. Create Account\n2. Deposit\n3. Withdraw\n4. Check Balance\n5. Send Money\n6. All Balances";
+    public static final String PENDING = "END Request received. You will get an SMS shortly.";
+    public static final String BUSY = "END Service busy. Try again later.";
+    public static final String ERROR = "END An error occurred. Try again later.";
+    public static final String BAD_REQUEST = "END Invalid request";
+    public static final String UNKNOWN_OPTION = "END Unknown option";
+    public static final String ACCOUNT_EXISTS = "END Account already exists for this number";
+    public static final String ENTER_NEW_PIN = "CON Please enter a 4-digit PIN for your wallet";
+    public static final String INVALID_NEW_PIN = "CON Invalid PIN. Enter a 4-digit PIN";
+    public static final String CONFIRM_PIN = "CON Confirm your 4-digit PIN";
+    public static final String CREATE_SESSION_EXPIRED = "END Session expired. Start again";
+    public static final String PIN_MISMATCH = "END PINs do not match. Start again.";
+    public static final String ACCOUNT_CREATED = "END Account created successfully";
+    public static final String INVALID_FLOW = "END Invalid flow";
+    public static final String NO_ACCOUNT = "END No account found";
+    public static final String NO_ACCOUNT_CREATE_FIRST = "END No account found. Create one first.";
+    public static final String ENTER_WITHDRAW_AMOUNT = "CON Enter amount to withdraw (e.g. 1000)";
+    public static final String INVALID_AMOUNT = "CON Invalid amount. Enter numeric amount";
+    public static final String ENTER_PIN = "CON Enter your 4-digit PIN";
+    public static final String NO_PIN = "END No PIN found. Create account again.";
+    public static final String INCORRECT_PIN = "END Incorrect PIN";
+    public static final String PIN_LOCKED = "END Too many wrong PIN attempts. Try again later.";
+    public static final String SESSION_EXPIRED = "END Session expired. Start again.";
+    public static final String ACCOUNT_NOT_FOUND = "END Account not found";
+    public static final String WITHDRAW_INITIATED = "END Withdrawal initiated. You will receive an SMS when complete.";
+    public static final String ENTER_DEPOSIT_AMOUNT = "CON Enter amount to deposit (e.g. 1000)";
+    public static final String DEPOSIT_LINK_SENT = "END You will receive an SMS with a link to complete your deposit.";
+    public static final String DEPOSIT_UNAVAILABLE = "END Deposits are unavailable right now. Try again later.";
+    public static final String ENTER_RECIPIENT = "CON Enter recipient phone number";
+    public static final String INVALID_RECIPIENT = "CON Invalid number. Enter recipient phone number";
+    public static final String ENTER_TRANSFER_AMOUNT = "CON Enter amount to send (e.g. 1000)";
+    public static final String RECIPIENT_NOT_FOUND = "END Recipient does not have a wallet";
+    public static final String TRANSFER_TO_SELF = "END You cannot send money to yourself";
+    public static final String TRANSFER_DUPLICATE = "END Transfer already processed";
+
+    public static final List<String> ALL = List.of(
+            MAIN_MENU,
+            PENDING,
+            BUSY,
+            ERROR,
+            BAD_REQUEST,
+            UNKNOWN_OPTION,
+            ACCOUNT_EXISTS,
+            ENTER_NEW_PIN,
+            INVALID_NEW_PIN,
+            CONFIRM_PIN,
+            CREATE_SESSION_EXPIRED,
+            PIN_MISMATCH,
+            ACCOUNT_CREATED,
+            INVALID_FLOW,
+            NO_ACCOUNT,
+            NO_ACCOUNT_CREATE_FIRST,
+            ENTER_WITHDRAW_AMOUNT,
+            INVALID_AMOUNT,
+            ENTER_PIN,
+            NO_PIN,
+            INCORRECT_PIN,
+            PIN_LOCKED,
+            SESSION_EXPIRED,
+            ACCOUNT_NOT_FOUND,
+            WITHDRAW_INITIATED,
+            ENTER_DEPOSIT_AMOUNT,
+            DEPOSIT_LINK_SENT,
+            DEPOSIT_UNAVAILABLE,
+            ENTER_RECIPIENT,
+            INVALID_RECIPIENT,
+            ENTER_TRANSFER_AMOUNT,
+            RECIPIENT_NOT_FOUND,
+            TRANSFER_TO_SELF,
+            TRANSFER_DUPLICATE
+    );
+}
@@ -1,38 +1,152 @@
 package com.ussd.wallet.ultimate.service;
 
+import com.ussd.wallet.ultimate.datasource.ReadYourWrites;
 import com.ussd.wallet.ultimate.domain.User;
 import com.ussd.wallet.ultimate.dto.UssdRequestDto;
 import com.ussd.wallet.ultimate.dto.UssdResponseDto;
 import com.ussd.wallet.ultimate.repository.UserRepository;
+import com.ussd.wallet.ultimate.tracing.Span;
+import com.ussd.wallet.ultimate.tracing.Tracing;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class UssdService {
 
+    private static final Logger log = LoggerFactory.getLogger(UssdService.class);
+
     private final RedisTemplate<String, Object> redisTemplate;
     private final UserRepository userRepository;
     private final AccountService accountService;
+    private final TransferService transferService;
+    private final DepositService depositService;
     private final PasswordEncoder passwordEncoder;
+    private final PinVerificationService pinVerifier;
+    private final WalletService walletService;
     private final TwilioSmsService smsService;
+    private final ThreadPoolTaskExecutor ussdExecutor;
+    private final MeterRegistry registry;
+
+    @Value("${ussd.request-budget-ms:3000}")
+    private long defaultBudgetMs;
+
+    @Value("${ussd.response-reserve-ms:250}")
+    private long responseReserveMs;
+
+    // what a hop handed off past the gateway budget has left to finish and report by SMS
+    @Value("${ussd.handoff-budget-ms:30000}")
+    private long handoffBudgetMs = 30_000;
 
-    public UssdService(RedisTemplate<String, Object> redisTemplate, UserRepository userRepository, AccountService accountService, PasswordEncoder passwordEncoder, TwilioSmsService smsService) {
+    // how long a session that wrote keeps reading from the primary; at least the max replica lag
+    @Value("${ussd.datasource.read-your-writes-seconds:5}")
+    private long readYourWritesSeconds;
+
+    public UssdService(RedisTemplate<String, Object> redisTemplate, UserRepository userRepository, AccountService accountService, TransferService transferService,
+                       DepositService depositService, PasswordEncoder passwordEncoder, PinVerificationService pinVerifier, WalletService walletService,
+                       @Lazy TwilioSmsService smsService, @Qualifier("ussdExecutor") ThreadPoolTaskExecutor ussdExecutor, MeterRegistry registry) {
         this.redisTemplate = redisTemplate;
         this.userRepository = userRepository;
         this.accountService = accountService;
+        this.transferService = transferService;
+        this.depositService = depositService;
         this.passwordEncoder = passwordEncoder;
+        this.pinVerifier = pinVerifier;
+        this.walletService = walletService;
         this.smsService = smsService;
+        this.ussdExecutor = ussdExecutor;
+        this.registry = registry;
     }
 
     public UssdResponseDto handle(UssdRequestDto req) {
+        return handle(req, null);
+    }
+
+    // budgetMs is what the gateway will wait for us; we keep a small reserve to write the response
+    public UssdResponseDto handle(UssdRequestDto req, Long budgetMs) {
+        long budget = budgetMs == null || budgetMs <= 0 ? defaultBudgetMs : budgetMs;
+        RequestDeadline deadline = RequestDeadline.after(Duration.ofMillis(budget), registry);
+        long waitMs = Math.max(0, budget - responseReserveMs);
+
+        CompletableFuture<UssdResponseDto> work;
+        try {
+            // the request's span goes along with its deadline, so the hop's spans land in its trace
+            Span span = Tracing.current();
+            work = CompletableFuture.supplyAsync(() -> {
+                RequestDeadline.bind(deadline);
+                try (Tracing.Scope scope = Tracing.bind(span)) {
+                    return processSession(req);
+                } finally {
+                    RequestDeadline.clear();
+                }
+            }, ussdExecutor);
+        } catch (Exception e) {
+            log.warn("USSD executor rejected session={}: {}", req.getSessionId(), e.getMessage());
+            return new UssdResponseDto(UssdMenus.BUSY, true);
+        }
+
+        try {
+            return work.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            deadline.markHandedOff(Duration.ofMillis(handoffBudgetMs));
+            registry.counter("ussd.deadline.handoff").increment();
+            log.warn("USSD budget of {}ms spent for session={}, finishing asynchronously", budget, req.getSessionId());
+            work.whenComplete((res, err) -> notifyLateResult(req, deadline, res, err));
+            return new UssdResponseDto(UssdMenus.PENDING, true);
+        } catch (Exception e) {
+            log.error("USSD processing failed for session={}: {}", req.getSessionId(), e.getMessage(), e);
+            return new UssdResponseDto(UssdMenus.ERROR, true);
+        }
+    }
+
+    // the gateway session is gone, so the outcome goes out by SMS instead, unless the flow
+    // already sent one (withdrawals and transfers confirm by SMS themselves)
+    private void notifyLateResult(UssdRequestDto req, RequestDeadline deadline, UssdResponseDto res, Throwable err) {
+        if (err == null && deadline.wasNotified(req.getMsisdn())) return;
+        String text;
+        if (err != null || res == null) {
+            text = "We could not complete your request. Please try again.";
+        } else if (res.isEndSession()) {
+            text = res.getResponse().startsWith("END ") ? res.getResponse().substring(4) : res.getResponse();
+        } else {
+            text = "Your session timed out. Please dial again to continue.";
+        }
+        smsService.sendSms(req.getMsisdn(), text);
+    }
+
+    // session state and the read-your-writes marker come back in a single round trip
+    private UssdResponseDto processSession(UssdRequestDto req) {
         String sessionKey = "session:" + req.getSessionId();
-        Object stateObj = redisTemplate.opsForValue().get(sessionKey);
+        RequestDeadline.checkpoint("redis.session");
+        List<Object> session = redisTemplate.opsForValue().multiGet(List.of(sessionKey, sessionKey + ":rw"));
+        Object stateObj = session == null ? null : session.get(0);
+        ReadYourWrites.begin(session != null && session.get(1) != null);
+        try {
+            return process(req, sessionKey, stateObj);
+        } finally {
+            if (ReadYourWrites.end()) {
+                redisTemplate.opsForValue().set(sessionKey + ":rw", "1", Duration.ofSeconds(readYourWritesSeconds));
+            }
+        }
+    }
+
+    UssdResponseDto process(UssdRequestDto req, String sessionKey, Object stateObj) {
         String state = stateObj == null ? "MENU" : (String) stateObj;
 
         String incoming = req.getText() == null ? "" : req.getText().trim();
@@ -45,8 +159,7 @@ public class UssdService {
         // Simple menu
         if (state.equals("MENU") && (incoming.isEmpty() || incoming.equals(""))) {
             redisTemplate.opsForValue().set(sessionKey, "MENU.SELECT", Duration.ofSeconds(120));
-            String menu = "CON Welcome to USSD Wallet\n1. Create Account\n2. Deposit\n3. Withdraw\n4. Check Balance";
-            return new UssdResponseDto(menu, false);
+            return new UssdResponseDto(UssdMenus.MAIN_MENU, false);
         }
 
         // Handle menu selection based on the first input (parts[0])
@@ -56,17 +169,23 @@ public class UssdService {
             switch (first) {
                 case "1": // Create account flow
                     return handleCreateFlow(req, sessionKey, parts);
+                case "2": // Deposit through a provider payment link
+                    return handleDepositFlow(req, sessionKey, parts);
                 case "3": // Withdraw flow (requires PIN)
                     return handleWithdrawFlow(req, sessionKey, parts);
                 case "4":
                     return handleCheckBalance(req);
+                case "5": // Send money to another wallet (requires PIN)
+                    return handleTransferFlow(req, sessionKey, parts);
+                case "6": // Every currency account, totalled in the default currency
+                    return handleBalances(req);
                 default:
-                    return new UssdResponseDto("END Unknown option", true);
+                    return new UssdResponseDto(UssdMenus.UNKNOWN_OPTION, true);
             }
         } catch (Exception e) {
             // log and return friendly error
             e.printStackTrace();
-            return new UssdResponseDto("END An error occurred. Try again later.", true);
+            return new UssdResponseDto(UssdMenus.ERROR, true);
         }
     }
 
@@ -77,96 +196,212 @@ public class UssdService {
         // 1*PIN -> ask to confirm PIN
         // 1*PIN*CONFIRM -> create account and save hashed PIN
         String msisdn = req.getMsisdn();
+        RequestDeadline.checkpoint("jpa.findUser");
         Optional<User> existing = userRepository.findByMsisdn(msisdn);
         if (existing.isPresent()) {
-            return new UssdResponseDto("END Account already exists for this number", true);
+            return new UssdResponseDto(UssdMenus.ACCOUNT_EXISTS, true);
         }
         if (parts.length == 1) {
             // asked to choose pin
             redisTemplate.opsForValue().set(sessionKey, "CREATE.AWAIT_PIN", Duration.ofSeconds(120));
-            return new UssdResponseDto("CON Please enter a 4-digit PIN for your wallet", false);
+            return new UssdResponseDto(UssdMenus.ENTER_NEW_PIN, false);
         } else if (parts.length == 2) {
             String pin = parts[1];
             if (!pin.matches("\\d{4}")) {
-                return new UssdResponseDto("CON Invalid PIN. Enter a 4-digit PIN", false);
+                return new UssdResponseDto(UssdMenus.INVALID_NEW_PIN, false);
             }
             // store temp pin in redis
             redisTemplate.opsForValue().set(sessionKey + ":pin", pin, Duration.ofSeconds(120));
-            return new UssdResponseDto("CON Confirm your 4-digit PIN", false);
+            return new UssdResponseDto(UssdMenus.CONFIRM_PIN, false);
         } else if (parts.length >= 3) {
             String confirm = parts[2];
+            RequestDeadline.checkpoint("redis.pin");
             String saved = (String) redisTemplate.opsForValue().get(sessionKey + ":pin");
             if (saved == null) {
-                return new UssdResponseDto("END Session expired. Start again", true);
+                return new UssdResponseDto(UssdMenus.CREATE_SESSION_EXPIRED, true);
             }
             if (!saved.equals(confirm)) {
-                return new UssdResponseDto("END PINs do not match. Start again.", true);
+                return new UssdResponseDto(UssdMenus.PIN_MISMATCH, true);
             }
             // create user and account
             User user = User.builder().msisdn(msisdn).fullName("").pinHash(passwordEncoder.encode(saved)).build();
+            RequestDeadline.checkpoint("jpa.saveUser");
             user = userRepository.save(user);
             accountService.createAccount(user.getId(), user.getDefaultCurrency());
             // send welcome SMS
-            smsService.sendSms(msisdn, "Welcome to USSD Wallet. Your account has been created.");
+            smsService.sendSmsWithinDeadline(msisdn, "Welcome to USSD Wallet. Your account has been created.");
             // clear session
             redisTemplate.delete(sessionKey);
             redisTemplate.delete(sessionKey + ":pin");
-            return new UssdResponseDto("END Account created successfully", true);
+            return new UssdResponseDto(UssdMenus.ACCOUNT_CREATED, true);
         }
-        return new UssdResponseDto("END Invalid flow", true);
+        return new UssdResponseDto(UssdMenus.INVALID_FLOW, true);
     }
 
     protected UssdResponseDto handleCheckBalance(UssdRequestDto req) {
+        RequestDeadline.checkpoint("jpa.findUser");
         var user = userRepository.findByMsisdn(req.getMsisdn());
-        if (user.isEmpty()) return new UssdResponseDto("END No account found", true);
+        if (user.isEmpty()) return new UssdResponseDto(UssdMenus.NO_ACCOUNT, true);
         var bal = accountService.getBalanceForUser(user.get().getId(), user.get().getDefaultCurrency());
         return new UssdResponseDto("END Balance: " + bal + " " + user.get().getDefaultCurrency(), true);
     }
 
+    protected UssdResponseDto handleBalances(UssdRequestDto req) {
+        RequestDeadline.checkpoint("jpa.findUser");
+        var user = userRepository.findByMsisdn(req.getMsisdn());
+        if (user.isEmpty()) return new UssdResponseDto(UssdMenus.NO_ACCOUNT, true);
+        var view = walletService.view(user.get().getId(), user.get().getDefaultCurrency());
+        if (view.accounts().isEmpty()) return new UssdResponseDto(UssdMenus.ACCOUNT_NOT_FOUND, true);
+        StringBuilder sb = new StringBuilder("END Balances");
+        for (var line : view.accounts()) {
+            // never show more than is there
+            sb.append('\n').append(line.currency()).append(' ')
+                    .append(line.balance().setScale(WalletService.minorDigits(line.currency()), java.math.RoundingMode.DOWN).toPlainString());
+            if (line.converted() != null && !line.currency().equals(view.currency())) {
+                sb.append(" = ").append(view.currency()).append(' ').append(line.converted().toPlainString());
+            }
+        }
+        sb.append("\nTotal: ").append(view.currency()).append(' ').append(view.total().toPlainString());
+        if (!view.complete()) sb.append(" (some rates unavailable)");
+        return new UssdResponseDto(sb.toString(), true);
+    }
+
+    protected UssdResponseDto handleDepositFlow(UssdRequestDto req, String sessionKey, String[] parts) {
+        // Flow: 2 -> ask amount
+        // 2*amount -> send a payment link by SMS; the webhook credits the wallet once paid
+        String msisdn = req.getMsisdn();
+        RequestDeadline.checkpoint("jpa.findUser");
+        var maybeUser = userRepository.findByMsisdn(msisdn);
+        if (maybeUser.isEmpty()) return new UssdResponseDto(UssdMenus.NO_ACCOUNT_CREATE_FIRST, true);
+        var user = maybeUser.get();
+        if (parts.length == 1) {
+            redisTemplate.opsForValue().set(sessionKey, "DEPOSIT.AWAIT_AMOUNT", Duration.ofSeconds(120));
+            return new UssdResponseDto(UssdMenus.ENTER_DEPOSIT_AMOUNT, false);
+        }
+        String amount = parts[1];
+        if (!amount.matches("\\d+") || new java.math.BigDecimal(amount).signum() == 0) return new UssdResponseDto(UssdMenus.INVALID_AMOUNT, false);
+        var accOpt = accountService.findAccountByUserId(user.getId(), user.getDefaultCurrency());
+        if (accOpt.isEmpty()) return new UssdResponseDto(UssdMenus.ACCOUNT_NOT_FOUND, true);
+        boolean started = depositService.startDeposit(accOpt.get(), new java.math.BigDecimal(amount), msisdn);
+        redisTemplate.delete(sessionKey);
+        return new UssdResponseDto(started ? UssdMenus.DEPOSIT_LINK_SENT : UssdMenus.DEPOSIT_UNAVAILABLE, true);
+    }
+
     protected UssdResponseDto handleWithdrawFlow(UssdRequestDto req, String sessionKey, String[] parts) {
         // Flow: 3 -> ask amount
         // 3*amount -> ask pin
         // 3*amount*pin -> process withdraw (verify pin) and initiate payout
         String msisdn = req.getMsisdn();
+        RequestDeadline.checkpoint("jpa.findUser");
         var maybeUser = userRepository.findByMsisdn(msisdn);
-        if (maybeUser.isEmpty()) return new UssdResponseDto("END No account found. Create one first.", true);
+        if (maybeUser.isEmpty()) return new UssdResponseDto(UssdMenus.NO_ACCOUNT_CREATE_FIRST, true);
         var user = maybeUser.get();
         if (parts.length == 1) {
             redisTemplate.opsForValue().set(sessionKey, "WITHDRAW.AWAIT_AMOUNT", Duration.ofSeconds(120));
-            return new UssdResponseDto("CON Enter amount to withdraw (e.g. 1000)", false);
+            return new UssdResponseDto(UssdMenus.ENTER_WITHDRAW_AMOUNT, false);
         } else if (parts.length == 2) {
             String amount = parts[1];
-            if (!amount.matches("\\d+")) return new UssdResponseDto("CON Invalid amount. Enter numeric amount", false);
+            if (!amount.matches("\\d+")) return new UssdResponseDto(UssdMenus.INVALID_AMOUNT, false);
             // store amount
             redisTemplate.opsForValue().set(sessionKey + ":amount", amount, Duration.ofSeconds(120));
-            return new UssdResponseDto("CON Enter your 4-digit PIN", false);
+            return new UssdResponseDto(UssdMenus.ENTER_PIN, false);
         } else if (parts.length >= 3) {
-            String pin = parts[2];
-            String storedHash = user.getPinHash();
-            if (storedHash == null || storedHash.isEmpty()) return new UssdResponseDto("END No PIN found. Create account again.", true);
-            if (!passwordEncoder.matches(pin, storedHash)) {
-                return new UssdResponseDto("END Incorrect PIN", true);
-            }
+            UssdResponseDto refused = verifyPin(req, user, parts[2]);
+            if (refused != null) return refused;
+            RequestDeadline.checkpoint("redis.amount");
             String amountStr = (String) redisTemplate.opsForValue().get(sessionKey + ":amount");
-            if (amountStr == null) return new UssdResponseDto("END Session expired. Start again.", true);
+            if (amountStr == null) return new UssdResponseDto(UssdMenus.SESSION_EXPIRED, true);
             java.math.BigDecimal amount = new java.math.BigDecimal(amountStr);
             // find account id by user id (accountService will handle)
             var accOpt = accountService.findAccountByUserId(user.getId(), user.getDefaultCurrency());
-            if (accOpt.isEmpty()) return new UssdResponseDto("END Account not found", true);
+            if (accOpt.isEmpty()) return new UssdResponseDto(UssdMenus.ACCOUNT_NOT_FOUND, true);
             var acc = accOpt.get();
             try {
-                // use idempotency key based on session+timestamp
-                String idem = java.util.UUID.randomUUID().toString();
+                // one withdrawal per USSD session; also what velocity checks count as a session
+                String idem = "ussd:" + req.getSessionId();
                 accountService.withdraw(acc.getId(), amount, acc.getCurrency(), idem, msisdn);
                 // clear session keys
                 redisTemplate.delete(sessionKey);
                 redisTemplate.delete(sessionKey + ":amount");
-                return new UssdResponseDto("END Withdrawal initiated. You will receive an SMS when complete.", true);
+                return new UssdResponseDto(UssdMenus.WITHDRAW_INITIATED, true);
             } catch (IllegalArgumentException ex) {
                 return new UssdResponseDto("END " + ex.getMessage(), true);
             }
         }
-        return new UssdResponseDto("END Invalid flow", true);
+        return new UssdResponseDto(UssdMenus.INVALID_FLOW, true);
     }
-}
 
+    protected UssdResponseDto handleTransferFlow(UssdRequestDto req, String sessionKey, String[] parts) {
+        // Flow: 5 -> ask recipient
+        // 5*recipient -> ask amount
+        // 5*recipient*amount -> ask pin
+        // 5*recipient*amount*pin -> verify pin and transfer
+        String msisdn = req.getMsisdn();
+        RequestDeadline.checkpoint("jpa.findUser");
+        var maybeUser = userRepository.findByMsisdn(msisdn);
+        if (maybeUser.isEmpty()) return new UssdResponseDto(UssdMenus.NO_ACCOUNT_CREATE_FIRST, true);
+        var user = maybeUser.get();
+        if (parts.length == 1) {
+            redisTemplate.opsForValue().set(sessionKey, "TRANSFER.AWAIT_RECIPIENT", Duration.ofSeconds(120));
+            return new UssdResponseDto(UssdMenus.ENTER_RECIPIENT, false);
+        } else if (parts.length == 2) {
+            if (!parts[1].matches("\\+?\\d{7,15}")) return new UssdResponseDto(UssdMenus.INVALID_RECIPIENT, false);
+            if (parts[1].equals(msisdn)) return new UssdResponseDto(UssdMenus.TRANSFER_TO_SELF, true);
+            return new UssdResponseDto(UssdMenus.ENTER_TRANSFER_AMOUNT, false);
+        } else if (parts.length == 3) {
+            if (!parts[2].matches("\\d+")) return new UssdResponseDto(UssdMenus.INVALID_AMOUNT, false);
+            return new UssdResponseDto(UssdMenus.ENTER_PIN, false);
+        } else if (parts.length >= 4) {
+            String recipientMsisdn = parts[1];
+            UssdResponseDto refused = verifyPin(req, user, parts[3]);
+            if (refused != null) return refused;
+            RequestDeadline.checkpoint("jpa.findRecipient");
+            var recipient = userRepository.findByMsisdn(recipientMsisdn);
+            if (recipient.isEmpty()) return new UssdResponseDto(UssdMenus.RECIPIENT_NOT_FOUND, true);
+            String currency = user.getDefaultCurrency();
+            var fromAcc = accountService.findAccountByUserId(user.getId(), currency);
+            var toAcc = accountService.findAccountByUserId(recipient.get().getId(), currency);
+            if (fromAcc.isEmpty()) return new UssdResponseDto(UssdMenus.ACCOUNT_NOT_FOUND, true);
+            if (toAcc.isEmpty()) return new UssdResponseDto(UssdMenus.RECIPIENT_NOT_FOUND, true);
+            java.math.BigDecimal amount = new java.math.BigDecimal(parts[2]);
+            try {
+                // the session id makes a resubmitted final hop a no-op
+                var done = transferService.transfer(fromAcc.get().getId(), toAcc.get().getId(), amount, currency, "ussd:" + req.getSessionId());
+                if (done.isEmpty()) return new UssdResponseDto(UssdMenus.TRANSFER_DUPLICATE, true);
+                redisTemplate.delete(sessionKey);
+                smsService.sendSmsWithinDeadline(msisdn, "You sent " + amount + " " + currency + " to " + recipientMsisdn);
+                smsService.sendSmsWithinDeadline(recipientMsisdn, "You received " + amount + " " + currency + " from " + msisdn);
+                return new UssdResponseDto("END Sent " + amount + " " + currency + " to " + recipientMsisdn, true);
+            } catch (IllegalArgumentException ex) {
+                return new UssdResponseDto("END " + ex.getMessage(), true);
+            }
+        }
+        return new UssdResponseDto(UssdMenus.INVALID_FLOW, true);
+    }
+
+    // null when the PIN checks out; otherwise the response that ends the session
+    private UssdResponseDto verifyPin(UssdRequestDto req, User user, String pin) {
+        String storedHash = user.getPinHash();
+        if (storedHash == null || storedHash.isEmpty()) return new UssdResponseDto(UssdMenus.NO_PIN, true);
+        switch (pinVerifier.verify(req.getSessionId(), user, pin)) {
+            case INCORRECT:
+                return new UssdResponseDto(UssdMenus.INCORRECT_PIN, true);
+            case LOCKED:
+                return new UssdResponseDto(UssdMenus.PIN_LOCKED, true);
+            case BUSY:
+                return new UssdResponseDto(UssdMenus.BUSY, true);
+            default:
+                break;
+        }
+        // the hash was below the configured cost and has been redone; keeping the old one is harmless
+        if (!storedHash.equals(user.getPinHash())) {
+            try {
+                RequestDeadline.checkpoint("jpa.saveUser");
+                userRepository.save(user);
+            } catch (RuntimeException e) {
+                log.warn("Could not store upgraded PIN hash for msisdn={}: {}", user.getMsisdn(), e.getMessage());
+            }
+        }
+        return null;
+    }
+}
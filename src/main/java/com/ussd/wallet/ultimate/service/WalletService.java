@@ -0,0 +1,103 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.Account;
+import com.ussd.wallet.ultimate.repository.AccountRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// All of a user's currency accounts, each converted into one display currency. The accounts come
+// back in a single query and the rates from SoapCurrencyClient's cache. The balances are all read
+// before any rate is asked for, and the view runs in no transaction of its own, so no connection is
+// held while a rate is fetched over SOAP. Conversion stays in
+// BigDecimal throughout: lines are rounded half-even to the display currency's minor unit for
+// showing, the total is summed unrounded and rounded once. An account whose rate is unavailable
+// is listed without a converted amount and left out of the total, and the view says so.
+@Service
+public class WalletService {
+
+    private static final Logger log = LoggerFactory.getLogger(WalletService.class);
+
+    public record Line(String currency, BigDecimal balance, BigDecimal rate, BigDecimal converted) {
+    }
+
+    public record WalletView(Long userId, String currency, List<Line> accounts, BigDecimal total, boolean complete) {
+    }
+
+    private final AccountRepository accountRepository;
+    private final HotAccountService hotAccountService;
+    private final SoapCurrencyClient currencyClient;
+    private final Timer viewTime;
+
+    public WalletService(AccountRepository accountRepository, HotAccountService hotAccountService,
+                         SoapCurrencyClient currencyClient, MeterRegistry registry) {
+        this.accountRepository = accountRepository;
+        this.hotAccountService = hotAccountService;
+        this.currencyClient = currencyClient;
+        this.viewTime = Timer.builder("ussd.wallet.view").publishPercentiles(0.5, 0.99).register(registry);
+    }
+
+    public WalletView view(Long userId, String displayCurrency) {
+        long started = System.nanoTime();
+        try {
+            String target = displayCurrency == null ? "" : displayCurrency.trim().toUpperCase(Locale.ROOT);
+            if (!target.matches("[A-Z]{3}")) throw new IllegalArgumentException("Invalid currency code: " + displayCurrency);
+            int scale = minorDigits(target);
+            RequestDeadline.checkpoint("jpa.findAccounts");
+            // read-only transaction of its own (see AccountRepository)
+            List<Account> accounts = new ArrayList<>(accountRepository.findByUserId(userId));
+            // the display currency first, the rest alphabetically
+            accounts.sort(Comparator.comparing((Account a) -> !a.getCurrency().equalsIgnoreCase(target))
+                    .thenComparing(Account::getCurrency));
+
+            List<BigDecimal> balances = new ArrayList<>(accounts.size());
+            for (Account a : accounts) {
+                BigDecimal balance = a.isHot() ? hotAccountService.balance(a) : a.getBalance();
+                balances.add(balance == null ? BigDecimal.ZERO : balance);
+            }
+
+            List<Line> lines = new ArrayList<>(accounts.size());
+            BigDecimal total = BigDecimal.ZERO;
+            boolean complete = true;
+            for (int i = 0; i < accounts.size(); i++) {
+                Account a = accounts.get(i);
+                BigDecimal balance = balances.get(i);
+                BigDecimal rate;
+                try {
+                    rate = currencyClient.getRate(a.getCurrency(), target);
+                } catch (RuntimeException e) {
+                    log.warn("No {}->{} rate for the wallet of user {}: {}", a.getCurrency(), target, userId, e.getMessage());
+                    lines.add(new Line(a.getCurrency(), balance, null, null));
+                    complete = false;
+                    continue;
+                }
+                BigDecimal converted = balance.multiply(rate);
+                total = total.add(converted);
+                lines.add(new Line(a.getCurrency(), balance, rate, converted.setScale(scale, RoundingMode.HALF_EVEN)));
+            }
+            return new WalletView(userId, target, List.copyOf(lines), total.setScale(scale, RoundingMode.HALF_EVEN), complete);
+        } finally {
+            viewTime.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // two decimals for codes the JDK does not know, none for currencies without a minor unit
+    static int minorDigits(String currency) {
+        try {
+            return Math.max(0, Currency.getInstance(currency).getDefaultFractionDigits());
+        } catch (IllegalArgumentException e) {
+            return 2;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.ussd.wallet.ultimate.sharding;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Online bucket move:
+//   1. mark the range as moving, so every write to it records its bucket as dirty
+//   2. bulk copy the range to the target while traffic continues
+//   3. freeze the buckets (writes to them wait), let every node see it, re-sync the dirty buckets
+//   4. publish the next map version, unfreeze, delete the copied rows from the source
+// A re-sync upserts a dirty bucket's rows and deletes target rows the source no longer has, so
+// deletes made during the copy reach the target too. Writes are only paused for step 3, which
+// touches just the buckets written since step 1. Rows with pre-sharding ids are pinned to the
+// default shard and never move. The target must already have the schema.
+@Service
+public class ReshardingService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReshardingService.class);
+
+    // table -> the sharded id column that carries its bucket
+    static final Map<String, String> TABLES = tables();
+    private static final int BATCH = 500;
+
+    private final ShardDataSources shards;
+    private final ShardMapRegistry registry;
+
+    // long enough for transactions that began before the freeze to finish
+    @Value("${ussd.sharding.freeze-grace-ms:2000}")
+    private long freezeGraceMs;
+
+    public ReshardingService(ShardDataSources shards, ShardMapRegistry registry) {
+        this.shards = shards;
+        this.registry = registry;
+    }
+
+    public record MoveReport(int fromBucket, int toBucket, String sourceShard, String targetShard,
+                             long mapVersion, long rowsCopied, long rowsDeleted, long writePauseMs, long totalMs) {}
+
+    public synchronized MoveReport moveBuckets(int fromBucket, int toBucket, String targetShard) {
+        if (fromBucket < 0 || toBucket >= ShardKeys.BUCKETS || fromBucket > toBucket) {
+            throw new IllegalArgumentException("Bucket range must be within 0.." + (ShardKeys.BUCKETS - 1));
+        }
+        DataSource target = shards.get(targetShard);
+        ShardMap before = registry.current();
+        List<String> sources = IntStream.rangeClosed(fromBucket, toBucket).mapToObj(before::shardFor).distinct().toList();
+        if (sources.size() != 1) {
+            throw new IllegalArgumentException("Buckets " + fromBucket + ".." + toBucket + " span shards " + sources);
+        }
+        String sourceShard = sources.get(0);
+        if (sourceShard.equals(targetShard)) {
+            throw new IllegalArgumentException("Buckets already on " + targetShard);
+        }
+        DataSource source = shards.get(sourceShard);
+        List<Integer> buckets = IntStream.rangeClosed(fromBucket, toBucket).boxed().collect(Collectors.toList());
+        long started = System.currentTimeMillis();
+
+        long[] synced = {0, 0};
+        long pauseStarted;
+        long pauseMs;
+        ShardMap after;
+        registry.startTracking(buckets);
+        try {
+            // no node may write to the range untracked once the bulk copy has read past it
+            sleep(registry.refreshMs() + freezeGraceMs);
+            synced[0] = copyAll(source, target, fromBucket, toBucket);
+            log.info("Reshard {}..{} {} -> {}: bulk copied {} rows", fromBucket, toBucket, sourceShard, targetShard, synced[0]);
+
+            registry.freeze(buckets);
+            try {
+                sleep(registry.refreshMs() + freezeGraceMs);
+                pauseStarted = System.currentTimeMillis();
+                // a write marks its bucket before it commits, so only now are all of them in place
+                Set<Integer> dirty = registry.dirtyBuckets();
+                resync(source, target, dirty, synced);
+                log.info("Reshard {}..{}: {} bucket(s) written during the copy re-synced under freeze", fromBucket, toBucket, dirty.size());
+                after = before.reassign(fromBucket, toBucket, targetShard);
+                registry.publish(after);
+            } finally {
+                registry.unfreeze(buckets);
+            }
+            pauseMs = System.currentTimeMillis() - pauseStarted;
+        } finally {
+            registry.stopTracking(buckets);
+        }
+
+        // nodes still on the old map version only read until their next refresh, so give them one
+        sleep(registry.refreshMs());
+        TABLES.forEach((table, key) ->
+                new JdbcTemplate(source).update("DELETE FROM " + table + " WHERE " + bucketPredicate(key), args(fromBucket, toBucket)));
+        MoveReport report = new MoveReport(fromBucket, toBucket, sourceShard, targetShard, after.version(),
+                synced[0], synced[1], pauseMs, System.currentTimeMillis() - started);
+        log.info("Reshard complete: {}", report);
+        return report;
+    }
+
+    private long copyAll(DataSource source, DataSource target, int fromBucket, int toBucket) {
+        long rows = 0;
+        for (String table : TABLES.keySet()) {
+            rows += copy(table, source, target, fromBucket, toBucket);
+        }
+        return rows;
+    }
+
+    // per dirty bucket: upsert what the source has, delete what it no longer has; adds to {copied, deleted}
+    private void resync(DataSource source, DataSource target, Set<Integer> dirty, long[] synced) {
+        JdbcTemplate src = new JdbcTemplate(source);
+        JdbcTemplate dst = new JdbcTemplate(target);
+        for (int bucket : new TreeSet<>(dirty)) {
+            for (String table : TABLES.keySet()) {
+                synced[0] += copy(table, source, target, bucket, bucket);
+                String select = "SELECT id FROM " + table + " WHERE " + bucketPredicate(TABLES.get(table));
+                Set<Object> kept = new HashSet<>(src.queryForList(select, Object.class, args(bucket, bucket)));
+                List<Object[]> gone = dst.queryForList(select, Object.class, args(bucket, bucket))
+                        .stream().filter(id -> !kept.contains(id)).map(id -> new Object[]{id}).toList();
+                if (!gone.isEmpty()) {
+                    dst.batchUpdate("DELETE FROM " + table + " WHERE id = ?", gone);
+                    synced[1] += gone.size();
+                }
+            }
+        }
+    }
+
+    // upsert, so a second pass over the same range just refreshes rows changed since the first
+    private long copy(String table, DataSource source, DataSource target, int fromBucket, int toBucket) {
+        JdbcTemplate src = new JdbcTemplate(source);
+        JdbcTemplate dst = new JdbcTemplate(target);
+        // stream the result set rather than loading the whole range (MySQL Connector/J convention)
+        src.setFetchSize(Integer.MIN_VALUE);
+        List<Object[]> batch = new ArrayList<>(BATCH);
+        String[] upsert = new String[1];
+        long[] rows = {0};
+        src.query("SELECT * FROM " + table + " WHERE " + bucketPredicate(TABLES.get(table)), rs -> {
+            ResultSetMetaData md = rs.getMetaData();
+            if (upsert[0] == null) upsert[0] = upsertSql(table, md);
+            Object[] row = new Object[md.getColumnCount()];
+            for (int i = 0; i < row.length; i++) row[i] = rs.getObject(i + 1);
+            batch.add(row);
+            if (batch.size() == BATCH) {
+                dst.batchUpdate(upsert[0], batch);
+                rows[0] += batch.size();
+                batch.clear();
+            }
+        }, args(fromBucket, toBucket));
+        if (!batch.isEmpty()) {
+            dst.batchUpdate(upsert[0], batch);
+            rows[0] += batch.size();
+        }
+        return rows[0];
+    }
+
+    private static String upsertSql(String table, ResultSetMetaData md) throws java.sql.SQLException {
+        List<String> cols = new ArrayList<>();
+        for (int i = 1; i <= md.getColumnCount(); i++) cols.add(md.getColumnName(i));
+        return "INSERT INTO " + table + " (" + String.join(", ", cols) + ") VALUES ("
+                + cols.stream().map(c -> "?").collect(Collectors.joining(", ")) + ") ON DUPLICATE KEY UPDATE "
+                + cols.stream().map(c -> c + " = VALUES(" + c + ")").collect(Collectors.joining(", "));
+    }
+
+    // matches the id layout in ShardKeys: low 11 bits hold bucket + 1
+    private static String bucketPredicate(String key) {
+        return key + " >= ? AND (" + key + " & 2047) - 1 BETWEEN ? AND ?";
+    }
+
+    private static Map<String, String> tables() {
+        Map<String, String> tables = new LinkedHashMap<>();
+        tables.put("users", "id");
+        tables.put("accounts", "id");
+        tables.put("account_slots", "id");
+        tables.put("provider_deposits", "id");
+        // transfer legs have no sharded id of their own; they move with their account
+        tables.put("shard_transfers", "account_id");
+        return Collections.unmodifiableMap(tables);
+    }
+
+    private static Object[] args(int fromBucket, int toBucket) {
+        return new Object[]{ShardKeys.SHARD_AWARE_MIN_ID, fromBucket, toBucket};
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while resharding", e);
+        }
+    }
+}
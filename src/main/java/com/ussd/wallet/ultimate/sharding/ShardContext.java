@@ -0,0 +1,23 @@
+package com.ussd.wallet.ultimate.sharding;
+
+// Shard chosen for the current repository call (or transaction); read by the routing DataSources.
+public final class ShardContext {
+
+    public static final String DEFAULT_SHARD = "shard-0";
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {}
+
+    public static String current() {
+        return CURRENT.get();
+    }
+
+    public static void set(String shard) {
+        CURRENT.set(shard);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+}
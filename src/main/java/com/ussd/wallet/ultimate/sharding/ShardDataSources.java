@@ -0,0 +1,14 @@
+package com.ussd.wallet.ultimate.sharding;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+// Raw primary pool per shard, for fan-out queries and resharding (JPA goes through the router).
+public record ShardDataSources(Map<String, DataSource> primaries) {
+
+    public DataSource get(String shard) {
+        DataSource ds = primaries.get(shard);
+        if (ds == null) throw new IllegalArgumentException("Unknown shard " + shard);
+        return ds;
+    }
+}
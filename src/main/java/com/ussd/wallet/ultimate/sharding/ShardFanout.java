@@ -0,0 +1,44 @@
+package com.ussd.wallet.ultimate.sharding;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+// Cross-shard queries (reporting) run on every shard primary in parallel; the slowest shard
+// sets the latency instead of the sum of all of them.
+@Component
+public class ShardFanout {
+
+    private final ShardDataSources shards;
+    private final ExecutorService pool;
+
+    public ShardFanout(ShardDataSources shards) {
+        this.shards = shards;
+        this.pool = Executors.newFixedThreadPool(Math.max(2, shards.primaries().size()), r -> {
+            Thread t = new Thread(r, "shard-fanout");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public <T> Map<String, T> onEveryShard(Function<JdbcTemplate, T> query) {
+        Map<String, CompletableFuture<T>> futures = new LinkedHashMap<>();
+        shards.primaries().forEach((shard, ds) ->
+                futures.put(shard, CompletableFuture.supplyAsync(() -> query.apply(new JdbcTemplate(ds)), pool)));
+        Map<String, T> results = new LinkedHashMap<>();
+        futures.forEach((shard, f) -> results.put(shard, f.join()));
+        return results;
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,100 @@
+package com.ussd.wallet.ultimate.sharding;
+
+import com.ussd.wallet.ultimate.domain.Account;
+import com.ussd.wallet.ultimate.domain.AccountSlot;
+import com.ussd.wallet.ultimate.domain.ProviderDeposit;
+import com.ussd.wallet.ultimate.domain.ShardTransfer;
+import com.ussd.wallet.ultimate.domain.User;
+
+import java.util.List;
+
+// Users are bucketed by MSISDN, accounts (and their slots and deposits) by their owner's bucket, and the bucket is embedded in
+// every id we generate so a lookup by id needs no directory:
+//   [41 bits ms since 2025-01-01][4 bits node][7 bits sequence][11 bits bucket + 1]
+// Ids below 2^40 predate sharding (MySQL AUTO_INCREMENT) and always live on the default shard.
+public final class ShardKeys {
+
+    public static final int BUCKETS = 1024;
+    public static final int PINNED = -1;
+    public static final long SHARD_AWARE_MIN_ID = 1L << 40;
+
+    private static final long EPOCH_MS = 1735689600000L;
+    private static final int BUCKET_BITS = 11;
+    private static final int SEQ_BITS = 7;
+    private static final int NODE_BITS = 4;
+
+    private static volatile int nodeId;
+    private static long lastMs;
+    private static int sequence;
+
+    private ShardKeys() {}
+
+    // A single node may leave the id unset and gets 0. Once seed nodes are configured every node
+    // has to be given its own, or two nodes generating in the same millisecond produce the same id.
+    public static int resolveNodeId(String configured, List<String> seedNodes) {
+        if (configured == null || configured.isBlank()) {
+            if (seedNodes != null && !seedNodes.isEmpty()) {
+                throw new IllegalStateException("ussd.sharding.node-id (USSD_NODE_ID) must be set to a distinct 0-15 on every clustered node");
+            }
+            return 0;
+        }
+        try {
+            return Integer.parseInt(configured.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Shard node id must be 0-15, got " + configured);
+        }
+    }
+
+    public static void configureNode(int id) {
+        if (id < 0 || id >= (1 << NODE_BITS)) throw new IllegalArgumentException("Shard node id must be 0-15");
+        nodeId = id;
+    }
+
+    // String.hashCode is fixed by the language spec, so every node computes the same bucket
+    public static int bucketOfMsisdn(String msisdn) {
+        return Math.floorMod(msisdn.hashCode(), BUCKETS);
+    }
+
+    public static int bucketOfId(Long id) {
+        if (id == null || id < SHARD_AWARE_MIN_ID) return PINNED;
+        return (int) (id & ((1 << BUCKET_BITS) - 1)) - 1;
+    }
+
+    public static int bucketFor(Object entity) {
+        if (entity instanceof User u) {
+            return u.getId() != null ? bucketOfId(u.getId()) : bucketOfMsisdn(u.getMsisdn());
+        }
+        if (entity instanceof Account a) {
+            return a.getId() != null ? bucketOfId(a.getId()) : bucketOfId(a.getUserId());
+        }
+        if (entity instanceof AccountSlot s) {
+            return s.getId() != null ? bucketOfId(s.getId()) : bucketOfId(s.getAccountId());
+        }
+        if (entity instanceof ProviderDeposit d) {
+            return d.getId() != null ? bucketOfId(d.getId()) : bucketOfId(d.getAccountId());
+        }
+        if (entity instanceof ShardTransfer t) {
+            return bucketOfId(t.getAccountId());
+        }
+        throw new IllegalArgumentException("Not a sharded entity: " + entity.getClass().getSimpleName());
+    }
+
+    public static synchronized long newId(int bucket) {
+        long now = System.currentTimeMillis();
+        if (now < lastMs) now = lastMs;
+        if (now == lastMs) {
+            sequence = (sequence + 1) & ((1 << SEQ_BITS) - 1);
+            if (sequence == 0) {
+                // sequence exhausted for this millisecond
+                while (now <= lastMs) now = System.currentTimeMillis();
+            }
+        } else {
+            sequence = 0;
+        }
+        lastMs = now;
+        return ((now - EPOCH_MS) << (NODE_BITS + SEQ_BITS + BUCKET_BITS))
+                | ((long) nodeId << (SEQ_BITS + BUCKET_BITS))
+                | ((long) sequence << BUCKET_BITS)
+                | (bucket + 1);
+    }
+}
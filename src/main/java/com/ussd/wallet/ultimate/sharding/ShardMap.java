@@ -0,0 +1,31 @@
+package com.ussd.wallet.ultimate.sharding;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Versioned bucket -> shard assignment. Changes only through ReshardingService, one version at a time.
+public record ShardMap(long version, List<String> buckets) {
+
+    public static ShardMap initial() {
+        return new ShardMap(0, Collections.nCopies(ShardKeys.BUCKETS, ShardContext.DEFAULT_SHARD));
+    }
+
+    public String shardFor(int bucket) {
+        return bucket == ShardKeys.PINNED ? ShardContext.DEFAULT_SHARD : buckets.get(bucket);
+    }
+
+    public ShardMap reassign(int fromBucket, int toBucket, String shard) {
+        List<String> next = new ArrayList<>(buckets);
+        for (int b = fromBucket; b <= toBucket; b++) next.set(b, shard);
+        return new ShardMap(version + 1, List.copyOf(next));
+    }
+
+    public Map<String, Integer> bucketCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        buckets.forEach(s -> counts.merge(s, 1, Integer::sum));
+        return counts;
+    }
+}
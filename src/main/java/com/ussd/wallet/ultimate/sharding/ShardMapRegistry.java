@@ -0,0 +1,169 @@
+package com.ussd.wallet.ultimate.sharding;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Node-local copy of the shard map, refreshed from Redis. Frozen buckets are the ones being moved:
+// writes to them wait until the move has published a new map version. While a move copies its
+// range, writes to the range mark their bucket dirty so the catch-up only re-copies those.
+@Component
+public class ShardMapRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardMapRegistry.class);
+
+    static final String MAP_KEY = "shardmap:current";
+    static final String FROZEN_KEY = "shardmap:frozen";
+    static final String MOVING_KEY = "shardmap:moving";
+    static final String DIRTY_KEY = "shardmap:dirty";
+
+    private final StringRedisTemplate redis;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "shard-map-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Value("${ussd.sharding.map-refresh-ms:1000}")
+    private long refreshMs;
+
+    @Value("${ussd.sharding.write-pause-timeout-ms:5000}")
+    private long writePauseTimeoutMs;
+
+    private volatile ShardMap map = ShardMap.initial();
+    private volatile Set<Integer> frozen = Set.of();
+    private volatile Set<Integer> moving = Set.of();
+
+    public ShardMapRegistry(StringRedisTemplate redis) {
+        this.redis = redis;
+    }
+
+    @PostConstruct
+    public void start() {
+        refresh();
+        scheduler.scheduleWithFixedDelay(this::refresh, refreshMs, refreshMs, TimeUnit.MILLISECONDS);
+    }
+
+    // frozen set first: a move publishes the map before unfreezing, so seeing a bucket
+    // unfrozen guarantees the map read after it is the one that moved it
+    void refresh() {
+        try {
+            Set<Integer> nextMoving = buckets(MOVING_KEY);
+            Set<Integer> nextFrozen = buckets(FROZEN_KEY);
+            String json = redis.opsForValue().get(MAP_KEY);
+            if (json != null) {
+                ShardMap stored = objectMapper.readValue(json, ShardMap.class);
+                if (stored.version() != map.version()) {
+                    log.info("Shard map v{} -> v{} {}", map.version(), stored.version(), stored.bucketCounts());
+                }
+                map = stored;
+            }
+            frozen = nextFrozen;
+            moving = nextMoving;
+        } catch (Exception e) {
+            log.warn("Shard map refresh failed, keeping v{}: {}", map.version(), e.getMessage());
+        }
+    }
+
+    public ShardMap current() {
+        return map;
+    }
+
+    public String shardFor(int bucket) {
+        return map.shardFor(bucket);
+    }
+
+    public boolean isFrozen(int bucket) {
+        return frozen.contains(bucket);
+    }
+
+    public void awaitWritable(int bucket) {
+        if (!frozen.contains(bucket)) return;
+        long deadline = System.currentTimeMillis() + writePauseTimeoutMs;
+        while (frozen.contains(bucket)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Shard bucket " + bucket + " is being moved, try again");
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for bucket " + bucket);
+            }
+        }
+    }
+
+    // before every write; a Redis round trip only for buckets that are being copied right now
+    public void recordWrite(int bucket) {
+        if (moving.contains(bucket)) redis.opsForSet().add(DIRTY_KEY, String.valueOf(bucket));
+    }
+
+    public long refreshMs() {
+        return refreshMs;
+    }
+
+    // only ReshardingService changes the map
+    void freeze(Collection<Integer> buckets) {
+        redis.opsForSet().add(FROZEN_KEY, buckets.stream().map(String::valueOf).toArray(String[]::new));
+        refresh();
+    }
+
+    void unfreeze(Collection<Integer> buckets) {
+        redis.opsForSet().remove(FROZEN_KEY, buckets.stream().map(String::valueOf).toArray());
+        refresh();
+    }
+
+    void startTracking(Collection<Integer> buckets) {
+        redis.delete(DIRTY_KEY);
+        redis.opsForSet().add(MOVING_KEY, buckets.stream().map(String::valueOf).toArray(String[]::new));
+        refresh();
+    }
+
+    // the buckets written since tracking started
+    Set<Integer> dirtyBuckets() {
+        return buckets(DIRTY_KEY);
+    }
+
+    void stopTracking(Collection<Integer> buckets) {
+        redis.opsForSet().remove(MOVING_KEY, buckets.stream().map(String::valueOf).toArray());
+        redis.delete(DIRTY_KEY);
+        refresh();
+    }
+
+    private Set<Integer> buckets(String key) {
+        Set<String> members = redis.opsForSet().members(key);
+        return members == null ? Set.of() : members.stream().map(Integer::valueOf).collect(Collectors.toUnmodifiableSet());
+    }
+
+    void publish(ShardMap next) {
+        try {
+            redis.opsForValue().set(MAP_KEY, objectMapper.writeValueAsString(next));
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not publish shard map v" + next.version(), e);
+        }
+        map = next;
+    }
+
+    Set<Integer> frozenBuckets() {
+        return new HashSet<>(frozen);
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
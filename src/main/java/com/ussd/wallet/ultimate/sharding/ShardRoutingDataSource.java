@@ -0,0 +1,12 @@
+package com.ussd.wallet.ultimate.sharding;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String shard = ShardContext.current();
+        return shard == null ? ShardContext.DEFAULT_SHARD : shard;
+    }
+}
@@ -0,0 +1,90 @@
+package com.ussd.wallet.ultimate.sharding;
+
+import com.ussd.wallet.ultimate.domain.Account;
+import com.ussd.wallet.ultimate.domain.AccountSlot;
+import com.ussd.wallet.ultimate.domain.ProviderDeposit;
+import com.ussd.wallet.ultimate.domain.ShardTransfer;
+import com.ussd.wallet.ultimate.domain.User;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
+
+// Wraps the user/account repositories: works out the bucket from the call's arguments and binds
+// the owning shard before the repository touches a connection. Inside a transaction the binding
+// lasts until it completes (the INSERT of a new entity only happens at flush), and a second shard
+// in the same transaction is refused rather than silently written to the wrong database.
+public class ShardRoutingInterceptor implements MethodInterceptor {
+
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private final ObjectProvider<ShardMapRegistry> registryProvider;
+
+    public ShardRoutingInterceptor(ObjectProvider<ShardMapRegistry> registryProvider) {
+        this.registryProvider = registryProvider;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        String name = invocation.getMethod().getName();
+        int bucket = bucketOf(name, invocation.getArguments());
+        if (bucket == UNKNOWN) return invocation.proceed();
+
+        ShardMapRegistry registry = registryProvider.getObject();
+        boolean inTx = TransactionSynchronizationManager.isActualTransactionActive();
+        boolean writing = name.startsWith("save") || name.startsWith("delete")
+                || (inTx && !TransactionSynchronizationManager.isCurrentTransactionReadOnly());
+        if (writing && bucket != ShardKeys.PINNED) {
+            registry.awaitWritable(bucket);
+            registry.recordWrite(bucket);
+        }
+        String shard = registry.shardFor(bucket);
+
+        String bound = ShardContext.current();
+        if (inTx && bound != null) {
+            if (!bound.equals(shard)) {
+                throw new IllegalStateException("Transaction on " + bound + " cannot touch " + shard);
+            }
+            return invocation.proceed();
+        }
+
+        ShardContext.set(shard);
+        if (inTx && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    ShardContext.clear();
+                }
+            });
+            return invocation.proceed();
+        }
+        try {
+            Object result = invocation.proceed();
+            // users created before sharding keep their AUTO_INCREMENT id on the default shard
+            if (name.equals("findByMsisdn") && result instanceof Optional<?> o && o.isEmpty()
+                    && !shard.equals(ShardContext.DEFAULT_SHARD) && invocation instanceof ProxyMethodInvocation pmi) {
+                ShardContext.set(ShardContext.DEFAULT_SHARD);
+                result = pmi.invocableClone().proceed();
+            }
+            return result;
+        } finally {
+            ShardContext.clear();
+        }
+    }
+
+    static int bucketOf(String method, Object[] args) {
+        Object first = args.length > 0 ? args[0] : null;
+        if (first instanceof User || first instanceof Account || first instanceof AccountSlot
+                || first instanceof ProviderDeposit || first instanceof ShardTransfer) return ShardKeys.bucketFor(first);
+        if (method.equals("findByMsisdn") && first instanceof String msisdn) return ShardKeys.bucketOfMsisdn(msisdn);
+        // accounts and slots share their owner's bucket, so a user or account id routes them too
+        if ((method.endsWith("ById") || method.contains("ByUserId") || method.contains("ByAccountId")) && first instanceof Long id) {
+            return ShardKeys.bucketOfId(id);
+        }
+        return UNKNOWN;
+    }
+}
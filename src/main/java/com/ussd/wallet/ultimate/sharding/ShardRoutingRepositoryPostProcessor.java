@@ -0,0 +1,31 @@
+package com.ussd.wallet.ultimate.sharding;
+
+import com.ussd.wallet.ultimate.repository.AccountRepository;
+import com.ussd.wallet.ultimate.repository.AccountSlotRepository;
+import com.ussd.wallet.ultimate.repository.ProviderDepositRepository;
+import com.ussd.wallet.ultimate.repository.ShardTransferRepository;
+import com.ussd.wallet.ultimate.repository.UserRepository;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+// Puts ShardRoutingInterceptor in front of the sharded repositories so services keep
+// calling them as before.
+public class ShardRoutingRepositoryPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<ShardMapRegistry> registryProvider;
+
+    public ShardRoutingRepositoryPostProcessor(ObjectProvider<ShardMapRegistry> registryProvider) {
+        this.registryProvider = registryProvider;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof UserRepository) && !(bean instanceof AccountRepository)
+                && !(bean instanceof AccountSlotRepository) && !(bean instanceof ProviderDepositRepository)
+                && !(bean instanceof ShardTransferRepository)) return bean;
+        ProxyFactory factory = new ProxyFactory(bean);
+        factory.addAdvice(new ShardRoutingInterceptor(registryProvider));
+        return factory.getProxy();
+    }
+}
@@ -0,0 +1,80 @@
+package com.ussd.wallet.ultimate.startup;
+
+import akka.actor.typed.ActorSystem;
+import com.ussd.wallet.ultimate.kafka.DepositWebhookConsumer;
+import com.ussd.wallet.ultimate.kafka.TransactionListener;
+import com.ussd.wallet.ultimate.ledger.LedgerArchiver;
+import com.ussd.wallet.ultimate.ledger.LedgerWriter;
+import com.ussd.wallet.ultimate.repository.TransactionCassandraRepository;
+import com.ussd.wallet.ultimate.saga.PendingTransactionSweeper;
+import com.ussd.wallet.ultimate.service.TwilioSmsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.ws.client.core.WebServiceTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// In fast-startup mode the node starts serving USSD before these exist; once it is ready
+// they are brought up in parallel so the first withdrawal does not pay for them.
+public class IntegrationWarmup {
+
+    private static final Logger log = LoggerFactory.getLogger(IntegrationWarmup.class);
+
+    private final ApplicationContext context;
+    private final StartupTimeline timeline;
+
+    public IntegrationWarmup(ApplicationContext context, StartupTimeline timeline) {
+        this.context = context;
+        this.timeline = timeline;
+    }
+
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+        Map<String, Runnable> tasks = new LinkedHashMap<>();
+        tasks.put("warmup.cassandra", () -> {
+            context.getBean(TransactionCassandraRepository.class).count();
+            context.getBean(LedgerWriter.class).prepareAll();
+        });
+        tasks.put("warmup.kafka", () -> {
+            context.getBean(KafkaTemplate.class);
+            // creating a listener bean registers and starts its container
+            context.getBean(TransactionListener.class);
+            context.getBean(DepositWebhookConsumer.class);
+        });
+        tasks.put("warmup.akka", () -> context.getBean(ActorSystem.class));
+        // @Scheduled methods are only registered once their bean exists
+        tasks.put("warmup.sweeper", () -> context.getBean(PendingTransactionSweeper.class));
+        tasks.put("warmup.archive", () -> context.getBean(LedgerArchiver.class));
+        tasks.put("warmup.soap", () -> context.getBean(WebServiceTemplate.class));
+        tasks.put("warmup.twilio", () -> context.getBean(TwilioSmsService.class).init());
+
+        ExecutorService pool = Executors.newFixedThreadPool(tasks.size());
+        long start = System.currentTimeMillis();
+        CompletableFuture<?>[] futures = tasks.entrySet().stream()
+                .map(e -> CompletableFuture.runAsync(() -> run(e.getKey(), e.getValue()), pool))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).whenComplete((v, err) -> {
+            timeline.record("warmup", start, System.currentTimeMillis());
+            pool.shutdown();
+        });
+    }
+
+    private void run(String phase, Runnable task) {
+        long start = System.currentTimeMillis();
+        try {
+            task.run();
+        } catch (Exception e) {
+            // the integration will be retried on first real use
+            log.warn("Warmup step {} failed: {}", phase, e.getMessage());
+        }
+        timeline.record(phase, start, System.currentTimeMillis());
+    }
+}
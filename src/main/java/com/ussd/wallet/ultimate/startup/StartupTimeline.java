@@ -0,0 +1,61 @@
+package com.ussd.wallet.ultimate.startup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Coarse startup phases (JVM -> context -> ready -> each warmed integration), logged once
+// and exported as ussd.startup.phase timers so regressions show up on dashboards.
+@Component
+public class StartupTimeline {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupTimeline.class);
+
+    public record Phase(String name, long startMs, long endMs) {
+        public long durationMs() {
+            return endMs - startMs;
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final long jvmStartMs = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final List<Phase> phases = new ArrayList<>();
+    private long contextStartedMs;
+
+    public StartupTimeline(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public synchronized void record(String name, long startMs, long endMs) {
+        Phase phase = new Phase(name, startMs, endMs);
+        phases.add(phase);
+        Timer.builder("ussd.startup.phase").tag("phase", name).register(registry)
+                .record(Duration.ofMillis(phase.durationMs()));
+        log.info("[STARTUP] {} +{}ms took {}ms", name, startMs - jvmStartMs, phase.durationMs());
+    }
+
+    public synchronized List<Phase> phases() {
+        return List.copyOf(phases);
+    }
+
+    @EventListener
+    public void onStarted(ApplicationStartedEvent event) {
+        contextStartedMs = System.currentTimeMillis();
+        record("context", jvmStartMs, contextStartedMs);
+    }
+
+    @EventListener
+    public void onReady(ApplicationReadyEvent event) {
+        record("ready", contextStartedMs, System.currentTimeMillis());
+    }
+}
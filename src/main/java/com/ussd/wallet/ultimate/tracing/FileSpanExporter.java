@@ -0,0 +1,129 @@
+package com.ussd.wallet.ultimate.tracing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Appends kept spans as JSON lines, one span per line, from a background writer. The queue is
+// bounded; when the disk cannot keep up spans are dropped and counted rather than slowing callers.
+public class FileSpanExporter implements SpanExporter, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(FileSpanExporter.class);
+
+    private final BlockingQueue<String> queue;
+    private final Counter dropped;
+    private final Thread writer;
+    private final BufferedWriter out;
+    private volatile boolean running = true;
+
+    public FileSpanExporter(Path file, int queueCapacity, MeterRegistry registry) throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.dropped = registry.counter("ussd.tracing.export.dropped");
+        this.writer = new Thread(this::drain, "trace-file-exporter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void export(String traceId, String reason, List<Span> spans) {
+        for (Span span : spans) {
+            if (!queue.offer(toJson(span, reason))) dropped.increment();
+        }
+    }
+
+    private void drain() {
+        while (running || !queue.isEmpty()) {
+            try {
+                String line = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (line == null) continue;
+                out.write(line);
+                out.newLine();
+                // flush once the burst is written, not per line
+                if (queue.isEmpty()) out.flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                log.warn("Could not write spans: {}", e.getMessage());
+            }
+        }
+    }
+
+    static String toJson(Span span, String reason) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"traceId\":\"").append(span.traceId())
+                .append("\",\"spanId\":\"").append(span.spanId()).append('"');
+        if (span.parentId() != null) sb.append(",\"parentId\":\"").append(span.parentId()).append('"');
+        sb.append(",\"name\":");
+        quote(sb, span.name());
+        sb.append(",\"startUs\":").append(span.startEpochMicros())
+                .append(",\"durationUs\":").append(span.durationNanos() / 1000)
+                .append(",\"kept\":\"").append(reason).append('"');
+        if (span.errorMessage() != null) {
+            sb.append(",\"error\":");
+            quote(sb, span.errorMessage());
+        }
+        Map<String, Object> tags = span.tags();
+        if (!tags.isEmpty()) {
+            sb.append(",\"tags\":{");
+            boolean first = true;
+            for (Map.Entry<String, Object> tag : tags.entrySet()) {
+                if (!first) sb.append(',');
+                first = false;
+                quote(sb, tag.getKey());
+                sb.append(':');
+                quote(sb, String.valueOf(tag.getValue()));
+            }
+            sb.append('}');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static void quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+                    else sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join(2000);
+            out.flush();
+            out.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("Could not close span file: {}", e.getMessage());
+        }
+    }
+}
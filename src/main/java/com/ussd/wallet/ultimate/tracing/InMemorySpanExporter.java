@@ -0,0 +1,40 @@
+package com.ussd.wallet.ultimate.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Keeps the most recent kept segments for the trace admin endpoint and tests.
+public class InMemorySpanExporter implements SpanExporter {
+
+    public record ExportedSegment(String traceId, String reason, List<Span> spans) {}
+
+    private final int capacity;
+    private final ConcurrentLinkedDeque<ExportedSegment> recent = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public InMemorySpanExporter(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void export(String traceId, String reason, List<Span> spans) {
+        recent.addFirst(new ExportedSegment(traceId, reason, spans));
+        if (size.incrementAndGet() > capacity && recent.pollLast() != null) size.decrementAndGet();
+    }
+
+    public List<ExportedSegment> recent() {
+        return new ArrayList<>(recent);
+    }
+
+    // every kept segment of one trace, e.g. the USSD hop, the Kafka consume and the saga attempts
+    public List<ExportedSegment> trace(String traceId) {
+        return recent.stream().filter(s -> s.traceId().equals(traceId)).toList();
+    }
+
+    public void clear() {
+        recent.clear();
+        size.set(0);
+    }
+}
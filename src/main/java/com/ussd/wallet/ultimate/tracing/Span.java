@@ -0,0 +1,119 @@
+package com.ussd.wallet.ultimate.tracing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One timed operation. Spans are only ever created through Tracing; outside a trace callers get
+// NOOP, on which every method does nothing, so instrumented code needs no null checks.
+public final class Span implements AutoCloseable {
+
+    public static final Span NOOP = new Span();
+
+    private final TraceCollector.Segment segment;
+    private final String traceId;
+    private final String spanId;
+    private final String parentId;
+    private final String name;
+    private final long startEpochMicros;
+    private final long startNanos;
+    private long durationNanos = -1;
+    private Map<String, Object> tags;
+    private String error;
+
+    // set when the span was made current on its thread; close() puts this back
+    Span previous;
+    boolean bound;
+
+    private Span() {
+        this(null, null, null, null, null);
+    }
+
+    Span(TraceCollector.Segment segment, String traceId, String spanId, String parentId, String name) {
+        this.segment = segment;
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentId = parentId;
+        this.name = name;
+        this.startEpochMicros = segment == null ? 0 : System.currentTimeMillis() * 1000;
+        this.startNanos = segment == null ? 0 : System.nanoTime();
+    }
+
+    public boolean isRecording() {
+        return segment != null;
+    }
+
+    public Span tag(String key, Object value) {
+        if (segment == null) return this;
+        synchronized (this) {
+            if (tags == null) tags = new LinkedHashMap<>(4);
+            tags.put(key, value);
+        }
+        return this;
+    }
+
+    public Span error(Throwable t) {
+        return error(t.getClass().getSimpleName() + ": " + t.getMessage());
+    }
+
+    public Span error(String message) {
+        if (segment == null) return this;
+        synchronized (this) {
+            this.error = message;
+        }
+        return this;
+    }
+
+    // context for a header or stored state; null on NOOP
+    public String traceparent() {
+        if (segment == null) return null;
+        return "00-" + traceId + "-" + spanId + (segment.sampled ? "-01" : "-00");
+    }
+
+    @Override
+    public void close() {
+        if (segment == null) return;
+        synchronized (this) {
+            if (durationNanos >= 0) return;
+            durationNanos = System.nanoTime() - startNanos;
+        }
+        if (bound) Tracing.unbind(this);
+        segment.ended(this);
+    }
+
+    TraceCollector.Segment segment() {
+        return segment;
+    }
+
+    public String traceId() {
+        return traceId;
+    }
+
+    public String spanId() {
+        return spanId;
+    }
+
+    public String parentId() {
+        return parentId;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long startEpochMicros() {
+        return startEpochMicros;
+    }
+
+    public synchronized long durationNanos() {
+        return durationNanos;
+    }
+
+    public synchronized String errorMessage() {
+        return error;
+    }
+
+    public synchronized Map<String, Object> tags() {
+        return tags == null ? Map.of() : Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+    }
+}
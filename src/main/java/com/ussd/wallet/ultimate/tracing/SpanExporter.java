@@ -0,0 +1,10 @@
+package com.ussd.wallet.ultimate.tracing;
+
+import java.util.List;
+
+// Receives the segments tail sampling kept. Called on the thread that ended the last span, so
+// implementations must not block.
+public interface SpanExporter {
+
+    void export(String traceId, String reason, List<Span> spans);
+}
@@ -0,0 +1,171 @@
+package com.ussd.wallet.ultimate.tracing;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Buffers the spans of each local trace segment (the part of a trace one entry point produced on
+// this node) until its last span ends. The sampling decision is then made per trace id, not per
+// segment: a segment that failed or whose root took longer than the slow threshold keeps its whole
+// trace. Segments of a trace that finished earlier are held for trace-window, and exported with it
+// once any segment of the trace is kept; those finishing later within the window follow it out.
+// The baseline sampler is a function of the trace id, so every node picks the same traces without
+// being told. Traces nothing kept are dropped on expiry without touching the exporter, so a fast,
+// healthy hop only pays for building its spans and holding them briefly.
+public class TraceCollector {
+
+    private final SpanExporter exporter;
+    private final long slowNanos;
+    private final double baselineRate;
+    private final int maxSpansPerSegment;
+    private final long windowNanos;
+    private final int maxPendingTraces;
+    private final Map<String, PendingTrace> traces = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.nanoTime());
+    private final Counter keptError;
+    private final Counter keptSlow;
+    private final Counter keptSampled;
+    private final Counter dropped;
+    private final Counter spansDropped;
+
+    // what this node knows of one trace: held segments until it is kept, then only why it was
+    private static final class PendingTrace {
+        String reason;
+        List<List<Span>> held = new ArrayList<>(2);
+        long touchedNanos;
+    }
+
+    public TraceCollector(SpanExporter exporter, MeterRegistry registry, Duration slowThreshold,
+                          double baselineRate, int maxSpansPerSegment, Duration traceWindow, int maxPendingTraces) {
+        this.exporter = exporter;
+        this.slowNanos = slowThreshold.toNanos();
+        this.baselineRate = baselineRate;
+        this.maxSpansPerSegment = maxSpansPerSegment;
+        this.windowNanos = traceWindow.toNanos();
+        this.maxPendingTraces = maxPendingTraces;
+        this.keptError = registry.counter("ussd.tracing.segments", "decision", "error");
+        this.keptSlow = registry.counter("ussd.tracing.segments", "decision", "slow");
+        this.keptSampled = registry.counter("ussd.tracing.segments", "decision", "sampled");
+        this.dropped = registry.counter("ussd.tracing.segments", "decision", "dropped");
+        this.spansDropped = registry.counter("ussd.tracing.spans.dropped");
+        registry.gauge("ussd.tracing.pending.traces", traces, Map::size);
+    }
+
+    // upstreamSampled is the flag of a remote parent, which a node with another rate may have set
+    Segment newSegment(String traceId, boolean upstreamSampled) {
+        return new Segment(this, traceId, upstreamSampled || baselineSampled(traceId));
+    }
+
+    // the top 56 bits of the random trace id against the rate: the same answer on every node
+    boolean baselineSampled(String traceId) {
+        if (baselineRate <= 0) return false;
+        if (baselineRate >= 1) return true;
+        long bits = Long.parseUnsignedLong(traceId.substring(0, 14), 16);
+        return bits < (long) (baselineRate * (1L << 56));
+    }
+
+    void complete(Segment segment, List<Span> spans) {
+        String reason = segment.failed ? "error"
+                : segment.root.durationNanos() >= slowNanos ? "slow"
+                : segment.sampled ? "sampled"
+                : null;
+        long now = System.nanoTime();
+        sweep(now);
+        if (reason == null && traces.size() >= maxPendingTraces && !traces.containsKey(segment.traceId)) {
+            dropped.increment();
+            return;
+        }
+        PendingTrace trace = traces.computeIfAbsent(segment.traceId, id -> new PendingTrace());
+        List<List<Span>> release;
+        String traceReason;
+        synchronized (trace) {
+            trace.touchedNanos = now;
+            if (trace.reason == null && reason == null) {
+                trace.held.add(spans);
+                return;
+            }
+            if (trace.reason == null) {
+                trace.reason = reason;
+                release = trace.held;
+                trace.held = List.of();
+            } else {
+                release = List.of();
+            }
+            traceReason = trace.reason;
+        }
+        for (List<Span> held : release) export(segment.traceId, traceReason, held);
+        export(segment.traceId, reason != null ? reason : traceReason, spans);
+    }
+
+    private void export(String traceId, String reason, List<Span> spans) {
+        switch (reason) {
+            case "error" -> keptError.increment();
+            case "slow" -> keptSlow.increment();
+            default -> keptSampled.increment();
+        }
+        exporter.export(traceId, reason, spans);
+    }
+
+    // at most twice per window, by whichever thread completes a segment first
+    private void sweep(long now) {
+        long last = lastSweep.get();
+        if (now - last < windowNanos / 2 || !lastSweep.compareAndSet(last, now)) return;
+        traces.values().removeIf(trace -> {
+            synchronized (trace) {
+                if (now - trace.touchedNanos < windowNanos) return false;
+                dropped.increment(trace.held.size());
+                return true;
+            }
+        });
+    }
+
+    static final class Segment {
+
+        private final TraceCollector collector;
+        final String traceId;
+        final boolean sampled;
+        private final List<Span> spans = new ArrayList<>(8);
+        private final AtomicInteger open = new AtomicInteger();
+        private volatile boolean failed;
+        private Span root;
+        private boolean completed;
+
+        private Segment(TraceCollector collector, String traceId, boolean sampled) {
+            this.collector = collector;
+            this.traceId = traceId;
+            this.sampled = sampled;
+        }
+
+        // spans started after the segment was exported, or past the cap, are not recorded
+        synchronized Span start(String name, String parentId) {
+            if (completed || spans.size() >= collector.maxSpansPerSegment) {
+                collector.spansDropped.increment();
+                return Span.NOOP;
+            }
+            Span span = new Span(this, traceId, Tracing.newSpanId(), parentId, name);
+            if (root == null) root = span;
+            spans.add(span);
+            open.incrementAndGet();
+            return span;
+        }
+
+        void ended(Span span) {
+            if (span.errorMessage() != null) failed = true;
+            if (open.decrementAndGet() > 0) return;
+            List<Span> finished;
+            synchronized (this) {
+                if (completed || open.get() > 0) return;
+                completed = true;
+                finished = List.copyOf(spans);
+            }
+            collector.complete(this, finished);
+        }
+    }
+}
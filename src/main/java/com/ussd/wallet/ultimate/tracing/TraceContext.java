@@ -0,0 +1,39 @@
+package com.ussd.wallet.ultimate.tracing;
+
+// W3C trace context as carried in the traceparent header: 00-<32 hex trace id>-<16 hex span id>-<flags>.
+// The sampled flag marks traces picked by the baseline sampler so every hop keeps them.
+public record TraceContext(String traceId, String spanId, boolean sampled) {
+
+    public static final String HEADER = "traceparent";
+
+    public String traceparent() {
+        return "00-" + traceId + "-" + spanId + (sampled ? "-01" : "-00");
+    }
+
+    // null for a missing or malformed header, which starts a new trace
+    public static TraceContext parse(String header) {
+        if (header == null || header.length() != 55) return null;
+        if (header.charAt(2) != '-' || header.charAt(35) != '-' || header.charAt(52) != '-') return null;
+        String traceId = header.substring(3, 35);
+        String spanId = header.substring(36, 52);
+        if (!isHex(traceId) || !isHex(spanId) || isZero(traceId) || isZero(spanId)) return null;
+        int flags = Character.digit(header.charAt(54), 16);
+        if (flags < 0) return null;
+        return new TraceContext(traceId, spanId, (flags & 1) == 1);
+    }
+
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+
+    private static boolean isZero(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != '0') return false;
+        }
+        return true;
+    }
+}
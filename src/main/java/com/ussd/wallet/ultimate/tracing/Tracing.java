@@ -0,0 +1,120 @@
+package com.ussd.wallet.ultimate.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// Entry point for instrumentation. The current span is bound to the thread, like RequestDeadline,
+// so repositories, Redis and HTTP clients further down attach their spans without new parameters.
+// Only entry points (HTTP, Kafka consume, saga attempts) start traces; child() outside a trace is a
+// no-op, which keeps schedulers and startup work from producing spans.
+public final class Tracing {
+
+    private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static volatile TraceCollector collector;
+
+    private Tracing() {
+    }
+
+    // null disables tracing; every span after that is NOOP
+    public static void install(TraceCollector traceCollector) {
+        collector = traceCollector;
+    }
+
+    public static Span current() {
+        Span span = CURRENT.get();
+        return span != null ? span : Span.NOOP;
+    }
+
+    // traceparent of the current span, or null outside a trace
+    public static String traceparent() {
+        Span span = CURRENT.get();
+        return span != null ? span.traceparent() : null;
+    }
+
+    // starts the local part of a trace, continuing the remote parent if the header is valid,
+    // and makes it current; close() restores whatever was current before
+    public static Span entry(String name, String traceparent) {
+        Span span = detached(name, traceparent);
+        makeCurrent(span);
+        return span;
+    }
+
+    // like entry() but not made current: for work that outlives the calling handler, such as a saga
+    // attempt that spans several actor messages; use bind() around each piece of it
+    public static Span detached(String name, String traceparent) {
+        TraceCollector c = collector;
+        if (c == null) return Span.NOOP;
+        TraceContext parent = TraceContext.parse(traceparent);
+        TraceCollector.Segment segment = parent != null
+                ? c.newSegment(parent.traceId(), parent.sampled())
+                : c.newSegment(newTraceId(), false);
+        return segment.start(name, parent != null ? parent.spanId() : null);
+    }
+
+    public static Span child(String name) {
+        Span parent = CURRENT.get();
+        if (parent == null) return Span.NOOP;
+        Span span = parent.segment().start(name, parent.spanId());
+        makeCurrent(span);
+        return span;
+    }
+
+    // a child of the current span that is not made current: for async calls whose completion runs
+    // on another thread, which closes it there
+    public static Span async(String name) {
+        Span parent = CURRENT.get();
+        if (parent == null) return Span.NOOP;
+        return parent.segment().start(name, parent.spanId());
+    }
+
+    // makes a detached span current on this thread until the scope is closed
+    public static Scope bind(Span span) {
+        if (!span.isRecording()) return Scope.NOOP;
+        Span previous = CURRENT.get();
+        CURRENT.set(span);
+        return () -> restore(span, previous);
+    }
+
+    private static void makeCurrent(Span span) {
+        if (!span.isRecording()) return;
+        span.previous = CURRENT.get();
+        span.bound = true;
+        CURRENT.set(span);
+    }
+
+    static void unbind(Span span) {
+        restore(span, span.previous);
+    }
+
+    private static void restore(Span span, Span previous) {
+        if (CURRENT.get() != span) return;
+        if (previous == null) CURRENT.remove();
+        else CURRENT.set(previous);
+    }
+
+    static String newTraceId() {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        return hex(r.nextLong()) + hex(r.nextLong() | 1);
+    }
+
+    static String newSpanId() {
+        return hex(ThreadLocalRandom.current().nextLong() | 1);
+    }
+
+    private static String hex(long v) {
+        char[] out = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            out[i] = HEX[(int) (v & 0xf)];
+            v >>>= 4;
+        }
+        return new String(out);
+    }
+
+    public interface Scope extends AutoCloseable {
+        Scope NOOP = () -> { };
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,38 @@
+package com.ussd.wallet.ultimate.tracing;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// Server span for every HTTP request (USSD hops, webhooks, REST), continuing the caller's
+// traceparent. The response carries the trace id back so a gateway complaint can be looked up.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TracingFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Span span = Tracing.entry("http " + request.getMethod() + " " + request.getRequestURI(),
+                request.getHeader(TraceContext.HEADER));
+        if (span.isRecording()) response.setHeader(TraceContext.HEADER, span.traceparent());
+        try {
+            chain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            int status = response.getStatus();
+            span.tag("http.status", status);
+            if (status >= 500) span.error("HTTP " + status);
+            span.close();
+        }
+    }
+}
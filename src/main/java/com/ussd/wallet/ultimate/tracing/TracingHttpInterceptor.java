@@ -0,0 +1,35 @@
+package com.ussd.wallet.ultimate.tracing;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+// Client span around an outgoing provider call, with traceparent forwarded to the provider.
+public class TracingHttpInterceptor implements ClientHttpRequestInterceptor {
+
+    private final String peer;
+
+    public TracingHttpInterceptor(String peer) {
+        this.peer = peer;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        try (Span span = Tracing.child(peer + " " + request.getMethod() + " " + request.getURI().getPath())) {
+            if (span.isRecording()) request.getHeaders().set(TraceContext.HEADER, span.traceparent());
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                int status = response.getStatusCode().value();
+                span.tag("http.status", status);
+                if (status >= 400) span.error("HTTP " + status);
+                return response;
+            } catch (IOException | RuntimeException e) {
+                span.error(e);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.ussd.wallet.ultimate.tracing;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.cassandra.repository.CassandraRepository;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.repository.Repository;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Set;
+
+// Adds a span to every repository call (JPA and Cassandra) and every Redis command made inside a
+// trace. Outside a trace the wrappers only check the thread-local and pass through.
+public class TracingPostProcessor implements BeanPostProcessor {
+
+    private static final String REDIS_CONNECTION_PACKAGE = "org.springframework.data.redis.connection";
+    private static final Set<String> REDIS_UNTRACED = Set.of("close", "isClosed", "getNativeConnection", "isQueueing",
+            "isPipelined", "openPipeline", "getSentinelConnection", "toString", "hashCode", "equals");
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof Repository<?, ?>) return traceRepository(bean);
+        if (bean instanceof RedisConnectionFactory) return traceRedis(bean);
+        return bean;
+    }
+
+    private static Object traceRepository(Object bean) {
+        String store = bean instanceof CassandraRepository<?, ?> ? "cassandra" : "jpa";
+        String repository = repositoryName(bean);
+        ProxyFactory factory = new ProxyFactory(bean);
+        factory.addAdvice((MethodInterceptor) invocation -> {
+            if (!Tracing.current().isRecording()) return invocation.proceed();
+            try (Span span = Tracing.child(store + " " + repository + "." + invocation.getMethod().getName())) {
+                try {
+                    return invocation.proceed();
+                } catch (Throwable t) {
+                    span.error(t);
+                    throw t;
+                }
+            }
+        });
+        return factory.getProxy();
+    }
+
+    private static String repositoryName(Object bean) {
+        for (Class<?> type : ClassUtils.getAllInterfacesForClass(bean.getClass())) {
+            if (type.getPackageName().startsWith("com.ussd.wallet")) return type.getSimpleName();
+        }
+        return bean.getClass().getSimpleName();
+    }
+
+    // connections handed out by the factory, and the command groups they return
+    // (stringCommands(), keyCommands(), ...), are wrapped so the actual command gets the span
+    private static Object traceRedis(Object bean) {
+        ProxyFactory factory = new ProxyFactory(bean);
+        factory.addAdvice((MethodInterceptor) invocation -> {
+            Object result = invocation.proceed();
+            return invocation.getMethod().getName().equals("getConnection") ? wrapRedis(result) : result;
+        });
+        return factory.getProxy();
+    }
+
+    private static Object wrapRedis(Object target) {
+        if (target == null || Proxy.isProxyClass(target.getClass())) return target;
+        Class<?>[] interfaces = ClassUtils.getAllInterfacesForClass(target.getClass());
+        return Proxy.newProxyInstance(target.getClass().getClassLoader(), interfaces, new RedisHandler(target));
+    }
+
+    private record RedisHandler(Object target) implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Class<?> returns = method.getReturnType();
+            if (returns.isInterface() && returns.getPackageName().equals(REDIS_CONNECTION_PACKAGE)
+                    && method.getName().endsWith("Commands")) {
+                return wrapRedis(call(method, args));
+            }
+            if (REDIS_UNTRACED.contains(method.getName()) || !Tracing.current().isRecording()) return call(method, args);
+            try (Span span = Tracing.child("redis " + method.getName())) {
+                try {
+                    return call(method, args);
+                } catch (Throwable t) {
+                    span.error(t);
+                    throw t;
+                }
+            }
+        }
+
+        private Object call(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
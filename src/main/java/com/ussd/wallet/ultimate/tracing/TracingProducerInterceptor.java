@@ -0,0 +1,36 @@
+package com.ussd.wallet.ultimate.tracing;
+
+import org.apache.kafka.clients.producer.ProducerInterceptor;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// Runs on the sending thread inside KafkaTemplate.send: records a send span and puts its context
+// in the record headers, where TracingRecordInterceptor picks it up on the consuming side.
+public class TracingProducerInterceptor implements ProducerInterceptor<String, String> {
+
+    @Override
+    public ProducerRecord<String, String> onSend(ProducerRecord<String, String> record) {
+        try (Span span = Tracing.child("kafka send " + record.topic())) {
+            if (span.isRecording()) {
+                record.headers().remove(TraceContext.HEADER);
+                record.headers().add(TraceContext.HEADER, span.traceparent().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return record;
+    }
+
+    @Override
+    public void onAcknowledgement(RecordMetadata metadata, Exception exception) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+}
@@ -0,0 +1,46 @@
+package com.ussd.wallet.ultimate.tracing;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.kafka.listener.RecordInterceptor;
+
+import java.nio.charset.StandardCharsets;
+
+// Consumer span around each record handled by a listener container, continuing the producer's
+// trace. kafka.lag.ms is how long the event sat in the topic, the gap between the two spans.
+public class TracingRecordInterceptor implements RecordInterceptor<String, String> {
+
+    private final ThreadLocal<Span> active = new ThreadLocal<>();
+
+    @Override
+    public ConsumerRecord<String, String> intercept(ConsumerRecord<String, String> record, Consumer<String, String> consumer) {
+        Span span = Tracing.entry("kafka consume " + record.topic(), traceparentOf(record));
+        if (span.isRecording()) {
+            span.tag("kafka.partition", record.partition())
+                    .tag("kafka.offset", record.offset())
+                    .tag("kafka.lag.ms", System.currentTimeMillis() - record.timestamp());
+            active.set(span);
+        }
+        return record;
+    }
+
+    @Override
+    public void failure(ConsumerRecord<String, String> record, Exception exception, Consumer<String, String> consumer) {
+        Span span = active.get();
+        if (span != null) span.error(exception.getCause() != null ? exception.getCause() : exception);
+    }
+
+    @Override
+    public void afterRecord(ConsumerRecord<String, String> record, Consumer<String, String> consumer) {
+        Span span = active.get();
+        if (span == null) return;
+        active.remove();
+        span.close();
+    }
+
+    public static String traceparentOf(ConsumerRecord<?, ?> record) {
+        Header header = record.headers().lastHeader(TraceContext.HEADER);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
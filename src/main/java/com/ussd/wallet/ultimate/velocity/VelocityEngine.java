@@ -0,0 +1,160 @@
+package com.ussd.wallet.ultimate.velocity;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Withdrawal velocity limits evaluated entirely in memory: per MSISDN, withdrawals in the last
+// hour, amount in the last day and distinct sessions in the last minute. State is one compact
+// int[] per MSISDN (see VelocityWindows), replicated to the other nodes by VelocityReplicator.
+// An allowed withdrawal is only held locally until the caller knows whether it went through:
+// confirm() replicates it, release() takes it back.
+@Service
+public class VelocityEngine {
+
+    // approximate heap per tracked MSISDN: state array, boxed key, map node and table slot
+    static final long BYTES_PER_ENTRY = 16 + 4L * VelocityWindows.LENGTH + 16 + 32 + 8;
+
+    // hold is what an allowed withdrawal recorded, null when nothing was
+    public record Decision(boolean allowed, String reason, Hold hold) {
+        static final Decision OK = new Decision(true, null, null);
+
+        Decision(boolean allowed, String reason) {
+            this(allowed, reason, null);
+        }
+    }
+
+    record Hold(long msisdnKey, int sessionHash, int at, long units) {}
+
+    private final VelocityProperties properties;
+    private final VelocityReplicator replicator;
+    private final Map<Long, int[]> state = new ConcurrentHashMap<>();
+    private final Timer checkTimer;
+    private final Counter hourRejects;
+    private final Counter dayRejects;
+    private final Counter sessionRejects;
+
+    public VelocityEngine(VelocityProperties properties, VelocityReplicator replicator, MeterRegistry registry) {
+        this.properties = properties;
+        this.replicator = replicator;
+        this.checkTimer = Timer.builder("ussd.velocity.check").publishPercentiles(0.5, 0.99).register(registry);
+        this.hourRejects = registry.counter("ussd.velocity.rejected", "rule", "withdrawals_per_hour");
+        this.dayRejects = registry.counter("ussd.velocity.rejected", "rule", "amount_per_day");
+        this.sessionRejects = registry.counter("ussd.velocity.rejected", "rule", "sessions_per_minute");
+        registry.gauge("ussd.velocity.tracked.msisdns", state, Map::size);
+        registry.gauge("ussd.velocity.memory.bytes", this, VelocityEngine::estimatedBytes);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (properties.isEnabled()) replicator.start(this::apply);
+    }
+
+    // Records the session, and holds the withdrawal when it is allowed. Rejected withdrawals do not
+    // count towards the hourly/daily totals; the session is replicated either way.
+    public Decision checkWithdrawal(String msisdn, String sessionId, BigDecimal amount, String currency) {
+        if (!properties.isEnabled()) return Decision.OK;
+        long started = System.nanoTime();
+        try {
+            VelocityProperties.Limits limits = properties.limitsFor(currency);
+            long key = keyOf(msisdn);
+            int session = sessionId == null ? 0 : sessionId.hashCode();
+            long units = amount.setScale(0, RoundingMode.CEILING).longValue();
+            int now = VelocityWindows.now(System.currentTimeMillis() / 1000);
+            int[] s = state.computeIfAbsent(key, k -> VelocityWindows.create(now));
+
+            Decision decision;
+            synchronized (s) {
+                if (VelocityWindows.sessionsLastMinute(s, session, now) > limits.getMaxSessionsPerMinute()) {
+                    sessionRejects.increment();
+                    decision = new Decision(false, "Too many sessions, try again in a minute");
+                } else if (VelocityWindows.withdrawalsLastHour(s, now) + 1 > limits.getMaxWithdrawalsPerHour()) {
+                    hourRejects.increment();
+                    decision = new Decision(false, "Hourly withdrawal limit reached");
+                } else if (VelocityWindows.amountLastDay(s, now) + units > limits.getMaxAmountPerDay()) {
+                    dayRejects.increment();
+                    decision = new Decision(false, "Daily withdrawal limit reached");
+                } else {
+                    VelocityWindows.recordWithdrawal(s, now, units);
+                    decision = new Decision(true, null, new Hold(key, session, now, units));
+                }
+                VelocityWindows.recordSession(s, session, now);
+            }
+            replicator.publish(new VelocityEvent(key, session, now, false, 0));
+            return decision;
+        } finally {
+            checkTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // the withdrawal went through: the other nodes count it from now on
+    public void confirm(Decision decision) {
+        Hold h = decision.hold();
+        if (h != null) replicator.publish(new VelocityEvent(h.msisdnKey(), h.sessionHash(), h.at(), true, h.units()));
+    }
+
+    // the withdrawal did not go through: it stops counting here, and was never sent elsewhere
+    public void release(Decision decision) {
+        Hold h = decision.hold();
+        if (h == null) return;
+        int[] s = state.get(h.msisdnKey());
+        if (s == null) return;
+        synchronized (s) {
+            VelocityWindows.releaseWithdrawal(s, h.at(), h.units());
+        }
+    }
+
+    // event from another node
+    void apply(VelocityEvent e) {
+        int now = VelocityWindows.now(System.currentTimeMillis() / 1000);
+        if (now - e.at() >= VelocityWindows.DAY_BUCKETS * VelocityWindows.DAY_BUCKET_SECONDS) return;
+        int[] s = state.computeIfAbsent(e.msisdnKey(), k -> VelocityWindows.create(e.at()));
+        synchronized (s) {
+            if (e.withdrawal()) VelocityWindows.recordWithdrawal(s, e.at(), e.units());
+            VelocityWindows.recordSession(s, e.sessionHash(), e.at());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ussd.velocity.evict-interval-ms:300000}")
+    public void evictIdle() {
+        int now = VelocityWindows.now(System.currentTimeMillis() / 1000);
+        state.values().removeIf(s -> {
+            synchronized (s) {
+                return VelocityWindows.isIdle(s, now);
+            }
+        });
+    }
+
+    public long trackedMsisdns() {
+        return state.size();
+    }
+
+    public double estimatedBytes() {
+        return (double) state.size() * BYTES_PER_ENTRY;
+    }
+
+    // numeric MSISDNs become the number itself; anything else falls back to a negative hash
+    static long keyOf(String msisdn) {
+        long n = 0;
+        int digits = 0;
+        for (int i = 0; i < msisdn.length(); i++) {
+            char c = msisdn.charAt(i);
+            if (c >= '0' && c <= '9' && digits < 18) {
+                n = n * 10 + (c - '0');
+                digits++;
+            } else if (!(i == 0 && c == '+')) {
+                return -(msisdn.hashCode() & 0x7fffffffL) - 1;
+            }
+        }
+        return digits == 0 ? -1 : n;
+    }
+}
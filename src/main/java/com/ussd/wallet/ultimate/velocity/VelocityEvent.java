@@ -0,0 +1,6 @@
+package com.ussd.wallet.ultimate.velocity;
+
+// What one node tells the others: a session was seen, and optionally a withdrawal was accepted.
+// `at` uses the VelocityWindows time base; units is 0 for session-only events.
+record VelocityEvent(long msisdnKey, int sessionHash, int at, boolean withdrawal, long units) {
+}
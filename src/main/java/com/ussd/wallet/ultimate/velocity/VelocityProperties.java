@@ -0,0 +1,35 @@
+package com.ussd.wallet.ultimate.velocity;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Component
+@ConfigurationProperties(prefix = "ussd.velocity")
+@Getter
+@Setter
+public class VelocityProperties {
+
+    private boolean enabled = true;
+    private long flushIntervalMs = 50;
+    private Limits defaults = new Limits();
+    // per-currency overrides; anything missing falls back to defaults
+    private Map<String, Limits> currencies = new HashMap<>();
+
+    public Limits limitsFor(String currency) {
+        return currencies.getOrDefault(currency, defaults);
+    }
+
+    @Getter
+    @Setter
+    public static class Limits {
+        private int maxWithdrawalsPerHour = 5;
+        // whole currency units
+        private long maxAmountPerDay = 200_000;
+        private int maxSessionsPerMinute = 3;
+    }
+}
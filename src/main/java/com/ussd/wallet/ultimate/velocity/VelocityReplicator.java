@@ -0,0 +1,163 @@
+package com.ussd.wallet.ultimate.velocity;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+// Shares velocity events between nodes through a Redis stream. Local events are queued and
+// written in pipelined batches off the request path; a reader thread applies everyone else's.
+// A starting node replays the last 24 hours, so a restart does not reset anyone's limits; the
+// stream is trimmed by age, never by length, so those 24 hours are always there to replay.
+// Replication is asynchronous: a burst spread over several nodes can overshoot a limit by
+// roughly one flush interval's worth of withdrawals.
+@Component
+public class VelocityReplicator {
+
+    private static final Logger log = LoggerFactory.getLogger(VelocityReplicator.class);
+
+    static final String STREAM_KEY = "velocity:events";
+    // the longest limit window (max-amount-per-day); a restarted node replays this much
+    static final Duration WINDOW = Duration.ofDays(1);
+
+    // XTRIM MINID drops entries older than ARGV[1] ms; with '~' Redis only frees whole stream nodes, keeping a few more
+    private static final RedisScript<Long> TRIM_BEFORE = new DefaultRedisScript<>(
+            "return redis.call('XTRIM', KEYS[1], 'MINID', '~', ARGV[1])", Long.class);
+
+    private final StringRedisTemplate redis;
+    private final VelocityProperties properties;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ConcurrentLinkedQueue<VelocityEvent> outbox = new ConcurrentLinkedQueue<>();
+    private volatile boolean running;
+    private Thread writer;
+    private Thread reader;
+
+    public VelocityReplicator(StringRedisTemplate redis, VelocityProperties properties) {
+        this.redis = redis;
+        this.properties = properties;
+    }
+
+    public void publish(VelocityEvent event) {
+        if (running) outbox.add(event);
+    }
+
+    public synchronized void start(Consumer<VelocityEvent> sink) {
+        if (running) return;
+        running = true;
+        writer = daemon("velocity-writer", this::writeLoop);
+        reader = daemon("velocity-reader", () -> readLoop(sink));
+    }
+
+    private void writeLoop() {
+        long lastTrim = System.currentTimeMillis();
+        while (running) {
+            try {
+                Thread.sleep(properties.getFlushIntervalMs());
+                flush();
+                if (System.currentTimeMillis() - lastTrim > 60_000) {
+                    trim();
+                    lastTrim = System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                log.warn("Velocity flush failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    void flush() {
+        List<MapRecord<String, String, String>> batch = new ArrayList<>();
+        VelocityEvent e;
+        while (batch.size() < 1000 && (e = outbox.poll()) != null) {
+            batch.add(StreamRecords.newRecord().in(STREAM_KEY).ofMap(Map.of(
+                    "n", nodeId,
+                    "m", Long.toString(e.msisdnKey()),
+                    "s", Integer.toString(e.sessionHash()),
+                    "t", Integer.toString(e.at()),
+                    "w", e.withdrawal() ? "1" : "0",
+                    "u", Long.toString(e.units()))));
+        }
+        if (batch.isEmpty()) return;
+        redis.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                var ops = ((RedisOperations<String, String>) operations).opsForStream();
+                batch.forEach(ops::add);
+                return null;
+            }
+        });
+    }
+
+    void trim() {
+        long cutoff = System.currentTimeMillis() - WINDOW.toMillis();
+        redis.execute(TRIM_BEFORE, List.of(STREAM_KEY), Long.toString(cutoff));
+    }
+
+    private void readLoop(Consumer<VelocityEvent> sink) {
+        // stream ids start with the millisecond timestamp
+        ReadOffset offset = ReadOffset.from((System.currentTimeMillis() - WINDOW.toMillis()) + "-0");
+        StreamReadOptions options = StreamReadOptions.empty().count(1000).block(Duration.ofSeconds(1));
+        while (running) {
+            try {
+                List<MapRecord<String, Object, Object>> records = redis.opsForStream().read(options, StreamOffset.create(STREAM_KEY, offset));
+                if (records == null || records.isEmpty()) continue;
+                for (MapRecord<String, Object, Object> r : records) {
+                    Map<Object, Object> v = r.getValue();
+                    if (!nodeId.equals(v.get("n"))) {
+                        sink.accept(new VelocityEvent(Long.parseLong((String) v.get("m")), Integer.parseInt((String) v.get("s")),
+                                Integer.parseInt((String) v.get("t")), "1".equals(v.get("w")), Long.parseLong((String) v.get("u"))));
+                    }
+                    offset = ReadOffset.from(r.getId());
+                }
+            } catch (Exception e) {
+                if (!running) return;
+                log.warn("Velocity stream read failed: {}", e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static Thread daemon(String name, Runnable body) {
+        Thread t = new Thread(body, name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    @PreDestroy
+    public void close() {
+        running = false;
+        if (writer != null) writer.interrupt();
+        if (reader != null) reader.interrupt();
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Final velocity flush failed: {}", e.getMessage());
+        }
+    }
+}
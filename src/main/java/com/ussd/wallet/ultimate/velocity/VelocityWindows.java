@@ -0,0 +1,124 @@
+package com.ussd.wallet.ultimate.velocity;
+
+// All velocity state for one MSISDN in a single int[] (232 bytes with the array header):
+//   [0]        hour window head (5-minute bucket index)
+//   [1..12]    withdrawals per 5-minute bucket, last hour
+//   [13]       day window head (hour index)
+//   [14..37]   withdrawn whole units per hour, last 24 hours
+//   [38..53]   8 (session hash, second) pairs for the distinct-sessions-per-minute check
+// Times are seconds since 2025-01-01 so they fit an int. Callers synchronise on the array.
+final class VelocityWindows {
+
+    static final long BASE_EPOCH_SECONDS = 1735689600L;
+
+    static final int HOUR_BUCKET_SECONDS = 300;
+    static final int HOUR_BUCKETS = 12;
+    static final int DAY_BUCKET_SECONDS = 3600;
+    static final int DAY_BUCKETS = 24;
+    static final int SESSION_SLOTS = 8;
+    static final int SESSION_WINDOW_SECONDS = 60;
+
+    private static final int HOUR_HEAD = 0;
+    private static final int HOUR_FIRST = 1;
+    private static final int DAY_HEAD = HOUR_FIRST + HOUR_BUCKETS;
+    private static final int DAY_FIRST = DAY_HEAD + 1;
+    private static final int SESSION_FIRST = DAY_FIRST + DAY_BUCKETS;
+    static final int LENGTH = SESSION_FIRST + 2 * SESSION_SLOTS;
+
+    private VelocityWindows() {}
+
+    static int now(long epochSeconds) {
+        return (int) (epochSeconds - BASE_EPOCH_SECONDS);
+    }
+
+    static int[] create(int now) {
+        int[] s = new int[LENGTH];
+        s[HOUR_HEAD] = now / HOUR_BUCKET_SECONDS;
+        s[DAY_HEAD] = now / DAY_BUCKET_SECONDS;
+        return s;
+    }
+
+    static int withdrawalsLastHour(int[] s, int now) {
+        advance(s, HOUR_HEAD, HOUR_FIRST, HOUR_BUCKETS, now / HOUR_BUCKET_SECONDS);
+        return sum(s, HOUR_FIRST, HOUR_BUCKETS);
+    }
+
+    static long amountLastDay(int[] s, int now) {
+        advance(s, DAY_HEAD, DAY_FIRST, DAY_BUCKETS, now / DAY_BUCKET_SECONDS);
+        long total = 0;
+        for (int i = 0; i < DAY_BUCKETS; i++) total += s[DAY_FIRST + i];
+        return total;
+    }
+
+    // distinct sessions seen in the last minute, counting `sessionHash` as one of them
+    static int sessionsLastMinute(int[] s, int sessionHash, int now) {
+        int distinct = 1;
+        for (int i = 0; i < SESSION_SLOTS; i++) {
+            int hash = s[SESSION_FIRST + 2 * i];
+            int at = s[SESSION_FIRST + 2 * i + 1];
+            if (at != 0 && now - at < SESSION_WINDOW_SECONDS && hash != sessionHash) distinct++;
+        }
+        return distinct;
+    }
+
+    // `at` may be slightly in the past (events replicated from other nodes); anything older
+    // than the window is dropped
+    static void recordWithdrawal(int[] s, int at, long units) {
+        add(s, HOUR_HEAD, HOUR_FIRST, HOUR_BUCKETS, at / HOUR_BUCKET_SECONDS, 1);
+        add(s, DAY_HEAD, DAY_FIRST, DAY_BUCKETS, at / DAY_BUCKET_SECONDS, (int) Math.min(units, Integer.MAX_VALUE));
+    }
+
+    // takes back a withdrawal recorded at `at` that did not go through
+    static void releaseWithdrawal(int[] s, int at, long units) {
+        add(s, HOUR_HEAD, HOUR_FIRST, HOUR_BUCKETS, at / HOUR_BUCKET_SECONDS, -1);
+        add(s, DAY_HEAD, DAY_FIRST, DAY_BUCKETS, at / DAY_BUCKET_SECONDS, -(int) Math.min(units, Integer.MAX_VALUE));
+    }
+
+    // refreshes the slot already holding the session, otherwise takes the oldest slot
+    static void recordSession(int[] s, int sessionHash, int at) {
+        int target = -1;
+        int oldest = Integer.MAX_VALUE;
+        for (int i = 0; i < SESSION_SLOTS; i++) {
+            int slot = SESSION_FIRST + 2 * i;
+            if (s[slot] == sessionHash && s[slot + 1] != 0) {
+                target = slot;
+                break;
+            }
+            if (s[slot + 1] < oldest) {
+                oldest = s[slot + 1];
+                target = slot;
+            }
+        }
+        if (s[target + 1] <= at) {
+            s[target] = sessionHash;
+            s[target + 1] = at;
+        }
+    }
+
+    // the day head moves on every check, so a head a full day old means every window is empty
+    static boolean isIdle(int[] s, int now) {
+        return now / DAY_BUCKET_SECONDS - s[DAY_HEAD] >= DAY_BUCKETS;
+    }
+
+    private static void add(int[] s, int head, int first, int buckets, int index, int delta) {
+        advance(s, head, first, buckets, index);
+        if (s[head] - index >= buckets) return;
+        int slot = first + Math.floorMod(index, buckets);
+        s[slot] = (int) Math.max(0, Math.min((long) s[slot] + delta, Integer.MAX_VALUE));
+    }
+
+    // moves the window forward to `index`, zeroing the buckets that fell out of it
+    private static void advance(int[] s, int head, int first, int buckets, int index) {
+        int current = s[head];
+        if (index <= current) return;
+        int steps = Math.min(index - current, buckets);
+        for (int i = 1; i <= steps; i++) s[first + Math.floorMod(current + i, buckets)] = 0;
+        s[head] = index;
+    }
+
+    private static int sum(int[] s, int first, int buckets) {
+        int total = 0;
+        for (int i = 0; i < buckets; i++) total += s[first + i];
+        return total;
+    }
+}
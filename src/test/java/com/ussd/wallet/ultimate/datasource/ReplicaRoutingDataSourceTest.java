@@ -0,0 +1,56 @@
+package com.ussd.wallet.ultimate.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReplicaRoutingDataSourceTest {
+
+    private final ReplicaRoutingDataSource router =
+            new ReplicaRoutingDataSource(List.of("replica-0", "replica-1"), 2, new SimpleMeterRegistry());
+
+    @AfterEach
+    void clearHop() {
+        ReadYourWrites.end();
+    }
+
+    @Test
+    void readsRoundRobinOverHealthyReplicas() {
+        router.updateLag("replica-0", 0L);
+        router.updateLag("replica-1", 1L);
+        String first = router.choose();
+        String second = router.choose();
+        assertEquals(List.of("replica-0", "replica-1"), List.of(first, second).stream().sorted().toList());
+    }
+
+    @Test
+    void laggingOrUnknownReplicasAreSkipped() {
+        router.updateLag("replica-0", 10L);
+        router.updateLag("replica-1", null);
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, router.choose());
+
+        router.updateLag("replica-1", 2L);
+        assertEquals("replica-1", router.choose());
+        assertEquals("replica-1", router.choose());
+    }
+
+    @Test
+    void sessionThatWroteReadsFromPrimary() {
+        router.updateLag("replica-0", 0L);
+        router.updateLag("replica-1", 0L);
+
+        ReadYourWrites.begin(false);
+        assertEquals("replica", router.choose().substring(0, 7));
+        ReadYourWrites.markWrite();
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, router.choose());
+        assertEquals(true, ReadYourWrites.end());
+
+        // next hop of the same session carries the pin from Redis
+        ReadYourWrites.begin(true);
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, router.choose());
+    }
+}
@@ -0,0 +1,58 @@
+package com.ussd.wallet.ultimate.gateway;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ussd.wallet.ultimate.dto.UssdRequestDto;
+import com.ussd.wallet.ultimate.dto.UssdResponseDto;
+import com.ussd.wallet.ultimate.service.UssdMenus;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+// Measurement only, run with -Pperf; UssdGatewayTest covers the codec's behaviour.
+@Tag("perf")
+class UssdGatewayCodecPerfTest {
+
+    private static final int WARMUP = 200_000;
+    private static final int ROUNDS = 1_000_000;
+
+    private final UssdFormParser parser = new UssdFormParser("sessionId", "phoneNumber", "text");
+    private final UssdResponseWriter writer = new UssdResponseWriter(UssdMenus.ALL);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final byte[] formBody = ("sessionId=ATUid_7f3c2a&serviceCode=%2A384%2A123%23&networkCode=62120"
+            + "&phoneNumber=%2B2348164509876&text=3%2A1000").getBytes(StandardCharsets.US_ASCII);
+    private final byte[] jsonBody = "{\"sessionId\":\"ATUid_7f3c2a\",\"msisdn\":\"+2348164509876\",\"text\":\"3*1000\"}"
+            .getBytes(StandardCharsets.UTF_8);
+    private final UssdResponseDto menu = new UssdResponseDto(UssdMenus.MAIN_MENU, false);
+
+    @Test
+    void formEndpointCodecVersusJson() throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            formRoundTrip();
+            jsonRoundTrip();
+        }
+
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) sink += formRoundTrip();
+        long formNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) sink += jsonRoundTrip();
+        long jsonNanos = System.nanoTime() - start;
+
+        System.out.printf("[bench] form/text codec: %.0f ns/op, json codec: %.0f ns/op (sink=%d)%n",
+                (double) formNanos / ROUNDS, (double) jsonNanos / ROUNDS, sink);
+    }
+
+    private int formRoundTrip() {
+        UssdRequestDto req = parser.parse(formBody, formBody.length);
+        return req.getText().length() + writer.encode(menu).length;
+    }
+
+    private int jsonRoundTrip() throws Exception {
+        UssdRequestDto req = objectMapper.readValue(jsonBody, UssdRequestDto.class);
+        return req.getText().length() + objectMapper.writeValueAsBytes(menu).length;
+    }
+}
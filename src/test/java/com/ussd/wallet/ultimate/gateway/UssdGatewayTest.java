@@ -0,0 +1,76 @@
+package com.ussd.wallet.ultimate.gateway;
+
+import com.ussd.wallet.ultimate.controller.UssdGatewayController;
+import com.ussd.wallet.ultimate.dto.UssdRequestDto;
+import com.ussd.wallet.ultimate.dto.UssdResponseDto;
+import com.ussd.wallet.ultimate.service.UssdMenus;
+import com.ussd.wallet.ultimate.service.UssdService;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class UssdGatewayTest {
+
+    private final UssdFormParser parser = new UssdFormParser("sessionId", "phoneNumber", "text");
+    private final UssdResponseWriter writer = new UssdResponseWriter(UssdMenus.ALL);
+    private final UssdService ussdService = mock(UssdService.class);
+    private final UssdGatewayController controller = new UssdGatewayController(ussdService, "sessionId", "phoneNumber", "text");
+
+    @Test
+    void parsesGatewayFields() {
+        byte[] body = ("sessionId=ATUid_7f3c2a&serviceCode=%2A384%2A123%23&networkCode=62120"
+                + "&phoneNumber=%2B2348164509876&text=3%2A1000").getBytes(StandardCharsets.US_ASCII);
+        UssdRequestDto req = parser.parse(body, body.length);
+        assertEquals("ATUid_7f3c2a", req.getSessionId());
+        assertEquals("+2348164509876", req.getMsisdn());
+        assertEquals("3*1000", req.getText());
+
+        byte[] empty = "sessionId=s1&phoneNumber=0800&text=".getBytes(StandardCharsets.US_ASCII);
+        assertEquals("", parser.parse(empty, empty.length).getText());
+        assertArrayEquals(UssdMenus.MAIN_MENU.getBytes(StandardCharsets.UTF_8), writer.encode(new UssdResponseDto(UssdMenus.MAIN_MENU, false)));
+    }
+
+    @Test
+    void answersInGatewayFormat() throws Exception {
+        when(ussdService.handle(any(UssdRequestDto.class), eq(2000L))).thenReturn(new UssdResponseDto(UssdMenus.MAIN_MENU, false));
+
+        MockHttpServletResponse response = post("sessionId=s1&phoneNumber=%2B2348000000001&text=", 2000L);
+
+        assertEquals(200, response.getStatus());
+        assertEquals("text/plain;charset=UTF-8", response.getContentType());
+        assertEquals(UssdMenus.MAIN_MENU, response.getContentAsString(StandardCharsets.UTF_8));
+        verify(ussdService).handle(any(UssdRequestDto.class), eq(2000L));
+    }
+
+    @Test
+    void missingFieldsEndTheSessionInsteadOfFailing() throws Exception {
+        for (String body : new String[]{"phoneNumber=%2B2348000000001&text=1", "sessionId=s1&text=1", ""}) {
+            MockHttpServletResponse response = post(body, null);
+
+            assertEquals(200, response.getStatus());
+            assertEquals("text/plain;charset=UTF-8", response.getContentType());
+            assertEquals(UssdMenus.BAD_REQUEST, response.getContentAsString(StandardCharsets.UTF_8));
+        }
+        verifyNoInteractions(ussdService);
+    }
+
+    private MockHttpServletResponse post(String form, Long budgetMs) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/ussd/gateway");
+        request.setContentType("application/x-www-form-urlencoded");
+        request.setContent(form.getBytes(StandardCharsets.US_ASCII));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.receive(request, response, budgetMs);
+        return response;
+    }
+}
@@ -0,0 +1,117 @@
+package com.ussd.wallet.ultimate.kafka;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// A DLT on a MockConsumer, Redis markers in a set and a mocked TransactionListener that takes ~1ms
+// per event (a Cassandra write) and records what it saw per account. Shared by the replay tests.
+class DeadLetterFixture {
+
+    static final String DLT = "transactions.DLT";
+    static final int PARTITIONS = 4;
+    static final Pattern EVENT = Pattern.compile("\"accountId\":(\\d+),\"seq\":(\\d+)");
+
+    final Set<String> markers = ConcurrentHashMap.newKeySet();
+    final Map<Long, List<Integer>> seen = new ConcurrentHashMap<>();
+    final List<ProducerRecord<String, String>> requeued = new ArrayList<>();
+    final TransactionListener listener = mock(TransactionListener.class);
+    final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    final KafkaTemplate<String, String> kafkaTemplate = mock(KafkaTemplate.class);
+
+    @SuppressWarnings("unchecked")
+    DeadLetterFixture() throws IOException {
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(ops);
+        when(ops.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenAnswer(inv -> markers.add(inv.getArgument(0)));
+        when(redis.delete(anyString())).thenAnswer(inv -> markers.remove((String) inv.getArgument(0)));
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenAnswer(inv -> {
+            synchronized (requeued) {
+                requeued.add(inv.getArgument(0));
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+        doAnswer(inv -> {
+            Matcher m = EVENT.matcher(inv.getArgument(0));
+            if (!m.find()) throw new IOException("Unrecognized token 'garbage'");
+            Thread.sleep(1);
+            seen.computeIfAbsent(Long.parseLong(m.group(1)), k -> new ArrayList<>()).add(Integer.parseInt(m.group(2)));
+            return null;
+        }).when(listener).onMessage(anyString());
+    }
+
+    DeadLetterReplayService service(List<ConsumerRecord<String, String>> records, int concurrency) {
+        MockConsumer<String, String> consumer = new MockConsumer<>("earliest");
+        List<PartitionInfo> infos = new ArrayList<>();
+        Map<TopicPartition, Long> beginning = new HashMap<>();
+        Map<TopicPartition, Long> end = new HashMap<>();
+        for (int p = 0; p < PARTITIONS; p++) {
+            infos.add(new PartitionInfo(DLT, p, Node.noNode(), new Node[0], new Node[0]));
+            beginning.put(new TopicPartition(DLT, p), 0L);
+            end.put(new TopicPartition(DLT, p), 0L);
+        }
+        records.forEach(r -> end.merge(new TopicPartition(DLT, r.partition()), 1L, Long::sum));
+        consumer.updatePartitions(DLT, infos);
+        consumer.updateBeginningOffsets(beginning);
+        consumer.updateEndOffsets(end);
+        // records can only be added once the service has assigned the partitions
+        consumer.schedulePollTask(() -> records.forEach(consumer::addRecord));
+        return new DeadLetterReplayService(listener, redis, kafkaTemplate, new SimpleMeterRegistry(), () -> consumer,
+                DLT, concurrency, Duration.ofHours(1));
+    }
+
+    // events spread over the DLT partitions by transaction key, so one account's events land on
+    // several partitions and come back in produce order only through the per-account lanes
+    static List<ConsumerRecord<String, String>> deadLetters(int events, int accounts, int poison) {
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        long[] offsets = new long[PARTITIONS];
+        int[] seq = new int[accounts];
+        int poisoned = 0;
+        for (int i = 0; i < events + poison; i++) {
+            boolean bad = poison > 0 && i % ((events + poison) / poison) == 0 && poisoned++ < poison;
+            int account = i % accounts;
+            String value = bad ? "garbage-" + i
+                    : "{\"id\":\"tx-" + i + "\",\"accountId\":" + account + ",\"seq\":" + seq[account]++ + ",\"type\":\"WITHDRAW\"}";
+            int partition = i % PARTITIONS;
+            RecordHeaders headers = new RecordHeaders();
+            headers.add("trace-id", ("t" + i).getBytes(StandardCharsets.UTF_8));
+            headers.add(KafkaHeaders.DLT_ORIGINAL_TOPIC, "transactions".getBytes(StandardCharsets.UTF_8));
+            headers.add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(4).putInt(i % 3).array());
+            headers.add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(8).putLong(i).array());
+            headers.add(KafkaHeaders.DLT_ORIGINAL_TIMESTAMP, ByteBuffer.allocate(8).putLong(1_760_000_000_000L + i).array());
+            headers.add(KafkaHeaders.DLT_EXCEPTION_FQCN, "com.datastax.oss.driver.api.core.AllNodesFailedException".getBytes(StandardCharsets.UTF_8));
+            records.add(new ConsumerRecord<>(DLT, partition, offsets[partition]++, System.currentTimeMillis(), TimestampType.CREATE_TIME,
+                    0, 0, "tx-" + i, value, headers, Optional.empty()));
+        }
+        return records;
+    }
+}
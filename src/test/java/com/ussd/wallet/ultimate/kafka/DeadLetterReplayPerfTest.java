@@ -0,0 +1,33 @@
+package com.ussd.wallet.ultimate.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+import static com.ussd.wallet.ultimate.kafka.DeadLetterFixture.deadLetters;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Replay throughput serially and on 32 lanes; timing only, under -Pperf.
+@Tag("perf")
+class DeadLetterReplayPerfTest {
+
+    @Test
+    void parallelReplayThroughput() throws IOException {
+        List<ConsumerRecord<String, String>> records = deadLetters(2_000, 400, 0);
+        DeadLetterReplayService.ReplayReport serial = new DeadLetterFixture().service(records, 1)
+                .replay(Long.MAX_VALUE, Duration.ofMinutes(2));
+        DeadLetterReplayService.ReplayReport parallel = new DeadLetterFixture().service(records, 32)
+                .replay(Long.MAX_VALUE, Duration.ofMinutes(2));
+
+        System.out.printf("[bench] dlt replay serial: %d events in %.2fs (%.0f/s)%n", serial.replayed(), serial.seconds(), serial.perSecond());
+        System.out.printf("[bench] dlt replay 32 lanes: %d events in %.2fs (%.0f/s), backlog left %d%n",
+                parallel.replayed(), parallel.seconds(), parallel.perSecond(), parallel.remainingBacklog());
+        assertEquals(2_000, parallel.replayed());
+        assertTrue(parallel.perSecond() > serial.perSecond() * 4, "parallel replay should be several times faster");
+    }
+}
@@ -0,0 +1,99 @@
+package com.ussd.wallet.ultimate.kafka;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.KafkaHeaders;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.ussd.wallet.ultimate.kafka.DeadLetterFixture.DLT;
+import static com.ussd.wallet.ultimate.kafka.DeadLetterFixture.deadLetters;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// Replays a DeadLetterFixture DLT. Checks per-account order, that parallel lanes replay every record
+// once, skip-on-rerun, and requeueing of events that fail again.
+class DeadLetterReplayServiceTest {
+
+    private final DeadLetterFixture fixture;
+
+    DeadLetterReplayServiceTest() throws IOException {
+        fixture = new DeadLetterFixture();
+    }
+
+    @Test
+    void replaysInAccountOrderAndRequeuesPoisonEvents() {
+        List<ConsumerRecord<String, String>> records = deadLetters(4_000, 200, 10);
+        DeadLetterReplayService service = service(records, 32);
+
+        DeadLetterReplayService.ReplayReport report = service.replay(Long.MAX_VALUE, Duration.ofMinutes(1));
+
+        assertEquals(4_000, report.replayed());
+        assertEquals(10, report.failed());
+        assertEquals(0, report.duplicates());
+        assertEquals(0, report.remainingBacklog());
+        assertEquals(200, fixture.seen.size());
+        fixture.seen.values().forEach(seqs -> assertEquals(IntStream.range(0, seqs.size()).boxed().toList(), seqs));
+
+        assertEquals(10, fixture.requeued.size());
+        ProducerRecord<String, String> back = fixture.requeued.get(0);
+        assertEquals(DLT, back.topic());
+        assertEquals("1", new String(back.headers().lastHeader(DeadLetterReplayService.REPLAY_ATTEMPTS_HEADER).value(), StandardCharsets.UTF_8));
+        assertEquals("transactions", new String(back.headers().lastHeader(KafkaHeaders.DLT_ORIGINAL_TOPIC).value(), StandardCharsets.UTF_8));
+        assertEquals(IOException.class.getName(), new String(back.headers().lastHeader(KafkaHeaders.DLT_EXCEPTION_FQCN).value(), StandardCharsets.UTF_8));
+        assertNotNull(back.headers().lastHeader("trace-id"), "original headers are kept");
+    }
+
+    @Test
+    void rerunAfterCrashSkipsWhatWasAlreadyReplayed() throws IOException {
+        List<ConsumerRecord<String, String>> records = deadLetters(1_000, 50, 0);
+        service(records, 8).replay(Long.MAX_VALUE, Duration.ofMinutes(1));
+        clearInvocations(fixture.listener);
+
+        // a fresh consumer with nothing committed, as if the first run died before its commit
+        DeadLetterReplayService.ReplayReport again = service(records, 8).replay(Long.MAX_VALUE, Duration.ofMinutes(1));
+
+        assertEquals(1_000, again.duplicates());
+        assertEquals(0, again.replayed());
+        verify(fixture.listener, never()).onMessage(anyString());
+    }
+
+    @Test
+    void maxRecordsLeavesTheRestAsBacklog() {
+        DeadLetterReplayService.ReplayReport report = service(deadLetters(1_000, 50, 0), 8).replay(300, Duration.ofMinutes(1));
+
+        assertEquals(300, report.replayed());
+        assertEquals(700, report.remainingBacklog());
+    }
+
+    @Test
+    void parallelLanesReplayEveryRecordOnceAndReparkWhatFails() throws IOException {
+        List<ConsumerRecord<String, String>> records = deadLetters(2_000, 400, 20);
+
+        DeadLetterReplayService.ReplayReport report = service(records, 32).replay(Long.MAX_VALUE, Duration.ofMinutes(1));
+
+        assertEquals(2_000, report.replayed());
+        assertEquals(20, report.failed());
+        verify(fixture.listener, times(2_020)).onMessage(anyString());
+        assertEquals(400, fixture.seen.size());
+        fixture.seen.values().forEach(seqs -> assertEquals(IntStream.range(0, seqs.size()).boxed().toList(), seqs));
+        assertEquals(2_000, fixture.seen.values().stream().mapToInt(List::size).sum());
+
+        Set<String> poison = records.stream().filter(r -> r.value().startsWith("garbage")).map(ConsumerRecord::key).collect(Collectors.toSet());
+        assertEquals(20, poison.size());
+        assertEquals(poison, fixture.requeued.stream().map(ProducerRecord::key).collect(Collectors.toSet()));
+        assertEquals(20, fixture.requeued.size());
+    }
+
+    private DeadLetterReplayService service(List<ConsumerRecord<String, String>> records, int concurrency) {
+        return fixture.service(records, concurrency);
+    }
+}
@@ -0,0 +1,52 @@
+package com.ussd.wallet.ultimate.kafka;
+
+import com.ussd.wallet.ultimate.controller.FlutterwaveWebhookController;
+import com.ussd.wallet.ultimate.retry.RetryScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Webhook burst against the endpoint with the producer mocked out; run with -Pperf.
+@Tag("perf")
+class DepositWebhookIngestionPerfTest {
+
+    // the endpoint only checks the hash, reads the tx_ref and appends to the producer buffer
+    @Test
+    void endpointAbsorbsABurst() throws Exception {
+        @SuppressWarnings("unchecked")
+        KafkaTemplate<String, String> kafka = mock(KafkaTemplate.class);
+        when(kafka.send(anyString(), anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(null));
+        FlutterwaveWebhookController controller = new FlutterwaveWebhookController(
+                kafka, mock(RetryScheduler.class), "secret-hash", "deposit-webhooks", new SimpleMeterRegistry());
+
+        int requests = 50_000;
+        String body = "{\"event\":\"charge.completed\",\"data\":{\"id\":1,\"tx_ref\":\"dep-1-x\",\"amount\":250,"
+                + "\"currency\":\"NGN\",\"status\":\"successful\",\"customer\":{\"phone_number\":\"+2348000000001\"}}}";
+        AtomicInteger ok = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            pool.execute(() -> {
+                if (controller.receive("secret-hash", body).getStatusCode().is2xxSuccessful()) ok.incrementAndGet();
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(60, TimeUnit.SECONDS));
+        double perSec = requests / ((System.nanoTime() - start) / 1e9);
+        System.out.printf("[bench] webhook ingest %,.0f req/s on 16 threads%n", perSec);
+        assertEquals(requests, ok.get());
+    }
+}
@@ -0,0 +1,113 @@
+package com.ussd.wallet.ultimate.kafka;
+
+import com.ussd.wallet.ultimate.controller.FlutterwaveWebhookController;
+import com.ussd.wallet.ultimate.dto.DepositEvent;
+import com.ussd.wallet.ultimate.retry.RetryScheduler;
+import com.ussd.wallet.ultimate.service.AccountService;
+import com.ussd.wallet.ultimate.service.BackgroundWorkerService;
+import com.ussd.wallet.ultimate.service.TwilioSmsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class DepositWebhookIngestionTest {
+
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, String> kafka = mock(KafkaTemplate.class);
+    private final AccountService accountService = mock(AccountService.class);
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final HashOperations<String, Object, Object> hashOps = mock(HashOperations.class);
+
+    private DepositWebhookConsumer consumer() {
+        when(redis.<Object, Object>opsForHash()).thenReturn(hashOps);
+        when(hashOps.entries(anyString())).thenReturn(Map.of());
+        when(kafka.send(anyString(), anyString(), anyString())).thenReturn(new CompletableFuture<>());
+        return new DepositWebhookConsumer(accountService, redis, mock(TwilioSmsService.class), kafka, mock(BackgroundWorkerService.class));
+    }
+
+    private static String webhook(long id, String txRef, String status) {
+        return "{\"event\":\"charge.completed\",\"data\":{\"id\":" + id + ",\"tx_ref\":\"" + txRef + "\",\"amount\":250,"
+                + "\"currency\":\"NGN\",\"status\":\"" + status + "\",\"customer\":{\"phone_number\":\"+2348000000001\"}}}";
+    }
+
+    @Test
+    void onlySuccessfulChargesWithKnownReferencesBecomeDeposits() {
+        DepositWebhookConsumer consumer = consumer();
+        DepositEvent event = consumer.parse(webhook(9001, "dep-42-abc", "successful"));
+        assertEquals(new DepositEvent("flw:9001", "dep-42-abc", 42L, new BigDecimal("250"), "NGN", "+2348000000001"), event);
+        assertNull(consumer.parse(webhook(9002, "dep-42-abc", "failed")));
+        assertNull(consumer.parse(webhook(9003, "someone-else", "successful")));
+        assertNull(consumer.parse("not json"));
+    }
+
+    @Test
+    void batchIsCreditedOncePerAccount() {
+        DepositWebhookConsumer consumer = consumer();
+        when(accountService.creditDeposits(any(), anyList())).thenAnswer(inv -> inv.getArgument(1));
+        consumer.onBatch(List.of(
+                webhook(1, "dep-7-a", "successful"),
+                webhook(2, "dep-8-b", "successful"),
+                webhook(3, "dep-7-c", "successful"),
+                webhook(1, "dep-7-a", "successful")));
+        verify(accountService, times(1)).creditDeposits(eq(7L), anyList());
+        verify(accountService, times(1)).creditDeposits(eq(8L), anyList());
+        verify(kafka, times(4)).send(eq("transactions"), anyString(), anyString());
+    }
+
+    @Test
+    void failedAccountIsNamedSoEarlierRecordsAreCommitted() {
+        DepositWebhookConsumer consumer = consumer();
+        when(accountService.creditDeposits(eq(7L), anyList())).thenAnswer(inv -> inv.getArgument(1));
+        when(accountService.creditDeposits(eq(8L), anyList())).thenThrow(new DataAccessResourceFailureException("shard down"));
+
+        BatchListenerFailedException failed = assertThrows(BatchListenerFailedException.class, () -> consumer.onBatch(List.of(
+                webhook(1, "dep-7-a", "successful"),
+                webhook(2, "nobody", "successful"),
+                webhook(3, "dep-8-b", "successful"),
+                webhook(4, "dep-8-c", "successful"))));
+
+        assertEquals(2, failed.getIndex());
+    }
+
+    @Test
+    void endpointKeysByTxRefAndAnswers503WhenTheQueueIsUnavailable() {
+        RetryScheduler retries = mock(RetryScheduler.class);
+        FlutterwaveWebhookController controller = new FlutterwaveWebhookController(
+                kafka, retries, "secret-hash", "deposit-webhooks", new SimpleMeterRegistry());
+        String body = webhook(1, "dep-1-x", "successful");
+        assertEquals(401, controller.receive("wrong", body).getStatusCode().value());
+
+        when(kafka.send("deposit-webhooks", "dep-1-x", body)).thenReturn(CompletableFuture.completedFuture(null));
+        assertEquals(200, controller.receive("secret-hash", body).getStatusCode().value());
+        verify(kafka).send("deposit-webhooks", "dep-1-x", body);
+
+        // what a producer past its max.block.ms throws
+        when(kafka.send("deposit-webhooks", "dep-1-x", body)).thenThrow(new KafkaException("Topic deposit-webhooks not present in metadata after 250 ms."));
+        assertEquals(503, controller.receive("secret-hash", body).getStatusCode().value());
+        verifyNoInteractions(retries);
+    }
+}
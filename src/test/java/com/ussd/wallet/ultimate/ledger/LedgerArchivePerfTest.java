@@ -0,0 +1,89 @@
+package com.ussd.wallet.ultimate.ledger;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.service.ClusterLease;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Writer;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+// Half a million rows through one month file: write rate, size against the CSV export, export
+// rate with and without account pruning, and the heap an export holds. Under -Pperf only.
+@Tag("perf")
+class LedgerArchivePerfTest {
+
+    private static final YearMonth JANUARY = YearMonth.of(2026, 1);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void exportThroughputCompressionAndHeap() throws Exception {
+        int rows = 500_000;
+        Random random = new Random(3);
+        Path file = dir.resolve("2026-01.utxa");
+        long csvBytes = 0;
+        StringBuilder line = new StringBuilder();
+        long start = System.nanoTime();
+        try (LedgerArchiveWriter writer = new LedgerArchiveWriter(file, 8192, 6)) {
+            for (int i = 0; i < rows; i++) {
+                Transaction tx = LedgerArchiveTest.row(random, JANUARY, 20_000);
+                line.setLength(0);
+                LedgerArchiver.csv(line, tx);
+                csvBytes += line.length();
+                writer.append(tx);
+            }
+        }
+        double writeSeconds = (System.nanoTime() - start) / 1e9;
+
+        LedgerArchiver archiver = new LedgerArchiver(mock(CqlSession.class), mock(ClusterLease.class), new SimpleMeterRegistry(),
+                dir.toString(), 3, 64, 6, 100, 12, 1_000_000, false, 8);
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long[] heapGrowth = {0};
+        long[] written = {0};
+        Writer sink = new Writer() {
+            @Override
+            public void write(char[] buf, int off, int len) {
+                if (++written[0] % 100_000 == 0) {
+                    System.gc();
+                    heapGrowth[0] = Math.max(heapGrowth[0], runtime.totalMemory() - runtime.freeMemory() - heapBefore);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        LedgerArchiver.ExportReport export = archiver.export(null, null, null, sink);
+        LedgerArchiver.ExportReport oneAccount = archiver.export(1_000_042L, null, null, Writer.nullWriter());
+        LedgerArchiver.MonthArchive month = archiver.months().get(0);
+
+        System.out.printf("[bench] archive write %d rows: %.0f rows/s, %d groups%n", rows, rows / writeSeconds, (rows + 8191) / 8192);
+        System.out.printf("[bench] archive size %.1fMB: %.2fx over encoded columns, %.2fx smaller than the CSV export%n",
+                month.fileBytes() / 1e6, month.compressionRatio(), csvBytes / (double) month.fileBytes());
+        System.out.printf("[bench] export all %.0f rows/s; one account %d rows, %d of %d groups skipped, %.1fms%n",
+                export.rowsPerSecond(), oneAccount.rows(), oneAccount.groupsSkipped(), oneAccount.groupsSkipped() + oneAccount.groupsRead(),
+                oneAccount.seconds() * 1000);
+        System.out.printf("[bench] heap growth while exporting: %dKB%n", heapGrowth[0] / 1024);
+        assertEquals(rows, export.rows());
+        assertTrue(csvBytes > month.fileBytes() * 2);
+        // one group's columns, not the month
+        assertTrue(heapGrowth[0] < 32L << 20, "export heap grew by " + heapGrowth[0]);
+    }
+}
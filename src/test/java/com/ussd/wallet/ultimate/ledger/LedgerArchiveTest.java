@@ -0,0 +1,269 @@
+package com.ussd.wallet.ultimate.ledger;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.DefaultConsistencyLevel;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.ResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.service.ClusterLease;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// Month archives end to end: exact round trips through the columnar format, group pruning for
+// account and date-range exports, and the archiving run against a mocked driver session (month
+// routing, deferred months, purge markers, late rows of sealed months, the lease).
+class LedgerArchiveTest {
+
+    private static final YearMonth JANUARY = YearMonth.of(2026, 1);
+
+    @TempDir
+    Path dir;
+
+    private final ClusterLease lease = mock(ClusterLease.class);
+
+    LedgerArchiveTest() {
+        when(lease.acquire(eq(LedgerArchiver.LEASE), any())).thenReturn(true);
+    }
+
+    @Test
+    void roundTripsRowsAndSkipsGroupsThatCannotMatch() throws Exception {
+        Random random = new Random(7);
+        Map<UUID, Transaction> written = new HashMap<>();
+        Path file = dir.resolve("2026-01.utxa");
+        try (LedgerArchiveWriter writer = new LedgerArchiveWriter(file, 256, 6)) {
+            for (int i = 0; i < 5_000; i++) {
+                Transaction tx = row(random, JANUARY, 2_000);
+                written.put(tx.getId(), tx);
+                writer.append(tx);
+            }
+            // nulls and scales come back as they went in
+            Transaction sparse = Transaction.builder().id(UUID.randomUUID()).accountId(-5L).createdAt(Instant.parse("2026-01-31T23:59:59.999Z"))
+                    .amount(new BigDecimal("-0.0001")).build();
+            written.put(sparse.getId(), sparse);
+            writer.append(sparse);
+        }
+
+        try (LedgerArchiveReader reader = LedgerArchiveReader.open(file)) {
+            assertEquals(written.size(), reader.rows());
+            Map<UUID, Transaction> read = new HashMap<>();
+            LedgerArchiveReader.ScanStats all = reader.scan(null, null, null, tx -> read.put(tx.getId(), tx));
+            assertEquals(written, read);
+            assertEquals(reader.rowGroups(), all.groupsRead());
+
+            long account = 1_000_123L;
+            List<Transaction> expected = written.values().stream().filter(tx -> tx.getAccountId() == account).toList();
+            List<Transaction> forAccount = new ArrayList<>();
+            LedgerArchiveReader.ScanStats byAccount = reader.scan(account, null, null, forAccount::add);
+            assertEquals(Set.copyOf(expected), Set.copyOf(forAccount));
+            assertTrue(byAccount.groupsSkipped() > reader.rowGroups() / 2, "bloom filters skip most groups: " + byAccount);
+
+            Instant from = Instant.parse("2026-01-10T00:00:00Z");
+            Instant to = Instant.parse("2026-01-11T00:00:00Z");
+            long inDay = written.values().stream().filter(tx -> !tx.getCreatedAt().isBefore(from) && tx.getCreatedAt().isBefore(to)).count();
+            assertEquals(inDay, reader.scan(null, from, to, tx -> { }).rows());
+            assertEquals(0, reader.scan(null, Instant.parse("2026-02-01T00:00:00Z"), null, tx -> { }).groupsRead());
+        }
+
+        Files.write(dir.resolve("2026-02.utxa"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24});
+        assertThrows(java.io.IOException.class, () -> LedgerArchiveReader.open(dir.resolve("2026-02.utxa")));
+    }
+
+    @Test
+    void archivesAgedMonthsOnceAndPurgesWhatIsInTheFiles() throws Exception {
+        Random random = new Random(11);
+        List<Transaction> ledger = new ArrayList<>();
+        for (YearMonth month : List.of(YearMonth.of(2026, 1), YearMonth.of(2026, 2), YearMonth.of(2026, 3))) {
+            for (int i = 0; i < 300; i++) ledger.add(row(random, month, 50));
+        }
+        for (int i = 0; i < 100; i++) ledger.add(row(random, YearMonth.of(2026, 4), 50));
+        ledger.add(Transaction.builder().id(UUID.randomUUID()).accountId(1L).type("DEPOSIT").build());
+        Collections.shuffle(ledger, random);
+        List<Transaction> written = List.copyOf(ledger);
+
+        CqlSession session = session(ledger);
+        Set<UUID> deleted = ConcurrentHashMap.newKeySet();
+        PreparedStatement delete = mock(PreparedStatement.class);
+        when(session.prepare(LedgerArchiver.DELETE)).thenReturn(delete);
+        // a finished purge leaves nothing of the month in Cassandra
+        when(delete.bind(any())).thenAnswer(inv -> {
+            UUID id = inv.getArgument(0);
+            deleted.add(id);
+            ledger.removeIf(tx -> id.equals(tx.getId()));
+            return mock(BoundStatement.class, RETURNS_SELF);
+        });
+        when(session.executeAsync(any(Statement.class))).thenReturn(CompletableFuture.completedFuture(mock(AsyncResultSet.class)));
+        Files.write(dir.resolve("2026-01.utxa.tmp"), new byte[]{1});
+
+        YearMonth firstKept = YearMonth.of(2026, 4);
+        LedgerArchiver archiver = archiver(session, 2, false);
+        LedgerArchiver.ArchiveReport first = archiver.archive(firstKept);
+        assertEquals(ledger.size(), first.scanned());
+        assertEquals(600, first.archived());
+        assertEquals(1, first.skipped());
+        assertEquals(1, first.deferredMonths().size());
+        assertFalse(Files.exists(dir.resolve("2026-01.utxa.tmp")));
+
+        LedgerArchiver.ArchiveReport second = archiver.archive(firstKept);
+        assertEquals(300, second.archived());
+        assertEquals(600, second.inArchivedMonths());
+        assertEquals(List.of("2026-01", "2026-02", "2026-03"), archiver.months().stream().map(LedgerArchiver.MonthArchive::month).toList());
+
+        // every archived row is exported, and nothing from the kept month
+        StringWriter csv = new StringWriter();
+        LedgerArchiver.ExportReport export = archiver.export(null, null, null, csv);
+        assertEquals(900, export.rows());
+        assertEquals(901, csv.toString().lines().count());
+        assertTrue(csv.toString().contains("\"note, with \"\"quotes\"\"\""));
+        long februaryRows = ledger.stream().filter(tx -> tx.getCreatedAt() != null
+                && YearMonth.from(tx.getCreatedAt().atZone(ZoneOffset.UTC)).equals(YearMonth.of(2026, 2))).count();
+        assertEquals(februaryRows, archiver.export(null, Instant.parse("2026-02-01T00:00:00Z"), Instant.parse("2026-03-01T00:00:00Z"), Writer.nullWriter()).rows());
+        assertEquals(1, archiver.export(null, Instant.parse("2026-02-01T00:00:00Z"), Instant.parse("2026-03-01T00:00:00Z"), Writer.nullWriter()).months());
+
+        LedgerArchiver purging = archiver(session, 2, true);
+        LedgerArchiver.ArchiveReport purged = purging.archive(firstKept);
+        assertEquals(900, purged.purged());
+        Set<UUID> archivedIds = written.stream().filter(tx -> tx.getCreatedAt() != null && tx.getCreatedAt().isBefore(Instant.parse("2026-04-01T00:00:00Z")))
+                .map(Transaction::getId).collect(Collectors.toSet());
+        assertEquals(archivedIds, deleted);
+        assertTrue(purging.months().stream().allMatch(LedgerArchiver.MonthArchive::purged));
+        assertEquals(0, purging.archive(firstKept).purged(), "markers stop a second purge");
+    }
+
+    @Test
+    void lateRowsOfAPurgedMonthGoToTheirOwnPart() throws Exception {
+        Random random = new Random(5);
+        List<Transaction> ledger = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 200; i++) ledger.add(row(random, JANUARY, 20));
+        CqlSession session = session(ledger);
+        PreparedStatement delete = mock(PreparedStatement.class);
+        when(session.prepare(LedgerArchiver.DELETE)).thenReturn(delete);
+        when(delete.bind(any())).thenAnswer(inv -> {
+            UUID id = inv.getArgument(0);
+            ledger.removeIf(tx -> tx.getId().equals(id));
+            return mock(BoundStatement.class, RETURNS_SELF);
+        });
+        when(session.executeAsync(any(Statement.class))).thenReturn(CompletableFuture.completedFuture(mock(AsyncResultSet.class)));
+        YearMonth firstKept = JANUARY.plusMonths(1);
+
+        assertEquals(200, archiver(session, 2, false).archive(firstKept).archived());
+        ArgumentCaptor<Statement<?>> scan = ArgumentCaptor.forClass(Statement.class);
+        verify(session).execute(scan.capture());
+        assertEquals(DefaultConsistencyLevel.LOCAL_QUORUM, scan.getValue().getConsistencyLevel());
+
+        // written after the month was sealed; indistinguishable from archived rows until the purge
+        for (int i = 0; i < 20; i++) ledger.add(row(random, JANUARY, 20));
+        LedgerArchiver.ArchiveReport unpurged = archiver(session, 2, false).archive(firstKept);
+        assertEquals(0, unpurged.archived());
+        assertEquals(220, unpurged.inArchivedMonths());
+
+        LedgerArchiver purging = archiver(session, 2, true);
+        LedgerArchiver.ArchiveReport purgedFirst = purging.archive(firstKept);
+        assertEquals(0, purgedFirst.late());
+        assertEquals(200, purgedFirst.purged());
+        assertEquals(20, ledger.size(), "the late rows are still in Cassandra");
+
+        LedgerArchiver.ArchiveReport supplement = purging.archive(firstKept);
+        assertEquals(20, supplement.late());
+        assertEquals(List.of("2026-01.p1"), supplement.written().stream().map(LedgerArchiver.MonthArchive::month).toList());
+        assertEquals(20, supplement.purged());
+        assertTrue(ledger.isEmpty());
+        assertTrue(Files.exists(dir.resolve("2026-01.p1.purged")));
+
+        LedgerArchiver.MonthArchive january = purging.months().get(0);
+        assertEquals("2026-01", january.month());
+        assertEquals(2, january.files());
+        assertEquals(220, january.rows());
+        assertTrue(january.purged());
+        assertEquals(220, purging.export(null, null, null, Writer.nullWriter()).rows());
+        assertEquals(0, purging.archive(firstKept).archived());
+    }
+
+    @Test
+    void nodeWithoutTheLeaseDoesNotArchive() throws Exception {
+        CqlSession session = mock(CqlSession.class);
+        when(lease.acquire(eq(LedgerArchiver.LEASE), any())).thenReturn(false);
+
+        assertNull(archiver(session, 2, true).archive(JANUARY.plusMonths(1)));
+
+        verifyNoInteractions(session);
+        verify(lease, never()).release(any());
+    }
+
+    private LedgerArchiver archiver(CqlSession session, int maxOpenMonths, boolean purge) {
+        return new LedgerArchiver(session, lease, new SimpleMeterRegistry(), dir.toString(), 3, 64, 6, 100, maxOpenMonths, 1_000_000, purge, 8);
+    }
+
+    private static CqlSession session(List<Transaction> ledger) {
+        CqlSession session = mock(CqlSession.class);
+        ResultSet result = mock(ResultSet.class);
+        when(result.iterator()).thenAnswer(inv -> ledger.stream().map(LedgerArchiveTest::cassandraRow).iterator());
+        when(session.execute(any(Statement.class))).thenReturn(result);
+        return session;
+    }
+
+    // getters are answered by column name
+    private static Row cassandraRow(Transaction tx) {
+        Map<String, Object> columns = new HashMap<>();
+        columns.put("id", tx.getId());
+        columns.put("accountid", tx.getAccountId());
+        columns.put("type", tx.getType());
+        columns.put("amount", tx.getAmount());
+        columns.put("currency", tx.getCurrency());
+        columns.put("createdat", tx.getCreatedAt());
+        columns.put("status", tx.getStatus());
+        columns.put("meta", tx.getMeta());
+        return mock(Row.class, inv -> columns.get((String) inv.getArgument(0)));
+    }
+
+    static Transaction row(Random random, YearMonth month, int accounts) {
+        String[] types = {"DEPOSIT", "WITHDRAW", "TRANSFER"};
+        String[] statuses = {"SUCCESS", "SUCCESS", "SUCCESS", "FAILED", "PENDING"};
+        long start = month.atDay(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        long span = month.lengthOfMonth() * 86_400_000L;
+        String meta = switch (random.nextInt(50)) {
+            case 0 -> "note, with \"quotes\"";
+            case 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 -> null;
+            default -> "FLW-" + random.nextInt(1_000_000_000);
+        };
+        return Transaction.builder()
+                .id(new UUID(random.nextLong(), random.nextLong()))
+                .accountId(1_000_000L + random.nextInt(accounts))
+                .type(types[random.nextInt(types.length)])
+                .amount(BigDecimal.valueOf(100 + random.nextInt(5_000_000), 2))
+                .currency(random.nextInt(10) == 0 ? "USD" : "NGN")
+                .createdAt(Instant.ofEpochMilli(start + (long) (random.nextDouble() * span)))
+                .status(statuses[random.nextInt(statuses.length)])
+                .meta(meta)
+                .build();
+    }
+}
@@ -0,0 +1,83 @@
+package com.ussd.wallet.ultimate.ledger;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.ussd.wallet.ultimate.retry.RetryScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+// Status-update throughput with the driver answering after about a millisecond: one write at a
+// time against the async path with up to 256 in flight. Only runs under -Pperf.
+@Tag("perf")
+class LedgerWriterPerfTest {
+
+    private final CqlSession session = mock(CqlSession.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ScheduledExecutorService driver = Executors.newScheduledThreadPool(4);
+    private final long latencyMicros = 1_000L;
+
+    LedgerWriterPerfTest() {
+        PreparedStatement prepared = mock(PreparedStatement.class, inv ->
+                inv.getMethod().getName().equals("bind") ? mock(BoundStatement.class, RETURNS_SELF) : RETURNS_DEFAULTS.answer(inv));
+        when(session.prepareAsync(anyString())).thenAnswer(inv -> CompletableFuture.completedFuture(prepared));
+        when(session.executeAsync(any(Statement.class))).thenAnswer(inv -> {
+            CompletableFuture<AsyncResultSet> result = new CompletableFuture<>();
+            driver.schedule(() -> result.complete(mock(AsyncResultSet.class)), latencyMicros, TimeUnit.MICROSECONDS);
+            return result;
+        });
+    }
+
+    @AfterEach
+    void shutdown() {
+        driver.shutdownNow();
+    }
+
+    @Test
+    void asyncWritesVersusOneAtATime() throws Exception {
+        int writes = 2_000;
+        LedgerWriter serialWriter = writer(1, 5_000);
+        long start = System.nanoTime();
+        for (int i = 0; i < writes; i++) {
+            serialWriter.updateStatus(UUID.randomUUID(), Instant.now(), "SUCCESS", "r").toCompletableFuture().get();
+        }
+        long serialNanos = System.nanoTime() - start;
+
+        LedgerWriter asyncWriter = writer(256, 5_000);
+        List<CompletableFuture<Void>> all = new ArrayList<>();
+        start = System.nanoTime();
+        for (int i = 0; i < writes; i++) {
+            all.add(asyncWriter.updateStatus(UUID.randomUUID(), Instant.now(), "SUCCESS", "r").toCompletableFuture());
+        }
+        CompletableFuture.allOf(all.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+        long asyncNanos = System.nanoTime() - start;
+
+        System.out.printf("[bench] ledger status updates at ~1ms each: blocking %.0f/s, async (256 in flight) %.0f/s%n",
+                writes / (serialNanos / 1e9), writes / (asyncNanos / 1e9));
+        System.out.printf("[bench] ledger status p99 %.2fms%n",
+                registry.get("ussd.ledger.write").tag("statement", "status").timer().takeSnapshot().percentileValues()[1].value(TimeUnit.MILLISECONDS));
+        assertTrue(asyncNanos * 5 < serialNanos, "async writes should overlap the driver round trips");
+    }
+
+    private LedgerWriter writer(int maxInFlight, long acquireTimeoutMs) {
+        return new LedgerWriter(session, mock(RetryScheduler.class), registry, maxInFlight, acquireTimeoutMs);
+    }
+}
@@ -0,0 +1,185 @@
+package com.ussd.wallet.ultimate.ledger;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.retry.RetryScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// LedgerWriter against a mocked driver session. Executed statements are applied to a small
+// last-write-wins model of the row, which is how Cassandra resolves cells by write timestamp.
+class LedgerWriterTest {
+
+    private record Executed(String cql, Object[] values) {
+    }
+
+    private final CqlSession session = mock(CqlSession.class);
+    private final RetryScheduler retryScheduler = mock(RetryScheduler.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Map<BoundStatement, Executed> bound = new ConcurrentHashMap<>();
+    private final List<Executed> executed = Collections.synchronizedList(new ArrayList<>());
+
+    // false leaves each statement pending until the test completes it
+    private volatile boolean answerAtOnce = true;
+    private final List<CompletableFuture<AsyncResultSet>> pending = Collections.synchronizedList(new ArrayList<>());
+
+    @SuppressWarnings("unchecked")
+    LedgerWriterTest() {
+        when(session.prepareAsync(anyString())).thenAnswer(inv -> CompletableFuture.completedFuture(prepared(inv.getArgument(0))));
+        when(session.executeAsync(any(Statement.class))).thenAnswer(inv -> {
+            executed.add(bound.get((BoundStatement) inv.getArgument(0)));
+            CompletableFuture<AsyncResultSet> result = new CompletableFuture<>();
+            if (answerAtOnce) result.complete(mock(AsyncResultSet.class));
+            else pending.add(result);
+            return result;
+        });
+    }
+
+    @Test
+    void terminalStatusSurvivesAnyArrivalOrder() {
+        LedgerWriter writer = writer(64, 100);
+        UUID id = UUID.randomUUID();
+        // the event carries nanoseconds, the saga updates what it read back from its state row
+        Transaction pending = Transaction.builder().id(id).accountId(7L).type("WITHDRAW").amount(new BigDecimal("2500.00"))
+                .currency("NGN").createdAt(Instant.parse("2026-10-01T10:00:00.123456789Z")).status("PENDING").build();
+        Instant createdAt = pending.getCreatedAt().truncatedTo(ChronoUnit.MILLIS);
+
+        writer.append(pending);
+        writer.updateStatus(id, createdAt, "IN_FLIGHT", null);
+        writer.updateStatus(id, createdAt, "SUCCESS", "FLW-123");
+        // the Kafka event redelivered and a stale saga update, both after the payout finished
+        writer.append(pending);
+        writer.updateStatus(id, createdAt, "IN_FLIGHT", null);
+
+        Random random = new Random(42);
+        for (int round = 0; round < 50; round++) {
+            List<Executed> order = new ArrayList<>(executed);
+            Collections.shuffle(order, random);
+            Map<String, Object> row = applyLastWriteWins(order);
+            assertEquals("SUCCESS", row.get("status"));
+            assertEquals("FLW-123", row.get("meta"));
+            assertEquals(new BigDecimal("2500.00"), row.get("amount"));
+        }
+
+        assertTrue(LedgerWriter.writeTimestamp(createdAt, "PENDING") < LedgerWriter.writeTimestamp(createdAt, "RETRY_SCHEDULED"));
+        assertEquals(LedgerWriter.writeTimestamp(createdAt, "SUCCESS"), LedgerWriter.writeTimestamp(createdAt, "FAILED"));
+    }
+
+    @Test
+    void preparesOncePerStatementAndLeavesNullsUnset() {
+        LedgerWriter writer = writer(64, 100);
+        for (int i = 0; i < 100; i++) {
+            writer.append(Transaction.builder().id(UUID.randomUUID()).accountId(1L).type("DEPOSIT").amount(BigDecimal.TEN)
+                    .currency("NGN").status("SUCCESS").build());
+            writer.updateStatus(UUID.randomUUID(), Instant.now(), "FAILED", null);
+        }
+
+        verify(session, times(1)).prepareAsync(LedgerWriter.Statement.INSERT.cql);
+        verify(session, times(1)).prepareAsync(LedgerWriter.Statement.STATUS.cql);
+        BoundStatement insert = bound.entrySet().stream().filter(e -> e.getValue().cql().startsWith("INSERT")).findFirst().orElseThrow().getKey();
+        verify(insert).unset(7);
+        verify(insert).setIdempotent(true);
+        BoundStatement status = bound.entrySet().stream().filter(e -> e.getValue().cql().startsWith("UPDATE")).findFirst().orElseThrow().getKey();
+        verify(status).unset(2);
+        assertEquals(100, registry.get("ussd.ledger.write").tag("statement", "insert").timer().count());
+        assertEquals(100, registry.get("ussd.ledger.write").tag("statement", "status").timer().count());
+    }
+
+    @Test
+    void capsInFlightAndHandsRejectedWritesToRetries() throws Exception {
+        answerAtOnce = false;
+        LedgerWriter writer = writer(4, 10);
+        UUID id = UUID.randomUUID();
+        List<CompletionStage<Void>> accepted = new ArrayList<>();
+        for (int i = 0; i < 4; i++) accepted.add(writer.updateStatus(UUID.randomUUID(), Instant.now(), "SUCCESS", "ref-" + i));
+        assertEquals(4, writer.inFlight());
+
+        CompletionStage<Void> rejected = writer.updateStatus(id, Instant.now(), "SUCCESS", "ref-x");
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> rejected.toCompletableFuture().get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+        verify(retryScheduler).schedule(eq(LedgerWriter.STATUS_RETRY), contains(id.toString()), anyString());
+        assertEquals(1.0, registry.counter("ussd.ledger.rejected", "statement", "status").count());
+
+        pending.forEach(f -> f.complete(mock(AsyncResultSet.class)));
+        for (CompletionStage<Void> stage : accepted) stage.toCompletableFuture().get(1, TimeUnit.SECONDS);
+        assertEquals(0, writer.inFlight());
+    }
+
+    @Test
+    void writesAreDatedWithinCreatedAtsMillisecond() {
+        Instant createdAt = Instant.parse("2026-10-01T10:00:00.123456789Z");
+        long millisMicros = TimeUnit.MILLISECONDS.toMicros(createdAt.toEpochMilli());
+        for (String status : List.of("PENDING", "IN_FLIGHT", "RETRY_SCHEDULED", "SUCCESS", "FAILED")) {
+            long ts = LedgerWriter.writeTimestamp(createdAt, status);
+            assertTrue(ts >= millisMicros && ts < millisMicros + 1_000, status + " dated outside createdAt's millisecond");
+            // the saga state only keeps milliseconds; its writes land on the same timestamps
+            assertEquals(ts, LedgerWriter.writeTimestamp(createdAt.truncatedTo(ChronoUnit.MILLIS), status));
+        }
+    }
+
+    private LedgerWriter writer(int maxInFlight, long acquireTimeoutMs) {
+        return new LedgerWriter(session, retryScheduler, registry, maxInFlight, acquireTimeoutMs);
+    }
+
+    private PreparedStatement prepared(String cql) {
+        return mock(PreparedStatement.class, inv -> {
+            if (!inv.getMethod().getName().equals("bind")) return RETURNS_DEFAULTS.answer(inv);
+            BoundStatement statement = mock(BoundStatement.class, RETURNS_SELF);
+            bound.put(statement, new Executed(cql, ((Object[]) inv.getRawArguments()[0]).clone()));
+            return statement;
+        });
+    }
+
+    // cell by cell, the value with the highest write timestamp wins; null values were unset
+    private static Map<String, Object> applyLastWriteWins(List<Executed> statements) {
+        Map<String, Object> values = new HashMap<>();
+        Map<String, Long> timestamps = new HashMap<>();
+        for (Executed e : statements) {
+            Map<String, Object> cells = new HashMap<>();
+            long ts;
+            Object[] v = e.values();
+            if (e.cql().startsWith("INSERT")) {
+                String[] columns = {"id", "accountid", "type", "amount", "currency", "createdat", "status", "meta"};
+                for (int i = 0; i < columns.length; i++) cells.put(columns[i], v[i]);
+                ts = (Long) v[8];
+            } else {
+                ts = (Long) v[0];
+                cells.put("status", v[1]);
+                cells.put("meta", v[2]);
+            }
+            cells.forEach((column, value) -> {
+                if (value == null) return;
+                if (timestamps.getOrDefault(column, Long.MIN_VALUE) <= ts) {
+                    timestamps.put(column, ts);
+                    values.put(column, value);
+                }
+            });
+        }
+        return values;
+    }
+}
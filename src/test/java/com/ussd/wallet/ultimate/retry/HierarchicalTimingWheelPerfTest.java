@@ -0,0 +1,55 @@
+package com.ussd.wallet.ultimate.retry;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Throughput numbers for -Pperf runs; HierarchicalTimingWheelTest checks when timers fire.
+@Tag("perf")
+class HierarchicalTimingWheelPerfTest {
+
+    private static final long TICK_MS = 50;
+    private static final int WHEEL_SIZE = 256;
+
+    // Schedule-and-fire throughput for a fixed batch of near-term retries while 0 to 500k other
+    // retries are pending. A flat rate across the rows is what keeps the scheduler usable at scale.
+    @Test
+    void throughputIsFlatWithPendingBacklog() {
+        int batch = 200_000;
+        double baseline = 0;
+        for (int pending : new int[]{0, 100_000, 500_000}) {
+            measure(pending, batch);
+            double opsPerSec = measure(pending, batch);
+            if (pending == 0) baseline = opsPerSec;
+            System.out.printf("[bench] pending=%d schedule+fire %,.0f ops/s (%.2fx of empty)%n",
+                    pending, opsPerSec, opsPerSec / baseline);
+        }
+    }
+
+    private double measure(int pending, int batch) {
+        long start = 0;
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(TICK_MS, WHEEL_SIZE, start);
+        Random random = new Random(11);
+        // backlog due one to two hours out, well past the measured window
+        for (int i = 0; i < pending; i++) wheel.add(start + 3_600_000 + random.nextInt(3_600_000), i);
+
+        int[] fired = {0};
+        long t0 = System.nanoTime();
+        long clock = start;
+        for (int i = 0; i < batch; i++) {
+            if (!wheel.add(clock + 1 + random.nextInt(5_000), i)) fired[0]++;
+            // the actor ticks every 200ms; here the clock moves 1ms per scheduled retry
+            if (i % 200 == 0) {
+                clock += 200;
+                wheel.advance(clock, v -> fired[0]++);
+            }
+        }
+        wheel.advance(clock + 10_000, v -> fired[0]++);
+        long elapsed = System.nanoTime() - t0;
+        assertEquals(batch, fired[0]);
+        return batch / (elapsed / 1e9);
+    }
+}
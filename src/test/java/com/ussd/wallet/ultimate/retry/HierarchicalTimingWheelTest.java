@@ -0,0 +1,65 @@
+package com.ussd.wallet.ultimate.retry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HierarchicalTimingWheelTest {
+
+    private static final long TICK_MS = 50;
+    private static final int WHEEL_SIZE = 256;
+
+    @Test
+    void firesEveryTimerOnceWithinOneTick() {
+        long start = 1_000_000L;
+        HierarchicalTimingWheel<long[]> wheel = new HierarchicalTimingWheel<>(TICK_MS, WHEEL_SIZE, start);
+        Random random = new Random(7);
+        List<long[]> timers = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            // { expiration, times fired }
+            long[] t = {start + (long) (random.nextDouble() * 3 * 3_600_000L), 0};
+            timers.add(t);
+            if (!wheel.add(t[0], t)) t[1]++;
+        }
+        long[] now = {start};
+        for (long t = start; t <= start + 3 * 3_600_000L + 1_000; t += 37) {
+            now[0] = t;
+            wheel.advance(t, timer -> {
+                timer[1]++;
+                assertTrue(now[0] >= timer[0] - TICK_MS, "fired more than a tick early");
+                assertTrue(now[0] - timer[0] < 37 + TICK_MS, "fired late");
+            });
+        }
+        timers.forEach(t -> assertEquals(1, t[1]));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void nearTermTimersFireWhileABacklogWaits() {
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(TICK_MS, WHEEL_SIZE, 0);
+        Random random = new Random(11);
+        int backlog = 10_000;
+        for (int i = 0; i < backlog; i++) wheel.add(3_600_000 + random.nextInt(3_600_000), -1);
+
+        List<Integer> fired = new ArrayList<>();
+        long clock = 0;
+        for (int i = 0; i < 2_000; i++) {
+            if (!wheel.add(clock + 1 + random.nextInt(5_000), i)) fired.add(i);
+            if (i % 200 == 0) {
+                clock += 200;
+                wheel.advance(clock, fired::add);
+            }
+        }
+        wheel.advance(clock + 10_000, fired::add);
+
+        assertEquals(2_000, fired.size());
+        assertFalse(fired.contains(-1), "a backlog timer fired early");
+        assertEquals(backlog, wheel.size());
+    }
+}
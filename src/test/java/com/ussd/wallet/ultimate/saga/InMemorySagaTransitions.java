@@ -0,0 +1,34 @@
+package com.ussd.wallet.ultimate.saga;
+
+import com.ussd.wallet.ultimate.domain.WithdrawalSagaState;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+// withdrawal_sagas compare-and-set over a map, with the same outcome as the LWTs for one row
+class InMemorySagaTransitions extends WithdrawalSagaTransitions {
+
+    private final Map<UUID, WithdrawalSagaState> store;
+
+    InMemorySagaTransitions(Map<UUID, WithdrawalSagaState> store) {
+        super(null);
+        this.store = store;
+    }
+
+    @Override
+    public boolean transition(WithdrawalSagaState s, Collection<String> expected) {
+        boolean[] applied = {false};
+        store.computeIfPresent(s.getTxId(), (id, stored) -> {
+            if (!expected.contains(stored.getStatus())) return stored;
+            applied[0] = true;
+            return s.toBuilder().build();
+        });
+        return applied[0];
+    }
+
+    @Override
+    public boolean create(WithdrawalSagaState s) {
+        return store.putIfAbsent(s.getTxId(), s.toBuilder().build()) == null;
+    }
+}
@@ -0,0 +1,155 @@
+package com.ussd.wallet.ultimate.saga;
+
+import com.ussd.wallet.ultimate.domain.PendingTransaction;
+import com.ussd.wallet.ultimate.domain.PendingTransactionKey;
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.domain.WithdrawalSagaState;
+import com.ussd.wallet.ultimate.ledger.LedgerWriter;
+import com.ussd.wallet.ultimate.repository.WithdrawalSagaStateRepository;
+import com.ussd.wallet.ultimate.service.AccountService;
+import com.ussd.wallet.ultimate.service.ClusterLease;
+import com.ussd.wallet.ultimate.service.FlutterwavePaymentService;
+import com.ussd.wallet.ultimate.service.FlutterwavePaymentService.TransferStatus;
+import com.ussd.wallet.ultimate.service.PendingTransactionIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class PendingTransactionSweeperTest {
+
+    private final Map<UUID, WithdrawalSagaState> store = new ConcurrentHashMap<>();
+    private final WithdrawalSagaStateRepository stateRepo = mock(WithdrawalSagaStateRepository.class);
+    private final PendingTransactionIndex pendingIndex = mock(PendingTransactionIndex.class);
+    private final AccountService accountService = mock(AccountService.class);
+    private final LedgerWriter ledgerWriter = mock(LedgerWriter.class);
+    private final FlutterwavePaymentService paymentService = mock(FlutterwavePaymentService.class);
+    private final ClusterLease lease = mock(ClusterLease.class);
+    private final Instant createdAt = Instant.now().minus(Duration.ofHours(30));
+    private final UUID txId = UUID.randomUUID();
+
+    private PendingTransactionSweeper nodeA;
+    private PendingTransactionSweeper nodeB;
+
+    @BeforeEach
+    void setUp() {
+        when(stateRepo.findById(any())).thenAnswer(inv -> Optional.ofNullable(store.get((UUID) inv.getArgument(0)))
+                .map(s -> s.toBuilder().build()));
+        when(lease.acquire(eq(PendingTransactionSweeper.LEASE), any())).thenReturn(true);
+        when(lease.holder()).thenReturn("test-node");
+        when(pendingIndex.recent(any())).thenReturn(List.of(PendingTransaction.builder()
+                .key(new PendingTransactionKey("bucket", createdAt, txId))
+                .accountId(7L).amount(new BigDecimal("1000.00")).currency("NGN")
+                .status(WithdrawalSagaState.IN_FLIGHT).updatedAt(createdAt)
+                .build()));
+        store.put(txId, WithdrawalSagaState.builder()
+                .txId(txId).accountId(7L).amount(new BigDecimal("1000.00")).currency("NGN").createdAt(createdAt)
+                .status(WithdrawalSagaState.IN_FLIGHT).attempts(1).updatedAt(createdAt)
+                .build());
+        nodeA = sweeper();
+        nodeB = sweeper();
+    }
+
+    @AfterEach
+    void shutdown() {
+        nodeA.shutdown();
+        nodeB.shutdown();
+    }
+
+    @Test
+    void refundsOnceWhenTwoNodesSweepTheSameWithdrawal() {
+        // node B sweeps while node A holds the claim and is asking the provider
+        when(paymentService.transferStatus(txId.toString())).thenAnswer(inv -> {
+            nodeB.sweep();
+            return TransferStatus.NOT_FOUND;
+        });
+
+        nodeA.sweep();
+        nodeB.sweep();
+
+        verify(accountService, times(1)).compensateCredit(7L, new BigDecimal("1000.00"), "NGN", "stuck_pending_sweeper");
+        assertEquals(WithdrawalSagaState.FAILED, store.get(txId).getStatus());
+        assertEquals(1, nodeA.lastReport().compensated());
+    }
+
+    @Test
+    void paidWithdrawalIsClosedWithoutRefund() {
+        when(paymentService.transferStatus(txId.toString())).thenReturn(TransferStatus.PAID);
+
+        nodeA.sweep();
+
+        verify(accountService, never()).compensateCredit(any(), any(), anyString(), any());
+        assertEquals(WithdrawalSagaState.SUCCESS, store.get(txId).getStatus());
+        ArgumentCaptor<Transaction> ledger = ArgumentCaptor.forClass(Transaction.class);
+        verify(ledgerWriter).append(ledger.capture());
+        assertEquals("SUCCESS", ledger.getValue().getStatus());
+        verify(pendingIndex).clear(txId, createdAt);
+    }
+
+    @Test
+    void payoutStillProcessingIsHandedBackForTheNextSweep() {
+        when(paymentService.transferStatus(txId.toString())).thenReturn(TransferStatus.PROCESSING, TransferStatus.FAILED);
+
+        nodeA.sweep();
+        verify(accountService, never()).compensateCredit(any(), any(), anyString(), any());
+        assertEquals(WithdrawalSagaState.IN_FLIGHT, store.get(txId).getStatus());
+        verify(pendingIndex, never()).clear(any(), any());
+
+        nodeB.sweep();
+        verify(accountService, times(1)).compensateCredit(any(), any(), anyString(), any());
+        assertEquals(WithdrawalSagaState.FAILED, store.get(txId).getStatus());
+    }
+
+    @Test
+    void sagaRowWrittenAfterTheSweepReadItIsLeftAlone() {
+        when(paymentService.transferStatus(txId.toString())).thenAnswer(inv -> {
+            throw new AssertionError("provider must not be asked");
+        });
+        store.computeIfPresent(txId, (id, s) -> s.toBuilder().status(WithdrawalSagaState.RETRY_SCHEDULED).updatedAt(Instant.now()).build());
+
+        nodeA.sweep();
+
+        verify(accountService, never()).compensateCredit(any(), any(), anyString(), any());
+        assertEquals(WithdrawalSagaState.RETRY_SCHEDULED, store.get(txId).getStatus());
+    }
+
+    @Test
+    void nodeWithoutTheLeaseDoesNotSweep() {
+        when(lease.acquire(eq(PendingTransactionSweeper.LEASE), any())).thenReturn(false);
+
+        nodeA.sweep();
+
+        verifyNoInteractions(pendingIndex, paymentService, accountService);
+    }
+
+    private PendingTransactionSweeper sweeper() {
+        PendingTransactionSweeper sweeper = new PendingTransactionSweeper(pendingIndex, mock(SagaCoordinatorService.class), stateRepo,
+                ledgerWriter, accountService, paymentService, new InMemorySagaTransitions(store), lease, new SimpleMeterRegistry(), 2, 50);
+        ReflectionTestUtils.setField(sweeper, "lookbackHours", 48L);
+        ReflectionTestUtils.setField(sweeper, "stuckAfterMinutes", 10L);
+        ReflectionTestUtils.setField(sweeper, "compensateAfterHours", 24L);
+        return sweeper;
+    }
+}
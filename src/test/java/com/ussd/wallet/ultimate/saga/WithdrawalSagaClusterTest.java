@@ -0,0 +1,132 @@
+package com.ussd.wallet.ultimate.saga;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.cluster.MemberStatus;
+import akka.cluster.typed.Cluster;
+import akka.cluster.typed.Down;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.domain.WithdrawalSagaState;
+import com.ussd.wallet.ultimate.ledger.LedgerWriter;
+import com.ussd.wallet.ultimate.repository.WithdrawalSagaStateRepository;
+import com.ussd.wallet.ultimate.service.AccountService;
+import com.ussd.wallet.ultimate.service.FlutterwavePaymentService;
+import com.ussd.wallet.ultimate.service.PendingTransactionIndex;
+import com.ussd.wallet.ultimate.service.TwilioSmsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Three in-process cluster nodes share one saga state store (standing in for Cassandra).
+// The node running the saga is killed while its retry is pending; a survivor must finish it.
+class WithdrawalSagaClusterTest {
+
+    private final Map<UUID, WithdrawalSagaState> store = new ConcurrentHashMap<>();
+    private final AtomicInteger paymentCalls = new AtomicInteger();
+    private final List<ActorSystem<Void>> nodes = new ArrayList<>();
+    private final List<SagaCoordinatorService> coordinators = new ArrayList<>();
+
+    private final WithdrawalSagaStateRepository stateRepo = mock(WithdrawalSagaStateRepository.class);
+    private final LedgerWriter ledgerWriter = mock(LedgerWriter.class);
+    private final AccountService accountService = mock(AccountService.class);
+    private final TwilioSmsService smsService = mock(TwilioSmsService.class);
+    private final PendingTransactionIndex pendingIndex = mock(PendingTransactionIndex.class);
+
+    // first payout attempt fails, every later one succeeds
+    private final FlutterwavePaymentService paymentService = new FlutterwavePaymentService() {
+        @Override
+        public Map<String, Object> initiateTransfer(String accountNumber, String bankCode, String currency, String amount, String narration, String reference) {
+            if (paymentCalls.incrementAndGet() == 1) return Map.of("status", "error");
+            return Map.of("status", "success", "data", "FLW-" + reference);
+        }
+    };
+
+    @AfterEach
+    void shutdown() {
+        nodes.forEach(ActorSystem::terminate);
+    }
+
+    @Test
+    void sagaCompletesOnSurvivorWhenOwnerIsKilled() throws Exception {
+        when(stateRepo.findById(any())).thenAnswer(inv -> Optional.ofNullable(store.get((UUID) inv.getArgument(0)))
+                .map(s -> s.toBuilder().build()));
+
+        int[] ports = {freePort(), freePort(), freePort()};
+        String seed = "akka://ussd-wallet@127.0.0.1:" + ports[0];
+        for (int port : ports) startNode(port, seed);
+        await(Duration.ofSeconds(30), () -> nodes.stream().allMatch(n -> upMembers(n) == nodes.size()));
+        coordinators.forEach(SagaCoordinatorService::initSharding);
+
+        UUID txId = UUID.randomUUID();
+        coordinators.get(0).startWithdrawalSaga(Transaction.builder()
+                .id(txId).accountId(42L).type("WITHDRAW").amount(new BigDecimal("1500.00"))
+                .currency("NGN").status("PENDING").createdAt(Instant.now()).build());
+
+        await(Duration.ofSeconds(20), () -> store.containsKey(txId)
+                && WithdrawalSagaState.RETRY_SCHEDULED.equals(store.get(txId).getStatus()));
+        String owner = store.get(txId).getOwner();
+        ActorSystem<Void> victim = nodes.stream().filter(n -> n.address().toString().equals(owner)).findFirst().orElseThrow();
+
+        victim.terminate();
+        ActorSystem<Void> survivor = nodes.stream().filter(n -> n != victim).findFirst().orElseThrow();
+        Cluster.get(survivor).manager().tell(new Down(victim.address()));
+
+        await(Duration.ofSeconds(60), () -> WithdrawalSagaState.SUCCESS.equals(store.get(txId).getStatus()));
+        WithdrawalSagaState done = store.get(txId);
+        assertNotEquals(owner, done.getOwner());
+        assertEquals(2, done.getAttempts());
+        assertEquals("FLW-" + txId, done.getProviderRef());
+        assertEquals(2, paymentCalls.get());
+    }
+
+    private void startNode(int port, String seed) {
+        Config config = ConfigFactory.parseString(
+                "akka.remote.artery.canonical.hostname = \"127.0.0.1\"\n"
+                        + "akka.remote.artery.canonical.port = " + port + "\n"
+                        + "akka.cluster.seed-nodes = [\"" + seed + "\"]\n"
+                        // terminate() below simulates a crash, not a graceful leave
+                        + "akka.coordinated-shutdown.run-by-actor-system-terminate = off\n"
+                        + "akka.cluster.run-coordinated-shutdown-when-down = off\n")
+                .withFallback(ConfigFactory.load());
+        ActorSystem<Void> system = ActorSystem.create(Behaviors.empty(), "ussd-wallet", config);
+        nodes.add(system);
+        coordinators.add(new SagaCoordinatorService(system, paymentService, accountService, smsService, ledgerWriter, stateRepo, pendingIndex, new InMemorySagaTransitions(store)));
+    }
+
+    private static long upMembers(ActorSystem<Void> node) {
+        return StreamSupport.stream(Cluster.get(node).state().getMembers().spliterator(), false)
+                .filter(m -> m.status() == MemberStatus.up())
+                .count();
+    }
+
+    private static void await(Duration timeout, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("Condition not met within " + timeout);
+            Thread.sleep(100);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
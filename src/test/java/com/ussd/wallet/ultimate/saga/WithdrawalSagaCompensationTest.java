@@ -0,0 +1,139 @@
+package com.ussd.wallet.ultimate.saga;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.cluster.MemberStatus;
+import akka.cluster.typed.Cluster;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.domain.WithdrawalSagaState;
+import com.ussd.wallet.ultimate.ledger.LedgerWriter;
+import com.ussd.wallet.ultimate.repository.WithdrawalSagaStateRepository;
+import com.ussd.wallet.ultimate.service.AccountService;
+import com.ussd.wallet.ultimate.service.FlutterwavePaymentService;
+import com.ussd.wallet.ultimate.service.PendingTransactionIndex;
+import com.ussd.wallet.ultimate.service.TwilioSmsService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+// Every payout attempt looks failed to the saga; what the provider says afterwards decides the refund.
+class WithdrawalSagaCompensationTest {
+
+    private final Map<UUID, WithdrawalSagaState> store = new ConcurrentHashMap<>();
+    private final WithdrawalSagaStateRepository stateRepo = mock(WithdrawalSagaStateRepository.class);
+    private final LedgerWriter ledgerWriter = mock(LedgerWriter.class);
+    private final AccountService accountService = mock(AccountService.class);
+    private final TwilioSmsService smsService = mock(TwilioSmsService.class);
+    private final PendingTransactionIndex pendingIndex = mock(PendingTransactionIndex.class);
+    private final AtomicInteger statusChecks = new AtomicInteger();
+    private ActorSystem<Void> node;
+
+    @AfterEach
+    void shutdown() {
+        if (node != null) node.terminate();
+    }
+
+    @Test
+    void paidTransferIsClosedAsSuccessNotRefunded() throws Exception {
+        UUID txId = runToExhaustion(FlutterwavePaymentService.TransferStatus.PAID);
+
+        await(() -> WithdrawalSagaState.SUCCESS.equals(store.get(txId).getStatus()));
+        assertEquals(1, statusChecks.get());
+        verify(accountService, never()).compensateCredit(any(), any(), anyString(), any());
+        verify(ledgerWriter).updateStatus(eq(txId), any(), eq("SUCCESS"), any());
+    }
+
+    @Test
+    void failedTransferIsRefunded() throws Exception {
+        UUID txId = runToExhaustion(FlutterwavePaymentService.TransferStatus.FAILED);
+
+        await(() -> WithdrawalSagaState.FAILED.equals(store.get(txId).getStatus()));
+        verify(accountService).compensateCredit(eq(42L), eq(new BigDecimal("1500.00")), eq("NGN"), any());
+        verify(ledgerWriter).updateStatus(eq(txId), any(), eq("FAILED"), any());
+    }
+
+    @Test
+    void undecidedTransferIsLeftInFlightForTheSweeper() throws Exception {
+        UUID txId = runToExhaustion(FlutterwavePaymentService.TransferStatus.PROCESSING);
+
+        // the row is COMPENSATING while the provider is asked, so IN_FLIGHT after that is the hand-back
+        await(() -> statusChecks.get() == 1 && WithdrawalSagaState.IN_FLIGHT.equals(store.get(txId).getStatus()));
+        assertEquals(3, store.get(txId).getAttempts());
+        verify(accountService, never()).compensateCredit(any(), any(), anyString(), any());
+    }
+
+    private UUID runToExhaustion(FlutterwavePaymentService.TransferStatus outcome) throws Exception {
+        when(stateRepo.findById(any())).thenAnswer(inv -> Optional.ofNullable(store.get((UUID) inv.getArgument(0)))
+                .map(s -> s.toBuilder().build()));
+        // the provider times out on every attempt, then reports outcome when asked
+        FlutterwavePaymentService paymentService = new FlutterwavePaymentService() {
+            @Override
+            public Map<String, Object> initiateTransfer(String accountNumber, String bankCode, String currency, String amount, String narration, String reference) {
+                throw new IllegalStateException("read timed out");
+            }
+
+            @Override
+            public TransferStatus transferStatus(String reference) {
+                statusChecks.incrementAndGet();
+                return outcome;
+            }
+        };
+
+        String address = "akka://ussd-wallet@127.0.0.1:" + freePort();
+        Config config = ConfigFactory.parseString(
+                "akka.remote.artery.canonical.hostname = \"127.0.0.1\"\n"
+                        + "akka.remote.artery.canonical.port = " + address.substring(address.lastIndexOf(':') + 1) + "\n"
+                        + "akka.cluster.seed-nodes = [\"" + address + "\"]\n")
+                .withFallback(ConfigFactory.load());
+        node = ActorSystem.create(Behaviors.empty(), "ussd-wallet", config);
+        SagaCoordinatorService coordinator = new SagaCoordinatorService(node, paymentService, accountService, smsService,
+                ledgerWriter, stateRepo, pendingIndex, new InMemorySagaTransitions(store));
+        await(() -> StreamSupport.stream(Cluster.get(node).state().getMembers().spliterator(), false)
+                .anyMatch(m -> m.status() == MemberStatus.up()));
+        coordinator.initSharding();
+
+        UUID txId = UUID.randomUUID();
+        coordinator.startWithdrawalSaga(Transaction.builder()
+                .id(txId).accountId(42L).type("WITHDRAW").amount(new BigDecimal("1500.00"))
+                .currency("NGN").status("PENDING").createdAt(Instant.now()).build());
+        return txId;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) fail("Condition not met within 30s");
+            Thread.sleep(100);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.ussd.wallet.ultimate.saga;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.cluster.MemberStatus;
+import akka.cluster.typed.Cluster;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.domain.WithdrawalSagaState;
+import com.ussd.wallet.ultimate.ledger.LedgerWriter;
+import com.ussd.wallet.ultimate.repository.WithdrawalSagaStateRepository;
+import com.ussd.wallet.ultimate.retry.RetryScheduler;
+import com.ussd.wallet.ultimate.service.AccountService;
+import com.ussd.wallet.ultimate.service.FlutterwavePaymentService;
+import com.ussd.wallet.ultimate.service.PendingTransactionIndex;
+import com.ussd.wallet.ultimate.service.TwilioSmsService;
+import com.ussd.wallet.ultimate.stub.FlutterwaveStub;
+import com.ussd.wallet.ultimate.stub.StubBehaviour;
+import com.ussd.wallet.ultimate.stub.TwilioStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+// Drives WithdrawalSaga on a single-node cluster against the local Flutterwave and Twilio stubs
+// with provider-like latency and failures. Reports completed payouts per second and how many
+// sagas exhausted their retries and had to be compensated. A -Pperf run; WithdrawalSagaClusterTest
+// and PendingTransactionSweeperTest cover the saga's behaviour in the unit phase.
+@Tag("perf")
+class WithdrawalSagaThroughputPerfTest {
+
+    private static final int SAGAS = 1_000;
+    // 5% of payouts fail; a saga is compensated only when all three attempts do
+    private static final double PAYOUT_ERROR_RATE = 0.05;
+    private static final String TWILIO_SID = "AC00000000000000000000000000000001";
+
+    private final Map<UUID, WithdrawalSagaState> store = new ConcurrentHashMap<>();
+    private final AtomicInteger compensations = new AtomicInteger();
+    private final WithdrawalSagaStateRepository stateRepo = mock(WithdrawalSagaStateRepository.class);
+    private final LedgerWriter ledgerWriter = mock(LedgerWriter.class);
+    private final AccountService accountService = mock(AccountService.class);
+    private final PendingTransactionIndex pendingIndex = mock(PendingTransactionIndex.class);
+    private final RetryScheduler retryScheduler = mock(RetryScheduler.class);
+
+    private final FlutterwaveStub flutterwave = new FlutterwaveStub(StubBehaviour.latency(80, 400).withErrorRate(PAYOUT_ERROR_RATE));
+    private final TwilioStub twilio = new TwilioStub(StubBehaviour.latency(30, 150).withRateLimit(400));
+    private ActorSystem<Void> system;
+
+    @AfterEach
+    void shutdown() {
+        if (system != null) system.terminate();
+        flutterwave.close();
+        twilio.close();
+    }
+
+    @Test
+    void sagaThroughputAgainstStubs() throws Exception {
+        when(stateRepo.findById(any())).thenAnswer(inv -> Optional.ofNullable(store.get((UUID) inv.getArgument(0)))
+                .map(s -> s.toBuilder().build()));
+        doAnswer(inv -> compensations.incrementAndGet())
+                .when(accountService).compensateCredit(any(), any(), anyString(), any());
+
+        FlutterwavePaymentService payments = new FlutterwavePaymentService();
+        ReflectionTestUtils.setField(payments, "baseUrl", flutterwave.baseUrl());
+        TwilioSmsService sms = new TwilioSmsService(null, retryScheduler);
+        ReflectionTestUtils.setField(sms, "accountSid", TWILIO_SID);
+        ReflectionTestUtils.setField(sms, "authToken", "token");
+        ReflectionTestUtils.setField(sms, "fromNumber", "+15005550006");
+        sms.init();
+        twilio.install(TWILIO_SID, "token");
+
+        int port = freePort();
+        system = ActorSystem.create(Behaviors.empty(), "ussd-wallet", nodeConfig(port));
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (upMembers() < 1) {
+            assertTrue(System.nanoTime() < deadline, "single-node cluster did not come up");
+            Thread.sleep(50);
+        }
+        SagaCoordinatorService coordinator = new SagaCoordinatorService(system, payments, accountService, sms, ledgerWriter, stateRepo, pendingIndex, new InMemorySagaTransitions(store));
+        coordinator.initSharding();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < SAGAS; i++) {
+            coordinator.startWithdrawalSaga(Transaction.builder()
+                    .id(UUID.randomUUID()).accountId(1_000L + i % 200).type("WITHDRAW").amount(new BigDecimal("2500.00"))
+                    .currency("NGN").status("PENDING").createdAt(Instant.now()).build());
+        }
+        // the last retry of an unlucky saga fires 2s + 4s after its first failure
+        deadline = System.nanoTime() + Duration.ofSeconds(120).toNanos();
+        while (terminal() < SAGAS) {
+            assertTrue(System.nanoTime() < deadline, "sagas still running: " + (SAGAS - terminal()));
+            Thread.sleep(50);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long succeeded = store.values().stream().filter(s -> WithdrawalSagaState.SUCCESS.equals(s.getStatus())).count();
+        long failed = store.values().stream().filter(s -> WithdrawalSagaState.FAILED.equals(s.getStatus())).count();
+        long retried = store.values().stream().filter(s -> s.getAttempts() > 1).count();
+        System.out.printf("[bench] sagas=%d succeeded=%d compensated=%d retried=%d in %.2fs%n",
+                SAGAS, succeeded, failed, retried, seconds);
+        System.out.printf("[bench] payouts/s=%.1f compensation rate=%.3f%% provider requests=%d injected failures=%d duplicates=%d%n",
+                succeeded / seconds, 100.0 * failed / SAGAS, flutterwave.requests(), flutterwave.failures(), flutterwave.duplicates());
+        System.out.printf("[bench] sms sent=%d throttled=%d queued for retry=%d%n",
+                twilio.sent(), twilio.throttled(), mockingDetails(retryScheduler).getInvocations().stream()
+                        .filter(inv -> inv.getMethod().getName().equals("schedule")).count());
+
+        assertEquals(SAGAS, succeeded + failed);
+        assertEquals(failed, compensations.get());
+        // every successful saga was paid out exactly once by the provider
+        assertEquals(succeeded, flutterwave.payouts());
+        assertEquals(0, flutterwave.duplicates());
+    }
+
+    private long terminal() {
+        return store.values().stream().filter(WithdrawalSagaState::isTerminal).count();
+    }
+
+    private long upMembers() {
+        return StreamSupport.stream(Cluster.get(system).state().getMembers().spliterator(), false)
+                .filter(m -> m.status() == MemberStatus.up())
+                .count();
+    }
+
+    private static Config nodeConfig(int port) {
+        return ConfigFactory.parseString(
+                "akka.remote.artery.canonical.hostname = \"127.0.0.1\"\n"
+                        + "akka.remote.artery.canonical.port = " + port + "\n"
+                        + "akka.cluster.seed-nodes = [\"akka://ussd-wallet@127.0.0.1:" + port + "\"]\n")
+                .withFallback(ConfigFactory.load());
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.Account;
+import com.ussd.wallet.ultimate.domain.Transaction;
+import com.ussd.wallet.ultimate.ledger.LedgerWriter;
+import com.ussd.wallet.ultimate.repository.AccountRepository;
+import com.ussd.wallet.ultimate.repository.ProviderDepositRepository;
+import com.ussd.wallet.ultimate.velocity.VelocityEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class AccountServiceTest {
+
+    private static final String KEY = "idem:deposit:s1";
+
+    private final AccountRepository accountRepository = mock(AccountRepository.class);
+    private final LedgerWriter ledgerWriter = mock(LedgerWriter.class);
+    private final BackgroundWorkerService backgroundWorker = mock(BackgroundWorkerService.class);
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, Object> redis = mock(RedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, Object> values = mock(ValueOperations.class);
+    private final TwilioSmsService sms = mock(TwilioSmsService.class);
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, String> kafka = mock(KafkaTemplate.class);
+    private final AccountService service = new AccountService(accountRepository, ledgerWriter, backgroundWorker, redis, sms,
+            mock(FlutterwavePaymentService.class), kafka, mock(HotAccountService.class), mock(ProviderDepositRepository.class),
+            mock(VelocityEngine.class));
+    private final Account account = Account.builder().id(7L).currency("NGN").balance(new BigDecimal("100.00")).build();
+
+    @BeforeEach
+    void setUp() {
+        when(redis.opsForValue()).thenReturn(values);
+        when(values.setIfAbsent(eq(KEY), any(), any(Duration.class))).thenReturn(true);
+        when(accountRepository.findById(7L)).thenReturn(Optional.of(account));
+        when(kafka.send(anyString(), anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(null));
+        // stands in for the transaction @Transactional would open around deposit
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void depositIsRecordedAndPublishedOnlyAfterCommit() {
+        service.deposit(7L, new BigDecimal("50.00"), "NGN", "s1", "+2348000000001");
+
+        assertEquals(new BigDecimal("150.00"), account.getBalance());
+        verifyNoInteractions(ledgerWriter, kafka, sms);
+
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(ledgerWriter).append(any(Transaction.class));
+        verify(kafka).send(eq("transactions"), anyString(), anyString());
+        verify(sms).sendSmsWithinDeadline("+2348000000001", "Deposit successful: 50.00 NGN");
+        verify(redis, never()).delete(KEY);
+    }
+
+    @Test
+    void rolledBackDepositLeavesNoRowAndReleasesTheKey() {
+        service.deposit(7L, new BigDecimal("50.00"), "NGN", "s1", "+2348000000001");
+
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(redis).delete(KEY);
+        verifyNoInteractions(ledgerWriter, kafka, sms, backgroundWorker);
+    }
+
+    @Test
+    void duplicateDepositIsSkipped() {
+        when(values.setIfAbsent(eq(KEY), any(), any(Duration.class))).thenReturn(false);
+
+        service.deposit(7L, new BigDecimal("50.00"), "NGN", "s1", "+2348000000001");
+
+        assertEquals(new BigDecimal("100.00"), account.getBalance());
+        assertEquals(0, TransactionSynchronizationManager.getSynchronizations().size());
+    }
+
+    private static void complete(int status) {
+        TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager.getSynchronizations(), status);
+    }
+}
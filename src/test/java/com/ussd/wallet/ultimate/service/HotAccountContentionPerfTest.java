@@ -0,0 +1,210 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.Account;
+import com.ussd.wallet.ultimate.domain.AccountSlot;
+import com.ussd.wallet.ultimate.repository.AccountRepository;
+import com.ussd.wallet.ultimate.repository.AccountSlotRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Answers;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypes;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+// HotAccountService credits and debits against a real MySQL, one account split 1..32 ways, for -Pperf
+// runs. Uses the docker-compose MySQL unless perf.mysql.url/user/password say otherwise, and is
+// skipped when none is reachable. Redis is mocked: only the slot row locks are measured.
+@Tag("perf")
+class HotAccountContentionPerfTest {
+
+    private static final String URL = System.getProperty("perf.mysql.url",
+            "jdbc:mysql://localhost:3306/ussd_wallet_perf?createDatabaseIfNotExist=true&allowPublicKeyRetrieval=true&useSSL=false");
+    private static final String USER = System.getProperty("perf.mysql.user", "root");
+    private static final String PASSWORD = System.getProperty("perf.mysql.password", "rootpass");
+    private static final int THREADS = 32;
+    private static final int POSTINGS = 20_000;
+    // every fourth posting is a debit, small enough that a covering slot is usually found
+    private static final BigDecimal CREDIT = new BigDecimal("5.0000");
+    private static final BigDecimal DEBIT = new BigDecimal("3.0000");
+    private static final BigDecimal SEED = new BigDecimal("1000000.0000");
+
+    private static AnnotationConfigApplicationContext context;
+
+    @BeforeAll
+    static void start() {
+        assumeTrue(reachable(), "no MySQL at " + URL);
+        context = new AnnotationConfigApplicationContext(PerfDatabase.class);
+    }
+
+    @AfterAll
+    static void stop() {
+        if (context != null) context.close();
+    }
+
+    @Test
+    void postingThroughputScalesWithSlotCount() throws Exception {
+        double single = 0;
+        double eight = 0;
+        for (int slots : new int[]{1, 2, 4, 8, 16, 32}) {
+            double opsPerSec = measure(slots);
+            if (slots == 1) single = opsPerSec;
+            if (slots == 8) eight = opsPerSec;
+            System.out.printf("[bench] slots=%d threads=%d postings %,.0f ops/s (%.1fx of one slot)%n",
+                    slots, THREADS, opsPerSec, opsPerSec / single);
+        }
+        assertTrue(eight > single * 1.5, "8 slots should clearly beat one slot row");
+    }
+
+    private double measure(int slots) throws Exception {
+        HotAccountService hot = context.getBean(HotAccountService.class);
+        AccountSlotRepository slotRepository = context.getBean(AccountSlotRepository.class);
+        Account account = newAccount(slots);
+
+        AtomicInteger remaining = new AtomicInteger(POSTINGS);
+        AtomicLong credits = new AtomicLong();
+        AtomicLong debits = new AtomicLong();
+        AtomicInteger retries = new AtomicInteger();
+        List<Throwable> errors = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(THREADS);
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    while (remaining.getAndDecrement() > 0) {
+                        if (ThreadLocalRandom.current().nextInt(4) == 0) {
+                            debit(hot, account, retries);
+                            debits.incrementAndGet();
+                        } else {
+                            hot.credit(account, CREDIT);
+                            credits.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+            worker.start();
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertTrue(errors.isEmpty(), () -> "postings failed: " + errors.get(0));
+
+        BigDecimal expected = SEED.multiply(BigDecimal.valueOf(slots))
+                .add(CREDIT.multiply(BigDecimal.valueOf(credits.get())))
+                .subtract(DEBIT.multiply(BigDecimal.valueOf(debits.get())));
+        assertEquals(0, expected.compareTo(slotRepository.sumBalanceByAccountId(account.getId())));
+        if (retries.get() > 0) System.out.printf("[bench] slots=%d debits retried after a drained slot: %d%n", slots, retries.get());
+        return POSTINGS / seconds;
+    }
+
+    // what AccountService's callers do with a debit that lost its covering slot to another debit
+    private static void debit(HotAccountService hot, Account account, AtomicInteger retries) {
+        while (true) {
+            try {
+                hot.debit(account, DEBIT);
+                return;
+            } catch (ConcurrencyFailureException e) {
+                retries.incrementAndGet();
+            }
+        }
+    }
+
+    // a single slot is the single accounts row every posting queues on today
+    private static Account newAccount(int slots) {
+        AccountRepository accountRepository = context.getBean(AccountRepository.class);
+        AccountSlotRepository slotRepository = context.getBean(AccountSlotRepository.class);
+        Account account = accountRepository.save(Account.builder()
+                .userId(ThreadLocalRandom.current().nextLong(1, 1L << 40))
+                .currency("NGN")
+                .balance(SEED.multiply(BigDecimal.valueOf(slots)))
+                .slotCount(slots)
+                .build());
+        for (int i = 0; i < slots; i++) {
+            slotRepository.save(AccountSlot.builder().accountId(account.getId()).slot(i).balance(SEED).build());
+        }
+        return account;
+    }
+
+    private static boolean reachable() {
+        try (Connection c = DriverManager.getConnection(URL, USER, PASSWORD)) {
+            return c.isValid(2);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    @EnableJpaRepositories(basePackageClasses = AccountRepository.class, includeFilters = @ComponentScan.Filter(
+            type = FilterType.ASSIGNABLE_TYPE, classes = {AccountRepository.class, AccountSlotRepository.class}))
+    static class PerfDatabase {
+
+        @Bean(destroyMethod = "close")
+        DataSource dataSource() {
+            HikariDataSource ds = new HikariDataSource();
+            ds.setJdbcUrl(URL);
+            ds.setUsername(USER);
+            ds.setPassword(PASSWORD);
+            ds.setMaximumPoolSize(THREADS);
+            return ds;
+        }
+
+        @Bean
+        LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+            LocalContainerEntityManagerFactoryBean emf = new LocalContainerEntityManagerFactoryBean();
+            emf.setDataSource(dataSource);
+            emf.setManagedTypes(PersistenceManagedTypes.of(Account.class.getName(), AccountSlot.class.getName()));
+            emf.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            emf.setJpaPropertyMap(Map.of("hibernate.hbm2ddl.auto", "update"));
+            return emf;
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager(EntityManagerFactory emf) {
+            return new JpaTransactionManager(emf);
+        }
+
+        @Bean
+        HotAccountService hotAccountService(AccountRepository accountRepository, AccountSlotRepository slotRepository) {
+            return new HotAccountService(accountRepository, slotRepository, mock(StringRedisTemplate.class, Answers.RETURNS_DEEP_STUBS),
+                    mock(ClusterLease.class), new SimpleMeterRegistry());
+        }
+    }
+}
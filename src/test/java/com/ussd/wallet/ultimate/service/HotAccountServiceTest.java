@@ -0,0 +1,171 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.Account;
+import com.ussd.wallet.ultimate.domain.AccountSlot;
+import com.ussd.wallet.ultimate.repository.AccountRepository;
+import com.ussd.wallet.ultimate.repository.AccountSlotRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class HotAccountServiceTest {
+
+    private final AccountRepository accountRepository = mock(AccountRepository.class);
+    private final AccountSlotRepository slotRepository = mock(AccountSlotRepository.class);
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+    @SuppressWarnings("unchecked")
+    private final SetOperations<String, String> sets = mock(SetOperations.class);
+    @SuppressWarnings("unchecked")
+    private final ZSetOperations<String, String> pending = mock(ZSetOperations.class);
+    private final ClusterLease lease = mock(ClusterLease.class);
+    private final HotAccountService service = new HotAccountService(accountRepository, slotRepository, redis, lease, new SimpleMeterRegistry());
+    private final Account account = Account.builder().id(1L << 41).currency("NGN").balance(BigDecimal.ZERO).slotCount(4).build();
+
+    @BeforeEach
+    void setUp() {
+        when(redis.opsForValue()).thenReturn(values);
+        when(redis.opsForSet()).thenReturn(sets);
+        when(redis.opsForZSet()).thenReturn(pending);
+    }
+
+    @Test
+    void rebalanceSpreadsWhatIsLeftEvenly() {
+        BigDecimal[] after = HotAccountService.rebalance(
+                new BigDecimal[]{new BigDecimal("10"), new BigDecimal("3"), new BigDecimal("0.0001")}, new BigDecimal("12"));
+        assertArrayEquals(new BigDecimal[]{new BigDecimal("0.3335"), new BigDecimal("0.3333"), new BigDecimal("0.3333")}, after);
+        assertNull(HotAccountService.rebalance(new BigDecimal[]{BigDecimal.ONE, BigDecimal.ONE}, new BigDecimal("2.0001")));
+    }
+
+    @Test
+    void debitTriesCoveringSlotsInAscendingOrder() {
+        BigDecimal amount = new BigDecimal("50");
+        when(slotRepository.findSlotsByAccountIdCovering(account.getId(), amount)).thenReturn(List.of(0, 1, 2, 3));
+        List<Integer> tried = new ArrayList<>();
+        when(slotRepository.debitByAccountIdAndSlot(eq(account.getId()), anyInt(), eq(amount))).thenAnswer(inv -> {
+            tried.add(inv.getArgument(1));
+            return 0;
+        });
+
+        for (int i = 0; i < 50; i++) {
+            tried.clear();
+            assertThrows(ConcurrencyFailureException.class, () -> service.debit(account, amount));
+            for (int k = 1; k < tried.size(); k++) assertTrue(tried.get(k) > tried.get(k - 1), "slots locked out of order: " + tried);
+            assertEquals(3, tried.get(tried.size() - 1));
+        }
+        // a slot that could not pay on its own is never locked before the full sweep
+        verify(slotRepository, never()).findByAccountIdOrderBySlot(any());
+    }
+
+    @Test
+    void debitNoSlotCoversLocksAllSlotsAndRebalances() {
+        BigDecimal amount = new BigDecimal("50");
+        when(slotRepository.findSlotsByAccountIdCovering(account.getId(), amount)).thenReturn(List.of());
+        List<AccountSlot> slots = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            slots.add(AccountSlot.builder().accountId(account.getId()).slot(i).balance(new BigDecimal("20.0000")).build());
+        }
+        when(slotRepository.findByAccountIdOrderBySlot(account.getId())).thenReturn(slots);
+
+        service.debit(account, amount);
+
+        InOrder order = inOrder(slotRepository);
+        order.verify(slotRepository).findByAccountIdOrderBySlot(account.getId());
+        order.verify(slotRepository).saveAll(slots);
+        verify(slotRepository, never()).debitByAccountIdAndSlot(any(), anyInt(), any());
+        assertEquals(new BigDecimal("30.0000"), slots.stream().map(AccountSlot::getBalance).reduce(BigDecimal.ZERO, BigDecimal::add));
+        verify(values).increment(HotAccountService.TOTAL_KEY + account.getId(), -500_000L);
+    }
+
+    @Test
+    void amountsFinerThanTheBalanceScaleAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> service.debit(account, new BigDecimal("1.00001")));
+        assertThrows(IllegalArgumentException.class, () -> service.credit(account, new BigDecimal("0.12345")));
+        verifyNoInteractions(slotRepository, redis);
+
+        when(slotRepository.creditByAccountIdAndSlot(eq(account.getId()), anyInt(), any())).thenReturn(1);
+        service.credit(account, new BigDecimal("1.50000"));
+        verify(values).increment(HotAccountService.TOTAL_KEY + account.getId(), 15_000L);
+    }
+
+    @Test
+    void reconcileRunsOnlyOnTheLeaseHolder() {
+        when(lease.acquire(eq(HotAccountService.RECONCILE_LEASE), any())).thenReturn(false);
+
+        service.reconcile();
+
+        verifyNoInteractions(redis, slotRepository, accountRepository);
+    }
+
+    @Test
+    void postingLeavesThePendingListOnlyAfterItsTotalUpdate() {
+        when(slotRepository.creditByAccountIdAndSlot(eq(account.getId()), anyInt(), any())).thenReturn(1);
+
+        service.credit(account, new BigDecimal("2"));
+
+        String key = HotAccountService.PENDING_KEY + account.getId();
+        ArgumentCaptor<String> posting = ArgumentCaptor.forClass(String.class);
+        InOrder order = inOrder(pending, slotRepository, values);
+        order.verify(pending).add(eq(key), posting.capture(), anyDouble());
+        order.verify(slotRepository).creditByAccountIdAndSlot(eq(account.getId()), anyInt(), eq(new BigDecimal("2")));
+        order.verify(values).increment(HotAccountService.TOTAL_KEY + account.getId(), 20_000L);
+        order.verify(pending).remove(key, posting.getValue());
+    }
+
+    @Test
+    void reconcileLeavesAnAccountWithPostingsInFlightForTheNextRound() {
+        when(lease.acquire(eq(HotAccountService.RECONCILE_LEASE), any())).thenReturn(true);
+        when(sets.members(HotAccountService.HOT_SET_KEY)).thenReturn(Set.of(String.valueOf(account.getId())));
+        when(slotRepository.sumBalanceByAccountId(account.getId())).thenReturn(new BigDecimal("80.0000"));
+        String key = HotAccountService.TOTAL_KEY + account.getId();
+        when(values.get(key)).thenReturn("900000");
+        when(redis.execute(any(RedisScript.class), anyList(), any(), any(), any())).thenReturn(0L);
+
+        service.reconcile();
+        verify(redis).execute(any(RedisScript.class), eq(List.of(key, HotAccountService.PENDING_KEY + account.getId())),
+                eq("900000"), eq("800000"), anyString());
+        verifyNoInteractions(accountRepository);
+
+        when(redis.execute(any(RedisScript.class), anyList(), any(), any(), any())).thenReturn(1L);
+        when(accountRepository.findById(account.getId())).thenReturn(Optional.of(account));
+        service.reconcile();
+        assertEquals(new BigDecimal("80.0000"), account.getBalance());
+        verify(accountRepository).save(account);
+        verify(values, never()).set(anyString(), anyString());
+        verify(values, never()).increment(anyString(), anyLong());
+    }
+}
@@ -0,0 +1,101 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.User;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// A burst of guesses at production BCrypt cost against a two-thread pool: how many are hashed,
+// how many are refused busy, and how long the refusals take. Run with -Pperf.
+@Tag("perf")
+class PinVerificationPerfTest {
+
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private ThreadPoolTaskExecutor pool;
+
+    @SuppressWarnings("unchecked")
+    PinVerificationPerfTest() {
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(ops);
+        when(ops.multiGet(anyList())).thenAnswer(inv -> {
+            List<String> values = new ArrayList<>();
+            inv.<List<String>>getArgument(0).forEach(k -> values.add(null));
+            return values;
+        });
+        when(redis.execute(eq(PinVerificationService.COUNT_FAILURE), anyList(), any())).thenReturn(1L);
+    }
+
+    @AfterEach
+    void shutdown() {
+        if (pool != null) pool.shutdown();
+    }
+
+    @Test
+    void guessingBurstIsRefusedInsteadOfQueued() throws Exception {
+        int threads = 2;
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(10);
+        PinVerificationService service = service(encoder, threads, 4);
+        String hash = encoder.encode("1234");
+
+        int callers = 64;
+        ExecutorService gateway = Executors.newFixedThreadPool(callers);
+        List<Future<PinVerificationService.Outcome>> results = new ArrayList<>();
+        long started = System.nanoTime();
+        for (int i = 0; i < callers; i++) {
+            User user = user("+23480000" + (10_000 + i), hash);
+            String session = "burst-" + i;
+            results.add(gateway.submit(() -> service.verify(session, user, "0000")));
+        }
+        int busy = 0;
+        int checked = 0;
+        for (Future<PinVerificationService.Outcome> f : results) {
+            PinVerificationService.Outcome outcome = f.get(30, TimeUnit.SECONDS);
+            if (outcome == PinVerificationService.Outcome.BUSY) busy++;
+            else checked++;
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        gateway.shutdown();
+
+        Timer queueWait = registry.get("ussd.pin.queue.wait").timer();
+        Timer busyLatency = registry.get("ussd.pin.verify").tag("outcome", "busy").timer();
+        System.out.printf("[bench] pin burst: %d guesses on %d threads, %d hashed, %d refused busy in %dms%n",
+                callers, threads, checked, busy, elapsedMs);
+        System.out.printf("[bench] pin queue wait max %.1fms, busy answer mean %.2fms%n",
+                queueWait.max(TimeUnit.MILLISECONDS), busyLatency.mean(TimeUnit.MILLISECONDS));
+        assertTrue(busy > 0, "the queue is bounded");
+        assertTrue(checked <= callers - busy);
+        assertEquals(0, service.queueDepth());
+    }
+
+    private PinVerificationService service(BCryptPasswordEncoder encoder, int threads, int queue) {
+        pool = new ThreadPoolTaskExecutor();
+        pool.setCorePoolSize(threads);
+        pool.setMaxPoolSize(threads);
+        pool.setQueueCapacity(queue);
+        pool.setThreadNamePrefix("pin-");
+        pool.initialize();
+        return new PinVerificationService(redis, encoder, pool, registry, 5, 30, 120, 10_000, "perf-secret");
+    }
+
+    private static User user(String msisdn, String pinHash) {
+        return User.builder().msisdn(msisdn).pinHash(pinHash).build();
+    }
+}
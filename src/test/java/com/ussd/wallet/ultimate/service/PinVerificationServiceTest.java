@@ -0,0 +1,165 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+// PIN checks against an in-memory stand-in for Redis: lockout, the verified-session token, hash
+// cost upgrades, and a full hashing queue answered "busy" rather than waited on.
+class PinVerificationServiceTest {
+
+    private static final String SECRET = "test-pin-token-secret";
+
+    private final Map<String, String> redisValues = new ConcurrentHashMap<>();
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<ThreadPoolTaskExecutor> pools = new ArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    PinVerificationServiceTest() {
+        ValueOperations<String, String> ops = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(ops);
+        when(ops.multiGet(anyList())).thenAnswer(inv -> {
+            List<String> keys = inv.getArgument(0);
+            List<String> values = new ArrayList<>();
+            keys.forEach(k -> values.add(redisValues.get(k)));
+            return values;
+        });
+        when(redis.execute(eq(PinVerificationService.COUNT_FAILURE), anyList(), any())).thenAnswer(inv -> {
+            String key = inv.<List<String>>getArgument(1).get(0);
+            return Long.parseLong(redisValues.merge(key, "1", (a, b) -> String.valueOf(Long.parseLong(a) + 1)));
+        });
+        doAnswer(inv -> redisValues.put(inv.getArgument(0), inv.getArgument(1)))
+                .when(ops).set(anyString(), anyString(), any(Duration.class));
+        when(redis.delete(anyString())).thenAnswer(inv -> redisValues.remove((String) inv.getArgument(0)) != null);
+    }
+
+    @AfterEach
+    void shutdown() {
+        pools.forEach(ThreadPoolTaskExecutor::shutdown);
+    }
+
+    @Test
+    void locksOutAfterRepeatedFailuresAndSkipsHashingOnceVerified() {
+        BCryptPasswordEncoder encoder = spy(new BCryptPasswordEncoder(4));
+        PinVerificationService service = service(encoder, 2, 16, 3);
+        User user = user("+2348000000001", encoder.encode("1234"));
+
+        assertEquals(PinVerificationService.Outcome.INCORRECT, service.verify("s1", user, "0000"));
+        assertEquals(PinVerificationService.Outcome.INCORRECT, service.verify("s1", user, "1111"));
+        assertEquals(PinVerificationService.Outcome.VERIFIED, service.verify("s1", user, "1234"));
+        assertNull(redisValues.get(PinVerificationService.failuresKey(user.getMsisdn())), "success clears the failures");
+
+        // the gateway resubmits the same hop: answered from the session token
+        clearInvocations(encoder);
+        assertEquals(PinVerificationService.Outcome.VERIFIED, service.verify("s1", user, "1234"));
+        verify(encoder, never()).matches(any(), any());
+        // a different PIN on the same session is hashed again
+        assertEquals(PinVerificationService.Outcome.INCORRECT, service.verify("s1", user, "9999"));
+
+        service.verify("s2", user, "0001");
+        assertEquals(PinVerificationService.Outcome.LOCKED, service.verify("s2", user, "0002"));
+        clearInvocations(encoder);
+        assertEquals(PinVerificationService.Outcome.LOCKED, service.verify("s3", user, "1234"), "the right PIN is refused too");
+        verify(encoder, never()).matches(any(), any());
+    }
+
+    @Test
+    void raisesHashCostOnSuccessfulCheck() {
+        String weak = new BCryptPasswordEncoder(4).encode("4321");
+        PinVerificationService service = service(new BCryptPasswordEncoder(6), 1, 4, 5);
+        User user = user("+2348000000002", weak);
+
+        assertEquals(PinVerificationService.Outcome.INCORRECT, service.verify("s1", user, "0000"));
+        assertEquals(weak, user.getPinHash());
+        assertEquals(PinVerificationService.Outcome.VERIFIED, service.verify("s2", user, "4321"));
+        assertTrue(user.getPinHash().startsWith("$2a$06$"), user.getPinHash());
+        assertTrue(new BCryptPasswordEncoder(6).matches("4321", user.getPinHash()));
+        assertEquals(1.0, registry.counter("ussd.pin.rehashed").count());
+    }
+
+    @Test
+    void fullQueueIsAnsweredBusyWithoutWaiting() throws Exception {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(4);
+        PinVerificationService service = service(encoder, 1, 1, 5);
+        ThreadPoolTaskExecutor pool = pools.get(0);
+        CountDownLatch release = new CountDownLatch(1);
+        // one check running, one queued
+        pool.submit(() -> release.await(5, TimeUnit.SECONDS));
+        pool.submit(() -> release.await(5, TimeUnit.SECONDS));
+        User user = user("+2348000000003", encoder.encode("1234"));
+
+        assertEquals(PinVerificationService.Outcome.BUSY, service.verify("s1", user, "1234"));
+        assertEquals(1.0, registry.counter("ussd.pin.rejected", "reason", "queue_full").count());
+        assertNull(redisValues.get(PinVerificationService.failuresKey(user.getMsisdn())), "a refused check is not a failure");
+
+        release.countDown();
+    }
+
+    @Test
+    void firstFailureStartsTheLockoutInTheSameScript() {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(4);
+        PinVerificationService service = service(encoder, 1, 4, 5);
+        User user = user("+2348000000004", encoder.encode("1234"));
+
+        service.verify("s1", user, "0000");
+        service.verify("s1", user, "1111");
+
+        String key = PinVerificationService.failuresKey(user.getMsisdn());
+        verify(redis, times(2)).execute(PinVerificationService.COUNT_FAILURE, List.of(key), String.valueOf(Duration.ofMinutes(30).toMillis()));
+        verify(redis, never()).expire(anyString(), any(Duration.class));
+        assertEquals("2", redisValues.get(key));
+    }
+
+    @Test
+    void sessionTokenIsKeyedWithTheServerSecret() throws Exception {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(4);
+        PinVerificationService nodeA = service(encoder, 1, 4, 5);
+        PinVerificationService nodeB = service(encoder, 1, 4, 5);
+        User user = user("+2348000000005", encoder.encode("1234"));
+
+        assertEquals(PinVerificationService.Outcome.VERIFIED, nodeA.verify("s1", user, "1234"));
+        String token = redisValues.get(PinVerificationService.tokenKey("s1"));
+        String plain = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest((user.getMsisdn() + ":1234").getBytes(StandardCharsets.UTF_8)));
+        assertNotEquals(plain, token);
+        assertEquals(nodeB.tokenValue(user.getMsisdn(), "1234"), token, "every node with the secret honours the token");
+        PinVerificationService otherSecret = new PinVerificationService(redis, encoder, pools.get(0), registry, 5, 30, 120, 10_000, "another");
+        assertNotEquals(otherSecret.tokenValue(user.getMsisdn(), "1234"), token);
+    }
+
+    private PinVerificationService service(BCryptPasswordEncoder encoder, int threads, int queue, int maxFailures) {
+        ThreadPoolTaskExecutor pool = new ThreadPoolTaskExecutor();
+        pool.setCorePoolSize(threads);
+        pool.setMaxPoolSize(threads);
+        pool.setQueueCapacity(queue);
+        pool.setThreadNamePrefix("pin-");
+        pool.initialize();
+        pools.add(pool);
+        return new PinVerificationService(redis, encoder, pool, registry, maxFailures, 30, 120, 10_000, SECRET);
+    }
+
+    private static User user(String msisdn, String pinHash) {
+        return User.builder().msisdn(msisdn).pinHash(pinHash).build();
+    }
+}
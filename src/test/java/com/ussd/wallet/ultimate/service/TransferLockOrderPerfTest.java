@@ -0,0 +1,107 @@
+package com.ussd.wallet.ultimate.service;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Random cross-transfers between a small set of accounts, applied in the order TransferService
+// uses. Each row is a lock held until "commit", like an InnoDB row lock, and a conditional debit
+// that finds too little rolls the transaction back. A lock wait longer than a second is treated
+// as a deadlock. Only the lock order is modelled here, under -Pperf; TransferServiceTest drives
+// the service itself, including the cross-shard path.
+@Tag("perf")
+class TransferLockOrderPerfTest {
+
+    private static final int ACCOUNTS = 20;
+    private static final int THREADS = 32;
+    private static final int TRANSFERS = 200_000;
+    private static final BigDecimal OPENING = new BigDecimal("1000.0000");
+
+    private static final class Row {
+        final ReentrantLock lock = new ReentrantLock();
+        BigDecimal balance = OPENING;
+    }
+
+    @Test
+    void randomCrossTransfersConserveTotalBalance() throws Exception {
+        Row[] rows = new Row[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) rows[i] = new Row();
+        AtomicInteger remaining = new AtomicInteger(TRANSFERS);
+        AtomicLong committed = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong deadlocks = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(THREADS);
+
+        long start = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (remaining.getAndDecrement() > 0) {
+                    long from = random.nextInt(ACCOUNTS);
+                    long to = random.nextInt(ACCOUNTS - 1);
+                    if (to >= from) to++;
+                    BigDecimal amount = BigDecimal.valueOf(random.nextInt(1, 200_000), 4);
+                    switch (transfer(rows, from, to, amount)) {
+                        case 1 -> committed.incrementAndGet();
+                        case 0 -> rejected.incrementAndGet();
+                        default -> deadlocks.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(120, TimeUnit.SECONDS), "stress run did not finish");
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (Row row : rows) {
+            total = total.add(row.balance);
+            assertTrue(row.balance.signum() >= 0, "negative balance");
+        }
+        System.out.printf("[bench] transfers=%d committed=%d rejected=%d threads=%d %,.0f transfers/s%n",
+                TRANSFERS, committed.get(), rejected.get(), THREADS, TRANSFERS / seconds);
+        assertEquals(0, deadlocks.get());
+        assertEquals(OPENING.multiply(BigDecimal.valueOf(ACCOUNTS)), total);
+    }
+
+    // 1 committed, 0 insufficient funds, -1 lock timeout
+    private int transfer(Row[] rows, long from, long to, BigDecimal amount) {
+        Deque<Row> held = new ArrayDeque<>();
+        Deque<Runnable> undo = new ArrayDeque<>();
+        try {
+            for (TransferService.Posting p : TransferService.postings(from, to, amount)) {
+                Row row = rows[p.accountId().intValue()];
+                if (!row.lock.tryLock(1, TimeUnit.SECONDS)) {
+                    undo.forEach(Runnable::run);
+                    return -1;
+                }
+                held.push(row);
+                if (row.balance.add(p.delta()).signum() < 0) {
+                    undo.forEach(Runnable::run);
+                    return 0;
+                }
+                row.balance = row.balance.add(p.delta());
+                undo.push(() -> row.balance = row.balance.subtract(p.delta()));
+            }
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            undo.forEach(Runnable::run);
+            return -1;
+        } finally {
+            held.forEach(r -> r.lock.unlock());
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.Account;
+import com.ussd.wallet.ultimate.domain.ShardTransfer;
+import com.ussd.wallet.ultimate.repository.AccountRepository;
+import com.ussd.wallet.ultimate.repository.ShardTransferRepository;
+import com.ussd.wallet.ultimate.sharding.ShardFanout;
+import com.ussd.wallet.ultimate.sharding.ShardKeys;
+import com.ussd.wallet.ultimate.sharding.ShardMapRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+// Transfers between accounts on two shards, over repositories backed by maps. Every transaction
+// keeps an undo log that a rollback replays, and faults are injected per account so each step of
+// the cross-shard path can fail on its own.
+class TransferServiceTest {
+
+    private static final BigDecimal OPENING = new BigDecimal("1000.0000");
+    private static final BigDecimal AMOUNT = new BigDecimal("100.0000");
+
+    private final AccountRepository accountRepository = mock(AccountRepository.class);
+    private final ShardTransferRepository transferRepository = mock(ShardTransferRepository.class);
+    private final ShardMapRegistry shardMap = mock(ShardMapRegistry.class);
+    private final ShardFanout fanout = mock(ShardFanout.class);
+    private final ClusterLease lease = mock(ClusterLease.class);
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, Object> redis = mock(RedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, Object> values = mock(ValueOperations.class);
+
+    private final long from = ShardKeys.newId(3);
+    private final long to = ShardKeys.newId(900);
+    private final Map<Long, BigDecimal> balances = new HashMap<>();
+    private final Map<Long, Integer> credits = new HashMap<>();
+    private final Map<String, ShardTransfer> legs = new HashMap<>();
+
+    // faults
+    private final Set<Long> down = new HashSet<>();
+    private final Set<Long> creditFails = new HashSet<>();
+    private boolean transitionsFail;
+    private Long commitAckLostOn;
+
+    private Deque<Runnable> undo = new ArrayDeque<>();
+    private Set<Long> touched = new HashSet<>();
+
+    private TransferService service;
+
+    @BeforeEach
+    void setUp() {
+        balances.put(from, OPENING);
+        balances.put(to, OPENING);
+        when(shardMap.shardFor(anyInt())).thenAnswer(inv -> (int) inv.getArgument(0) < 512 ? "shard-0" : "shard-1");
+        when(redis.opsForValue()).thenReturn(values);
+        when(values.setIfAbsent(anyString(), any(), any())).thenReturn(true);
+        when(lease.acquire(eq(TransferService.RECOVERY_LEASE), any())).thenReturn(true);
+        when(fanout.onEveryShard(any())).thenAnswer(inv -> Map.of("shard-0", openDebitLegs()));
+
+        when(accountRepository.findById(any())).thenAnswer(inv -> {
+            Long id = inv.getArgument(0);
+            return Optional.of(Account.builder().id(id).currency("NGN").balance(balances.get(id)).build());
+        });
+        when(accountRepository.debitById(any(), any())).thenAnswer(inv -> {
+            Long id = touch(inv.getArgument(0));
+            BigDecimal amount = inv.getArgument(1);
+            if (balances.get(id).compareTo(amount) < 0) return 0;
+            move(id, amount.negate());
+            return 1;
+        });
+        when(accountRepository.creditById(any(), any())).thenAnswer(inv -> {
+            Long id = touch(inv.getArgument(0));
+            if (creditFails.contains(id)) throw new DataAccessResourceFailureException("lock wait timeout");
+            move(id, inv.getArgument(1));
+            credits.merge(id, 1, Integer::sum);
+            return 1;
+        });
+        when(transferRepository.insertLegByAccountId(any(), anyString(), anyString(), any(), any(), anyString(), anyString(), any()))
+                .thenAnswer(inv -> {
+                    Long accountId = touch(inv.getArgument(0));
+                    String id = ShardTransfer.idOf(inv.getArgument(1), inv.getArgument(2));
+                    if (legs.containsKey(id)) return 0;
+                    legs.put(id, ShardTransfer.builder().id(id).transferId(inv.getArgument(1)).leg(inv.getArgument(2))
+                            .accountId(accountId).counterpartyAccountId(inv.getArgument(3)).amount(inv.getArgument(4))
+                            .currency(inv.getArgument(5)).status(inv.getArgument(6)).build());
+                    undo.push(() -> legs.remove(id));
+                    return 1;
+                });
+        when(transferRepository.findByAccountIdAndId(any(), anyString())).thenAnswer(inv -> {
+            touch(inv.getArgument(0));
+            return Optional.ofNullable(legs.get((String) inv.getArgument(1))).map(TransferServiceTest::copy);
+        });
+        when(transferRepository.transitionByAccountId(any(), anyString(), any(), anyString(), any())).thenAnswer(inv -> {
+            touch(inv.getArgument(0));
+            if (transitionsFail) throw new DataAccessResourceFailureException("connection refused");
+            ShardTransfer leg = legs.get((String) inv.getArgument(1));
+            Collection<String> expected = inv.getArgument(2);
+            if (leg == null || !expected.contains(leg.getStatus())) return 0;
+            String before = leg.getStatus();
+            leg.setStatus(inv.getArgument(3));
+            undo.push(() -> leg.setStatus(before));
+            return 1;
+        });
+
+        PlatformTransactionManager txManager = new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                undo = new ArrayDeque<>();
+                touched = new HashSet<>();
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+                if (commitAckLostOn != null && touched.contains(commitAckLostOn)) {
+                    commitAckLostOn = null;
+                    throw new TransactionSystemException("connection reset after commit");
+                }
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+                undo.forEach(Runnable::run);
+            }
+        };
+        service = new TransferService(accountRepository, transferRepository, mock(HotAccountService.class), shardMap, fanout, lease,
+                redis, mock(KafkaTemplate.class), mock(BackgroundWorkerService.class), txManager, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "recoverAfterMs", 0L);
+    }
+
+    @Test
+    void creditCommitsWithItsLegAndClosesTheDebit() {
+        assertTrue(service.transfer(from, to, AMOUNT, "NGN", "k1").isPresent());
+
+        assertBalances(OPENING.subtract(AMOUNT), OPENING.add(AMOUNT));
+        assertLegs(ShardTransfer.CREDITED, ShardTransfer.CREDITED);
+    }
+
+    @Test
+    void failedCreditIsFencedOffAndReversedOnce() {
+        creditFails.add(to);
+
+        assertThrows(DataAccessResourceFailureException.class, () -> service.transfer(from, to, AMOUNT, "NGN", "k1"));
+        service.resumeCrossShard();
+
+        assertBalances(OPENING, OPENING);
+        assertLegs(ShardTransfer.REVERSED, ShardTransfer.VOIDED);
+    }
+
+    @Test
+    void creditWhoseCommitAcknowledgementWasLostIsNotReversed() {
+        commitAckLostOn = to;
+
+        assertTrue(service.transfer(from, to, AMOUNT, "NGN", "k1").isPresent());
+
+        assertBalances(OPENING.subtract(AMOUNT), OPENING.add(AMOUNT));
+        assertLegs(ShardTransfer.CREDITED, ShardTransfer.CREDITED);
+    }
+
+    @Test
+    void targetShardDownLeavesTheReversalToRecovery() {
+        down.add(to);
+
+        assertThrows(DataAccessResourceFailureException.class, () -> service.transfer(from, to, AMOUNT, "NGN", "k1"));
+        assertBalances(OPENING.subtract(AMOUNT), OPENING);
+        assertEquals(ShardTransfer.REVERSING, leg(ShardTransfer.DEBIT).getStatus());
+
+        down.clear();
+        service.resumeCrossShard();
+        service.resumeCrossShard();
+
+        assertBalances(OPENING, OPENING);
+        assertLegs(ShardTransfer.REVERSED, ShardTransfer.VOIDED);
+    }
+
+    @Test
+    void debitLeftOpenIsCreditedByRecovery() {
+        // the target is down and the source cannot record the reversal either: nothing moves past DEBITED
+        down.add(to);
+        transitionsFail = true;
+
+        assertThrows(DataAccessResourceFailureException.class, () -> service.transfer(from, to, AMOUNT, "NGN", "k1"));
+        assertEquals(ShardTransfer.DEBITED, leg(ShardTransfer.DEBIT).getStatus());
+
+        down.clear();
+        transitionsFail = false;
+        service.resumeCrossShard();
+
+        assertBalances(OPENING.subtract(AMOUNT), OPENING.add(AMOUNT));
+        assertLegs(ShardTransfer.CREDITED, ShardTransfer.CREDITED);
+    }
+
+    @Test
+    void creditRepeatedByRecoveryIsAppliedOnce() {
+        // the credit commits but the DEBIT leg cannot be closed, so recovery credits again
+        transitionsFail = true;
+
+        assertThrows(DataAccessResourceFailureException.class, () -> service.transfer(from, to, AMOUNT, "NGN", "k1"));
+        transitionsFail = false;
+        service.resumeCrossShard();
+
+        assertEquals(1, credits.get(to));
+        assertBalances(OPENING.subtract(AMOUNT), OPENING.add(AMOUNT));
+        assertLegs(ShardTransfer.CREDITED, ShardTransfer.CREDITED);
+    }
+
+    @Test
+    void recoveryRunsOnlyOnTheLeaseHolder() {
+        when(lease.acquire(eq(TransferService.RECOVERY_LEASE), any())).thenReturn(false);
+
+        service.resumeCrossShard();
+
+        verifyNoInteractions(fanout, transferRepository);
+    }
+
+    private Long touch(Long accountId) {
+        if (down.contains(accountId)) throw new DataAccessResourceFailureException("shard of " + accountId + " unreachable");
+        touched.add(accountId);
+        return accountId;
+    }
+
+    private void move(Long accountId, BigDecimal delta) {
+        balances.merge(accountId, delta, BigDecimal::add);
+        undo.push(() -> balances.merge(accountId, delta.negate(), BigDecimal::add));
+    }
+
+    private List<ShardTransfer> openDebitLegs() {
+        return legs.values().stream()
+                .filter(l -> ShardTransfer.DEBIT.equals(l.getLeg()))
+                .filter(l -> ShardTransfer.DEBITED.equals(l.getStatus()) || ShardTransfer.REVERSING.equals(l.getStatus()))
+                .map(TransferServiceTest::copy)
+                .toList();
+    }
+
+    private ShardTransfer leg(String leg) {
+        return legs.values().stream().filter(l -> leg.equals(l.getLeg())).findFirst().orElseThrow();
+    }
+
+    private void assertBalances(BigDecimal fromBalance, BigDecimal toBalance) {
+        assertEquals(fromBalance, balances.get(from));
+        assertEquals(toBalance, balances.get(to));
+    }
+
+    private void assertLegs(String debit, String credit) {
+        assertEquals(2, legs.size());
+        assertEquals(debit, leg(ShardTransfer.DEBIT).getStatus());
+        assertEquals(credit, leg(ShardTransfer.CREDIT).getStatus());
+    }
+
+    // what a query hands back is a detached copy, not the stored row
+    private static ShardTransfer copy(ShardTransfer l) {
+        return ShardTransfer.builder().id(l.getId()).transferId(l.getTransferId()).leg(l.getLeg()).accountId(l.getAccountId())
+                .counterpartyAccountId(l.getCounterpartyAccountId()).amount(l.getAmount()).currency(l.getCurrency())
+                .status(l.getStatus()).build();
+    }
+}
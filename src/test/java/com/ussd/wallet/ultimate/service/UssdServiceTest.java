@@ -0,0 +1,96 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.User;
+import com.ussd.wallet.ultimate.dto.UssdRequestDto;
+import com.ussd.wallet.ultimate.dto.UssdResponseDto;
+import com.ussd.wallet.ultimate.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UssdServiceTest {
+
+    private static final String MSISDN = "+2348000000001";
+
+    @SuppressWarnings("unchecked")
+    private final RedisTemplate<String, Object> redis = mock(RedisTemplate.class);
+    private final UserRepository users = mock(UserRepository.class);
+    private final AccountService accountService = mock(AccountService.class);
+    private final TwilioSmsService sms = mock(TwilioSmsService.class);
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    private final UssdService ussd;
+
+    @SuppressWarnings("unchecked")
+    UssdServiceTest() {
+        ValueOperations<String, Object> values = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(values);
+        // no session yet, no read-your-writes marker
+        when(values.multiGet(anyList())).thenReturn(Arrays.asList(null, null));
+        executor.initialize();
+        ussd = new UssdService(redis, users, accountService, mock(TransferService.class), mock(DepositService.class),
+                mock(PasswordEncoder.class), mock(PinVerificationService.class), mock(WalletService.class), sms, executor,
+                new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void hopPastTheBudgetFinishesAndAnswersBySms() {
+        // the user lookup alone outlasts the gateway budget
+        when(users.findByMsisdn(MSISDN)).thenAnswer(inv -> {
+            Thread.sleep(400);
+            return Optional.of(User.builder().id(7L).msisdn(MSISDN).defaultCurrency("NGN").build());
+        });
+        when(accountService.getBalanceForUser(7L, "NGN")).thenAnswer(inv -> {
+            // later steps run against the background budget, not the spent gateway one
+            RequestDeadline.checkpoint("jpa.balance");
+            assertTrue(RequestDeadline.timeout(Duration.ofSeconds(5)).compareTo(Duration.ofSeconds(1)) > 0);
+            return new BigDecimal("1500.00");
+        });
+
+        UssdResponseDto answer = ussd.handle(request("4"), 200L);
+
+        assertEquals(UssdMenus.PENDING, answer.getResponse());
+        verify(sms, timeout(5_000)).sendSms(MSISDN, "Balance: 1500.00 NGN");
+        verify(sms, never()).sendSms(MSISDN, "We could not complete your request. Please try again.");
+    }
+
+    @Test
+    void hopWithinTheBudgetAnswersTheGateway() {
+        when(users.findByMsisdn(MSISDN)).thenReturn(Optional.of(User.builder().id(7L).msisdn(MSISDN).defaultCurrency("NGN").build()));
+        when(accountService.getBalanceForUser(7L, "NGN")).thenReturn(new BigDecimal("1500.00"));
+
+        assertEquals("END Balance: 1500.00 NGN", ussd.handle(request("4"), 2_000L).getResponse());
+        verify(sms, never()).sendSms(anyString(), anyString());
+    }
+
+    private static UssdRequestDto request(String text) {
+        UssdRequestDto req = new UssdRequestDto();
+        req.setSessionId("s1");
+        req.setMsisdn(MSISDN);
+        req.setText(text);
+        return req;
+    }
+}
@@ -0,0 +1,77 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.Account;
+import com.ussd.wallet.ultimate.repository.AccountRepository;
+import com.ussd.wallet.ultimate.stub.SoapFxStub;
+import com.ussd.wallet.ultimate.stub.StubBehaviour;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.ws.client.core.WebServiceTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Wallet views per second with the SOAP FX stub answering in 2-5ms, fetching rates on every view
+// and with the rate cache on. Timed under -Pperf only.
+@Tag("perf")
+class WalletServicePerfTest {
+
+    private static final long USER = 42L;
+
+    private final AccountRepository accounts = mock(AccountRepository.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SoapFxStub fx = new SoapFxStub(StubBehaviour.fast())
+            .withRate("USD", "NGN", "1538.46")
+            .withRate("EUR", "NGN", "1612.5");
+
+    WalletServicePerfTest() {
+        when(accounts.findByUserId(USER)).thenReturn(List.of(
+                Account.builder().id(2L).userId(USER).currency("USD").balance(new BigDecimal("10.2500")).build(),
+                Account.builder().id(3L).userId(USER).currency("EUR").balance(new BigDecimal("1.0000")).build(),
+                Account.builder().id(1L).userId(USER).currency("NGN").balance(new BigDecimal("12345.6789")).build()));
+    }
+
+    @AfterEach
+    void stop() {
+        fx.close();
+    }
+
+    @Test
+    void cachedRatesVersusFetchingEveryView() {
+        fx.setBehaviour(StubBehaviour.latency(2, 5));
+        int uncachedViews = 20;
+        WalletService uncached = wallet(client(0, 60));
+        long start = System.nanoTime();
+        for (int i = 0; i < uncachedViews; i++) uncached.view(USER, "NGN");
+        double uncachedPerSecond = uncachedViews / ((System.nanoTime() - start) / 1e9);
+
+        int cachedViews = 500;
+        WalletService cached = wallet(client(300, 60));
+        start = System.nanoTime();
+        for (int i = 0; i < cachedViews; i++) cached.view(USER, "NGN");
+        double cachedPerSecond = cachedViews / ((System.nanoTime() - start) / 1e9);
+
+        System.out.printf("[bench] wallet view (3 currencies): fetching rates %.0f/s, cached rates %.0f/s, %d FX calls in all%n",
+                uncachedPerSecond, cachedPerSecond, fx.requests());
+        System.out.printf("[bench] wallet view p99 %.2fms%n",
+                registry.get("ussd.wallet.view").timer().takeSnapshot().percentileValues()[1].value(TimeUnit.MILLISECONDS));
+        assertTrue(cachedPerSecond > uncachedPerSecond * 5, "cached rates avoid the SOAP round trips");
+    }
+
+    private WalletService wallet(SoapCurrencyClient client) {
+        return new WalletService(accounts, mock(HotAccountService.class), client, registry);
+    }
+
+    private SoapCurrencyClient client(long ttlSeconds, long maxStaleMinutes) {
+        WebServiceTemplate ws = new WebServiceTemplate();
+        ws.setDefaultUri(fx.baseUrl() + "/fx");
+        return new SoapCurrencyClient(ws, registry, ttlSeconds, maxStaleMinutes);
+    }
+}
@@ -0,0 +1,140 @@
+package com.ussd.wallet.ultimate.service;
+
+import com.ussd.wallet.ultimate.domain.Account;
+import com.ussd.wallet.ultimate.repository.AccountRepository;
+import com.ussd.wallet.ultimate.stub.SoapFxStub;
+import com.ussd.wallet.ultimate.stub.StubBehaviour;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ws.client.core.WebServiceTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+// The wallet view against a mocked account repository and the SOAP FX stub: exact BigDecimal
+// conversion, one rate fetch per pair while cached, stale rates when the service is down, and a
+// missing rate that leaves the total incomplete rather than failing the view, and callers that do
+// not queue behind another caller's refresh.
+class WalletServiceTest {
+
+    private static final long USER = 42L;
+
+    private final AccountRepository accounts = mock(AccountRepository.class);
+    private final HotAccountService hotAccounts = mock(HotAccountService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SoapFxStub fx = new SoapFxStub(StubBehaviour.fast())
+            .withRate("USD", "NGN", "1538.46")
+            .withRate("EUR", "NGN", "1612.5")
+            .withRate("NGN", "USD", "0.00065");
+
+    WalletServiceTest() {
+        Account eur = Account.builder().id(3L).userId(USER).currency("EUR").balance(new BigDecimal("1.0000")).slotCount(4).build();
+        when(accounts.findByUserId(USER)).thenReturn(List.of(
+                Account.builder().id(2L).userId(USER).currency("USD").balance(new BigDecimal("10.2500")).build(),
+                eur,
+                Account.builder().id(1L).userId(USER).currency("NGN").balance(new BigDecimal("12345.6789")).build()));
+        // hot accounts are read from their slots, not the row snapshot
+        when(hotAccounts.balance(eur)).thenReturn(new BigDecimal("5.0000"));
+    }
+
+    @AfterEach
+    void stop() {
+        fx.close();
+    }
+
+    @Test
+    void convertsInBigDecimalAndRoundsTheTotalOnce() {
+        WalletService wallet = wallet(client(300, 60));
+
+        WalletService.WalletView view = wallet.view(USER, "ngn");
+        assertEquals("NGN", view.currency());
+        assertTrue(view.complete());
+        assertEquals(List.of("NGN", "EUR", "USD"), view.accounts().stream().map(WalletService.Line::currency).toList(),
+                "display currency first");
+        WalletService.Line usd = view.accounts().get(2);
+        assertEquals(new BigDecimal("1538.46"), usd.rate());
+        // 15769.215 rounds half-even up to .22
+        assertEquals(new BigDecimal("15769.22"), usd.converted());
+        assertEquals(new BigDecimal("8062.50"), view.accounts().get(1).converted());
+        assertEquals(new BigDecimal("12345.68"), view.accounts().get(0).converted());
+        // 12345.6789 + 15769.215 + 8062.5, rounded once
+        assertEquals(new BigDecimal("36177.39"), view.total());
+
+        for (int i = 0; i < 100; i++) wallet.view(USER, "NGN");
+        assertEquals(2, fx.requests(), "one fetch per pair while the rates are fresh");
+        assertEquals(0, accountsQueriedOtherThanByUser());
+    }
+
+    @Test
+    void servesStaleRatesAndReportsMissingOnes() {
+        // every call refreshes; the old rate is served while the service is down
+        WalletService staleOk = wallet(client(0, 60));
+        assertTrue(staleOk.view(USER, "NGN").complete());
+        fx.setBehaviour(StubBehaviour.fast().withErrorRate(1.0));
+        WalletService.WalletView stale = staleOk.view(USER, "NGN");
+        assertTrue(stale.complete());
+        assertEquals(new BigDecimal("36177.39"), stale.total());
+        assertEquals(2.0, registry.counter("ussd.fx.cache", "result", "stale").count());
+
+        // no rate at all: the line stays, the total leaves it out
+        fx.setBehaviour(StubBehaviour.fast());
+        WalletService.WalletView usdView = wallet(client(300, 0)).view(USER, "USD");
+        assertFalse(usdView.complete());
+        WalletService.Line eur = usdView.accounts().stream().filter(l -> l.currency().equals("EUR")).findFirst().orElseThrow();
+        assertNull(eur.converted());
+        assertEquals(new BigDecimal("5.0000"), eur.balance());
+        // 10.25 + 12345.6789 * 0.00065
+        assertEquals(new BigDecimal("18.27"), usdView.total());
+
+        assertThrows(IllegalArgumentException.class, () -> staleOk.view(USER, "N<GN"));
+    }
+
+    @Test
+    void callersDoNotQueueBehindARefresh() throws Exception {
+        SoapCurrencyClient client = client(0, 60);
+        assertEquals(new BigDecimal("1538.46"), client.getRate("USD", "NGN"));
+        fx.setBehaviour(StubBehaviour.latency(600, 600));
+        Thread refresh = new Thread(() -> client.getRate("USD", "NGN"));
+        refresh.start();
+        Thread noRate = new Thread(() -> client.getRate("NGN", "USD"));
+        noRate.start();
+        Thread.sleep(150);
+
+        // a rate within max-stale is served while another caller refreshes
+        long started = System.nanoTime();
+        assertEquals(new BigDecimal("1538.46"), client.getRate("USD", "NGN"));
+        assertTrue(System.nanoTime() - started < 300_000_000L, "waited for the refresh");
+
+        // with nothing to serve, the wait ends with the caller's budget
+        RequestDeadline.bind(RequestDeadline.after(Duration.ofMillis(100), registry));
+        started = System.nanoTime();
+        try {
+            assertThrows(IllegalStateException.class, () -> client.getRate("NGN", "USD"));
+        } finally {
+            RequestDeadline.clear();
+        }
+        assertTrue(System.nanoTime() - started < 400_000_000L, "waited past the budget");
+        refresh.join();
+        noRate.join();
+    }
+
+    private long accountsQueriedOtherThanByUser() {
+        return mockingDetails(accounts).getInvocations().stream()
+                .filter(inv -> !inv.getMethod().getName().equals("findByUserId")).count();
+    }
+
+    private SoapCurrencyClient client(long ttlSeconds, long maxStaleMinutes) {
+        WebServiceTemplate ws = new WebServiceTemplate();
+        ws.setDefaultUri(fx.baseUrl() + "/fx");
+        return new SoapCurrencyClient(ws, registry, ttlSeconds, maxStaleMinutes);
+    }
+
+    private WalletService wallet(SoapCurrencyClient client) {
+        return new WalletService(accounts, hotAccounts, client, registry);
+    }
+}
@@ -0,0 +1,73 @@
+package com.ussd.wallet.ultimate.sharding;
+
+import com.ussd.wallet.ultimate.domain.Account;
+import com.ussd.wallet.ultimate.domain.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardKeysTest {
+
+    @Test
+    void generatedIdsCarryTheirBucketAndAreUnique() {
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < 50_000; i++) {
+            int bucket = i % ShardKeys.BUCKETS;
+            long id = ShardKeys.newId(bucket);
+            assertTrue(id >= ShardKeys.SHARD_AWARE_MIN_ID);
+            assertEquals(bucket, ShardKeys.bucketOfId(id));
+            assertTrue(seen.add(id), "duplicate id " + id);
+        }
+    }
+
+    @Test
+    void userAndAccountsLandInTheSameBucket() {
+        User user = User.builder().msisdn("+2348012345678").build();
+        int bucket = ShardKeys.bucketFor(user);
+        assertEquals(ShardKeys.bucketOfMsisdn("+2348012345678"), bucket);
+
+        user.setId(ShardKeys.newId(bucket));
+        assertEquals(bucket, ShardKeys.bucketFor(user));
+
+        Account account = Account.builder().userId(user.getId()).currency("NGN").build();
+        assertEquals(bucket, ShardKeys.bucketFor(account));
+        account.setId(ShardKeys.newId(ShardKeys.bucketFor(account)));
+        assertEquals(bucket, ShardKeys.bucketOfId(account.getId()));
+    }
+
+    @Test
+    void preShardingIdsArePinnedToTheDefaultShard() {
+        assertEquals(ShardKeys.PINNED, ShardKeys.bucketOfId(42L));
+        Account account = Account.builder().userId(42L).currency("NGN").build();
+        long id = ShardKeys.newId(ShardKeys.bucketFor(account));
+        assertEquals(ShardKeys.PINNED, ShardKeys.bucketOfId(id));
+
+        ShardMap map = ShardMap.initial().reassign(0, ShardKeys.BUCKETS - 1, "shard-1");
+        assertEquals(ShardContext.DEFAULT_SHARD, map.shardFor(ShardKeys.PINNED));
+        assertEquals("shard-1", map.shardFor(7));
+        assertEquals(1, map.version());
+    }
+
+    @Test
+    void routingResolvesBucketsFromRepositoryArguments() {
+        long userId = ShardKeys.newId(99);
+        assertEquals(99, ShardRoutingInterceptor.bucketOf("findById", new Object[]{userId}));
+        assertEquals(99, ShardRoutingInterceptor.bucketOf("findByUserIdAndCurrency", new Object[]{userId, "NGN"}));
+        assertEquals(ShardKeys.bucketOfMsisdn("+1555"), ShardRoutingInterceptor.bucketOf("findByMsisdn", new Object[]{"+1555"}));
+        assertEquals(Integer.MIN_VALUE, ShardRoutingInterceptor.bucketOf("findAll", new Object[0]));
+    }
+
+    @Test
+    void clusteredNodesMustBeGivenANodeId() {
+        assertEquals(0, ShardKeys.resolveNodeId("", List.of()));
+        assertEquals(3, ShardKeys.resolveNodeId("3", List.of("akka://ussd-wallet@10.0.0.1:25520")));
+        assertThrows(IllegalStateException.class, () -> ShardKeys.resolveNodeId("", List.of("akka://ussd-wallet@10.0.0.1:25520")));
+        assertThrows(IllegalArgumentException.class, () -> ShardKeys.resolveNodeId("node-a", List.of()));
+    }
+}
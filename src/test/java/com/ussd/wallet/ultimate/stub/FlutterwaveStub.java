@@ -0,0 +1,83 @@
+package com.ussd.wallet.ultimate.stub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// POST {baseUrl}/transfers as called by FlutterwavePaymentService. A reference that was already
+// paid out is answered as a duplicate, like the real API, and counted. GET /transfers?reference=
+// lists the payout for that reference as SUCCESSFUL, or nothing if it was never made.
+public class FlutterwaveStub extends StubServer {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Set<String> paidReferences = ConcurrentHashMap.newKeySet();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong ids = new AtomicLong(100_000);
+
+    public FlutterwaveStub(StubBehaviour behaviour) {
+        super(behaviour);
+    }
+
+    public int payouts() {
+        return paidReferences.size();
+    }
+
+    public long duplicates() {
+        return duplicates.get();
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange, String body) throws IOException {
+        if ("GET".equals(exchange.getRequestMethod()) && exchange.getRequestURI().getPath().endsWith("/transfers")) {
+            lookup(exchange);
+            return;
+        }
+        if (!"POST".equals(exchange.getRequestMethod()) || !exchange.getRequestURI().getPath().endsWith("/transfers")) {
+            respond(exchange, 404, "application/json", "{\"status\":\"error\",\"message\":\"not found\"}");
+            return;
+        }
+        Map<?, ?> req = objectMapper.readValue(body, Map.class);
+        String reference = String.valueOf(req.get("reference"));
+        if (!paidReferences.add(reference)) {
+            duplicates.incrementAndGet();
+            respond(exchange, 400, "application/json",
+                    "{\"status\":\"error\",\"message\":\"Transfer with reference already exists\",\"data\":null}");
+            return;
+        }
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("id", ids.incrementAndGet());
+        data.put("reference", reference);
+        data.put("amount", req.get("amount"));
+        data.put("currency", req.get("currency"));
+        data.put("status", "NEW");
+        respond(exchange, 200, "application/json", objectMapper.writeValueAsString(Map.of(
+                "status", "success", "message", "Transfer Queued Successfully", "data", data)));
+    }
+
+    private void lookup(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        String reference = query != null && query.startsWith("reference=") ? query.substring("reference=".length()) : "";
+        List<Map<String, Object>> data = paidReferences.contains(reference)
+                ? List.of(Map.of("reference", reference, "status", "SUCCESSFUL"))
+                : List.of();
+        respond(exchange, 200, "application/json", objectMapper.writeValueAsString(Map.of(
+                "status", "success", "message", "Transfers fetched", "data", data)));
+    }
+
+    @Override
+    protected void fail(HttpExchange exchange) throws IOException {
+        respond(exchange, 500, "application/json", "{\"status\":\"error\",\"message\":\"stub provider failure\",\"data\":null}");
+    }
+
+    @Override
+    protected void throttle(HttpExchange exchange) throws IOException {
+        respond(exchange, 429, "application/json", "{\"status\":\"error\",\"message\":\"Too many requests\",\"data\":null}");
+    }
+}
@@ -0,0 +1,70 @@
+package com.ussd.wallet.ultimate.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// SOAP 1.1 endpoint for the FX rate lookup behind SoapCurrencyClient:
+//   <GetRate xmlns="http://ussd.wallet/fx"><from>NGN</from><to>USD</to></GetRate>
+// answers <GetRateResponse><rate>..</rate></GetRateResponse>, or a Client fault for an unknown pair.
+public class SoapFxStub extends StubServer {
+
+    public static final String NAMESPACE = "http://ussd.wallet/fx";
+
+    private static final Pattern FROM = Pattern.compile("<(?:\\w+:)?from>\\s*([A-Z]{3})\\s*</(?:\\w+:)?from>");
+    private static final Pattern TO = Pattern.compile("<(?:\\w+:)?to>\\s*([A-Z]{3})\\s*</(?:\\w+:)?to>");
+
+    private final Map<String, BigDecimal> rates = new ConcurrentHashMap<>();
+
+    public SoapFxStub(StubBehaviour behaviour) {
+        super(behaviour);
+    }
+
+    public SoapFxStub withRate(String from, String to, String rate) {
+        rates.put(from + "_" + to, new BigDecimal(rate));
+        return this;
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange, String body) throws IOException {
+        Matcher from = FROM.matcher(body);
+        Matcher to = TO.matcher(body);
+        if (!from.find() || !to.find()) {
+            respond(exchange, 500, "text/xml; charset=utf-8", fault("soap:Client", "Malformed GetRate request"));
+            return;
+        }
+        BigDecimal rate = from.group(1).equals(to.group(1)) ? BigDecimal.ONE : rates.get(from.group(1) + "_" + to.group(1));
+        if (rate == null) {
+            respond(exchange, 500, "text/xml; charset=utf-8", fault("soap:Client", "No rate for " + from.group(1) + "/" + to.group(1)));
+            return;
+        }
+        respond(exchange, 200, "text/xml; charset=utf-8", envelope(
+                "<GetRateResponse xmlns=\"" + NAMESPACE + "\"><from>" + from.group(1) + "</from><to>" + to.group(1)
+                        + "</to><rate>" + rate.toPlainString() + "</rate></GetRateResponse>"));
+    }
+
+    @Override
+    protected void fail(HttpExchange exchange) throws IOException {
+        respond(exchange, 500, "text/xml; charset=utf-8", fault("soap:Server", "Rate service unavailable"));
+    }
+
+    @Override
+    protected void throttle(HttpExchange exchange) throws IOException {
+        respond(exchange, 429, "text/xml; charset=utf-8", fault("soap:Server", "Too many requests"));
+    }
+
+    private static String fault(String code, String reason) {
+        return envelope("<soap:Fault><faultcode>" + code + "</faultcode><faultstring>" + reason + "</faultstring></soap:Fault>");
+    }
+
+    private static String envelope(String body) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body>"
+                + body + "</soap:Body></soap:Envelope>";
+    }
+}
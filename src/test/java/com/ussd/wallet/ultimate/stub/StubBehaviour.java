@@ -0,0 +1,37 @@
+package com.ussd.wallet.ultimate.stub;
+
+import java.util.Random;
+
+// How a stub provider misbehaves: log-normal latency given by its median and p99, a share of
+// requests answered with a provider error, and a request rate above which it answers 429.
+public record StubBehaviour(double latencyMedianMs, double latencyP99Ms, double errorRate, int rateLimitPerSecond) {
+
+    // z-score of the 99th percentile of the standard normal distribution
+    private static final double Z_99 = 2.326;
+
+    public static StubBehaviour fast() {
+        return new StubBehaviour(0, 0, 0, 0);
+    }
+
+    public static StubBehaviour latency(double medianMs, double p99Ms) {
+        return new StubBehaviour(medianMs, p99Ms, 0, 0);
+    }
+
+    public StubBehaviour withErrorRate(double rate) {
+        return new StubBehaviour(latencyMedianMs, latencyP99Ms, rate, rateLimitPerSecond);
+    }
+
+    public StubBehaviour withRateLimit(int perSecond) {
+        return new StubBehaviour(latencyMedianMs, latencyP99Ms, errorRate, perSecond);
+    }
+
+    long sampleLatencyMs(Random random) {
+        if (latencyMedianMs <= 0) return 0;
+        double sigma = latencyP99Ms > latencyMedianMs ? Math.log(latencyP99Ms / latencyMedianMs) / Z_99 : 0;
+        return Math.round(latencyMedianMs * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    boolean shouldFail(Random random) {
+        return errorRate > 0 && random.nextDouble() < errorRate;
+    }
+}
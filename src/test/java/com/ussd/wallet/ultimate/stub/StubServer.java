@@ -0,0 +1,120 @@
+package com.ussd.wallet.ultimate.stub;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Local HTTP server on an ephemeral port that applies a StubBehaviour before handing the request
+// to the provider-specific subclass. Each request gets its own thread, so latency does not queue.
+public abstract class StubServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "stub-" + getClass().getSimpleName());
+        t.setDaemon(true);
+        return t;
+    });
+    private final ThreadLocal<Random> random = ThreadLocal.withInitial(Random::new);
+    private volatile StubBehaviour behaviour;
+    private final AtomicLong windowStart = new AtomicLong();
+    private final AtomicLong windowCount = new AtomicLong();
+
+    protected final AtomicLong requests = new AtomicLong();
+    protected final AtomicLong failures = new AtomicLong();
+    protected final AtomicLong throttled = new AtomicLong();
+
+    protected StubServer(StubBehaviour behaviour) {
+        this.behaviour = behaviour;
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot start stub server", e);
+        }
+        server.setExecutor(executor);
+        server.createContext("/", this::dispatch);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void setBehaviour(StubBehaviour behaviour) {
+        this.behaviour = behaviour;
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long failures() {
+        return failures.get();
+    }
+
+    public long throttled() {
+        return throttled.get();
+    }
+
+    protected abstract void handle(HttpExchange exchange, String body) throws IOException;
+
+    // provider-shaped error for an injected failure
+    protected abstract void fail(HttpExchange exchange) throws IOException;
+
+    // provider-shaped 429
+    protected abstract void throttle(HttpExchange exchange) throws IOException;
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            StubBehaviour b = behaviour;
+            if (!admit(b.rateLimitPerSecond())) {
+                throttled.incrementAndGet();
+                throttle(exchange);
+                return;
+            }
+            long delay = b.sampleLatencyMs(random.get());
+            if (delay > 0) Thread.sleep(delay);
+            if (b.shouldFail(random.get())) {
+                failures.incrementAndGet();
+                fail(exchange);
+                return;
+            }
+            handle(exchange, body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // fixed one-second windows are enough to emulate a provider's per-second quota
+    private boolean admit(int perSecond) {
+        if (perSecond <= 0) return true;
+        long second = System.currentTimeMillis() / 1000;
+        long start = windowStart.get();
+        if (second != start && windowStart.compareAndSet(start, second)) windowCount.set(0);
+        return windowCount.incrementAndGet() <= perSecond;
+    }
+
+    protected static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
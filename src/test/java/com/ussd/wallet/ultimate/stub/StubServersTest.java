@@ -0,0 +1,108 @@
+package com.ussd.wallet.ultimate.stub;
+
+import com.twilio.Twilio;
+import com.twilio.exception.ApiException;
+import com.twilio.rest.api.v2010.account.Message;
+import com.twilio.type.PhoneNumber;
+import com.ussd.wallet.ultimate.service.FlutterwavePaymentService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.ws.client.core.WebServiceTemplate;
+import org.springframework.ws.soap.client.SoapFaultClientException;
+import org.springframework.xml.transform.StringResult;
+import org.springframework.xml.transform.StringSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StubServersTest {
+
+    private final List<StubServer> servers = new ArrayList<>();
+
+    @AfterEach
+    void stop() {
+        servers.forEach(StubServer::close);
+    }
+
+    @Test
+    void latencyFollowsConfiguredMedianAndP99() {
+        StubBehaviour behaviour = StubBehaviour.latency(40, 200);
+        Random random = new Random(7);
+        long[] samples = new long[20_000];
+        for (int i = 0; i < samples.length; i++) samples[i] = behaviour.sampleLatencyMs(random);
+        Arrays.sort(samples);
+        long p50 = samples[samples.length / 2];
+        long p99 = samples[(int) (samples.length * 0.99)];
+        System.out.printf("[bench] stub latency p50=%dms p99=%dms%n", p50, p99);
+        assertTrue(Math.abs(p50 - 40) <= 4, "p50=" + p50);
+        assertTrue(Math.abs(p99 - 200) <= 30, "p99=" + p99);
+    }
+
+    @Test
+    void flutterwaveStubPaysOutAndInjectsErrors() {
+        FlutterwaveStub stub = start(new FlutterwaveStub(StubBehaviour.fast()));
+        FlutterwavePaymentService payments = new FlutterwavePaymentService();
+        ReflectionTestUtils.setField(payments, "baseUrl", stub.baseUrl());
+
+        Map<String, Object> ok = payments.initiateTransfer("0690000031", "044", "NGN", "500", "test", "ref-1");
+        assertEquals("success", ok.get("status"));
+        assertEquals("error", payments.initiateTransfer("0690000031", "044", "NGN", "500", "test", "ref-1").get("status"));
+        assertEquals(1, stub.payouts());
+        assertEquals(1, stub.duplicates());
+        assertEquals(FlutterwavePaymentService.TransferStatus.PAID, payments.transferStatus("ref-1"));
+        assertEquals(FlutterwavePaymentService.TransferStatus.NOT_FOUND, payments.transferStatus("ref-2"));
+
+        stub.setBehaviour(StubBehaviour.fast().withErrorRate(1.0));
+        assertEquals("error", payments.initiateTransfer("0690000031", "044", "NGN", "500", "test", "ref-2").get("status"));
+        assertEquals(1, stub.payouts());
+        assertEquals(1, stub.failures());
+        assertEquals(FlutterwavePaymentService.TransferStatus.UNKNOWN, payments.transferStatus("ref-2"));
+    }
+
+    @Test
+    void twilioStubAnswersTheSdkAndRateLimits() {
+        TwilioStub stub = start(new TwilioStub(StubBehaviour.fast().withRateLimit(3)));
+        Twilio.init("AC00000000000000000000000000000001", "token");
+        stub.install("AC00000000000000000000000000000001", "token");
+
+        int rejected = 0;
+        for (int i = 0; i < 5; i++) {
+            try {
+                Message m = Message.creator(new PhoneNumber("+2348000000001"), new PhoneNumber("+15005550006"), "hello " + i).create();
+                assertEquals(Message.Status.QUEUED, m.getStatus());
+            } catch (ApiException e) {
+                assertEquals(429, e.getStatusCode());
+                rejected++;
+            }
+        }
+        // the window may roll over mid-loop, so at least the quota is honoured
+        assertTrue(stub.sent() >= 3 && stub.sent() <= 5);
+        assertEquals(stub.throttled(), rejected);
+    }
+
+    @Test
+    void soapFxStubServesRatesAndFaults() {
+        SoapFxStub stub = start(new SoapFxStub(StubBehaviour.fast()).withRate("NGN", "USD", "0.00065"));
+        WebServiceTemplate ws = new WebServiceTemplate();
+        String request = "<GetRate xmlns=\"" + SoapFxStub.NAMESPACE + "\"><from>NGN</from><to>USD</to></GetRate>";
+
+        StringResult result = new StringResult();
+        ws.sendSourceAndReceiveToResult(stub.baseUrl() + "/fx", new StringSource(request), result);
+        assertTrue(result.toString().contains("<rate>0.00065</rate>"), result.toString());
+
+        String unknown = "<GetRate xmlns=\"" + SoapFxStub.NAMESPACE + "\"><from>NGN</from><to>JPY</to></GetRate>";
+        assertThrows(SoapFaultClientException.class,
+                () -> ws.sendSourceAndReceiveToResult(stub.baseUrl() + "/fx", new StringSource(unknown), new StringResult()));
+    }
+
+    private <T extends StubServer> T start(T server) {
+        servers.add(server);
+        return server;
+    }
+}
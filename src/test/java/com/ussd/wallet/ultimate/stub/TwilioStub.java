@@ -0,0 +1,142 @@
+package com.ussd.wallet.ultimate.stub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.twilio.Twilio;
+import com.twilio.http.HttpClient;
+import com.twilio.http.Request;
+import com.twilio.http.Response;
+import com.twilio.http.TwilioRestClient;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// POST /2010-04-01/Accounts/{sid}/Messages.json, answered with a queued message resource.
+// install() points the Twilio SDK's static client at this server, so TwilioSmsService is
+// exercised unchanged; it has to run after Twilio.init(), which drops any installed client.
+public class TwilioStub extends StubServer {
+
+    private static final String RFC_2822_DATE = "Mon, 20 Oct 2025 10:00:00 +0000";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong sent = new AtomicLong();
+
+    public TwilioStub(StubBehaviour behaviour) {
+        super(behaviour);
+    }
+
+    public long sent() {
+        return sent.get();
+    }
+
+    public void install(String accountSid, String authToken) {
+        Twilio.setRestClient(new TwilioRestClient.Builder(accountSid, authToken)
+                .httpClient(new RedirectingHttpClient(baseUrl()))
+                .build());
+    }
+
+    @Override
+    protected void handle(HttpExchange exchange, String body) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (!"POST".equals(exchange.getRequestMethod()) || !path.endsWith("/Messages.json")) {
+            respond(exchange, 404, "application/json", "{\"code\":20404,\"message\":\"The requested resource was not found\",\"status\":404}");
+            return;
+        }
+        Map<String, String> form = parseForm(body);
+        String accountSid = path.split("/")[3];
+        long n = sent.incrementAndGet();
+        Map<String, Object> message = new HashMap<>();
+        message.put("sid", String.format("SM%032x", n));
+        message.put("account_sid", accountSid);
+        message.put("to", form.get("To"));
+        message.put("from", form.get("From"));
+        message.put("body", form.get("Body"));
+        message.put("status", "queued");
+        message.put("direction", "outbound-api");
+        message.put("num_segments", "1");
+        message.put("date_created", RFC_2822_DATE);
+        message.put("date_updated", RFC_2822_DATE);
+        message.put("uri", path.replace(".json", "/" + message.get("sid") + ".json"));
+        respond(exchange, 201, "application/json", objectMapper.writeValueAsString(message));
+    }
+
+    @Override
+    protected void fail(HttpExchange exchange) throws IOException {
+        respond(exchange, 500, "application/json", "{\"code\":20500,\"message\":\"Internal Server Error\",\"status\":500}");
+    }
+
+    @Override
+    protected void throttle(HttpExchange exchange) throws IOException {
+        respond(exchange, 429, "application/json", "{\"code\":20429,\"message\":\"Too Many Requests\",\"status\":429}");
+    }
+
+    private static Map<String, String> parseForm(String body) {
+        Map<String, String> form = new HashMap<>();
+        for (String pair : body.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            form.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return form;
+    }
+
+    // the SDK builds absolute api.twilio.com URLs; this client sends them to the stub instead
+    static final class RedirectingHttpClient extends HttpClient {
+
+        private final String baseUrl;
+        private final java.net.http.HttpClient http = java.net.http.HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        RedirectingHttpClient(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        @Override
+        public Response makeRequest(Request request) {
+            String url = request.constructURL().toString().replaceFirst("^https://[a-z0-9.-]*twilio\\.com", baseUrl);
+            String form = request.getPostParams().entrySet().stream()
+                    .flatMap(e -> e.getValue().stream().map(v -> encode(e.getKey()) + "=" + encode(v)))
+                    .collect(Collectors.joining("&"));
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("Accept", "application/json");
+            if (request.getUsername() != null) {
+                String credentials = request.getUsername() + ":" + request.getPassword();
+                builder.header("Authorization", "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+            }
+            String method = request.getMethod().toString();
+            if (form.isEmpty()) {
+                builder.method(method, HttpRequest.BodyPublishers.noBody());
+            } else {
+                builder.header("Content-Type", "application/x-www-form-urlencoded")
+                        .method(method, HttpRequest.BodyPublishers.ofString(form));
+            }
+            try {
+                HttpResponse<String> resp = http.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+                return new Response(resp.body(), resp.statusCode());
+            } catch (IOException e) {
+                throw new IllegalStateException("Twilio stub unreachable at " + baseUrl, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted calling Twilio stub", e);
+            }
+        }
+
+        private static String encode(String s) {
+            return URLEncoder.encode(s, StandardCharsets.UTF_8);
+        }
+    }
+}
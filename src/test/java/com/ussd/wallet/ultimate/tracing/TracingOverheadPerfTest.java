@@ -0,0 +1,75 @@
+package com.ussd.wallet.ultimate.tracing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// What tracing adds to a USSD hop: one server span with the Redis, JPA, Cassandra and Kafka child
+// spans a withdrawal hop produces. Timed under -Pperf only.
+@Tag("perf")
+class TracingOverheadPerfTest {
+
+    @AfterEach
+    void uninstall() {
+        Tracing.install(null);
+    }
+
+    @Test
+    void overheadOnUssdHop() {
+        int hops = 200_000;
+        Tracing.install(null);
+        long off = time(hops);
+
+        install(Duration.ofMillis(500), 0);
+        long dropped = time(hops);
+
+        // every segment exported: the worst case, e.g. during an incident when everything is slow
+        install(Duration.ZERO, 0);
+        long kept = time(hops);
+
+        System.out.printf("[bench] ussd hop with 8 spans: off=%dns traced+dropped=%dns traced+kept=%dns per hop%n",
+                off / hops, dropped / hops, kept / hops);
+        System.out.printf("[bench] tracing overhead per hop: %.2fus (dropped) %.2fus (kept)%n",
+                (dropped - off) / hops / 1000.0, (kept - off) / hops / 1000.0);
+        assertTrue((dropped - off) / hops < 20_000, "tracing should add microseconds, not tens of them");
+    }
+
+    private static void install(Duration slowThreshold, double baselineRate) {
+        Tracing.install(new TraceCollector((traceId, reason, spans) -> { }, new SimpleMeterRegistry(), slowThreshold, baselineRate, 256,
+                Duration.ofSeconds(5), 10_000));
+    }
+
+    // warm up, then time the same hop shape repeatedly
+    private static long time(int hops) {
+        long sink = 0;
+        for (int i = 0; i < hops / 4; i++) sink += hop(i);
+        long start = System.nanoTime();
+        for (int i = 0; i < hops; i++) sink += hop(i);
+        long elapsed = System.nanoTime() - start;
+        assertNotEquals(42, sink);
+        return elapsed;
+    }
+
+    private static final String[] CHILDREN = {"redis get", "redis setNX", "jpa AccountRepository.findById",
+            "jpa AccountRepository.debitById", "cassandra TransactionCassandraRepository.save", "kafka send transactions",
+            "redis expire"};
+
+    private static long hop(int i) {
+        long work = 0;
+        try (Span http = Tracing.entry("http POST /api/ussd", null)) {
+            http.tag("http.status", 200);
+            for (String name : CHILDREN) {
+                try (Span child = Tracing.child(name)) {
+                    work += name.hashCode() ^ i;
+                }
+            }
+        }
+        return work;
+    }
+}
@@ -0,0 +1,184 @@
+package com.ussd.wallet.ultimate.tracing;
+
+import com.ussd.wallet.ultimate.dto.UssdRequestDto;
+import com.ussd.wallet.ultimate.repository.UserRepository;
+import com.ussd.wallet.ultimate.service.AccountService;
+import com.ussd.wallet.ultimate.service.DepositService;
+import com.ussd.wallet.ultimate.service.PinVerificationService;
+import com.ussd.wallet.ultimate.service.TransferService;
+import com.ussd.wallet.ultimate.service.TwilioSmsService;
+import com.ussd.wallet.ultimate.service.UssdService;
+import com.ussd.wallet.ultimate.service.WalletService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Context propagation across Kafka and the USSD executor, and tail sampling decided per trace.
+class TracingTest {
+
+    private static final String REMOTE = "00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-00";
+    private static final Duration WINDOW = Duration.ofMinutes(1);
+
+    private final InMemorySpanExporter exporter = new InMemorySpanExporter(1_000);
+
+    @AfterEach
+    void uninstall() {
+        Tracing.install(null);
+    }
+
+    @Test
+    void continuesRemoteContextAcrossKafka() {
+        install(Duration.ofSeconds(10), 0);
+        ProducerRecord<String, String> sent = new ProducerRecord<>("transactions", "k", "{}");
+        String httpSpanId;
+        try (Span http = Tracing.entry("http POST /api/ussd", REMOTE)) {
+            assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", http.traceId());
+            assertEquals("00f067aa0ba902b7", http.parentId());
+            httpSpanId = http.spanId();
+            new TracingProducerInterceptor().onSend(sent);
+        }
+        assertFalse(Tracing.current().isRecording(), "entry span is unbound on close");
+
+        ConsumerRecord<String, String> received = new ConsumerRecord<>("transactions", 0, 0L, "k", "{}");
+        sent.headers().forEach(h -> received.headers().add(h));
+        TracingRecordInterceptor interceptor = new TracingRecordInterceptor();
+        interceptor.intercept(received, null);
+        Span consume = Tracing.current();
+        TraceContext fromHeader = TraceContext.parse(TracingRecordInterceptor.traceparentOf(received));
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", consume.traceId());
+        assertEquals(fromHeader.spanId(), consume.parentId());
+        assertNotEquals(httpSpanId, consume.parentId(), "parent is the send span under the HTTP span");
+        interceptor.afterRecord(received, null);
+        assertFalse(Tracing.current().isRecording());
+
+        assertNull(TraceContext.parse("00-00000000000000000000000000000000-00f067aa0ba902b7-01"));
+        assertNull(TraceContext.parse("garbage"));
+        assertEquals(REMOTE, TraceContext.parse(REMOTE).traceparent());
+    }
+
+    @Test
+    void tailSamplingKeepsSlowFailedAndBaselineSampledSegments() throws InterruptedException {
+        install(Duration.ofMillis(200), 0);
+
+        try (Span fast = Tracing.entry("fast", null); Span child = Tracing.child("redis get")) {
+            assertTrue(child.isRecording());
+        }
+        try (Span failed = Tracing.entry("failed", null); Span child = Tracing.child("jpa save")) {
+            child.error(new IllegalStateException("deadlock"));
+        }
+        try (Span slow = Tracing.entry("slow", null)) {
+            Thread.sleep(220);
+        }
+        try (Span sampled = Tracing.entry("sampled", REMOTE.substring(0, 53) + "01")) {
+            assertTrue(sampled.traceparent().endsWith("-01"), "sampled flag is passed on");
+        }
+        // a detached span keeps its segment open across threads until it is closed
+        Span attempt = Tracing.detached("saga attempt", null);
+        Thread worker = new Thread(() -> {
+            try (Tracing.Scope scope = Tracing.bind(attempt); Span call = Tracing.child("flutterwave POST /transfers")) {
+                call.error("HTTP 500");
+            }
+        });
+        worker.start();
+        worker.join();
+        assertTrue(exporter.recent().stream().noneMatch(s -> s.spans().get(0).name().equals("saga attempt")));
+        attempt.close();
+
+        List<String> kept = exporter.recent().stream().map(s -> s.spans().get(0).name() + ":" + s.reason()).toList();
+        assertEquals(List.of("saga attempt:error", "sampled:sampled", "slow:slow", "failed:error"), kept);
+        assertEquals(2, exporter.recent().get(0).spans().size());
+    }
+
+    @Test
+    void segmentsOfOneTraceAreKeptTogether() {
+        install(Duration.ofSeconds(10), 0);
+        String traceId = "4bf92f3577b34da6a3ce929d0e0e4736";
+
+        // the consume finishes healthy first and is held, not dropped
+        try (Span consume = Tracing.entry("kafka consume transactions", REMOTE)) {
+            assertEquals(traceId, consume.traceId());
+        }
+        try (Span other = Tracing.entry("http POST /api/ussd", null)) {
+            other.tag("http.status", 200);
+        }
+        assertTrue(exporter.recent().isEmpty());
+
+        // a failed saga attempt keeps the trace, and with it the segment already finished
+        try (Span attempt = Tracing.entry("saga attempt", REMOTE); Span call = Tracing.child("flutterwave POST /transfers")) {
+            call.error("HTTP 500");
+        }
+        // a segment finishing later follows the decision
+        try (Span sms = Tracing.entry("twilio sms", REMOTE)) {
+            sms.tag("to", "+2348000000001");
+        }
+
+        List<String> kept = exporter.trace(traceId).stream().map(s -> s.spans().get(0).name() + ":" + s.reason()).toList();
+        assertEquals(List.of("twilio sms:error", "saga attempt:error", "kafka consume transactions:error"), kept);
+        assertEquals(3, exporter.recent().size());
+    }
+
+    @Test
+    void baselineSamplingIsTheSameDecisionOnEveryNode() {
+        TraceCollector nodeA = new TraceCollector(exporter, new SimpleMeterRegistry(), Duration.ofSeconds(1), 0.25, 256, WINDOW, 100);
+        TraceCollector nodeB = new TraceCollector(exporter, new SimpleMeterRegistry(), Duration.ofSeconds(1), 0.25, 256, WINDOW, 100);
+        int sampled = 0;
+        for (int i = 0; i < 4_000; i++) {
+            String traceId = Tracing.newTraceId();
+            assertEquals(nodeA.baselineSampled(traceId), nodeB.baselineSampled(traceId));
+            if (nodeA.baselineSampled(traceId)) sampled++;
+        }
+        assertTrue(sampled > 800 && sampled < 1_200, "about a quarter sampled: " + sampled);
+        assertTrue(nodeA.baselineSampled("00000000000000ff" + "0000000000000001"));
+        assertFalse(nodeA.baselineSampled("ff00000000000000" + "0000000000000001"));
+    }
+
+    @Test
+    void ussdHopOnTheExecutorRunsUnderTheRequestSpan() {
+        install(Duration.ofSeconds(10), 0);
+        @SuppressWarnings("unchecked")
+        RedisTemplate<String, Object> redis = mock(RedisTemplate.class);
+        @SuppressWarnings("unchecked")
+        ValueOperations<String, Object> values = mock(ValueOperations.class);
+        when(redis.opsForValue()).thenReturn(values);
+        AtomicReference<String> seenTrace = new AtomicReference<>();
+        when(values.multiGet(any())).thenAnswer(inv -> {
+            seenTrace.set(Tracing.current().traceId());
+            return null;
+        });
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.initialize();
+        UssdService ussd = new UssdService(redis, mock(UserRepository.class), mock(AccountService.class), mock(TransferService.class),
+                mock(DepositService.class), mock(PasswordEncoder.class), mock(PinVerificationService.class), mock(WalletService.class),
+                mock(TwilioSmsService.class), executor, new SimpleMeterRegistry());
+        try (Span http = Tracing.entry("http POST /api/ussd", REMOTE)) {
+            UssdRequestDto req = new UssdRequestDto();
+            req.setSessionId("s1");
+            req.setMsisdn("+2348000000001");
+            req.setText("");
+            ussd.handle(req, 2_000L);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals("4bf92f3577b34da6a3ce929d0e0e4736", seenTrace.get());
+    }
+
+    private void install(Duration slowThreshold, double baselineRate) {
+        exporter.clear();
+        Tracing.install(new TraceCollector(exporter, new SimpleMeterRegistry(), slowThreshold, baselineRate, 256, WINDOW, 10_000));
+    }
+}
@@ -0,0 +1,54 @@
+package com.ussd.wallet.ultimate.velocity;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+// Check latency and heap per tracked MSISDN at production scale, measured under -Pperf.
+@Tag("perf")
+class VelocityEnginePerfTest {
+
+    // override with -Dvelocity.bench.msisdns=5000000 and a larger heap
+    private static final int MSISDNS = Integer.getInteger("velocity.bench.msisdns", 1_000_000);
+
+    @Test
+    void checkLatencyAndFootprintWithMillionsOfMsisdns() {
+        VelocityReplicator replicator = mock(VelocityReplicator.class, withSettings().stubOnly());
+        VelocityEngine engine = new VelocityEngine(new VelocityProperties(), replicator, new SimpleMeterRegistry());
+        System.gc();
+        long heapBefore = usedHeap();
+        for (int i = 0; i < MSISDNS; i++) {
+            engine.checkWithdrawal("+234" + (8_000_000_000L + i), "s" + i, BigDecimal.TEN, "NGN");
+        }
+        System.gc();
+        long heapAfter = usedHeap();
+
+        int samples = 1_000_000;
+        long[] nanos = new long[samples];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < samples; i++) {
+            String msisdn = "+234" + (8_000_000_000L + random.nextInt(MSISDNS));
+            long t = System.nanoTime();
+            engine.checkWithdrawal(msisdn, "bench", BigDecimal.ONE, "NGN");
+            nanos[i] = System.nanoTime() - t;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("[bench] msisdns=%,d check p50=%dns p99=%dns p99.9=%dns; heap %.0f B/msisdn measured, %d B estimated%n",
+                engine.trackedMsisdns(), nanos[samples / 2], nanos[samples * 99 / 100], nanos[samples * 999 / 1000],
+                (heapAfter - heapBefore) / (double) MSISDNS, VelocityEngine.BYTES_PER_ENTRY);
+        assertEquals(MSISDNS, engine.trackedMsisdns());
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
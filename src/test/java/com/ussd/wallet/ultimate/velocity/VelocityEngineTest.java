@@ -0,0 +1,98 @@
+package com.ussd.wallet.ultimate.velocity;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class VelocityEngineTest {
+
+    private final VelocityReplicator replicator = mock(VelocityReplicator.class);
+
+    private VelocityEngine engine(VelocityProperties props) {
+        return new VelocityEngine(props, replicator, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void enforcesEachLimit() {
+        VelocityProperties props = new VelocityProperties();
+        props.getDefaults().setMaxWithdrawalsPerHour(3);
+        props.getDefaults().setMaxAmountPerDay(1000);
+        props.getDefaults().setMaxSessionsPerMinute(2);
+        VelocityEngine engine = engine(props);
+
+        assertTrue(engine.checkWithdrawal("+2348000000001", "s1", new BigDecimal("400"), "NGN").allowed());
+        assertTrue(engine.checkWithdrawal("+2348000000001", "s2", new BigDecimal("400"), "NGN").allowed());
+        // 400 + 400 + 300 is over the daily amount
+        assertEquals("Daily withdrawal limit reached",
+                engine.checkWithdrawal("+2348000000001", "s2", new BigDecimal("300"), "NGN").reason());
+        assertTrue(engine.checkWithdrawal("+2348000000001", "s2", new BigDecimal("200"), "NGN").allowed());
+        assertEquals("Hourly withdrawal limit reached",
+                engine.checkWithdrawal("+2348000000001", "s2", BigDecimal.ONE, "NGN").reason());
+        // third distinct session within the minute
+        assertEquals("Too many sessions, try again in a minute",
+                engine.checkWithdrawal("+2348000000001", "s3", BigDecimal.ONE, "NGN").reason());
+        // other MSISDNs are unaffected
+        assertTrue(engine.checkWithdrawal("+2348000000002", "s9", new BigDecimal("999"), "NGN").allowed());
+    }
+
+    @Test
+    void windowsSlideAndReplicatedEventsCount() {
+        int t0 = VelocityWindows.now(1_760_000_000L);
+        int[] s = VelocityWindows.create(t0);
+        VelocityWindows.recordWithdrawal(s, t0, 100);
+        VelocityWindows.recordWithdrawal(s, t0 + 1800, 50);
+        assertEquals(2, VelocityWindows.withdrawalsLastHour(s, t0 + 3000));
+        assertEquals(1, VelocityWindows.withdrawalsLastHour(s, t0 + 3700));
+        assertEquals(150, VelocityWindows.amountLastDay(s, t0 + 23 * 3600));
+        assertEquals(0, VelocityWindows.amountLastDay(s, t0 + 25 * 3600));
+        assertTrue(VelocityWindows.isIdle(s, t0 + 50 * 3600));
+
+        VelocityProperties props = new VelocityProperties();
+        props.getDefaults().setMaxWithdrawalsPerHour(1);
+        VelocityEngine engine = engine(props);
+        int now = VelocityWindows.now(System.currentTimeMillis() / 1000);
+        engine.apply(new VelocityEvent(VelocityEngine.keyOf("+2348000000003"), 7, now - 5, true, 10));
+        assertFalse(engine.checkWithdrawal("+2348000000003", "other", BigDecimal.TEN, "NGN").allowed());
+    }
+
+    @Test
+    void heldWithdrawalIsReplicatedOnConfirmAndForgottenOnRelease() {
+        VelocityProperties props = new VelocityProperties();
+        props.getDefaults().setMaxWithdrawalsPerHour(1);
+        VelocityEngine engine = engine(props);
+
+        VelocityEngine.Decision first = engine.checkWithdrawal("+2348000000004", "s1", new BigDecimal("50"), "NGN");
+        assertTrue(first.allowed());
+        // held: a second withdrawal in the hour is refused while the first is in flight
+        assertFalse(engine.checkWithdrawal("+2348000000004", "s1", BigDecimal.ONE, "NGN").allowed());
+        verify(replicator, never()).publish(argThat(VelocityEvent::withdrawal));
+
+        engine.release(first);
+        VelocityEngine.Decision retry = engine.checkWithdrawal("+2348000000004", "s1", new BigDecimal("50"), "NGN");
+        assertTrue(retry.allowed());
+
+        engine.confirm(retry);
+        verify(replicator).publish(new VelocityEvent(VelocityEngine.keyOf("+2348000000004"), "s1".hashCode(),
+                retry.hold().at(), true, 50));
+    }
+
+    @Test
+    void releaseNeverDrivesAWindowBelowZero() {
+        int t0 = VelocityWindows.now(1_760_000_000L);
+        int[] s = VelocityWindows.create(t0);
+        VelocityWindows.recordWithdrawal(s, t0, 100);
+        VelocityWindows.releaseWithdrawal(s, t0, 100);
+        VelocityWindows.releaseWithdrawal(s, t0, 100);
+        assertEquals(0, VelocityWindows.withdrawalsLastHour(s, t0));
+        assertEquals(0, VelocityWindows.amountLastDay(s, t0));
+    }
+}
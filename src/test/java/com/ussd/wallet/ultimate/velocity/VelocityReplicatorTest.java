@@ -0,0 +1,34 @@
+package com.ussd.wallet.ultimate.velocity;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class VelocityReplicatorTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void trimKeepsTheWholeReplayWindow() {
+        StringRedisTemplate redis = mock(StringRedisTemplate.class);
+        VelocityReplicator replicator = new VelocityReplicator(redis, new VelocityProperties());
+
+        long before = System.currentTimeMillis();
+        replicator.trim();
+        long after = System.currentTimeMillis();
+
+        ArgumentCaptor<String> minId = ArgumentCaptor.forClass(String.class);
+        verify(redis).execute(any(RedisScript.class), eq(List.of(VelocityReplicator.STREAM_KEY)), minId.capture());
+        long cutoff = Long.parseLong(minId.getValue());
+        // however many events came in, nothing younger than a day is trimmed
+        assertTrue(cutoff >= before - VelocityReplicator.WINDOW.toMillis() && cutoff <= after - VelocityReplicator.WINDOW.toMillis());
+    }
+}